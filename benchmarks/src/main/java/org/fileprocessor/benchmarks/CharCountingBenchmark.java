@@ -0,0 +1,70 @@
+package org.fileprocessor.benchmarks;
+
+import org.fileprocessor.CharHistogram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-character counting cost: @link org.fileprocessor.CharHistogram against the boxed map it replaced, which is kept here
+ * as a reference point. One operation counts every char of about 1 MB of text.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class CharCountingBenchmark {
+
+    private static final long CORPUS_BYTES = 1024 * 1024;
+
+    @Param({"ASCII", "UNICODE"})
+    public Corpus.Alphabet alphabet;
+
+    private char[] chars;
+    private long bytes;
+    private long lines;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<String> corpus = Corpus.lines(alphabet, Corpus.LineLength.SHORT, CORPUS_BYTES);
+        chars = String.join("", corpus).toCharArray();
+        bytes = Corpus.utf8Bytes(corpus) - corpus.size();
+        lines = corpus.size();
+    }
+
+    @Benchmark
+    public CharHistogram histogram(Throughput throughput) {
+        CharHistogram histogram = new CharHistogram();
+        for (char c : chars) {
+            histogram.increment(c);
+        }
+        throughput.add(bytes, lines);
+        return histogram;
+    }
+
+    @Benchmark
+    public Map<Character, Long> boxedMap(Throughput throughput) {
+        Map<Character, Long> counts = new HashMap<>();
+        for (char c : chars) {
+            counts.merge(c, 1L, Long::sum);
+        }
+        throughput.add(bytes, lines);
+        return counts;
+    }
+}
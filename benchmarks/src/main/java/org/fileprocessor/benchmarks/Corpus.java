@@ -0,0 +1,118 @@
+package org.fileprocessor.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic text generator for the benchmarks, so that every run and every JVM fork sees exactly the same input.
+ *
+ * Lines are made of words separated by single spaces, with some punctuation, over one of two alphabets: plain ASCII, or a
+ * mix of ASCII, accented Latin, Greek, CJK and supplementary (surrogate pair) characters that exercises the multi-byte
+ * paths of UTF-8 decoding and the Unicode aware word splitting.
+ */
+public final class Corpus {
+
+    /**
+     * Characters the generated words are made of.
+     */
+    public enum Alphabet {
+        ASCII, UNICODE
+    }
+
+    /**
+     * Typical length of the generated lines, in chars.
+     */
+    public enum LineLength {
+        SHORT(40), LONG(2000);
+
+        private final int chars;
+
+        LineLength(int chars) {
+            this.chars = chars;
+        }
+    }
+
+    private static final long SEED = 0x5EEDL;
+
+    private static final String ASCII_LETTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    private static final String UNICODE_LETTERS = "abcdefghijklmnopqrstuvwxyzéèàçñöüßαβγδεζηθλμπσω中文字符日本語한국어";
+    private static final String[] SUPPLEMENTARY = {"𝐀", "𝐁", "😀"};
+    private static final String PUNCTUATION = ".,;:!?-'\"()";
+
+    private Corpus() {
+    }
+
+    /**
+     * Generates lines until they add up to at least the given number of UTF-8 bytes.
+     * @param alphabet characters of the words.
+     * @param lineLength typical line length.
+     * @param bytes approximate total size of the lines, terminators excluded.
+     * @return the lines, always the same ones for the same arguments.
+     */
+    public static List<String> lines(Alphabet alphabet, LineLength lineLength, long bytes) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        List<String> lines = new ArrayList<>();
+        long total = 0;
+        StringBuilder line = new StringBuilder(lineLength.chars + 32);
+        while (total < bytes) {
+            line.setLength(0);
+            int target = lineLength.chars / 2 + random.nextInt(lineLength.chars + 1);
+            while (line.length() < target) {
+                if (line.length() > 0) {
+                    line.append(random.nextInt(10) == 0 ? PUNCTUATION.charAt(random.nextInt(PUNCTUATION.length())) + " " : " ");
+                }
+                appendWord(line, alphabet, random);
+            }
+            String text = line.toString();
+            lines.add(text);
+            total += text.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return lines;
+    }
+
+    /**
+     * Writes generated lines to a temporary UTF-8 file, one per line.
+     * @return the file, to be deleted by the caller.
+     * @throws IOException if the file cannot be written.
+     */
+    public static Path file(Alphabet alphabet, LineLength lineLength, long bytes) throws IOException {
+        Path file = Files.createTempFile("corpus-" + alphabet + "-" + lineLength + "-", ".txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (String line : lines(alphabet, lineLength, bytes)) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+        return file;
+    }
+
+    /**
+     * @return number of UTF-8 bytes of the given lines, one terminator per line included.
+     */
+    public static long utf8Bytes(List<String> lines) {
+        long bytes = 0;
+        for (String line : lines) {
+            bytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+        return bytes;
+    }
+
+    private static void appendWord(StringBuilder line, Alphabet alphabet, SplittableRandom random) {
+        int length = 1 + random.nextInt(10);
+        for (int i = 0; i < length; i++) {
+            if (alphabet == Alphabet.ASCII) {
+                line.append(ASCII_LETTERS.charAt(random.nextInt(ASCII_LETTERS.length())));
+            } else if (random.nextInt(50) == 0) {
+                line.append(SUPPLEMENTARY[random.nextInt(SUPPLEMENTARY.length)]);
+            } else {
+                line.append(UNICODE_LETTERS.charAt(random.nextInt(UNICODE_LETTERS.length())));
+            }
+        }
+    }
+}
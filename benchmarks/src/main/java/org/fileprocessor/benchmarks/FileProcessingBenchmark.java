@@ -0,0 +1,105 @@
+package org.fileprocessor.benchmarks;
+
+import org.fileprocessor.DefaultFileProcessor;
+import org.fileprocessor.DefaultLineProcessor;
+import org.fileprocessor.FileProcessor;
+import org.fileprocessor.LineProcessor;
+import org.fileprocessor.ProcessingResult;
+import org.fileprocessor.Validation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of processing a UTF-8 file with the default line processor, through each of the reading modes of
+ * @link org.fileprocessor.DefaultFileProcessor. The file is generated once per trial; after the first iteration it is
+ * served from the page cache, so this measures CPU cost rather than disk speed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileProcessingBenchmark {
+
+    /**
+     * Reading mode under test.
+     */
+    public enum Mode {
+        SEQUENTIAL, MAPPED, PARALLEL, PIPELINED
+    }
+
+    @Param({"1", "32"})
+    public int sizeMb;
+
+    @Param({"ASCII", "UNICODE"})
+    public Corpus.Alphabet alphabet;
+
+    @Param({"SHORT", "LONG"})
+    public Corpus.LineLength lineLength;
+
+    @Param({"SEQUENTIAL", "MAPPED", "PARALLEL", "PIPELINED"})
+    public Mode mode;
+
+    private final FileProcessor fileProcessor = new DefaultFileProcessor();
+    private Path file;
+    private long bytes;
+    private long lines;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = Corpus.file(alphabet, lineLength, sizeMb * 1024L * 1024L);
+        bytes = Files.size(file);
+        lines = Files.readAllLines(file, StandardCharsets.UTF_8).size();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public ProcessingResult processFile(Throughput throughput) {
+        List<LineProcessor> processors = Collections.singletonList(new DefaultLineProcessor());
+        ProcessingResult result;
+        switch (mode) {
+            case MAPPED:
+                result = fileProcessor.processFileMapped(file.toString(), processors, StandardCharsets.UTF_8);
+                break;
+            case PARALLEL:
+                result = fileProcessor.processFileInParallel(file.toString(), processors, StandardCharsets.UTF_8,
+                        Runtime.getRuntime().availableProcessors());
+                break;
+            case PIPELINED:
+                result = fileProcessor.processFilePipelined(file.toString(), processors, StandardCharsets.UTF_8,
+                        Runtime.getRuntime().availableProcessors(), 0, 0);
+                break;
+            default:
+                result = fileProcessor.processFile(file.toString(), processors, StandardCharsets.UTF_8);
+        }
+        if (result.getType() == Validation.ValidationType.ERROR) {
+            throw new IllegalStateException(result.getText());
+        }
+        throughput.add(bytes, lines);
+        return result;
+    }
+}
@@ -0,0 +1,62 @@
+package org.fileprocessor.benchmarks;
+
+import org.fileprocessor.DefaultLineProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-line cost of @link org.fileprocessor.DefaultLineProcessor on lines already in memory, i.e. without any I/O or
+ * decoding. One operation processes about 1 MB of text with a fresh processor.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class LineProcessingBenchmark {
+
+    private static final long CORPUS_BYTES = 1024 * 1024;
+
+    @Param({"ASCII", "UNICODE"})
+    public Corpus.Alphabet alphabet;
+
+    @Param({"SHORT", "LONG"})
+    public Corpus.LineLength lineLength;
+
+    @Param({"SCANNER", "REGEX"})
+    public DefaultLineProcessor.Tokenizer tokenizer;
+
+    private String[] lines;
+    private long bytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<String> corpus = Corpus.lines(alphabet, lineLength, CORPUS_BYTES);
+        lines = corpus.toArray(new String[0]);
+        bytes = Corpus.utf8Bytes(corpus);
+    }
+
+    @Benchmark
+    public DefaultLineProcessor processLines(Throughput throughput) {
+        DefaultLineProcessor processor = new DefaultLineProcessor(tokenizer);
+        for (String line : lines) {
+            processor.process(line);
+        }
+        throughput.add(bytes, lines.length);
+        return processor;
+    }
+}
@@ -0,0 +1,84 @@
+package org.fileprocessor.benchmarks;
+
+import org.fileprocessor.BatchFileProcessor;
+import org.fileprocessor.DefaultFileProcessor;
+import org.fileprocessor.DefaultLineProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Batch processing of a directory full of tiny files, where time goes into opening and reading files rather than into the
+ * processors: platform thread pool against one virtual thread per file. Run it on Java 21 or later, otherwise the virtual
+ * thread mode falls back to platform threads and both modes measure the same thing.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ManySmallFilesBenchmark {
+
+    @Param({"100000"})
+    public int files;
+
+    @Param({"PLATFORM_THREADS", "VIRTUAL_THREADS"})
+    public BatchFileProcessor.ExecutionMode mode;
+
+    @Param({"8", "256"})
+    public int maxOpenFiles;
+
+    private Path directory;
+    private long bytes;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("small-files");
+        List<String> lines = Corpus.lines(Corpus.Alphabet.ASCII, Corpus.LineLength.SHORT, 100);
+        byte[] content = (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < files; i++) {
+            Files.write(directory.resolve("file-" + i + ".log"), content);
+        }
+        bytes = (long) content.length * files;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public BatchFileProcessor.BatchResult processDirectory(Throughput throughput) {
+        BatchFileProcessor.BatchResult result = new BatchFileProcessor(new DefaultFileProcessor(), mode, maxOpenFiles)
+                .processFiles(Collections.singletonList(directory.toString()),
+                        Collections.singletonList(new DefaultLineProcessor()), StandardCharsets.UTF_8);
+        if (!result.getFailedFiles().isEmpty()) {
+            throw new IllegalStateException("Failed files: " + result.getFailedFiles().size());
+        }
+        throughput.add(bytes, files);
+        return result;
+    }
+}
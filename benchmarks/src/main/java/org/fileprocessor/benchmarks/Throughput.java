@@ -0,0 +1,30 @@
+package org.fileprocessor.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary results of a benchmark: the bytes and lines processed, which JMH reports per second next to the primary score
+ * (divide bytes by 1048576 for MB/s).
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+
+    public long bytes;
+    public long lines;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        bytes = 0;
+        lines = 0;
+    }
+
+    void add(long bytes, long lines) {
+        this.bytes += bytes;
+        this.lines += lines;
+    }
+}
@@ -0,0 +1,275 @@
+package org.fileprocessor;
+
+import java.io.Serializable;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * @link org.fileprocessor.LineProcessor for statistics that do not need to be exact, e.g. for dashboards over very large
+ * inputs. Besides the stats of @link org.fileprocessor.DefaultLineProcessor, under the same keys, it estimates the number
+ * of distinct words with a @link org.fileprocessor.HyperLogLog and the most frequent words with a
+ * @link org.fileprocessor.SpaceSaving sketch, so its memory does not grow with the vocabulary.
+ *
+ * Used with @see DefaultFileProcessor#processFileSampled(String, List, java.nio.charset.Charset, double), lines and words are
+ * extrapolated from the blocks read to the whole file (ratio estimator on the bytes of each block) and come with the
+ * half-width of their 95% confidence interval, estimated from the variation between blocks with Student's t distribution. Word counts are scaled in the
+ * same way. Average letters per word and the most common letter are those of the blocks read, and distinct words are those
+ * found in them, a lower bound for the whole file. When the whole file is read, counts are exact and their errors are 0.
+ */
+public class ApproximateLineProcessor implements SampledLineProcessor<ApproximateLineProcessor>, WordLineProcessor,
+        Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Key for the half-width of the 95% confidence interval of the number of lines. NaN if a single block was sampled.
+     */
+    public static final String LINES_ERROR = "Lines error";
+    /**
+     * Key for the half-width of the 95% confidence interval of the number of words. NaN if a single block was sampled.
+     */
+    public static final String WORDS_ERROR = "Words error";
+    /**
+     * Key for the estimated number of distinct words.
+     */
+    public static final String DISTINCT_WORDS = "Distinct words";
+    /**
+     * Key for the half-width of the 95% confidence interval of the number of distinct words.
+     */
+    public static final String DISTINCT_WORDS_ERROR = "Distinct words error";
+    /**
+     * Key for the most frequent words, most frequent first, as "word=count" or "word=count±error" separated by ", ".
+     * The error bounds how much the count may exceed the true one in the lines read.
+     */
+    public static final String TOP_WORDS = "Top words";
+    /**
+     * Key for the fraction of the file that was read, 1.0 unless it was sampled.
+     */
+    public static final String SAMPLED_FRACTION = "Sampled fraction";
+
+    /**
+     * Number of most frequent words reported by #ApproximateLineProcessor().
+     */
+    public static final int DEFAULT_TOP_WORDS = 10;
+    // counters of the sketch for each word reported, so the words reported are rarely near the noise floor
+    private static final int COUNTERS_PER_WORD = 16;
+    private static final double Z_95 = 1.96;
+    // 97.5% quantiles of Student's t distribution for 1 to 10 degrees of freedom, used when few blocks were sampled
+    private static final double[] T_95 = {12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228};
+
+    private static final List<String> metricNames = Arrays.asList(DefaultLineProcessor.LINES, LINES_ERROR,
+            DefaultLineProcessor.WORDS, WORDS_ERROR, DefaultLineProcessor.LETTER_PER_WORD,
+            DefaultLineProcessor.MOST_COMMON_LETTER, DISTINCT_WORDS, DISTINCT_WORDS_ERROR, TOP_WORDS, SAMPLED_FRACTION);
+
+    private final int topWords;
+    private final int precision;
+    private transient LineScanner scanner;
+
+    private long lineCount = 0;
+    private long wordCount = 0;
+    private long totalChar = 0;
+    private final CharHistogram charCount = new CharHistogram();
+    private final HyperLogLog distinctWords;
+    private final SpaceSaving frequentWords;
+
+    // sampled blocks: x is the size of a block, y its lines or words
+    private long sampledBlocks = 0;
+    private long fileBlocks = 0;
+    private long fileBytes = 0;
+    private double sumX = 0;
+    private double sumXX = 0;
+    private double sumLinesYY = 0;
+    private double sumLinesXY = 0;
+    private double sumWordsYY = 0;
+    private double sumWordsXY = 0;
+
+    /**
+     * Creates a processor that reports the @link #DEFAULT_TOP_WORDS most frequent words and counts distinct words with
+     * the default precision of @link org.fileprocessor.HyperLogLog.
+     */
+    public ApproximateLineProcessor() {
+        this(DEFAULT_TOP_WORDS, HyperLogLog.DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param topWords number of most frequent words reported.
+     * @param precision precision of the distinct words sketch, see @link org.fileprocessor.HyperLogLog#HyperLogLog(int).
+     */
+    public ApproximateLineProcessor(int topWords, int precision) {
+        if (topWords <= 0) {
+            throw new IllegalArgumentException("Need to report at least one word: " + topWords);
+        }
+        this.topWords = topWords;
+        this.precision = precision;
+        this.distinctWords = new HyperLogLog(precision);
+        this.frequentWords = new SpaceSaving(topWords * COUNTERS_PER_WORD);
+    }
+
+    @Override
+    public void process(String line) {
+        process((CharSequence) line);
+    }
+
+    @Override
+    public void process(CharSequence line) {
+        if (line != null && line.length() > 0) {
+            beginLine(line);
+            if (scanner == null) { // transient fields are lost on deserialization
+                scanner = new LineScanner();
+            }
+            scanner.scan(line, this);
+            endLine();
+        }
+    }
+
+    @Override
+    public void beginLine(CharSequence line) {
+        if (line.length() > 0) {
+            lineCount++;
+        }
+    }
+
+    @Override
+    public void word(char[] word, int length) {
+        wordCount++;
+        totalChar += length;
+        for (int i = 0; i < length; i++) {
+            charCount.increment(word[i]);
+        }
+        long hash = HyperLogLog.hash(word, length);
+        distinctWords.add(hash);
+        frequentWords.add(word, length, hash);
+    }
+
+    @Override
+    public void sampledBlock(long blockBytes, long fileBytes, long fileBlocks) {
+        double x = blockBytes;
+        sampledBlocks++;
+        this.fileBlocks = Math.max(this.fileBlocks, fileBlocks);
+        this.fileBytes = Math.max(this.fileBytes, fileBytes);
+        sumX += x;
+        sumXX += x * x;
+        sumLinesYY += (double) lineCount * lineCount;
+        sumLinesXY += x * lineCount;
+        sumWordsYY += (double) wordCount * wordCount;
+        sumWordsXY += x * wordCount;
+    }
+
+    @Override
+    public ApproximateLineProcessor newInstance() {
+        return new ApproximateLineProcessor(topWords, precision);
+    }
+
+    @Override
+    public void merge(ApproximateLineProcessor other) {
+        lineCount += other.lineCount;
+        wordCount += other.wordCount;
+        totalChar += other.totalChar;
+        charCount.merge(other.charCount);
+        distinctWords.merge(other.distinctWords);
+        frequentWords.merge(other.frequentWords);
+        sampledBlocks += other.sampledBlocks;
+        fileBlocks = Math.max(fileBlocks, other.fileBlocks);
+        fileBytes = Math.max(fileBytes, other.fileBytes);
+        sumX += other.sumX;
+        sumXX += other.sumXX;
+        sumLinesYY += other.sumLinesYY;
+        sumLinesXY += other.sumLinesXY;
+        sumWordsYY += other.sumWordsYY;
+        sumWordsXY += other.sumWordsXY;
+    }
+
+    private boolean isSampled() {
+        return sampledBlocks > 0 && sampledBlocks < fileBlocks;
+    }
+
+    /**
+     * @return factor from the counts of the lines read to the counts of the whole file.
+     */
+    private double scale() {
+        return isSampled() && sumX > 0 ? fileBytes / sumX : 1.0;
+    }
+
+    /**
+     * Half-width of the 95% confidence interval of the ratio estimate of a total, with the finite population correction.
+     */
+    private double error(double sumY, double sumYY, double sumXY) {
+        if (!isSampled()) {
+            return 0.0;
+        }
+        double n = sampledBlocks;
+        if (n < 2 || sumX == 0) {
+            return Double.NaN;
+        }
+        double ratio = sumY / sumX;
+        double residuals = Math.max(0, sumYY - 2 * ratio * sumXY + ratio * ratio * sumXX) / (n - 1);
+        double blocks = fileBlocks;
+        return t95(sampledBlocks - 1) * blocks * Math.sqrt((1 - n / blocks) * residuals / n);
+    }
+
+    /**
+     * @return 97.5% quantile of Student's t distribution, from the table or its Cornish-Fisher expansion around the normal one.
+     */
+    private static double t95(long degrees) {
+        if (degrees <= T_95.length) {
+            return T_95[(int) degrees - 1];
+        }
+        double z = Z_95;
+        return z + (z * z * z + z) / (4 * degrees) + (5 * Math.pow(z, 5) + 16 * z * z * z + 3 * z) / (96.0 * degrees * degrees);
+    }
+
+    @Override
+    public String printProcessedLines() {
+        Map<String, Object> stats = getKVForProcessedLines();
+        DecimalFormat format = new DecimalFormat("0.0");
+        StringBuilder output = new StringBuilder();
+        output.append(DefaultLineProcessor.LINES + ": " + format.format(stats.get(DefaultLineProcessor.LINES))
+                + " ± " + format.format(stats.get(LINES_ERROR)) + "\n");
+        output.append(DefaultLineProcessor.WORDS + ": " + format.format(stats.get(DefaultLineProcessor.WORDS))
+                + " ± " + format.format(stats.get(WORDS_ERROR)) + "\n");
+        output.append(DefaultLineProcessor.LETTER_PER_WORD + ": " + format.format(stats.get(DefaultLineProcessor.LETTER_PER_WORD)) + "\n");
+        output.append(DefaultLineProcessor.MOST_COMMON_LETTER + ": " + stats.get(DefaultLineProcessor.MOST_COMMON_LETTER) + "\n");
+        output.append(DISTINCT_WORDS + ": " + format.format(stats.get(DISTINCT_WORDS))
+                + " ± " + format.format(stats.get(DISTINCT_WORDS_ERROR)) + "\n");
+        output.append(TOP_WORDS + ": " + stats.get(TOP_WORDS) + "\n");
+        output.append(SAMPLED_FRACTION + ": " + stats.get(SAMPLED_FRACTION) + "\n");
+        return output.toString();
+    }
+
+    @Override
+    public Map<String, Object> getKVForProcessedLines() {
+        double scale = scale();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put(DefaultLineProcessor.LINES, lineCount * scale);
+        stats.put(LINES_ERROR, error(lineCount, sumLinesYY, sumLinesXY));
+        stats.put(DefaultLineProcessor.WORDS, wordCount * scale);
+        stats.put(WORDS_ERROR, error(wordCount, sumWordsYY, sumWordsXY));
+        stats.put(DefaultLineProcessor.LETTER_PER_WORD, wordCount == 0 ? 0.0 : (double) totalChar / wordCount);
+        int mostCommonLetter = charCount.mostCommon();
+        stats.put(DefaultLineProcessor.MOST_COMMON_LETTER, mostCommonLetter < 0 ? "None" : (char) mostCommonLetter);
+        double distinct = distinctWords.estimate();
+        stats.put(DISTINCT_WORDS, distinct);
+        stats.put(DISTINCT_WORDS_ERROR, Z_95 * distinctWords.getStandardError() * distinct);
+        stats.put(TOP_WORDS, frequentWords.top(topWords).stream()
+                .map(counter -> scaled(counter, scale))
+                .collect(Collectors.joining(", ")));
+        stats.put(SAMPLED_FRACTION, isSampled() ? sumX / fileBytes : 1.0);
+        return stats;
+    }
+
+    private static String scaled(SpaceSaving.Counter counter, double scale) {
+        long count = Math.round(counter.getCount() * scale);
+        long error = Math.round(counter.getError() * scale);
+        return error == 0 ? counter.getItem() + "=" + count : counter.getItem() + "=" + count + "±" + error;
+    }
+
+    @Override
+    public List<String> getKeyNames() {
+        return new ArrayList<>(metricNames);
+    }
+}
@@ -0,0 +1,377 @@
+package org.fileprocessor;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Processes many files concurrently with a @link org.fileprocessor.FileProcessor, e.g. all the rotated logs of an hour.
+ *
+ * Inputs can be plain files, directories (all the regular files directly inside them), glob patterns such as logs/app-*.log
+ * (where ** also crosses directories), and "@name" to read one input per line from a list file. Each file is processed
+ * by fresh copies of the given @link org.fileprocessor.MergeableLineProcessor prototypes on a fixed pool of workers, and
+ * results are merged into one aggregate as files complete, so a slow or huge file only holds up its own worker.
+ * At most threads + queueCapacity files are in flight at any time: submitting more blocks until a worker is done.
+ *
+ * With @link ExecutionMode#VIRTUAL_THREADS every file gets its own virtual thread instead, which suits many small files whose
+ * processing time is mostly spent waiting for the file system. The number of files open at the same time is then limited by
+ * a semaphore. Virtual threads need Java 21; on older JVMs this mode falls back to a fixed pool of platform threads.
+ */
+public class BatchFileProcessor {
+
+    private final static Logger logger = Logger.getLogger(BatchFileProcessor.class.getName());
+
+    /**
+     * Error message for inputs that do not match any file.
+     */
+    public final static String NO_MATCHING_FILES_ERROR = "No files match input";
+
+    /**
+     * How files are scheduled.
+     */
+    public enum ExecutionMode {
+        /**
+         * A fixed pool of platform threads with a bounded queue of files in front of it.
+         */
+        PLATFORM_THREADS,
+        /**
+         * One virtual thread per file, with a limit on the number of files open at the same time.
+         */
+        VIRTUAL_THREADS
+    }
+
+    private final FileProcessor fileProcessor;
+    private final ExecutionMode mode;
+    private final int threads;
+    private final int queueCapacity;
+
+    /**
+     * Creates a batch processor backed by a @link org.fileprocessor.DefaultFileProcessor, with one worker per available
+     * processor and room for as many queued files.
+     */
+    public BatchFileProcessor() {
+        this(new DefaultFileProcessor(), Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param fileProcessor processor used for every single file.
+     * @param threads number of files processed at the same time.
+     * @param queueCapacity number of files waiting for a worker before submission blocks.
+     */
+    public BatchFileProcessor(FileProcessor fileProcessor, int threads, int queueCapacity) {
+        if (threads <= 0 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Need a positive number of threads and a non-negative queue capacity");
+        }
+        this.fileProcessor = fileProcessor;
+        this.mode = ExecutionMode.PLATFORM_THREADS;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @param fileProcessor processor used for every single file.
+     * @param mode how files are scheduled.
+     * @param maxOpenFiles number of files processed at the same time. With platform threads this is the size of the pool,
+     *                     and as many files can be queued in front of it.
+     */
+    public BatchFileProcessor(FileProcessor fileProcessor, ExecutionMode mode, int maxOpenFiles) {
+        if (maxOpenFiles <= 0) {
+            throw new IllegalArgumentException("Need a positive number of open files");
+        }
+        this.fileProcessor = fileProcessor;
+        this.mode = mode == null ? ExecutionMode.PLATFORM_THREADS : mode;
+        this.threads = maxOpenFiles;
+        this.queueCapacity = this.mode == ExecutionMode.VIRTUAL_THREADS ? 0 : maxOpenFiles;
+    }
+
+    /**
+     * @return true if this JVM can run @link ExecutionMode#VIRTUAL_THREADS, i.e. it is Java 21 or later.
+     */
+    public static boolean isVirtualThreadSupported() {
+        ExecutorService executor = newVirtualThreadExecutor();
+        if (executor == null) {
+            return false;
+        }
+        executor.shutdown();
+        return true;
+    }
+
+    /**
+     * Looked up reflectively so that the project still builds and runs on JVMs without virtual threads.
+     * @return an executor starting a virtual thread per task, or null if they are not available.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null; // before Java 21, or a preview JVM without --enable-preview
+        }
+    }
+
+    private ExecutorService newExecutor() {
+        if (mode == ExecutionMode.VIRTUAL_THREADS) {
+            ExecutorService executor = newVirtualThreadExecutor();
+            if (executor != null) {
+                return executor;
+            }
+            logger.info("Virtual threads are not available in this JVM, using " + threads + " platform threads");
+        }
+        return Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Processes all the files matched by the given inputs.
+     * @param inputs file names, directories, glob patterns or "@listFile" entries.
+     * @param prototypes processors to be copied for every file and into which results are aggregated.
+     * @param charset Encoding of the files. Default OS encoding is loaded if null.
+     * @return per-file results plus the aggregate of all the files processed successfully.
+     */
+    public BatchResult processFiles(List<String> inputs, List<? extends MergeableLineProcessor<?>> prototypes, Charset charset) {
+        Map<String, ProcessingResult> validations = new ConcurrentHashMap<>();
+        List<MergeableLineProcessor<?>> aggregate = new ArrayList<>(prototypes.size());
+        for (MergeableLineProcessor<?> prototype : prototypes) {
+            aggregate.add(prototype.newInstance());
+        }
+
+        ExecutorService executor = newExecutor();
+        Semaphore inFlight = new Semaphore(threads + queueCapacity); // also the limit of open files with virtual threads
+        Set<String> submitted = new HashSet<>();
+        try {
+            for (String input : inputs) {
+                List<String> files = resolve(input);
+                if (files.isEmpty()) {
+                    logger.info(NO_MATCHING_FILES_ERROR + ": " + input);
+                    validations.put(input, new ProcessingResult(NO_MATCHING_FILES_ERROR + ": " + input, Validation.ValidationType.ERROR));
+                }
+                for (String file : files) {
+                    if (!submitted.add(file)) {
+                        continue; // matched by more than one input
+                    }
+                    inFlight.acquire(); // backpressure: wait for a free slot before queueing more files
+                    try {
+                        executor.execute(() -> {
+                            try {
+                                processFile(file, prototypes, aggregate, validations, charset);
+                            } finally {
+                                inFlight.release();
+                            }
+                        });
+                    } catch (RuntimeException e) {
+                        inFlight.release();
+                        throw e;
+                    }
+                }
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+            // files still being processed keep merging into the aggregate, so return a copy of what is complete
+            synchronized (aggregate) {
+                logger.info("Batch interrupted, " + validations.size() + " files processed");
+                return new BatchResult(new TreeMap<>(validations), copyOf(aggregate));
+            }
+        } finally {
+            if (!executor.isShutdown()) { // resolving or submitting failed: nobody will see the results
+                executor.shutdownNow();
+            }
+        }
+        return new BatchResult(new TreeMap<>(validations), aggregate);
+    }
+
+    /**
+     * Processes a file on fresh copies of the prototypes, merges them into the aggregate if it succeeded and records its
+     * validation, both under the lock of the aggregate so that they can be copied consistently.
+     */
+    private void processFile(String file, List<? extends MergeableLineProcessor<?>> prototypes,
+                             List<MergeableLineProcessor<?>> aggregate, Map<String, ProcessingResult> validations,
+                             Charset charset) {
+        List<LineProcessor> processors = new ArrayList<>(prototypes.size());
+        for (MergeableLineProcessor<?> prototype : prototypes) {
+            processors.add((LineProcessor) prototype.newInstance());
+        }
+        ProcessingResult validation;
+        try {
+            validation = fileProcessor.processFile(file, processors, charset);
+        } catch (RuntimeException e) {
+            logger.info(DefaultFileProcessor.FILE_PROCESSING_ERROR + ": " + file + " because of exception: \n " + e.getMessage());
+            validation = new ProcessingResult(DefaultFileProcessor.FILE_PROCESSING_ERROR + ": " + file + " because of exception: \n " +
+                    e.getMessage(), Validation.ValidationType.ERROR);
+        }
+        synchronized (aggregate) {
+            if (validation.getType() != Validation.ValidationType.ERROR) {
+                for (int i = 0; i < aggregate.size(); i++) {
+                    ChunkedFileTask.merge(aggregate.get(i), (MergeableLineProcessor<?>) processors.get(i));
+                }
+            }
+            validations.put(file, validation);
+        }
+    }
+
+    /**
+     * @return fresh instances holding the state of the given processors.
+     */
+    private static List<MergeableLineProcessor<?>> copyOf(List<MergeableLineProcessor<?>> processors) {
+        List<MergeableLineProcessor<?>> copies = new ArrayList<>(processors.size());
+        for (MergeableLineProcessor<?> processor : processors) {
+            MergeableLineProcessor<?> copy = processor.newInstance();
+            ChunkedFileTask.merge(copy, processor);
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    /**
+     * Expands an input into the regular files it stands for. Line indexes kept next to files (see
+     * @link org.fileprocessor.LineIndex#sidecarOf(Path)) are left out of directories and globs.
+     * @param input file name, directory, glob pattern or "@listFile".
+     * @return matching file names, sorted. Empty if nothing matches.
+     */
+    static List<String> resolve(String input) {
+        return resolve(input, new HashSet<>());
+    }
+
+    /**
+     * @param expanding real paths of the list files whose expansion led to this input, to skip lists that include themselves.
+     */
+    private static List<String> resolve(String input, Set<Path> expanding) {
+        try {
+            if (input.startsWith("@")) {
+                Path list = Paths.get(input.substring(1)).toRealPath();
+                if (!expanding.add(list)) {
+                    logger.info(NO_MATCHING_FILES_ERROR + ": " + input + " because it includes itself");
+                    return Collections.emptyList();
+                }
+                try (Stream<String> lines = Files.lines(list)) {
+                    List<String> files = new ArrayList<>();
+                    for (String line : lines.map(String::trim).filter(l -> !l.isEmpty()).collect(Collectors.toList())) {
+                        files.addAll(resolve(line, expanding));
+                    }
+                    return files;
+                } finally {
+                    expanding.remove(list); // only cycles are skipped, a list may well be included twice
+                }
+            }
+            if (isGlob(input)) {
+                return resolveGlob(input);
+            }
+            Path path = Paths.get(input);
+            if (Files.isDirectory(path)) {
+                List<String> files = new ArrayList<>();
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+                    for (Path entry : entries) {
+                        if (Files.isRegularFile(entry) && !LineIndex.isSidecar(entry)) {
+                            files.add(entry.toString());
+                        }
+                    }
+                }
+                Collections.sort(files);
+                return files;
+            }
+            // let the file processor report missing files like it does for single files
+            return Collections.singletonList(input);
+        } catch (IOException e) {
+            logger.info(NO_MATCHING_FILES_ERROR + ": " + input + " because of exception: \n " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    private static boolean isGlob(String input) {
+        return input.indexOf('*') >= 0 || input.indexOf('?') >= 0 || input.indexOf('[') >= 0 || input.indexOf('{') >= 0;
+    }
+
+    private static List<String> resolveGlob(String pattern) throws IOException {
+        // walk from the deepest directory that does not contain wildcards
+        String normalised = pattern.replace('\\', '/');
+        int wildcard = normalised.length();
+        for (char c : new char[]{'*', '?', '[', '{'}) {
+            int index = normalised.indexOf(c);
+            if (index >= 0) {
+                wildcard = Math.min(wildcard, index);
+            }
+        }
+        int separator = normalised.lastIndexOf('/', wildcard);
+        Path base = Paths.get(separator < 0 ? "." : (separator == 0 ? "/" : normalised.substring(0, separator)));
+        if (!Files.isDirectory(base)) {
+            return Collections.emptyList();
+        }
+        String glob = normalised.substring(separator + 1);
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        int depth = glob.contains("**") ? Integer.MAX_VALUE : glob.split("/").length;
+        try (Stream<Path> paths = Files.walk(base, depth)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> matcher.matches(base.relativize(path)) && !LineIndex.isSidecar(path))
+                    .map(Path::toString)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Outcome of a batch: one result per file (or per input matching no files) and the merged statistics.
+     */
+    public static class BatchResult {
+        private final Map<String, ProcessingResult> validations;
+        private final List<MergeableLineProcessor<?>> aggregate;
+
+        BatchResult(Map<String, ProcessingResult> validations, List<MergeableLineProcessor<?>> aggregate) {
+            this.validations = Collections.unmodifiableMap(validations);
+            this.aggregate = Collections.unmodifiableList(aggregate);
+        }
+
+        /**
+         * @return result of every file, with its own stats, sorted by file name.
+         */
+        public Map<String, ProcessingResult> getValidations() {
+            return validations;
+        }
+
+        /**
+         * @return names of the files (or inputs) that could not be processed.
+         */
+        public List<String> getFailedFiles() {
+            return validations.entrySet().stream()
+                    .filter(e -> e.getValue().getType() == Validation.ValidationType.ERROR)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+        }
+
+        /**
+         * @return processors holding the statistics of all the files processed successfully, in the order of the prototypes.
+         */
+        public List<MergeableLineProcessor<?>> getAggregate() {
+            return aggregate;
+        }
+
+        /**
+         * @return Name-value KV map of the aggregated stats of all processors.
+         */
+        public Map<String, Object> getKVForProcessedLines() {
+            Map<String, Object> statMap = new TreeMap<>();
+            aggregate.forEach(processor -> statMap.putAll(processor.getKVForProcessedLines()));
+            return statMap;
+        }
+    }
+}
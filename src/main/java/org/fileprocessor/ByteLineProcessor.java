@@ -0,0 +1,41 @@
+package org.fileprocessor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @link org.fileprocessor.LineProcessor that works on the raw bytes of each line rather than on decoded text, so it does not
+ * pay for charset decoding and String creation. Useful for processors that only count bytes or lines, or that know their
+ * input is ASCII.
+ *
+ * @link org.fileprocessor.DefaultFileProcessor hands the bytes over as read from the file whenever the encoding allows lines
+ * to be found without decoding (UTF-8, ISO-8859-1 and US-ASCII), and only decodes lines for the String based processors
+ * that share the same run. In other encodings lines are decoded and given to @see #process(String), which encodes them
+ * back as UTF-8.
+ */
+public interface ByteLineProcessor extends LineProcessor {
+
+    /**
+     * Calculates statistics from the bytes of a line, without its terminator, and accumulates them like @see LineProcessor#process(String).
+     * The buffer is shared with the reader and other processors: use absolute gets only, and do not keep a reference to it
+     * or change its position or limit.
+     * @param buffer buffer holding the line.
+     * @param offset index of the first byte of the line in the buffer.
+     * @param length number of bytes in the line.
+     * @param charset encoding of the bytes.
+     */
+    void process(ByteBuffer buffer, int offset, int length, Charset charset);
+
+    /**
+     * Encodes the line as UTF-8 and hands it to @see #process(ByteBuffer, int, int, Charset).
+     * @param line to be processed as read from the file
+     */
+    @Override
+    default void process(String line) {
+        if (line != null) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            process(ByteBuffer.wrap(bytes), 0, bytes.length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.fileprocessor;
+
+import org.apache.log4j.Logger;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds line breaks, ASCII words and non-ASCII bytes in byte buffers: the byte scanning behind
+ * @link org.fileprocessor.MappedLineReader and the byte views handed to @link org.fileprocessor.LineScanner.
+ *
+ * @see #get() returns an implementation that checks a whole SIMD register (32 or 64 bytes) at a time with the incubating
+ * Vector API when the JVM is started with --add-modules jdk.incubator.vector on JDK 17 to 19, and a plain loop otherwise.
+ * The vector implementation is checked against the plain one when it is loaded and discarded if anything goes wrong, e.g.
+ * the incubating API changed in the running JDK. Setting the system property org.fileprocessor.vector to false also turns
+ * it off.
+ */
+abstract class ByteScanner {
+
+    private final static Logger logger = Logger.getLogger(ByteScanner.class.getName());
+
+    /**
+     * System property that turns the vector implementation off when set to false.
+     */
+    static final String VECTOR_PROPERTY = "org.fileprocessor.vector";
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    // ByteVector.fromByteBuffer, used on mapped buffers, was replaced by fromMemorySegment in JDK 20
+    private static final int LAST_VECTOR_JDK = 19;
+    private static final ByteScanner SCALAR = new Scalar();
+    private static final ByteScanner INSTANCE = select();
+
+    /**
+     * @return the fastest implementation available in this JVM.
+     */
+    static ByteScanner get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the plain loop implementation.
+     */
+    static ByteScanner scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * @return the vector implementation, or null if it cannot be used in this JVM.
+     */
+    static ByteScanner vector() {
+        if (!ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            return null;
+        }
+        if (Runtime.version().feature() > LAST_VECTOR_JDK) {
+            logger.info("Vector API of JDK " + Runtime.version().feature() + " is not supported, scanning bytes one at a time");
+            return null;
+        }
+        try {
+            ByteScanner vector = (ByteScanner) Class.forName("org.fileprocessor.VectorByteScanner")
+                    .getDeclaredConstructor().newInstance();
+            return agreesWithScalar(vector) ? vector : null;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            logger.info("Vector API cannot be used, scanning bytes one at a time: " + e);
+            return null;
+        }
+    }
+
+    private static ByteScanner select() {
+        if (!Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true"))) {
+            return SCALAR;
+        }
+        ByteScanner vector = vector();
+        logger.info("Scanning bytes with " + (vector == null ? SCALAR : vector));
+        return vector == null ? SCALAR : vector;
+    }
+
+    /**
+     * Quick check on heap and direct buffers with all kinds of bytes at every position of a register and beyond.
+     */
+    private static boolean agreesWithScalar(ByteScanner vector) {
+        byte[] sample = new byte[300];
+        for (int i = 0; i < sample.length; i++) {
+            sample[i] = (byte) ("ab Z9\t-\r\né".charAt(i % 10) + (i % 7 == 0 ? 128 : 0));
+        }
+        ByteBuffer direct = ByteBuffer.allocateDirect(sample.length).put(sample);
+        for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.wrap(sample), direct.asReadOnlyBuffer()}) {
+            for (int from = 0; from < 80; from += 3) {
+                int to = sample.length - from / 2;
+                if (vector.indexOfLineBreak(buffer, from, to) != SCALAR.indexOfLineBreak(buffer, from, to)
+                        || vector.indexOfNonAlphanumeric(buffer, from, to) != SCALAR.indexOfNonAlphanumeric(buffer, from, to)
+                        || vector.isAscii(buffer, from, to) != SCALAR.isAscii(buffer, from, to)) {
+                    logger.info("Vector API gives wrong results, scanning bytes one at a time");
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param buffer bytes to be scanned. Positions are absolute, the position and limit of the buffer are ignored.
+     * @param from index of the first byte to check.
+     * @param to index after the last byte to check.
+     * @return index of the first '\n' or '\r' in the range, or to if there is none.
+     */
+    abstract int indexOfLineBreak(ByteBuffer buffer, int from, int to);
+
+    /**
+     * @param buffer bytes to be scanned. Positions are absolute, the position and limit of the buffer are ignored.
+     * @param from index of the first byte to check.
+     * @param to index after the last byte to check.
+     * @return index of the first byte in the range that is not an ASCII letter or digit, or to if there is none.
+     */
+    abstract int indexOfNonAlphanumeric(ByteBuffer buffer, int from, int to);
+
+    /**
+     * @param buffer bytes to be scanned. Positions are absolute, the position and limit of the buffer are ignored.
+     * @param from index of the first byte to check.
+     * @param to index after the last byte to check.
+     * @return true if all the bytes in the range are ASCII.
+     */
+    abstract boolean isAscii(ByteBuffer buffer, int from, int to);
+
+    static boolean isAlphanumeric(byte b) {
+        return (b >= '0' && b <= '9') || (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z');
+    }
+
+    /**
+     * One byte at a time.
+     */
+    private static final class Scalar extends ByteScanner {
+        @Override
+        int indexOfLineBreak(ByteBuffer buffer, int from, int to) {
+            for (int i = from; i < to; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n' || b == '\r') {
+                    return i;
+                }
+            }
+            return to;
+        }
+
+        @Override
+        int indexOfNonAlphanumeric(ByteBuffer buffer, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (!isAlphanumeric(buffer.get(i))) {
+                    return i;
+                }
+            }
+            return to;
+        }
+
+        @Override
+        boolean isAscii(ByteBuffer buffer, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (buffer.get(i) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "scalar byte scanner";
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.fileprocessor;
+
+import org.apache.log4j.Logger;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @link org.fileprocessor.FileProcessor that answers from a @link org.fileprocessor.ResultCache whenever it can and hands
+ * everything else to another FileProcessor. Whole file calls (processFile, processFileMapped, processFileInParallel and
+ * processFilePipelined, which all produce the same statistics) with cacheable processors are looked up first: on a hit the
+ * cached state is merged into the processors and the file is not read at all; on a miss the file is processed by fresh
+ * copies of the processors, which are cached and then merged into the given ones. Calls with a
+ * @link org.fileprocessor.StatsPublisher, streams, followed files and processors that cannot be cached go straight to the
+ * other processor.
+ *
+ * A result is only cached if the file did not change while it was being processed. On a hit the other processor is not
+ * called at all, so its result sink and listeners do not hear about the call.
+ */
+public class CachingFileProcessor implements FileProcessor {
+
+    private final static Logger logger = Logger.getLogger(CachingFileProcessor.class.getName());
+
+    private final FileProcessor fileProcessor;
+    private final ResultCache cache;
+
+    // only backs the deprecated getKeyNames() and getKVForProcessedLines()
+    private volatile ProcessingResult lastResult = null;
+
+    /**
+     * How a whole file is processed on a miss.
+     */
+    @FunctionalInterface
+    private interface Call {
+        ProcessingResult process(List<LineProcessor> processors);
+    }
+
+    /**
+     * @param fileProcessor processor used on misses and for the calls that are not cached.
+     * @param cache where results are kept.
+     */
+    public CachingFileProcessor(FileProcessor fileProcessor, ResultCache cache) {
+        this.fileProcessor = fileProcessor;
+        this.cache = cache;
+    }
+
+    /**
+     * @return the cache, e.g. to read its hit and miss counts.
+     */
+    public ResultCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public ProcessingResult processFile(String fileName, List<LineProcessor> processors, Charset charset) {
+        return cached(fileName, processors, charset, copies -> fileProcessor.processFile(fileName, copies, charset));
+    }
+
+    @Override
+    public ProcessingResult processFile(String fileName, List<LineProcessor> processors, Charset charset, StatsPublisher progress) {
+        if (progress == null) {
+            return processFile(fileName, processors, charset);
+        }
+        return remember(fileProcessor.processFile(fileName, processors, charset, progress));
+    }
+
+    @Override
+    public ProcessingResult processFileInParallel(String fileName, List<LineProcessor> processors, Charset charset, int parallelism) {
+        return cached(fileName, processors, charset,
+                copies -> fileProcessor.processFileInParallel(fileName, copies, charset, parallelism));
+    }
+
+    @Override
+    public ProcessingResult processFilePipelined(String fileName, List<LineProcessor> processors, Charset charset, int workers,
+                                                 int batchSize, int queueDepth) {
+        return cached(fileName, processors, charset,
+                copies -> fileProcessor.processFilePipelined(fileName, copies, charset, workers, batchSize, queueDepth));
+    }
+
+    @Override
+    public ProcessingResult processFileMapped(String fileName, List<LineProcessor> processors, Charset charset) {
+        return cached(fileName, processors, charset, copies -> fileProcessor.processFileMapped(fileName, copies, charset));
+    }
+
+    @Override
+    public ProcessingResult processFile(String fileName, String charsetString) {
+        if (charsetString == null || charsetString.isEmpty()) {
+            return remember(fileProcessor.processFile(fileName, charsetString));
+        }
+        Charset charset;
+        try {
+            charset = Charset.forName(charsetString);
+        } catch (IllegalArgumentException wrongEncoding) { // reported by the other processor
+            return remember(fileProcessor.processFile(fileName, charsetString));
+        }
+        return processFile(fileName, charset);
+    }
+
+    @Override
+    public ProcessingResult processFile(String fileName, Charset charset) {
+        return processFile(fileName, new DefaultLineProcessor(), charset);
+    }
+
+    @Override
+    public ProcessingResult processFile(String fileName) {
+        return processFile(fileName, new DefaultLineProcessor(), null);
+    }
+
+    @Override
+    public ProcessingResult processFile(String fileName, LineProcessor processor, Charset charset) {
+        return processFile(fileName, Arrays.asList(processor), charset);
+    }
+
+    @Override
+    public ProcessingResult processStream(InputStream input, List<LineProcessor> processors, Charset charset) {
+        return remember(fileProcessor.processStream(input, processors, charset));
+    }
+
+    @Override
+    public ProcessingResult processStream(ReadableByteChannel input, List<LineProcessor> processors, Charset charset) {
+        return remember(fileProcessor.processStream(input, processors, charset));
+    }
+
+    @Override
+    public ProcessingResult processStream(Reader input, List<LineProcessor> processors) {
+        return remember(fileProcessor.processStream(input, processors));
+    }
+
+    @Override
+    public ProcessingResult followFile(String fileName, List<LineProcessor> processors, Charset charset, String checkpointFile) {
+        return remember(fileProcessor.followFile(fileName, processors, charset, checkpointFile));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ProcessingResult cached(String fileName, List<LineProcessor> processors, Charset charset, Call call) {
+        if (fileName == null || fileName.isEmpty() || !ResultCache.isCacheable(processors)) {
+            return remember(call.process(processors)); // errors are reported by the other processor
+        }
+        Charset fileCharset = charset == null ? Charset.defaultCharset() : charset;
+        String key = cache.key(Paths.get(fileName), processors, fileCharset);
+        if (key == null) {
+            return remember(call.process(processors));
+        }
+        if (cache.get(key, processors)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Cache hit for " + fileName);
+            }
+            return remember(new ProcessingResult("OK", Validation.ValidationType.OK, processors));
+        }
+
+        List<LineProcessor> copies = new ArrayList<>(processors.size());
+        for (LineProcessor processor : processors) {
+            copies.add(processor == null ? null : (LineProcessor) ((MergeableLineProcessor<?>) processor).newInstance());
+        }
+        ProcessingResult result = call.process(copies);
+        if (result.getType() != Validation.ValidationType.OK) {
+            return remember(result);
+        }
+        if (key.equals(cache.key(Paths.get(fileName), processors, fileCharset))) {
+            cache.put(key, copies);
+        } else {
+            logger.info("File " + fileName + " changed while being processed, its result is not cached");
+        }
+        for (int i = 0; i < processors.size(); i++) {
+            if (processors.get(i) != null) {
+                ChunkedFileTask.merge((MergeableLineProcessor<?>) processors.get(i), (MergeableLineProcessor<?>) copies.get(i));
+            }
+        }
+        return remember(new ProcessingResult("OK", Validation.ValidationType.OK, processors));
+    }
+
+    private ProcessingResult remember(ProcessingResult result) {
+        if (result.getType() == Validation.ValidationType.OK) {
+            lastResult = result;
+        }
+        return result;
+    }
+
+    @Override
+    @Deprecated
+    public List<String> getKeyNames() {
+        ProcessingResult result = lastResult;
+        return result == null ? new ArrayList<>(0) : new ArrayList<>(result.getKeyNames());
+    }
+
+    @Override
+    @Deprecated
+    public Map<String, Object> getKVForProcessedLines() {
+        ProcessingResult result = lastResult;
+        return result == null ? new HashMap<>() : new HashMap<>(result.getKVForProcessedLines());
+    }
+}
@@ -0,0 +1,173 @@
+package org.fileprocessor;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Occurrence counter for UTF-16 chars backed by primitive longs.
+ *
+ * Counters live in a two-level table: the high byte of the char selects a page of 256 longs, allocated the first time one of
+ * its chars is seen, so text in a handful of scripts only costs a few KB. Counters are promoted to BigInteger only for the
+ * chars whose count would overflow a long, which keeps the common path free of boxing and allocation.
+ */
+public final class CharHistogram implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final long[][] pages = new long[PAGE_SIZE][];
+    private Map<Character, BigInteger> overflow = null;
+    private int distinct = 0;
+
+    /**
+     * Adds one occurrence of the given char.
+     * @param c char seen.
+     */
+    public void increment(char c) {
+        long[] page = page(c);
+        int index = c & PAGE_MASK;
+        long count = page[index];
+        if (count == 0) {
+            distinct++;
+        } else if (count == Long.MAX_VALUE) {
+            promote(c, count);
+            count = 0;
+        }
+        page[index] = count + 1;
+    }
+
+    /**
+     * Adds the given number of occurrences of a char.
+     * @param c char seen.
+     * @param occurrences number of times it has been seen. Must not be negative.
+     */
+    public void add(char c, long occurrences) {
+        if (occurrences <= 0) {
+            return;
+        }
+        long[] page = page(c);
+        int index = c & PAGE_MASK;
+        long count = page[index];
+        if (count == 0) {
+            distinct++;
+        } else if (count > Long.MAX_VALUE - occurrences) {
+            promote(c, count);
+            count = 0;
+        }
+        page[index] = count + occurrences;
+    }
+
+    /**
+     * Adds all the occurrences counted by another histogram to this one. The other histogram is left untouched.
+     * @param other histogram to be added.
+     */
+    public void merge(CharHistogram other) {
+        for (int p = 0; p < PAGE_SIZE; p++) {
+            long[] page = other.pages[p];
+            if (page == null) {
+                continue;
+            }
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                add((char) ((p << PAGE_BITS) | i), page[i]);
+            }
+        }
+        if (other.overflow != null) {
+            other.overflow.forEach(this::promote);
+        }
+    }
+
+    /**
+     * @param c char to look up.
+     * @return number of occurrences of the char.
+     */
+    public BigInteger get(char c) {
+        long[] page = pages[c >>> PAGE_BITS];
+        BigInteger count = BigInteger.valueOf(page == null ? 0 : page[c & PAGE_MASK]);
+        if (overflow != null && overflow.containsKey(c)) {
+            count = count.add(overflow.get(c));
+        }
+        return count;
+    }
+
+    /**
+     * @return number of different chars seen.
+     */
+    public int size() {
+        return distinct;
+    }
+
+    /**
+     * Finds the char with the most occurrences in a single scan. Ties are resolved in favour of the lowest char.
+     * @return the most common char, or -1 if no char has been seen.
+     */
+    public int mostCommon() {
+        if (overflow != null) {
+            return mostCommonWithOverflow();
+        }
+        int best = -1;
+        long bestCount = 0;
+        for (int p = 0; p < PAGE_SIZE; p++) {
+            long[] page = pages[p];
+            if (page == null) {
+                continue;
+            }
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                if (page[i] > bestCount) {
+                    bestCount = page[i];
+                    best = (p << PAGE_BITS) | i;
+                }
+            }
+        }
+        return best;
+    }
+
+    private int mostCommonWithOverflow() {
+        int best = -1;
+        BigInteger bestCount = BigInteger.ZERO;
+        for (int p = 0; p < PAGE_SIZE; p++) {
+            long[] page = pages[p];
+            if (page == null) {
+                continue;
+            }
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                if (page[i] == 0) {
+                    continue;
+                }
+                BigInteger count = get((char) ((p << PAGE_BITS) | i));
+                if (count.compareTo(bestCount) > 0) {
+                    bestCount = count;
+                    best = (p << PAGE_BITS) | i;
+                }
+            }
+        }
+        return best;
+    }
+
+    private long[] page(char c) {
+        long[] page = pages[c >>> PAGE_BITS];
+        if (page == null) {
+            page = new long[PAGE_SIZE];
+            pages[c >>> PAGE_BITS] = page;
+        }
+        return page;
+    }
+
+    /**
+     * Moves part of the count of a char out of its long counter. The caller resets the counter afterwards.
+     */
+    private void promote(char c, long count) {
+        promote(c, BigInteger.valueOf(count));
+    }
+
+    private void promote(Character c, BigInteger count) {
+        if (overflow == null) {
+            overflow = new HashMap<>();
+        }
+        overflow.merge(c, count, BigInteger::add);
+    }
+}
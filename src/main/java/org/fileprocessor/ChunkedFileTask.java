@@ -0,0 +1,289 @@
+package org.fileprocessor;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork-join task that processes a byte range of a file. Ranges are split in halves until they are small enough, and each
+ * leaf runs its own fresh copy of the given @link org.fileprocessor.MergeableLineProcessor prototypes. Partial results are
+ * merged back in file order as the tasks complete.
+ *
+ * Range boundaries are arbitrary byte offsets; a line belongs to the range in which its first byte lies, so a leaf skips
+ * the partial line it starts in (unless it starts right after a '\n') and reads past its end to finish its last line.
+ * This is only correct for charsets in which the '\n' byte cannot be part of another character, see #isSplittable(Charset).
+ * Ranges in the encodings supported by @link org.fileprocessor.MappedLineReader are read from mapped memory.
+ * Given a @link org.fileprocessor.RunRecorder, each leaf counts and times its lines with a clock of its own.
+ * Ranges already known to start and end on lines, e.g. from a @link org.fileprocessor.LineIndex, are read as they are.
+ */
+class ChunkedFileTask extends RecursiveTask<List<MergeableLineProcessor<?>>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final static Logger logger = Logger.getLogger(ChunkedFileTask.class.getName());
+
+    private static final int SCAN_BUFFER_SIZE = 8 * 1024;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final long start;
+    private final long end;
+    private final long threshold;
+    private final List<MergeableLineProcessor<?>> prototypes;
+    private final Charset charset;
+    private final RunRecorder recorder;
+    private final boolean aligned;
+
+    /**
+     * @param recorder measurements of the run, may be null.
+     */
+    ChunkedFileTask(FileChannel channel, long fileSize, long start, long end, long threshold,
+                    List<MergeableLineProcessor<?>> prototypes, Charset charset, RunRecorder recorder) {
+        this(channel, fileSize, start, end, threshold, prototypes, charset, recorder, false);
+    }
+
+    /**
+     * Creates a task that processes a range starting and ending on lines without splitting it.
+     * @param recorder measurements of the run, may be null.
+     */
+    ChunkedFileTask(FileChannel channel, long fileSize, long start, long end, List<MergeableLineProcessor<?>> prototypes,
+                    Charset charset, RunRecorder recorder) {
+        this(channel, fileSize, start, end, Long.MAX_VALUE, prototypes, charset, recorder, true);
+    }
+
+    private ChunkedFileTask(FileChannel channel, long fileSize, long start, long end, long threshold,
+                            List<MergeableLineProcessor<?>> prototypes, Charset charset, RunRecorder recorder, boolean aligned) {
+        this.channel = channel;
+        this.fileSize = fileSize;
+        this.start = start;
+        this.end = end;
+        this.threshold = threshold;
+        this.prototypes = prototypes;
+        this.charset = charset;
+        this.recorder = recorder;
+        this.aligned = aligned;
+    }
+
+    /**
+     * Tells whether a file in the given charset can be split on '\n' bytes without decoding it first.
+     * @param charset encoding of the file.
+     * @return true for UTF-8 and single byte encodings.
+     */
+    static boolean isSplittable(Charset charset) {
+        return StandardCharsets.UTF_8.equals(charset) || StandardCharsets.ISO_8859_1.equals(charset)
+                || StandardCharsets.US_ASCII.equals(charset)
+                || (charset.canEncode() && charset.newEncoder().maxBytesPerChar() == 1.0f);
+    }
+
+    /**
+     * Adds the state of source to target. Both processors are expected to be instances created from the same prototype.
+     * @throws ClassCastException if they are not of the same class.
+     */
+    static void merge(MergeableLineProcessor<?> target, MergeableLineProcessor<?> source) {
+        mergeTyped(target, source);
+    }
+
+    @SuppressWarnings("unchecked") // checked by the merge bridge method of T, which throws ClassCastException
+    private static <T extends MergeableLineProcessor<T>> void mergeTyped(MergeableLineProcessor<T> target,
+                                                                          MergeableLineProcessor<?> source) {
+        target.merge((T) source);
+    }
+
+    @Override
+    protected List<MergeableLineProcessor<?>> compute() {
+        if (end - start <= threshold) {
+            return processRange();
+        }
+        long middle = start + (end - start) / 2;
+        ChunkedFileTask left = new ChunkedFileTask(channel, fileSize, start, middle, threshold, prototypes, charset, recorder);
+        ChunkedFileTask right = new ChunkedFileTask(channel, fileSize, middle, end, threshold, prototypes, charset, recorder);
+        left.fork();
+        List<MergeableLineProcessor<?>> rightResult = right.compute();
+        List<MergeableLineProcessor<?>> leftResult = left.join();
+        for (int i = 0; i < leftResult.size(); i++) {
+            merge(leftResult.get(i), rightResult.get(i));
+        }
+        return leftResult;
+    }
+
+    private List<MergeableLineProcessor<?>> processRange() {
+        List<MergeableLineProcessor<?>> processors = new ArrayList<>(prototypes.size());
+        for (MergeableLineProcessor<?> prototype : prototypes) {
+            processors.add(prototype.newInstance());
+        }
+        ProcessorClock clock = recorder == null ? null : recorder.newClock();
+        if (clock != null) {
+            clock.start();
+        }
+        try {
+            long from = aligned ? start : alignToLineStart(start);
+            long to = aligned ? end : alignToLineStart(end);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Processing range [" + start + ", " + end + ") aligned to [" + from + ", " + to + ")");
+            }
+            if (from >= to) {
+                return processors;
+            }
+            readLines(channel, from, to, processors, charset, clock);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (clock != null) {
+                clock.stop();
+            }
+        }
+        return processors;
+    }
+
+    /**
+     * Hands all the lines in a byte range of a file to the given processors, from mapped memory if the charset allows it.
+     * @param channel file to be read.
+     * @param from offset of the first byte to read, expected to be the start of a line.
+     * @param to offset after the last byte to read.
+     * @param processors processors to be applied to each line. Null ones are skipped.
+     * @param charset encoding of the file, which has to be splittable.
+     * @param clock counts and times the lines, may be null.
+     * @throws IOException if the range cannot be read or decoded.
+     */
+    static void readLines(FileChannel channel, long from, long to, List<? extends LineProcessor> processors, Charset charset,
+                          ProcessorClock clock) throws IOException {
+        if (MappedLineReader.isSupported(charset)) {
+            MappedLineReader reader = new MappedLineReader(charset);
+            reader.read(channel, from, to, new LineDispatcher(processors, reader, charset, clock));
+            return;
+        }
+        InputStreamReader decoder = new InputStreamReader(new RangeInputStream(channel, from, to),
+                charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+                        .onUnmappableCharacter(CodingErrorAction.REPORT));
+        FusedLineProcessor fused = new FusedLineProcessor(processors, clock);
+        try (BufferedReader reader = new BufferedReader(decoder)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                fused.process(line);
+            }
+        }
+    }
+
+    /**
+     * Same as @see #readLines(FileChannel, long, long, List, Charset, ProcessorClock) for bytes already in memory, e.g. decompressed data.
+     * @param bytes data to be read.
+     * @param from index of the first byte to read, expected to be the start of a line.
+     * @param to index after the last byte to read.
+     * @param processors processors to be applied to each line. Null ones are skipped.
+     * @param charset encoding of the data, which has to be splittable.
+     * @param clock counts and times the lines, may be null.
+     * @throws IOException if the data cannot be decoded.
+     */
+    static void readLines(byte[] bytes, int from, int to, List<? extends LineProcessor> processors, Charset charset,
+                          ProcessorClock clock) throws IOException {
+        if (MappedLineReader.isSupported(charset)) {
+            MappedLineReader reader = new MappedLineReader(charset);
+            reader.read(ByteBuffer.wrap(bytes), from, to, new LineDispatcher(processors, reader, charset, clock));
+            return;
+        }
+        InputStreamReader decoder = new InputStreamReader(new ByteArrayInputStream(bytes, from, to - from),
+                charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+                        .onUnmappableCharacter(CodingErrorAction.REPORT));
+        FusedLineProcessor fused = new FusedLineProcessor(processors, clock);
+        try (BufferedReader reader = new BufferedReader(decoder)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                fused.process(line);
+            }
+        }
+    }
+
+    /**
+     * Returns the offset of the first line starting at or after the given position.
+     */
+    private long alignToLineStart(long position) throws IOException {
+        if (position <= 0) {
+            return 0;
+        }
+        if (position >= fileSize) {
+            return fileSize;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long offset = position - 1; // a line starts at position if the previous byte ends a line
+        while (offset < fileSize) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return fileSize;
+    }
+
+    /**
+     * Stream over a byte range of a file channel using positional reads, so that many of them can share one channel.
+     */
+    private static class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        private long position;
+        private final long end;
+
+        RangeInputStream(FileChannel channel, long position, long end) {
+            this.channel = channel;
+            this.position = position;
+            this.end = end;
+            buffer.flip();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!buffer.hasRemaining() && !fill()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining() && !fill()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        private boolean fill() throws IOException {
+            if (position >= end) {
+                return false;
+            }
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            buffer.flip();
+            if (read <= 0) {
+                return false;
+            }
+            position += read;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.fileprocessor;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Recognises compressed files by their leading bytes, whatever their name, and opens them as streams of decompressed data.
+ * Gzip files may hold several members one after the other, as written by bgzip, pigz or plain concatenation; they are all
+ * read in order. The entries of a zip file are read in order as if they were a single file, each entry starting on a new
+ * line.
+ */
+final class CompressedInput {
+
+    /**
+     * Kinds of file told apart by @see #detect(Path).
+     */
+    enum Format {
+        /**
+         * Anything that is not recognised as compressed, read as it is.
+         */
+        PLAIN,
+        /**
+         * One or more gzip members.
+         */
+        GZIP,
+        /**
+         * Zip archive.
+         */
+        ZIP
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private CompressedInput() {
+    }
+
+    /**
+     * @param file file to be checked.
+     * @return format of the file, according to its first bytes.
+     * @throws IOException if the file cannot be read.
+     */
+    static Format detect(Path file) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(4);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (magic.hasRemaining() && channel.read(magic) > 0) {
+                // keep reading until the magic number is complete or the file ends
+            }
+        }
+        if (magic.position() >= 2 && (magic.get(0) & 0xFF) == 0x1F && (magic.get(1) & 0xFF) == 0x8B) {
+            return Format.GZIP;
+        }
+        // local file header, or end of central directory for an empty archive
+        if (magic.position() == 4 && magic.get(0) == 'P' && magic.get(1) == 'K'
+                && ((magic.get(2) == 3 && magic.get(3) == 4) || (magic.get(2) == 5 && magic.get(3) == 6))) {
+            return Format.ZIP;
+        }
+        return Format.PLAIN;
+    }
+
+    /**
+     * @param file file to be read.
+     * @param format format of the file, as returned by @see #detect(Path).
+     * @return stream of the decompressed content of the file. To be closed by the caller.
+     * @throws IOException if the file cannot be opened or its header is not valid.
+     */
+    static InputStream open(Path file, Format format) throws IOException {
+        InputStream input = Files.newInputStream(file);
+        try {
+            switch (format) {
+                case GZIP:
+                    return new GZIPInputStream(input, BUFFER_SIZE);
+                case ZIP:
+                    return new ZipEntriesInputStream(new ZipInputStream(new BufferedInputStream(input, BUFFER_SIZE)));
+                default:
+                    return input;
+            }
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Content of all the file entries of a zip archive, one after the other. A '\n' is added after an entry that does not end
+     * with one, so that the last line of an entry is not joined with the first line of the next.
+     */
+    private static class ZipEntriesInputStream extends InputStream {
+        private final ZipInputStream zip;
+        private boolean inEntry = false;
+        private boolean endsWithNewLine = true;
+        private boolean finished = false;
+
+        ZipEntriesInputStream(ZipInputStream zip) {
+            this.zip = zip;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (!finished) {
+                if (!inEntry) {
+                    nextEntry();
+                    continue;
+                }
+                int read = zip.read(bytes, offset, length);
+                if (read > 0) {
+                    endsWithNewLine = bytes[offset + read - 1] == '\n';
+                    return read;
+                }
+                inEntry = false;
+                if (!endsWithNewLine) {
+                    endsWithNewLine = true;
+                    bytes[offset] = '\n';
+                    return 1;
+                }
+            }
+            return -1;
+        }
+
+        private void nextEntry() throws IOException {
+            ZipEntry entry;
+            do {
+                entry = zip.getNextEntry();
+            } while (entry != null && entry.isDirectory());
+            inEntry = entry != null;
+            finished = entry == null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            zip.close();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.fileprocessor;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Prints results in the format the command line has always used. The output of a call is built first and printed at once,
+ * so that concurrent calls do not interleave their lines.
+ */
+final class ConsoleResultSink implements ResultSink {
+
+    private final PrintStream out;
+
+    ConsoleResultSink(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void processed(String source, ProcessingResult result, List<? extends LineProcessor> processors) {
+        StringBuilder output = new StringBuilder();
+        for (LineProcessor processor : processors) {
+            if (processor != null) {
+                output.append("**********************\n");
+                output.append("Output for processor: ").append(processor.getClass().getName()).append('\n');
+                output.append("**********************\n");
+                output.append(processor.printProcessedLines()).append('\n');
+            }
+        }
+        out.print(output);
+        out.flush();
+    }
+
+    @Override
+    public void failed(String source, String message, ProcessingResult error) {
+        out.println(message);
+    }
+}
@@ -2,26 +2,54 @@ package org.fileprocessor;
 
 import org.apache.log4j.Logger;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Serializable;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
  * Default implementation for files that do not require interactive access to intermediate results of the processing.
  * It implements a well defined interface for basic file processing @Link FileProcessor.
+ * Instances hold no per-call state, so a single one can serve concurrent callers: each call returns its own
+ * @link org.fileprocessor.ProcessingResult.
+ * Registered @link org.fileprocessor.ProcessingListener instances are told the measurements of every call; with none
+ * registered nothing is measured.
  */
 
 public class DefaultFileProcessor implements FileProcessor{
 
     private final static Logger logger = Logger.getLogger(DefaultFileProcessor.class.getName());
 
-    private List<LineProcessor> processors = null;
+    // only backs the deprecated getKeyNames() and getKVForProcessedLines(); every call gets its own result
+    private volatile ProcessingResult lastResult = null;
+
+    private final List<ProcessingListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final ResultSink resultSink;
+
+    // lines between two offsets of the line indexes kept next to files, 0 if they are not built
+    private volatile int lineIndexInterval = 0;
 
     /**
      * Error message for file processing errors.
@@ -42,125 +70,947 @@ public class DefaultFileProcessor implements FileProcessor{
      */
     public final static String help ="FileName is mandatory. \n*******************\nUsage: java main.org.fileprocessor.DefaultFileProcessor <filename> \n" +
             "You can also provide a valid encoding as an argument. Usage: java org.fileprocessor.DefaultFileProcessor <filename> <charset> \n" +
-            "For valid encodings, visit: https://docs.oracle.com/javase/8/docs/technotes/guides/intl/encoding.doc.html";
+            "Use - as filename to read the standard input. \n" +
+            "For valid encodings, visit: https://docs.oracle.com/javase/8/docs/technotes/guides/intl/encoding.doc.html \n" +
+            "To process many files at once: java org.fileprocessor.DefaultFileProcessor --batch [--threads <n>] [--virtual-threads] " +
+            "[--charset <charset>] <file|directory|glob|@listFile>... With --virtual-threads, <n> is the maximum number of open files.";
+
+    /**
+     * File name standing for the standard input in main.
+     */
+    public final static String STDIN = "-";
+
+    /**
+     * Name used for streams in messages.
+     */
+    public final static String STREAM_NAME = "<stream>";
+
+    /**
+     * Error message for null input streams, channels or readers.
+     */
+    public final static String NULL_INPUT_ERROR = "Need a non-null input to process";
+
+    /**
+     * First argument to main that turns on batch mode.
+     */
+    public final static String BATCH_OPTION = "--batch";
 
     /**
      * Error message for wrong encoding.
      */
     public final static String WRONG_ENCODING_ERROR = "Wrong encoding provided for file";
 
+    /**
+     * Error message for a missing checkpoint location in follow mode.
+     */
+    public final static String CHECKPOINT_LOCATION_ERROR = "Need a checkpoint file to follow file";
+    /**
+     * Error message for processors or encodings that do not support follow mode.
+     */
+    public final static String NOT_FOLLOWABLE_ERROR = "Follow mode needs an uncompressed file, mergeable and serializable " +
+            "line processors, and an encoding where lines can be found without decoding, to follow file";
+
+    /**
+     * Error message for sample fractions out of range.
+     */
+    public final static String SAMPLE_FRACTION_ERROR = "Need a sample fraction greater than 0 and not greater than 1 to sample file";
+
+    /**
+     * Error message for negative line ranges.
+     */
+    public final static String LINE_RANGE_ERROR = "Need a non-negative first line and number of lines to process lines of file";
+
+    /**
+     * Smallest byte range processed by a single task in parallel mode.
+     */
+    private final static long MIN_CHUNK_SIZE = 1024 * 1024;
+    private final static int CHUNKS_PER_THREAD = 4;
+    /**
+     * Size of the blocks sampled by processFileSampled: big enough to be read at the speed of sequential I/O, but smaller
+     * if needed to sample enough blocks for the variation between them to tell the sampling error.
+     */
+    private final static long SAMPLE_BLOCK_SIZE = 1024 * 1024;
+    private final static long MIN_SAMPLE_BLOCK_SIZE = 64 * 1024;
+    private final static int MIN_SAMPLED_BLOCKS = 32;
+    private final static long SAMPLE_SEED = 0x5eed;
+
+    /**
+     * Creates a processor that does not write anything, results are only returned.
+     */
+    public DefaultFileProcessor(){
+        this(ResultSink.none());
+    }
+
+    /**
+     * @param resultSink where the outcome of every call is written besides being returned, e.g. @see ResultSink#console().
+     */
+    public DefaultFileProcessor(ResultSink resultSink){
+        this.resultSink = resultSink == null ? ResultSink.none() : resultSink;
+    }
+
+    /**
+     * Registers a listener to be told the measurements of every call made from now on, e.g. a
+     * @link org.fileprocessor.ProcessingMetrics to publish them through JMX.
+     * @param listener listener to be added. Null is ignored.
+     */
+    public void addListener(ProcessingListener listener){
+        if(listener != null){
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * @param listener listener to be removed, if registered.
+     */
+    public void removeListener(ProcessingListener listener){
+        listeners.remove(listener);
+    }
+
+    /**
+     * Turns line indexes on or off. When on, @see #processLines and @see FileProcessor#processFileInParallel build a
+     * @link org.fileprocessor.LineIndex of every uncompressed file they process, unless it already has a valid one, and keep it
+     * next to the file: later calls on the same file jump straight to the lines they need and split it in equal numbers of
+     * lines for parallel tasks. Off by default; valid indexes found next to files are still used by @see #processLines.
+     * @param interval number of lines between two offsets of the indexes built, e.g. @link LineIndex#DEFAULT_INTERVAL,
+     *                 or 0 to not build them.
+     */
+    public void setLineIndexInterval(int interval){
+        if(interval < 0){
+            throw new IllegalArgumentException("Need a non-negative number of lines between offsets: "+interval);
+        }
+        this.lineIndexInterval = interval;
+    }
+
     @Override
-    public Validation processFile(String fileName, String charsetString){
+    public ProcessingResult processFile(String fileName, String charsetString){
         if(charsetString == null || charsetString.isEmpty()){
-            System.out.println(WRONG_ENCODING_ERROR+": "+fileName+". Make sure you provide a valid encoding." );
-            logger.info(WRONG_ENCODING_ERROR+": "+fileName+". because of null/empty encoding.");
-            return new Validation(WRONG_ENCODING_ERROR+": "+fileName+" because of null/empty encoding \n",
-                    Validation.ValidationType.ERROR);
+            return failed(fileName, WRONG_ENCODING_ERROR+": "+fileName+". Make sure you provide a valid encoding.",
+                    WRONG_ENCODING_ERROR+": "+fileName+" because of null/empty encoding \n");
         }
 
         try{
             return processFile(fileName, new DefaultLineProcessor(), Charset.forName(charsetString));
         } catch (java.nio.charset.UnsupportedCharsetException uce){
-            System.out.println(WRONG_ENCODING_ERROR+": "+fileName+". Make sure the provided encoding ("+charsetString+") is correct. " );
-            logger.info(WRONG_ENCODING_ERROR+": "+fileName+" because of exception: \n "+uce.getMessage());
-            return new Validation(WRONG_ENCODING_ERROR+": "+fileName+" because of exception: \n "+uce.getMessage(),
-                    Validation.ValidationType.ERROR);
+            return failed(fileName, WRONG_ENCODING_ERROR+": "+fileName+". Make sure the provided encoding ("+charsetString+") is correct. ",
+                    WRONG_ENCODING_ERROR+": "+fileName+" because of exception: \n "+uce.getMessage());
         }
     }
 
     @Override
-    public Validation processFile(String fileName, Charset charset){
+    public ProcessingResult processFile(String fileName, Charset charset){
         return processFile(fileName, new DefaultLineProcessor(), charset);
     }
 
     @Override
-    public Validation processFile(String fileName){
+    public ProcessingResult processFile(String fileName){
         return processFile(fileName, new DefaultLineProcessor(), null);
     }
 
     @Override
-    public Validation processFile(String fileName, LineProcessor processor , Charset charset){
+    public ProcessingResult processFile(String fileName, LineProcessor processor , Charset charset){
         return processFile(fileName, Arrays.asList(processor), charset);
     }
 
     @Override
-    public Validation processFile(String fileName, List<LineProcessor> processors , Charset charset){
+    public ProcessingResult processFile(String fileName, List<LineProcessor> processors , Charset charset){
+        return processFile(fileName, processors, charset, null);
+    }
+
+    @Override
+    public ProcessingResult processFile(String fileName, List<LineProcessor> processors, Charset charset, StatsPublisher progress){
+        RunRecorder recorder = startRun(fileName, RunMetrics.Mode.SEQUENTIAL);
+        return endRun(recorder, processFile(fileName, processors, charset, progress, recorder));
+    }
+
+    /**
+     * @param recorder measurements of the call, null if nobody listens.
+     */
+    private ProcessingResult processFile(String fileName, List<LineProcessor> processors, Charset charset, StatsPublisher progress,
+                                         RunRecorder recorder){
+        ProcessingResult invalidArguments = validateArguments(fileName, processors);
+        if(invalidArguments != null){
+            if(progress != null){
+                progress.fail(invalidArguments);
+            }
+            return invalidArguments;
+        }
+
+        Charset fileCharset = charset == null? Charset.defaultCharset() : charset;
+        List<LineProcessor> readers = progress == null ? processors : progress.track(fileName, processors);
+        ProcessingResult error;
+        CompressedInput.Format format = formatOf(fileName);
+        try {
+            if(format != CompressedInput.Format.PLAIN){
+                error = readCompressed(fileName, format, readers, fileCharset, clockOf(recorder));
+            }else if(MappedLineReader.isSupported(fileCharset) && processors.stream().anyMatch(p -> p instanceof ByteLineProcessor)){
+                // byte based processors can skip decoding altogether
+                error = readMapped(fileName, readers, fileCharset, clockOf(recorder));
+            }else{
+                error = readLines(fileName, readers, fileCharset, clockOf(recorder));
+            }
+        } catch (RuntimeException e){
+            if(progress != null){
+                progress.fail(e); // a processor failed, subscribers must not wait for completion
+            }
+            throw e;
+        }
+        if(error != null){
+            if(progress != null){
+                progress.fail(error);
+            }
+            return error;
+        }
+        ProcessingResult result = succeeded(fileName, processors);
+        if(progress != null){
+            progress.complete(readers);
+        }
+        return result;
+    }
+
+    /**
+     * Applies the processors to every line of the file as decoded by a reader.
+     * @return an error result, or null if the whole file was processed.
+     */
+    private ProcessingResult readLines(String fileName, List<LineProcessor> processors, Charset fileCharset, ProcessorClock clock){
+        FusedLineProcessor fused = new FusedLineProcessor(processors, clock); // resolved once, not per line
+        try (Stream<String> lines = Files.lines(Paths.get(fileName), fileCharset)) {
+            lines.forEachOrdered(fused::process);
+        } catch (UncheckedIOException wrongEncoding){
+            return wrongEncoding(fileName, fileCharset, wrongEncoding);
+        } catch (IOException e) {
+            return processingError(fileName, e);
+        }
+        return null;
+    }
+
+    /**
+     * Applies the processors to every line of the decompressed content of the file.
+     * @return an error result, or null if the whole file was processed.
+     */
+    private ProcessingResult readCompressed(String fileName, CompressedInput.Format format, List<LineProcessor> processors,
+                                            Charset fileCharset, ProcessorClock clock){
+        try (InputStream input = CompressedInput.open(Paths.get(fileName), format)) {
+            readAll(new BufferedReader(decodingReader(input, fileCharset)), processors, clock);
+        } catch (CharacterCodingException e){
+            return wrongEncoding(fileName, fileCharset, e);
+        } catch (IOException e) {
+            return processingError(fileName, e);
+        }
+        return null;
+    }
+
+    /**
+     * @return format of the file, or plain if it cannot be read, in which case reading it reports the error.
+     */
+    private static CompressedInput.Format formatOf(String fileName){
+        try {
+            return CompressedInput.detect(Paths.get(fileName));
+        } catch (IOException e) {
+            return CompressedInput.Format.PLAIN;
+        }
+    }
+
+    /**
+     * Applies the processors to every line of the file as found in mapped memory.
+     * @return an error result, or null if the whole file was processed.
+     */
+    private ProcessingResult readMapped(String fileName, List<LineProcessor> processors, Charset fileCharset, ProcessorClock clock){
+        MappedLineReader reader = new MappedLineReader(fileCharset);
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            reader.read(channel, 0, channel.size(), new LineDispatcher(processors, reader, fileCharset, clock));
+        } catch (CharacterCodingException e){
+            return wrongEncoding(fileName, fileCharset, e);
+        } catch (IOException e) {
+            return processingError(fileName, e);
+        }
+        return null;
+    }
+
+    @Override
+    public ProcessingResult processStream(InputStream input, List<LineProcessor> processors, Charset charset){
+        RunRecorder recorder = startRun(STREAM_NAME, RunMetrics.Mode.STREAM, 0);
+        return endRun(recorder, processStream(input, processors, charset, recorder));
+    }
+
+    private ProcessingResult processStream(InputStream input, List<LineProcessor> processors, Charset charset,
+                                           RunRecorder recorder){
+        if(input == null){
+            return nullInput();
+        }
+        Charset streamCharset = charset == null? Charset.defaultCharset() : charset;
+        InputStream counted = recorder == null ? input : recorder.count(input);
+        return processStream(decodingReader(counted, streamCharset), processors, streamCharset, recorder);
+    }
+
+    /**
+     * @return a reader with a decoder that reports errors, like Files.lines does, rather than InputStreamReader's silent
+     * replacement.
+     */
+    private static Reader decodingReader(InputStream input, Charset charset){
+        return new InputStreamReader(input, charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT));
+    }
+
+    @Override
+    public ProcessingResult processStream(ReadableByteChannel input, List<LineProcessor> processors, Charset charset){
+        RunRecorder recorder = startRun(STREAM_NAME, RunMetrics.Mode.STREAM, 0);
+        if(input == null){
+            return endRun(recorder, nullInput());
+        }
+        return endRun(recorder, processStream(Channels.newInputStream(input), processors, charset, recorder));
+    }
+
+    @Override
+    public ProcessingResult processStream(Reader input, List<LineProcessor> processors){
+        RunRecorder recorder = startRun(STREAM_NAME, RunMetrics.Mode.STREAM, -1);
+        return endRun(recorder, processStream(input, processors, null, recorder));
+    }
+
+    /**
+     * @param charset encoding used by the reader, only for error messages. Null if unknown.
+     * @param recorder measurements of the call, null if nobody listens.
+     */
+    private ProcessingResult processStream(Reader input, List<LineProcessor> processors, Charset charset, RunRecorder recorder){
+        if(input == null){
+            return nullInput();
+        }
+        ProcessingResult invalidProcessors = validateProcessors(STREAM_NAME, processors);
+        if(invalidProcessors != null){
+            return invalidProcessors;
+        }
+
+        // not closed: the stream belongs to the caller
+        BufferedReader reader = input instanceof BufferedReader ? (BufferedReader) input : new BufferedReader(input);
+        try {
+            readAll(reader, processors, clockOf(recorder));
+        } catch (CharacterCodingException e){
+            return wrongEncoding(STREAM_NAME, charset, e);
+        } catch (IOException e) {
+            return processingError(STREAM_NAME, e);
+        }
+        return succeeded(STREAM_NAME, processors);
+    }
+
+    private static void readAll(BufferedReader reader, List<LineProcessor> processors, ProcessorClock clock) throws IOException {
+        FusedLineProcessor fused = new FusedLineProcessor(processors, clock);
+        String line;
+        while((line = reader.readLine()) != null){
+            fused.process(line);
+        }
+    }
+
+    private ProcessingResult nullInput(){
+        return failed(STREAM_NAME, NULL_INPUT_ERROR+".", NULL_INPUT_ERROR+".");
+    }
+
+    @Override
+    public ProcessingResult processFileInParallel(String fileName, List<LineProcessor> processors, Charset charset, int parallelism){
+        return processFileInParallel(fileName, processors, charset, parallelism, MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * Same as @see #processFileInParallel(String, List, Charset, int) but with a configurable lower bound for the size of
+     * the byte range given to each task. Mostly useful to exercise chunking with small files.
+     */
+    ProcessingResult processFileInParallel(String fileName, List<LineProcessor> processors, Charset charset, int parallelism,
+                                     long minChunkSize){
+        RunRecorder recorder = startRun(fileName, RunMetrics.Mode.PARALLEL);
+        return endRun(recorder, processFileInParallel(fileName, processors, charset, parallelism, minChunkSize, recorder));
+    }
+
+    private ProcessingResult processFileInParallel(String fileName, List<LineProcessor> processors, Charset charset, int parallelism,
+                                                   long minChunkSize, RunRecorder recorder){
+        ProcessingResult invalidArguments = validateArguments(fileName, processors);
+        if(invalidArguments != null){
+            return invalidArguments;
+        }
+
+        Charset fileCharset = charset == null? Charset.defaultCharset() : charset;
+        if(!ChunkedFileTask.isSplittable(fileCharset)){
+            logger.info("Charset "+fileCharset.name()+" cannot be split on line boundaries. Processing "+fileName+" sequentially.");
+            return processFile(fileName, processors, charset, null, recorder);
+        }
+        List<MergeableLineProcessor<?>> prototypes = new ArrayList<>();
+        for(LineProcessor processor : processors){
+            if(processor instanceof MergeableLineProcessor){
+                prototypes.add((MergeableLineProcessor<?>) processor);
+            }else if(processor != null){
+                logger.info("Processor "+processor.getClass().getName()+" is not mergeable. Processing "+fileName+" sequentially.");
+                return processFile(fileName, processors, charset, null, recorder);
+            }
+        }
+
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            List<MergeableLineProcessor<?>> partials;
+            CompressedInput.Format format = formatOf(fileName);
+            if(format == CompressedInput.Format.PLAIN){
+                long size = channel.size();
+                LineIndex index = lineIndexInterval > 0 ? lineIndexOf(Paths.get(fileName), size, lineIndexInterval) : null;
+                if(index != null){
+                    int parts = (int) Math.max(1, Math.min(threads * CHUNKS_PER_THREAD, size / minChunkSize));
+                    partials = processLineRanges(pool, channel, index.split(parts), prototypes, fileCharset, recorder);
+                }else{
+                    // a few chunks per thread so that work stealing can even out ranges with longer lines
+                    long threshold = Math.max(minChunkSize, size / (threads * CHUNKS_PER_THREAD));
+                    partials = pool.invoke(new ChunkedFileTask(channel, size, 0, size, threshold, prototypes, fileCharset, recorder));
+                }
+            }else{
+                GzipBlockIndex blocks = format == CompressedInput.Format.GZIP ? GzipBlockIndex.load(channel) : null;
+                if(blocks == null){
+                    logger.info("File "+fileName+" is compressed but not in independent blocks. Processing it sequentially.");
+                    return processFile(fileName, processors, charset, null, recorder);
+                }
+                long size = blocks.uncompressedOffset(blocks.size());
+                long threshold = Math.max(minChunkSize, size / (threads * CHUNKS_PER_THREAD));
+                partials = pool.invoke(new GzipBlockTask(channel, blocks, 0, blocks.size(), threshold, prototypes, fileCharset,
+                        recorder));
+            }
+            for(int i = 0; i < prototypes.size(); i++){
+                ChunkedFileTask.merge(prototypes.get(i), partials.get(i));
+            }
+        } catch (UncheckedIOException e){
+            if(e.getCause() instanceof CharacterCodingException){
+                return wrongEncoding(fileName, fileCharset, e);
+            }
+            return processingError(fileName, e.getCause());
+        } catch (IOException e) {
+            return processingError(fileName, e);
+        } finally {
+            pool.shutdown();
+        }
+        return succeeded(fileName, processors);
+    }
+
+    /**
+     * Processes ranges of a file that start and end on lines, each on its own task, and merges their results in file order.
+     * @param bounds offsets where the ranges start, followed by the size of the file.
+     */
+    private static List<MergeableLineProcessor<?>> processLineRanges(ForkJoinPool pool, FileChannel channel, long[] bounds,
+                                                                     List<MergeableLineProcessor<?>> prototypes, Charset charset,
+                                                                     RunRecorder recorder){
+        List<ChunkedFileTask> tasks = new ArrayList<>(bounds.length - 1);
+        long size = bounds[bounds.length - 1];
+        for(int i = 0; i + 1 < bounds.length; i++){
+            ChunkedFileTask task = new ChunkedFileTask(channel, size, bounds[i], bounds[i + 1], prototypes, charset, recorder);
+            pool.execute(task);
+            tasks.add(task);
+        }
+        List<MergeableLineProcessor<?>> merged = tasks.get(0).join();
+        for(ChunkedFileTask task : tasks.subList(1, tasks.size())){
+            List<MergeableLineProcessor<?>> partials = task.join();
+            for(int i = 0; i < merged.size(); i++){
+                ChunkedFileTask.merge(merged.get(i), partials.get(i));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * @return the line index of a file, built and saved next to it if needed, or null if it cannot be had or the file changed.
+     */
+    private static LineIndex lineIndexOf(Path file, long size, int interval){
+        try {
+            LineIndex index = interval > 0 ? LineIndex.of(file, interval) : LineIndex.load(file);
+            return index != null && index.getFileSize() == size ? index : null;
+        } catch (IOException e) {
+            logger.info("Couldn't index lines of "+file+", reading it through: "+e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Processes a range of lines of a file, e.g. to page through it or to analyse a part of it again. With a
+     * @link org.fileprocessor.LineIndex of the file (see @see #setLineIndexInterval(int)), reading starts right at the first
+     * line wanted, at most a few lines away from an offset of the index; without one, the lines before it are found by
+     * looking for line breaks in the bytes, without decoding them. Lines are counted from 0 and split as
+     * java.io.BufferedReader#readLine does. Compressed files and encodings that cannot be split on line boundaries are
+     * decoded from the beginning instead.
+     * @param fileName URL of the file to be read.
+     * @param processors List of line processors to be applied to each line in the range.
+     * @param charset Encoding of the file. Default OS encoding is loaded if null.
+     * @param firstLine number of the first line to be processed, from 0.
+     * @param lineCount number of lines to be processed. Fewer are if the file ends before.
+     * @return org.fileprocessor.ProcessingResult object containing result of processing, descriptive message and calculated stats.
+     */
+    public ProcessingResult processLines(String fileName, List<LineProcessor> processors, Charset charset, long firstLine,
+                                         long lineCount){
+        RunRecorder recorder = startRun(fileName, RunMetrics.Mode.LINES, 0);
+        return endRun(recorder, processLines(fileName, processors, charset, firstLine, lineCount, recorder));
+    }
+
+    private ProcessingResult processLines(String fileName, List<LineProcessor> processors, Charset charset, long firstLine,
+                                          long lineCount, RunRecorder recorder){
+        ProcessingResult invalidArguments = validateArguments(fileName, processors);
+        if(invalidArguments != null){
+            return invalidArguments;
+        }
+        if(firstLine < 0 || lineCount < 0){
+            return failed(fileName, LINE_RANGE_ERROR+": "+fileName+".",
+                    LINE_RANGE_ERROR+": "+fileName+" from line "+firstLine+" for "+lineCount+" lines.");
+        }
+
+        Charset fileCharset = charset == null? Charset.defaultCharset() : charset;
+        long lastLine = lineCount > Long.MAX_VALUE - firstLine ? Long.MAX_VALUE : firstLine + lineCount;
+        CompressedInput.Format format = formatOf(fileName);
+        Path path = Paths.get(fileName);
+        if(!ChunkedFileTask.isSplittable(fileCharset) || format != CompressedInput.Format.PLAIN){
+            logger.info("File "+fileName+" is compressed or its charset "+fileCharset.name()+" cannot be split on line boundaries. " +
+                    "Decoding it from the beginning.");
+            if(recorder != null){
+                recorder.setBytesRead(new File(fileName).length());
+            }
+            ProcessorClock clock = clockOf(recorder);
+            try (InputStream input = format == CompressedInput.Format.PLAIN ? Files.newInputStream(path)
+                    : CompressedInput.open(path, format);
+                 BufferedReader reader = new BufferedReader(decodingReader(input, fileCharset))) {
+                FusedLineProcessor fused = new FusedLineProcessor(processors, clock);
+                long skipped = 0;
+                while(skipped < firstLine && reader.readLine() != null){
+                    skipped++; // lines before the range are only decoded
+                }
+                String line;
+                for(long read = skipped; read < lastLine && (line = reader.readLine()) != null; read++){
+                    fused.process(line);
+                }
+            } catch (CharacterCodingException e){
+                return wrongEncoding(fileName, fileCharset, e);
+            } catch (IOException e) {
+                return processingError(fileName, e);
+            }
+            return succeeded(fileName, processors);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            LineIndex index = lineIndexOf(path, size, lineIndexInterval);
+            long from;
+            long to;
+            if(index != null){
+                from = index.offsetOf(channel, firstLine);
+                to = index.offsetOf(channel, lastLine);
+            }else{
+                from = LineIndex.skipLines(channel, 0, firstLine, size);
+                to = LineIndex.skipLines(channel, from, lastLine - firstLine, size);
+            }
+            if(logger.isDebugEnabled()){
+                logger.debug("Lines ["+firstLine+", "+lastLine+") of "+fileName+" are bytes ["+from+", "+to+")"+
+                        (index == null ? "" : ", found with its line index"));
+            }
+            if(recorder != null){
+                recorder.setBytesRead(to - from);
+            }
+            if(to > from){
+                ChunkedFileTask.readLines(channel, from, to, processors, fileCharset, clockOf(recorder));
+            }
+        } catch (CharacterCodingException e){
+            return wrongEncoding(fileName, fileCharset, e);
+        } catch (IOException e) {
+            return processingError(fileName, e);
+        }
+        return succeeded(fileName, processors);
+    }
+
+    /**
+     * Processes a random sample of the file instead of all of it, for statistics that do not need to be exact. The file is
+     * cut into blocks of 1 MB, or down to 64 KB so that at least 32 of them are read, the given fraction of them is picked at
+     * random, always the same ones for the same file size, and the lines starting in those blocks are processed in parallel like in
+     * @see FileProcessor#processFileInParallel(String, List, Charset, int). Processors that implement
+     * @link org.fileprocessor.SampledLineProcessor, such as @link org.fileprocessor.ApproximateLineProcessor, extrapolate
+     * their statistics to the whole file and estimate their error; other processors report those of the sampled blocks.
+     * Like in parallel mode, all non-null processors must be mergeable and the charset splittable, and the file must not be
+     * compressed; otherwise the whole file is processed sequentially.
+     * @param fileName URL of the file to be read.
+     * @param processors List of line processors to be applied to each sampled line.
+     * @param charset Encoding of the file. Default OS encoding is loaded if null.
+     * @param fraction fraction of the file to be read, greater than 0 and at most 1.
+     * @return org.fileprocessor.ProcessingResult object containing result of processing, descriptive message and calculated stats.
+     */
+    public ProcessingResult processFileSampled(String fileName, List<LineProcessor> processors, Charset charset, double fraction){
+        return processFileSampled(fileName, processors, charset, fraction, 0, SAMPLE_SEED);
+    }
+
+    /**
+     * Same as @see #processFileSampled(String, List, Charset, double) with a configurable block size and random seed.
+     * Mostly useful to sample small files. The block size is chosen from the size of the file if not positive.
+     */
+    ProcessingResult processFileSampled(String fileName, List<LineProcessor> processors, Charset charset, double fraction,
+                                        long blockSize, long seed){
+        RunRecorder recorder = startRun(fileName, RunMetrics.Mode.SAMPLED, 0);
+        return endRun(recorder, processFileSampled(fileName, processors, charset, fraction, blockSize, seed, recorder));
+    }
+
+    private ProcessingResult processFileSampled(String fileName, List<LineProcessor> processors, Charset charset, double fraction,
+                                                long blockSize, long seed, RunRecorder recorder){
+        ProcessingResult invalidArguments = validateArguments(fileName, processors);
+        if(invalidArguments != null){
+            return invalidArguments;
+        }
+        if(!(fraction > 0 && fraction <= 1)){
+            return failed(fileName, SAMPLE_FRACTION_ERROR+": "+fileName+".", SAMPLE_FRACTION_ERROR+": "+fileName+" with "+fraction+".");
+        }
+
+        Charset fileCharset = charset == null? Charset.defaultCharset() : charset;
+        if(recorder != null){
+            recorder.setBytesRead(new File(fileName).length()); // unless it turns out the file can be sampled
+        }
+        if(!ChunkedFileTask.isSplittable(fileCharset) || formatOf(fileName) != CompressedInput.Format.PLAIN){
+            logger.info("File "+fileName+" is compressed or its charset "+fileCharset.name()+" cannot be split on line boundaries. " +
+                    "Processing all of it sequentially.");
+            return processFile(fileName, processors, charset, null, recorder);
+        }
+        List<MergeableLineProcessor<?>> prototypes = new ArrayList<>();
+        for(LineProcessor processor : processors){
+            if(processor instanceof MergeableLineProcessor){
+                prototypes.add((MergeableLineProcessor<?>) processor);
+            }else if(processor != null){
+                logger.info("Processor "+processor.getClass().getName()+" is not mergeable. Processing all of "+fileName+" sequentially.");
+                return processFile(fileName, processors, charset, null, recorder);
+            }
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(blockSize <= 0){
+                blockSize = Math.max(MIN_SAMPLE_BLOCK_SIZE, Math.min(SAMPLE_BLOCK_SIZE, (long) (fraction * size / MIN_SAMPLED_BLOCKS)));
+            }
+            long blocks = Math.max(1, (size + blockSize - 1) / blockSize);
+            long wanted = Math.max(1, Math.min(blocks, (long) Math.ceil(fraction * blocks)));
+            SplittableRandom random = new SplittableRandom(seed ^ size);
+            // selection sampling: every block is picked with probability (still wanted) / (still left), in file order
+            Deque<ChunkedFileTask> running = new ArrayDeque<>();
+            Deque<Long> runningSizes = new ArrayDeque<>();
+            long sampledBytes = 0;
+            for(long block = 0; block < blocks && wanted > 0; block++){
+                if(random.nextLong(blocks - block) >= wanted){
+                    continue;
+                }
+                wanted--;
+                long start = block * blockSize;
+                long end = Math.min(size, start + blockSize);
+                ChunkedFileTask task = new ChunkedFileTask(channel, size, start, end, blockSize, prototypes, fileCharset, recorder);
+                pool.execute(task);
+                running.add(task);
+                runningSizes.add(end - start);
+                sampledBytes += end - start;
+                // bounded number of blocks in flight, so that partial processors are merged as they come
+                if(running.size() >= threads * CHUNKS_PER_THREAD){
+                    mergeSampled(prototypes, running.poll().join(), runningSizes.poll(), size, blocks);
+                }
+            }
+            while(!running.isEmpty()){
+                mergeSampled(prototypes, running.poll().join(), runningSizes.poll(), size, blocks);
+            }
+            if(recorder != null){
+                recorder.setBytesRead(sampledBytes);
+            }
+            if(logger.isDebugEnabled()){
+                logger.debug("Sampled "+sampledBytes+" of "+size+" bytes of "+fileName);
+            }
+        } catch (UncheckedIOException e){
+            if(e.getCause() instanceof CharacterCodingException){
+                return wrongEncoding(fileName, fileCharset, e);
+            }
+            return processingError(fileName, e.getCause());
+        } catch (IOException e) {
+            return processingError(fileName, e);
+        } finally {
+            pool.shutdown();
+        }
+        return succeeded(fileName, processors);
+    }
+
+    private static void mergeSampled(List<MergeableLineProcessor<?>> prototypes, List<MergeableLineProcessor<?>> partials,
+                                     long blockBytes, long fileBytes, long fileBlocks){
+        for(int i = 0; i < prototypes.size(); i++){
+            MergeableLineProcessor<?> partial = partials.get(i);
+            if(partial instanceof SampledLineProcessor){
+                ((SampledLineProcessor) partial).sampledBlock(blockBytes, fileBytes, fileBlocks);
+            }
+            ChunkedFileTask.merge(prototypes.get(i), partial);
+        }
+    }
+
+    @Override
+    public ProcessingResult processFilePipelined(String fileName, List<LineProcessor> processors, Charset charset, int workers,
+                                                 int batchSize, int queueDepth){
+        RunRecorder recorder = startRun(fileName, RunMetrics.Mode.PIPELINED);
+        return endRun(recorder, processFilePipelined(fileName, processors, charset, workers, batchSize, queueDepth, recorder));
+    }
+
+    private ProcessingResult processFilePipelined(String fileName, List<LineProcessor> processors, Charset charset, int workers,
+                                                  int batchSize, int queueDepth, RunRecorder recorder){
+        ProcessingResult invalidArguments = validateArguments(fileName, processors);
+        if(invalidArguments != null){
+            return invalidArguments;
+        }
+
+        Charset fileCharset = charset == null? Charset.defaultCharset() : charset;
+        LinePipeline pipeline = new LinePipeline(workers > 0 ? workers : Runtime.getRuntime().availableProcessors(),
+                batchSize > 0 ? batchSize : LinePipeline.DEFAULT_BATCH_SIZE,
+                queueDepth > 0 ? queueDepth : LinePipeline.DEFAULT_QUEUE_DEPTH);
+        CompressedInput.Format format = formatOf(fileName);
+        try (BufferedReader reader = format == CompressedInput.Format.PLAIN ? Files.newBufferedReader(Paths.get(fileName), fileCharset)
+                : new BufferedReader(decodingReader(CompressedInput.open(Paths.get(fileName), format), fileCharset))) {
+            pipeline.run(reader, processors, recorder); // its stats are logged at debug level
+        } catch (CharacterCodingException e){
+            return wrongEncoding(fileName, fileCharset, e);
+        } catch (IOException e) {
+            return processingError(fileName, e);
+        }
+        return succeeded(fileName, processors);
+    }
+
+    @Override
+    public ProcessingResult processFileMapped(String fileName, List<LineProcessor> processors, Charset charset){
+        RunRecorder recorder = startRun(fileName, RunMetrics.Mode.MAPPED);
+        return endRun(recorder, processFileMapped(fileName, processors, charset, recorder));
+    }
+
+    private ProcessingResult processFileMapped(String fileName, List<LineProcessor> processors, Charset charset,
+                                               RunRecorder recorder){
+        ProcessingResult invalidArguments = validateArguments(fileName, processors);
+        if(invalidArguments != null){
+            return invalidArguments;
+        }
+
+        Charset fileCharset = charset == null? Charset.defaultCharset() : charset;
+        if(!MappedLineReader.isSupported(fileCharset)){
+            logger.info("Charset "+fileCharset.name()+" cannot be read from mapped memory. Processing "+fileName+" with a reader.");
+            return processFile(fileName, processors, charset, null, recorder);
+        }
+        if(formatOf(fileName) != CompressedInput.Format.PLAIN){
+            logger.info("File "+fileName+" is compressed. Processing it with a reader.");
+            return processFile(fileName, processors, charset, null, recorder);
+        }
+
+        ProcessingResult error = readMapped(fileName, processors, fileCharset, clockOf(recorder));
+        if(error != null){
+            return error;
+        }
+        return succeeded(fileName, processors);
+    }
+
+    @Override
+    public ProcessingResult followFile(String fileName, List<LineProcessor> processors, Charset charset, String checkpointFile){
+        RunRecorder recorder = startRun(fileName, RunMetrics.Mode.FOLLOW, 0);
+        return endRun(recorder, followFile(fileName, processors, charset, checkpointFile, recorder));
+    }
+
+    private ProcessingResult followFile(String fileName, List<LineProcessor> processors, Charset charset, String checkpointFile,
+                                        RunRecorder recorder){
+        ProcessingResult invalidArguments = validateArguments(fileName, processors);
+        if(invalidArguments != null){
+            return invalidArguments;
+        }
+        if(checkpointFile == null || checkpointFile.isEmpty()){
+            return failed(fileName, CHECKPOINT_LOCATION_ERROR+": "+fileName+".", CHECKPOINT_LOCATION_ERROR+": "+fileName+".");
+        }
+        Charset fileCharset = charset == null? Charset.defaultCharset() : charset;
+        boolean followable = ChunkedFileTask.isSplittable(fileCharset) && formatOf(fileName) == CompressedInput.Format.PLAIN
+                && processors.stream().allMatch(p -> p == null ||
+                (p instanceof MergeableLineProcessor && p instanceof Serializable));
+        if(!followable){
+            return failed(fileName, NOT_FOLLOWABLE_ERROR+": "+fileName+".",
+                    NOT_FOLLOWABLE_ERROR+": "+fileName+" with charset "+fileCharset.name()+".");
+        }
+
+        Path checkpointPath = Paths.get(checkpointFile);
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            BasicFileAttributes attributes = Files.readAttributes(Paths.get(fileName), BasicFileAttributes.class);
+            long size = channel.size();
+            long from = 0;
+            FileCheckpoint checkpoint = FileCheckpoint.load(checkpointPath, processors);
+            if(checkpoint != null && checkpoint.isCompatibleWith(processors, fileCharset)
+                    && checkpoint.appliesTo(channel, attributes)){
+                from = checkpoint.getOffset();
+                for(int i = 0; i < processors.size(); i++){
+                    if(processors.get(i) != null){
+                        ChunkedFileTask.merge((MergeableLineProcessor<?>) processors.get(i),
+                                (MergeableLineProcessor<?>) checkpoint.getProcessors().get(i));
+                    }
+                }
+            }
+            // a trailing line without terminator may still be being written, leave it for the next call
+            long to = endOfLastLine(channel, from, size);
+            if(logger.isDebugEnabled()){
+                logger.debug("Following "+fileName+" from byte "+from+" to byte "+to);
+            }
+            if(to > from){
+                ChunkedFileTask.readLines(channel, from, to, processors, fileCharset, clockOf(recorder));
+            }
+            if(recorder != null){
+                recorder.setBytesRead(to - from); // only what was new since the checkpoint
+            }
+            FileCheckpoint.of(channel, attributes, to, fileCharset, processors).save(checkpointPath);
+        } catch (CharacterCodingException e){
+            return wrongEncoding(fileName, fileCharset, e);
+        } catch (IOException e) {
+            return processingError(fileName, e);
+        }
+        return succeeded(fileName, processors);
+    }
+
+    /**
+     * Returns the offset right after the last line terminator in [from, size), or from if there is none. Terminators are
+     * those of BufferedReader: '\n', '\r' or "\r\n"; a '\r' that is the last byte of the file may be the first half of a
+     * "\r\n" still being written, so it does not count.
+     */
+    private static long endOfLastLine(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+        long blockEnd = size;
+        while (blockEnd > from) {
+            long blockStart = Math.max(from, blockEnd - buffer.capacity());
+            buffer.clear();
+            buffer.limit((int) (blockEnd - blockStart));
+            while (buffer.hasRemaining() && channel.read(buffer, blockStart + buffer.position()) > 0) {
+                // keep reading until the block is full
+            }
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                byte b = buffer.get(i);
+                if (b == '\n' || (b == '\r' && blockStart + i + 1 < size)) {
+                    return blockStart + i + 1;
+                }
+            }
+            blockEnd = blockStart;
+        }
+        return from;
+    }
+
+    /**
+     * @return a recorder for a call on the given file, whose size counts as read, or null if nobody listens.
+     */
+    private RunRecorder startRun(String fileName, RunMetrics.Mode mode){
+        if(listeners.isEmpty()){
+            return null;
+        }
+        return new RunRecorder(fileName, mode, fileName == null ? 0 : new File(fileName).length());
+    }
+
+    /**
+     * @return a recorder for a call, or null if nobody listens.
+     */
+    private RunRecorder startRun(String source, RunMetrics.Mode mode, long bytesRead){
+        return listeners.isEmpty() ? null : new RunRecorder(source, mode, bytesRead);
+    }
+
+    /**
+     * Tells the listeners the measurements of the call, if it was recorded.
+     * @return the given result.
+     */
+    private ProcessingResult endRun(RunRecorder recorder, ProcessingResult result){
+        if(recorder == null){
+            return result;
+        }
+        RunMetrics metrics = recorder.finish(result.getType() == Validation.ValidationType.OK);
+        for(ProcessingListener listener : listeners){
+            try{
+                listener.runCompleted(metrics);
+            } catch (RuntimeException e){
+                logger.warn("Listener "+listener.getClass().getName()+" failed on "+metrics.getSource(), e);
+            }
+        }
+        return result;
+    }
+
+    private static ProcessorClock clockOf(RunRecorder recorder){
+        return recorder == null ? null : recorder.newClock();
+    }
+
+    /**
+     * Checks the arguments common to all processing methods.
+     * @return an error result describing the first wrong argument, or null if all of them are fine.
+     */
+    private ProcessingResult validateArguments(String fileName, List<LineProcessor> processors){
         if(fileName == null){
-            System.out.println(FILE_LOCATION_ERROR+": "+fileName+".\n Empty file names are not accepted. Please make sure it exists in specified path.");
-            logger.info(FILE_LOCATION_ERROR+": "+fileName+".\n Empty file names are not accepted. Please make sure it exists in specified path.");
-            return new Validation(FILE_LOCATION_ERROR+": "+fileName+".\n Empty file names are not accepted. Please make sure it exists in specified path.",
-                    Validation.ValidationType.ERROR);
+            return failed(fileName, FILE_LOCATION_ERROR+": "+fileName+".\n Empty file names are not accepted. Please make sure it exists in specified path.",
+                    FILE_LOCATION_ERROR+": "+fileName+".\n Empty file names are not accepted. Please make sure it exists in specified path.");
         }
 
         if(fileName.isEmpty()){
-            System.out.println(FILE_LOCATION_ERROR+": <empty name>.\n Empty file names are not accepted. Please make sure it exists in specified path.");
-            logger.info(FILE_LOCATION_ERROR+": <empty name>.\n Empty file names are not accepted. Please make sure it exists in specified path.");
-            return new Validation(FILE_LOCATION_ERROR+": <empty name>.\n Empty file names are not accepted. Please make sure it exists in specified path.",
-                    Validation.ValidationType.ERROR);
+            return failed(fileName, FILE_LOCATION_ERROR+": <empty name>.\n Empty file names are not accepted. Please make sure it exists in specified path.",
+                    FILE_LOCATION_ERROR+": <empty name>.\n Empty file names are not accepted. Please make sure it exists in specified path.");
         }
 
-        if(processors==null || processors.isEmpty() || !processors.stream().anyMatch(p -> p!= null)) {
-            System.out.println(EMPTY_LIST_OF_PROCESSORS_ERROR + ".");
-            logger.info(EMPTY_LIST_OF_PROCESSORS_ERROR + ".");
-            return new Validation(EMPTY_LIST_OF_PROCESSORS_ERROR + ".",
-                    Validation.ValidationType.ERROR);
+        ProcessingResult invalidProcessors = validateProcessors(fileName, processors);
+        if(invalidProcessors != null) {
+            return invalidProcessors;
         }
 
         File file = new File(fileName);
         if(!file.exists() || file.isDirectory()) {
-            System.out.println(FILE_LOCATION_ERROR+": "+fileName+".");
-            logger.info(FILE_LOCATION_ERROR+": "+fileName+". \n Please make sure it exists in specified path and it is not a directory.");
-            return new Validation(FILE_LOCATION_ERROR+": "+fileName+". \n Please make sure it exists in specified path and it is not a directory.", Validation.ValidationType.ERROR);
+            return failed(fileName, FILE_LOCATION_ERROR+": "+fileName+".",
+                    FILE_LOCATION_ERROR+": "+fileName+". \n Please make sure it exists in specified path and it is not a directory.");
         }
+        return null;
+    }
 
-        this.processors = processors;
+    private ProcessingResult validateProcessors(String source, List<LineProcessor> processors){
+        if(processors==null || processors.isEmpty() || !processors.stream().anyMatch(p -> p!= null)) {
+            return failed(source, EMPTY_LIST_OF_PROCESSORS_ERROR + ".", EMPTY_LIST_OF_PROCESSORS_ERROR + ".");
+        }
+        return null;
+    }
 
-        try (Stream<String> lines = Files.lines(Paths.get(fileName), charset == null? Charset.defaultCharset() : charset)) {
-            lines.forEachOrdered(line -> {
-                processors.stream().filter(processor -> processor != null).forEach(processor -> processor.process(line));
-            });
-        } catch (UncheckedIOException wrongEncoding){
-            System.out.println(WRONG_ENCODING_ERROR+": "+fileName+". Make sure the provided encoding ("+charset.name()+") is correct. " );
-            logger.info(WRONG_ENCODING_ERROR+": "+fileName+" because of exception: \n "+wrongEncoding.getMessage());
-            return new Validation(WRONG_ENCODING_ERROR+": "+fileName+" because of exception: \n "+wrongEncoding.getMessage(),
-                    Validation.ValidationType.ERROR);
-        } catch (IOException e) {
-            System.out.println(FILE_PROCESSING_ERROR+": "+fileName+".");
-            logger.info(FILE_PROCESSING_ERROR+": "+fileName+" because of exception: \n "+e.getMessage());
-            return new Validation(FILE_PROCESSING_ERROR+": "+fileName+" because of exception: \n "+e.getMessage(),
-                    Validation.ValidationType.ERROR);
-        }
-        // at least one of them needs to be non-null
-        processors.stream().filter(processor -> processor != null).forEach(processor -> {
-            System.out.println("**********************");
-            System.out.println("Output for processor: " + processor.getClass().getName());
-            System.out.println("**********************");
-            logger.info("Output for processor: " + processor.getClass().getName());
-            System.out.println(processor.printProcessedLines());
-            logger.info(processor.printProcessedLines());
-        });
-        return new Validation("OK", Validation.ValidationType.OK);
+    private ProcessingResult wrongEncoding(String fileName, Charset charset, Exception wrongEncoding){
+        String charsetName = (charset == null ? Charset.defaultCharset() : charset).name();
+        return failed(fileName, WRONG_ENCODING_ERROR+": "+fileName+". Make sure the provided encoding ("+charsetName+") is correct. ",
+                WRONG_ENCODING_ERROR+": "+fileName+" because of exception: \n "+wrongEncoding.getMessage());
+    }
+
+    private ProcessingResult processingError(String fileName, Exception e){
+        return failed(fileName, FILE_PROCESSING_ERROR+": "+fileName+".",
+                FILE_PROCESSING_ERROR+": "+fileName+" because of exception: \n "+e.getMessage());
+    }
+
+    /**
+     * @return an OK result with the stats of the processors, after handing it to the result sink.
+     */
+    private ProcessingResult succeeded(String source, List<LineProcessor> processors){
+        ProcessingResult result = new ProcessingResult("OK", Validation.ValidationType.OK, processors);
+        lastResult = result;
+        resultSink.processed(source, result, processors);
+        return result;
+    }
+
+    /**
+     * @param message short description for people, e.g. on the console.
+     * @param text text of the result.
+     * @return an error result, after handing it to the result sink.
+     */
+    private ProcessingResult failed(String source, String message, String text){
+        ProcessingResult error = new ProcessingResult(text, Validation.ValidationType.ERROR);
+        resultSink.failed(source, message, error);
+        return error;
     }
 
     @Override
+    @Deprecated
     public List<String> getKeyNames() {
-        return this.processors == null ? new ArrayList<>(0) : this.processors.stream().
-                filter(p -> p != null).map(p -> p.getKeyNames()).flatMap(List::stream).collect(Collectors.toList());
+        ProcessingResult result = lastResult;
+        return result == null ? new ArrayList<>(0) : new ArrayList<>(result.getKeyNames());
     }
 
     @Override
+    @Deprecated
     public Map<String, Object> getKVForProcessedLines() {
-        return this.processors == null ? new HashMap() : this.processors.stream().
-                filter(p -> p != null).map(p -> p.getKVForProcessedLines()).flatMap (map -> map.entrySet().stream()).
-                collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue()));
+        ProcessingResult result = lastResult;
+        return result == null ? new HashMap<>() : new HashMap<>(result.getKVForProcessedLines());
     }
 
     public static void main(String[] args) {
-        if(args == null || args.length == 0 || args.length > 2) {
+        if(args != null && args.length > 0 && BATCH_OPTION.equals(args[0])) {
+            batch(Arrays.copyOfRange(args, 1, args.length));
+        }else if(args == null || args.length == 0 || args.length > 2) {
             System.out.println(help);
         }else {
-            DefaultFileProcessor defaultFileProcessor = new DefaultFileProcessor();
-            if (args.length == 1) {
+            DefaultFileProcessor defaultFileProcessor = new DefaultFileProcessor(ResultSink.console());
+            if (STDIN.equals(args[0])) {
+                defaultFileProcessor.processStdin(args.length == 2 ? args[1] : null);
+            } else if (args.length == 1) {
                 defaultFileProcessor.processFile(args[0]);
             } else {
                 if (args.length == 2) {
@@ -170,4 +1020,52 @@ public class DefaultFileProcessor implements FileProcessor{
         }
         return;
     }
-}
\ No newline at end of file
+
+    private ProcessingResult processStdin(String charsetString){
+        Charset charset = null;
+        if(charsetString != null){
+            try{
+                charset = Charset.forName(charsetString);
+            } catch (IllegalArgumentException uce){ // unsupported or illegal name
+                return failed(STDIN, WRONG_ENCODING_ERROR+": "+STDIN+". Make sure the provided encoding ("+charsetString+") is correct. ",
+                        WRONG_ENCODING_ERROR+": "+STDIN+" because of exception: \n "+uce.getMessage());
+            }
+        }
+        return processStream(System.in, Arrays.asList(new DefaultLineProcessor()), charset);
+    }
+
+    private static void batch(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        BatchFileProcessor.ExecutionMode mode = BatchFileProcessor.ExecutionMode.PLATFORM_THREADS;
+        Charset charset = null;
+        List<String> inputs = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if ("--threads".equals(args[i]) && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if ("--virtual-threads".equals(args[i])) {
+                    mode = BatchFileProcessor.ExecutionMode.VIRTUAL_THREADS;
+                } else if ("--charset".equals(args[i]) && i + 1 < args.length) {
+                    charset = Charset.forName(args[++i]);
+                } else {
+                    inputs.add(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException wrongOption) { // also covers wrong numbers and unsupported charsets
+            System.out.println(wrongOption.getMessage() + "\n" + help);
+            return;
+        }
+        if (inputs.isEmpty() || threads <= 0) {
+            System.out.println(help);
+            return;
+        }
+        BatchFileProcessor.BatchResult result = new BatchFileProcessor(new DefaultFileProcessor(), mode, threads)
+                .processFiles(inputs, Arrays.asList(new DefaultLineProcessor()), charset);
+        System.out.println("**********************");
+        System.out.println("Aggregated output for " + result.getValidations().size() + " files");
+        System.out.println("**********************");
+        result.getAggregate().forEach(processor -> System.out.println(processor.printProcessedLines()));
+        result.getFailedFiles().forEach(file ->
+                System.out.println("Failed: " + file + ": " + result.getValidations().get(file).getText()));
+    }
+}
@@ -2,15 +2,22 @@ package org.fileprocessor;
 
 import org.apache.log4j.Logger;
 
-import java.math.BigInteger;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.regex.Pattern;
 
 /**
  * Default Implementation of the @link org.fileprocessor.LineProcessor interface that calculates several simple stats:
  * word count, line count, average number of letters per word (to one decimal place) and most common letter.
+ * Partial results can be merged and serialized, so shards of the same input can be processed anywhere and reduced afterwards.
  */
-public class DefaultLineProcessor implements LineProcessor {
+public class DefaultLineProcessor implements MergeableLineProcessor<DefaultLineProcessor>, WordLineProcessor, Serializable {
+
+    private static final long serialVersionUID = 2L;
 
     private final static Logger logger = Logger.getLogger(DefaultLineProcessor.class.getName());
 
@@ -33,23 +40,118 @@ public class DefaultLineProcessor implements LineProcessor {
 
     private static final List<String> metricNames = Arrays.asList(LINES,WORDS,LETTER_PER_WORD,MOST_COMMON_LETTER);
 
+    private static final Pattern NON_WORD_CHARS = Pattern.compile("[^\\p{L}\\p{Nd}\\s]+");
+    private static final Pattern BLANKS = Pattern.compile("\\s+");
+
+    /**
+     * How lines are broken into words. Both produce exactly the same statistics.
+     */
+    public enum Tokenizer {
+        /**
+         * Single pass, allocation free @link org.fileprocessor.LineScanner. This is the default.
+         */
+        SCANNER,
+        /**
+         * Original implementation based on regular expressions and String.split, kept as a reference. Only applies when the
+         * processor tokenizes lines itself: in a fused run it gets its words from the shared scanner like any other
+         * @link org.fileprocessor.WordLineProcessor.
+         */
+        REGEX
+    }
+
+    private final Tokenizer tokenizer;
+    private transient LineScanner scanner;
+
     private double lineCount = 0;
     private double wordCount = 0;
     private double totalChar = 0;
-    private Map<Character,BigInteger> charCount = new HashMap<>();
-    private Map<String,Object> statMap = new HashMap();
+    private CharHistogram charCount = new CharHistogram();
+    // plain counters for the chars below LineScanner.TABLE_SIZE, added to charCount whenever stats are read, merged or saved.
+    // Incremented one by one they cannot realistically overflow, so they skip the checks done by the histogram
+    private transient long[] latin1Count = new long[LineScanner.TABLE_SIZE];
+    private Map<String,Object> statMap = new HashMap<>();
+
+    /**
+     * Creates a processor that uses the @link Tokenizer#SCANNER fast path.
+     */
+    public DefaultLineProcessor() {
+        this(Tokenizer.SCANNER);
+    }
+
+    /**
+     * @param tokenizer how lines are broken into words.
+     */
+    public DefaultLineProcessor(Tokenizer tokenizer) {
+        this.tokenizer = tokenizer == null ? Tokenizer.SCANNER : tokenizer;
+    }
 
     @Override
     public void process(String line) {
-        if(line != null && !line.isEmpty()) {
-            lineCount++;
+        process((CharSequence) line);
+    }
+
+    @Override
+    public void process(CharSequence line) {
+        if(line != null && line.length() > 0) {
             if(logger.isTraceEnabled()){
                 logger.trace("pristine input line: "+line);
             }
-            line = line.trim();
-            line = line.replaceAll("[^\\p{L}\\p{Nd}\\s]+", ""); // assume "words" are made up of letters and numbers only
-            line = line.replaceAll("\\s+", " ");
-            processWords(line);
+            if(tokenizer == Tokenizer.SCANNER){
+                beginLine(line);
+                scanWords(line);
+                endLine();
+                return;
+            }
+            lineCount++;
+            String sanitised = line.toString().trim();
+            sanitised = NON_WORD_CHARS.matcher(sanitised).replaceAll(""); // assume "words" are made up of letters and numbers only
+            sanitised = BLANKS.matcher(sanitised).replaceAll(" ");
+            processWords(sanitised);
+        }
+    }
+
+    private void scanWords(CharSequence line){
+        if(scanner == null){ // transient fields are lost on deserialization
+            scanner = new LineScanner();
+        }
+        scanner.scan(line, this);
+    }
+
+    @Override
+    public void beginLine(CharSequence line){
+        if(line.length() > 0){
+            lineCount++;
+        }
+    }
+
+    @Override
+    public void word(char[] word, int length){
+        totalChar += length;
+        wordCount++;
+        countChars(word, length);
+    }
+
+    private void countChars(char[] word, int length){
+        long[] latin1 = latin1Count;
+        for(int i = 0; i < length; i++){
+            char c = word[i];
+            if(c < LineScanner.TABLE_SIZE){
+                latin1[c]++;
+            }else{
+                charCount.increment(c);
+            }
+        }
+    }
+
+    /**
+     * Moves the pending Latin-1 counts into the histogram.
+     */
+    private void flushLatin1(){
+        for(int c = 0; c < latin1Count.length; c++){
+            if(latin1Count[c] != 0){
+                charCount.add((char) c, latin1Count[c]);
+                latin1Count[c] = 0;
+            }
         }
     }
 
@@ -68,15 +170,22 @@ public class DefaultLineProcessor implements LineProcessor {
     }
 
     private void processChars(char[] word) {
-        for(Character c: word){
-            if(charCount.get(c) == null){
-                charCount.put(c,BigInteger.ONE);
-            }else{
-                charCount.put(c,charCount.get(c).add(BigInteger.ONE));
-            }
-            if(logger.isTraceEnabled()){
-                logger.trace("added char to map counter. Char: "+c+". Count: "+charCount.get(c));
-            }
+        countChars(word, word.length);
+    }
+
+    @Override
+    public DefaultLineProcessor newInstance() {
+        return new DefaultLineProcessor(tokenizer);
+    }
+
+    @Override
+    public void merge(DefaultLineProcessor other) {
+        lineCount += other.lineCount;
+        wordCount += other.wordCount;
+        totalChar += other.totalChar;
+        charCount.merge(other.charCount);
+        for(int c = 0; c < other.latin1Count.length; c++){ // other is left untouched
+            charCount.add((char) c, other.latin1Count[c]);
         }
     }
 
@@ -94,10 +203,11 @@ public class DefaultLineProcessor implements LineProcessor {
     @Override
     public Map<String, Object> getKVForProcessedLines() {
         updateStatMap();
-        return new HashMap(statMap);
+        return new HashMap<>(statMap);
     }
 
     private void updateStatMap(){
+        flushLatin1();
         statMap.put(LINES,lineCount);
         statMap.put(WORDS,wordCount);
 
@@ -107,20 +217,26 @@ public class DefaultLineProcessor implements LineProcessor {
             statMap.put(LETTER_PER_WORD, 0.0);
         }
 
-        if(charCount.size() ==0){
+        int mostCommonLetter = charCount.mostCommon(); // lowest char wins ties, so output is deterministic
+        if(mostCommonLetter < 0){
             statMap.put(MOST_COMMON_LETTER, "None");
         }else {
-            Map.Entry<Character, BigInteger> mostCommonLetter = charCount.entrySet()
-                    .stream() // sort to make output deterministic in case of same number of occurrences of several chars
-                    .sorted(( Map.Entry<Character, BigInteger> o1, Map.Entry<Character, BigInteger> o2) -> o1.getKey().compareTo(o2.getKey()) )
-                    .max(
-                    Map.Entry.comparingByValue(BigInteger::compareTo)).get();
-            statMap.put(MOST_COMMON_LETTER, mostCommonLetter.getKey() );
+            statMap.put(MOST_COMMON_LETTER, (char) mostCommonLetter);
         }
     }
 
     @Override
     public List<String> getKeyNames() {
-        return new ArrayList(metricNames);
+        return new ArrayList<>(metricNames);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        flushLatin1(); // the serialized form only has the histogram
+        out.defaultWriteObject();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        latin1Count = new long[LineScanner.TABLE_SIZE];
     }
 }
\ No newline at end of file
@@ -0,0 +1,195 @@
+package org.fileprocessor;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Where a followed file was left: how many bytes of it have been processed and the state of the processors at that point.
+ *
+ * A checkpoint only applies to the same file it was taken from. Rotation is detected through the file key of the file
+ * system (the inode on Unix) when there is one, and through a checksum of the first bytes of the file otherwise.
+ * Truncation is detected by the file being shorter than the processed offset. The state is only carried on by processors
+ * of the same classes and configuration, reading with the same charset.
+ */
+class FileCheckpoint implements Serializable {
+
+    private static final long serialVersionUID = 2L;
+
+    private final static Logger logger = Logger.getLogger(FileCheckpoint.class.getName());
+
+    private static final int HEAD_SIZE = 4096;
+
+    private final String fileKey;
+    private final long offset;
+    private final int headLength;
+    private final long headChecksum;
+    private final String charset;
+    private final ArrayList<String> fingerprints;
+    private final ArrayList<LineProcessor> processors;
+
+    private FileCheckpoint(String fileKey, long offset, int headLength, long headChecksum, Charset charset,
+                           List<LineProcessor> processors) throws IOException {
+        this.fileKey = fileKey;
+        this.offset = offset;
+        this.headLength = headLength;
+        this.headChecksum = headChecksum;
+        this.charset = charset.name();
+        this.fingerprints = fingerprints(processors);
+        this.processors = new ArrayList<>(processors);
+    }
+
+    /**
+     * Takes a checkpoint of a file.
+     * @param channel the file.
+     * @param attributes attributes of the file.
+     * @param offset number of bytes processed so far.
+     * @param charset charset the bytes were decoded with.
+     * @param processors processors holding the state of the processed bytes. They must be mergeable and serializable.
+     * @return the checkpoint.
+     * @throws IOException if the head of the file cannot be read or the processors cannot be serialized.
+     */
+    static FileCheckpoint of(FileChannel channel, BasicFileAttributes attributes, long offset, Charset charset,
+                             List<LineProcessor> processors) throws IOException {
+        int headLength = (int) Math.min(HEAD_SIZE, offset);
+        return new FileCheckpoint(fileKey(attributes), offset, headLength, headChecksum(channel, headLength), charset,
+                processors);
+    }
+
+    /**
+     * Reads a checkpoint back. Only the classes of the given processors and of their fields are accepted in it, see
+     * @link org.fileprocessor.ProcessorStateFilter.
+     * @param path file holding the checkpoint.
+     * @param processors processors the checkpoint is meant for.
+     * @return the checkpoint, or null if there is none or it cannot be read.
+     */
+    static FileCheckpoint load(Path path, List<LineProcessor> processors) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        List<Class<?>> expected = new ArrayList<>();
+        expected.add(FileCheckpoint.class);
+        processors.stream().filter(p -> p != null).forEach(p -> expected.add(p.getClass()));
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(path));
+             ObjectInputStream in = new ObjectInputStream(file)) {
+            in.setObjectInputFilter(new ProcessorStateFilter(expected));
+            return (FileCheckpoint) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            logger.info("Ignoring unreadable checkpoint " + path + " because of exception: \n " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the checkpoint to a temporary file first and then moves it in place, so a crash never leaves half a checkpoint.
+     * @param path file that will hold the checkpoint.
+     * @throws IOException if the checkpoint cannot be written.
+     */
+    void save(Path path) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream file = Files.newOutputStream(temporary); ObjectOutputStream out = new ObjectOutputStream(file)) {
+                out.writeObject(this);
+            }
+            try {
+                Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (java.nio.file.AtomicMoveNotSupportedException e) {
+                Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Tells whether processing can resume from this checkpoint, i.e. the file has not been rotated nor truncated.
+     * @param channel the file.
+     * @param attributes attributes of the file.
+     * @return true if the file is the same one and it still holds all the processed bytes.
+     * @throws IOException if the head of the file cannot be read.
+     */
+    boolean appliesTo(FileChannel channel, BasicFileAttributes attributes) throws IOException {
+        if (attributes.size() < offset) {
+            logger.info("File truncated since last checkpoint at byte " + offset);
+            return false;
+        }
+        String currentKey = fileKey(attributes);
+        if (fileKey != null && currentKey != null && !fileKey.equals(currentKey)) {
+            logger.info("File rotated since last checkpoint: " + fileKey + " is now " + currentKey);
+            return false;
+        }
+        if (headChecksum(channel, headLength) != headChecksum) {
+            logger.info("File content replaced since last checkpoint");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether the saved state was produced with the given charset by processors of the same classes and configuration
+     * as the given ones, in the same order. The configuration is compared through the serialized form of fresh instances.
+     * @throws IOException if the given processors cannot be serialized.
+     */
+    boolean isCompatibleWith(List<LineProcessor> others, Charset otherCharset) throws IOException {
+        if (!otherCharset.name().equals(charset)) {
+            logger.info("Charset changed since last checkpoint: " + charset + " is now " + otherCharset.name());
+            return false;
+        }
+        if (!fingerprints(others).equals(fingerprints)) {
+            logger.info("Processors changed since last checkpoint");
+            return false;
+        }
+        return true;
+    }
+
+    long getOffset() {
+        return offset;
+    }
+
+    List<LineProcessor> getProcessors() {
+        return processors;
+    }
+
+    private static ArrayList<String> fingerprints(List<LineProcessor> processors) throws IOException {
+        ArrayList<String> fingerprints = new ArrayList<>(processors.size());
+        for (LineProcessor processor : processors) {
+            fingerprints.add(processor == null ? null : ResultCache.fingerprint(processor));
+        }
+        return fingerprints;
+    }
+
+    private static String fileKey(BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+        return key == null ? null : key.toString();
+    }
+
+    /**
+     * @return CRC32 of the first length bytes of the file, or of all of it if it is shorter.
+     */
+    static long headChecksum(FileChannel channel, int length) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(length);
+        while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+            // keep reading until the head is full
+        }
+        CRC32 crc = new CRC32();
+        crc.update(head.array(), 0, head.position());
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,93 @@
+package org.fileprocessor;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the stats of a growing file up to date with @see FileProcessor#followFile: every time the file changes, only the new
+ * lines are processed and the updated result is handed to a listener. Changes are detected with a WatchService on the
+ * directory of the file, plus a periodic check for file systems where change events are unreliable.
+ */
+public class FileFollower {
+
+    private final static Logger logger = Logger.getLogger(FileFollower.class.getName());
+
+    private final FileProcessor fileProcessor;
+    private final String fileName;
+    private final List<? extends MergeableLineProcessor<?>> prototypes;
+    private final Charset charset;
+    private final String checkpointFile;
+
+    /**
+     * @param fileProcessor processor used for every incremental pass.
+     * @param fileName URL of the file to be followed.
+     * @param prototypes processors to be copied for every pass. They must also be java.io.Serializable.
+     * @param charset Encoding of the file. Default OS encoding is loaded if null.
+     * @param checkpointFile URL of the file where the checkpoint is kept.
+     */
+    public FileFollower(FileProcessor fileProcessor, String fileName, List<? extends MergeableLineProcessor<?>> prototypes,
+                        Charset charset, String checkpointFile) {
+        this.fileProcessor = fileProcessor;
+        this.fileName = fileName;
+        this.prototypes = prototypes;
+        this.charset = charset;
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Processes whatever has been appended to the file since the last checkpoint.
+     * @return cumulative stats of the file.
+     */
+    public ProcessingResult poll() {
+        List<LineProcessor> processors = new ArrayList<>(prototypes.size());
+        for (MergeableLineProcessor<?> prototype : prototypes) {
+            processors.add((LineProcessor) prototype.newInstance());
+        }
+        return fileProcessor.followFile(fileName, processors, charset, checkpointFile);
+    }
+
+    /**
+     * Polls the file now and every time it changes, until the calling thread is interrupted.
+     * @param listener receives the cumulative stats after every pass.
+     * @param maxWait longest time between two passes when no change is notified.
+     * @param unit unit of maxWait.
+     * @throws IOException if the directory of the file cannot be watched.
+     */
+    public void watch(Consumer<ProcessingResult> listener, long maxWait, TimeUnit unit) throws IOException {
+        Path file = Paths.get(fileName).toAbsolutePath();
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            listener.accept(poll());
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watcher.poll(maxWait, unit);
+                boolean changed = key == null; // timed out: check anyway
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || file.getFileName().equals(event.context());
+                    }
+                    key.reset();
+                }
+                if (changed) {
+                    listener.accept(poll());
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.info("Stopped following " + fileName);
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package org.fileprocessor;
 
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Map;
@@ -12,58 +15,163 @@ public interface FileProcessor {
 
     /**
      * This method is ultimately used by all other overloaded methods in this interface.
+     * Gzip and zip files are recognised by their first bytes and decompressed on the fly; the entries of a zip file are read
+     * one after the other.
      * @param fileName URL of the file to be read.
      * @param processors List of line processors to be applied to each line in the file. @link org.fileprocessor.DefaultLineProcessor is loaded of null.
      * @param charset Encoding of the file. Default OS encoding is loaded if null.
-     * @return org.fileprocessor.Validation object containing result of processing and descriptive message.
+     * @return org.fileprocessor.ProcessingResult object containing result of processing, descriptive message and calculated stats.
      */
-    Validation processFile(String fileName, List<LineProcessor> processors , Charset charset);
+    ProcessingResult processFile(String fileName, List<LineProcessor> processors , Charset charset);
+
+    /**
+     * Same as @see FileProcessor#processFile(String, List, Charset), publishing running statistics while the file is being
+     * processed. Subscribe to the publisher before calling this method; it completes once the call returns.
+     * @param fileName URL of the file to be read.
+     * @param processors List of line processors to be applied to each line in the file.
+     * @param charset Encoding of the file. Default OS encoding is loaded if null.
+     * @param progress publisher of the running statistics. Ignored if null.
+     * @return org.fileprocessor.ProcessingResult object containing result of processing, descriptive message and calculated stats.
+     */
+    ProcessingResult processFile(String fileName, List<LineProcessor> processors, Charset charset, StatsPublisher progress);
+
+    /**
+     * Processes lines read from a stream, e.g. network or decompressed data, without spooling it to a file first. Lines are
+     * read one at a time, so memory use does not depend on the size of the input. The stream is read to the end but not closed.
+     * Byte based processors get each line encoded as UTF-8, see @link org.fileprocessor.ByteLineProcessor.
+     * @param input stream to be read.
+     * @param processors List of line processors to be applied to each line.
+     * @param charset Encoding of the stream. Default OS encoding is loaded if null.
+     * @return org.fileprocessor.ProcessingResult object containing result of processing, descriptive message and calculated stats.
+     */
+    ProcessingResult processStream(InputStream input, List<LineProcessor> processors, Charset charset);
+
+    /**
+     * Same as @see FileProcessor#processStream(InputStream, List, Charset) for a channel. The channel is not closed.
+     * @param input channel to be read.
+     * @param processors List of line processors to be applied to each line.
+     * @param charset Encoding of the channel. Default OS encoding is loaded if null.
+     * @return org.fileprocessor.ProcessingResult object containing result of processing, descriptive message and calculated stats.
+     */
+    ProcessingResult processStream(ReadableByteChannel input, List<LineProcessor> processors, Charset charset);
+
+    /**
+     * Same as @see FileProcessor#processStream(InputStream, List, Charset) for text that is already decoded. The reader is not
+     * closed.
+     * @param input reader to be read.
+     * @param processors List of line processors to be applied to each line.
+     * @return org.fileprocessor.ProcessingResult object containing result of processing, descriptive message and calculated stats.
+     */
+    ProcessingResult processStream(Reader input, List<LineProcessor> processors);
+
+    /**
+     * Processes the file in parallel: it is split in byte ranges aligned on line boundaries, each range is processed by a
+     * separate copy of the given processors on a fork-join pool, and partial results are merged back into the given processors.
+     * This requires all non-null processors to implement @link org.fileprocessor.MergeableLineProcessor and an encoding where
+     * lines can be found without decoding (UTF-8 or single byte charsets). Otherwise the file is processed sequentially.
+     * Block compressed gzip files (BGZF, as written by bgzip) are split on block boundaries and their blocks decompressed in
+     * parallel; other compressed files are decompressed and processed sequentially.
+     * @param fileName URL of the file to be read.
+     * @param processors List of line processors to be applied to each line in the file.
+     * @param charset Encoding of the file. Default OS encoding is loaded if null.
+     * @param parallelism Number of worker threads. Number of available processors is used if not positive.
+     * @return org.fileprocessor.ProcessingResult object containing result of processing, descriptive message and calculated stats.
+     */
+    ProcessingResult processFileInParallel(String fileName, List<LineProcessor> processors, Charset charset, int parallelism);
+
+    /**
+     * Processes the file with a reader thread and worker threads running at the same time, so that reading and decoding the
+     * file overlap with the work of the processors. Lines go from the reader to the workers in batches through a bounded
+     * queue. Each worker applies its own copies of the processors, which are merged into the given ones at the end, so all
+     * non-null processors should be @link org.fileprocessor.MergeableLineProcessor instances; otherwise a single worker is used.
+     * @param fileName URL of the file to be read.
+     * @param processors List of line processors to be applied to each line in the file.
+     * @param charset Encoding of the file. Default OS encoding is loaded if null.
+     * @param workers Number of worker threads. Number of available processors is used if not positive.
+     * @param batchSize Number of lines handed to a worker at a time. A default is used if not positive.
+     * @param queueDepth Number of batches that can wait for a worker before reading pauses. A default is used if not positive.
+     * @return org.fileprocessor.ProcessingResult object containing result of processing, descriptive message and calculated stats.
+     */
+    ProcessingResult processFilePipelined(String fileName, List<LineProcessor> processors, Charset charset, int workers,
+                                          int batchSize, int queueDepth);
+
+    /**
+     * Processes the file reading it through memory-mapped windows instead of a decoding reader. Lines are found in the mapped
+     * bytes and handed to @see LineProcessor#process(CharSequence) as reusable views, without creating a String per line.
+     * Only UTF-8, ISO-8859-1 and US-ASCII files are read this way, other encodings fall back to @see FileProcessor#processFile.
+     * @param fileName URL of the file to be read.
+     * @param processors List of line processors to be applied to each line in the file.
+     * @param charset Encoding of the file. Default OS encoding is loaded if null.
+     * @return org.fileprocessor.ProcessingResult object containing result of processing, descriptive message and calculated stats.
+     */
+    ProcessingResult processFileMapped(String fileName, List<LineProcessor> processors, Charset charset);
+
+    /**
+     * Processes a file that keeps growing, such as a log, incrementally. The byte offset reached and the state of the processors
+     * are saved in a checkpoint file, and the next call with the same checkpoint resumes from there, so each call only reads
+     * the data appended since the previous one. A trailing line without terminator is left for the next call. If the file has
+     * been truncated or rotated since the checkpoint was taken, processing starts over from the beginning of the new file.
+     * All non-null processors must be fresh @link org.fileprocessor.MergeableLineProcessor instances that are also
+     * java.io.Serializable; on return they hold the cumulative stats. The encoding must be UTF-8 or a single byte one.
+     * @param fileName URL of the file to be read.
+     * @param processors List of line processors to be applied to each new line in the file.
+     * @param charset Encoding of the file. Default OS encoding is loaded if null.
+     * @param checkpointFile URL of the file where the checkpoint is kept. Created if it does not exist.
+     * @return org.fileprocessor.ProcessingResult object containing result of processing, descriptive message and calculated stats.
+     */
+    ProcessingResult followFile(String fileName, List<LineProcessor> processors, Charset charset, String checkpointFile);
 
     /**
      * Invokes @see FileProcessor#processFile above by populating processors List with the org.fileprocessor.DefaultLineProcessor
      * @param fileName URL of the file to be read.
      * @param charsetString String representing a valid JVM encoding for the file. Default OS encoding is loaded if null.
-     * @return org.fileprocessor.Validation object containing result of processing and descriptive message.
+     * @return org.fileprocessor.ProcessingResult object containing result of processing, descriptive message and calculated stats.
      */
-    Validation processFile(String fileName, String charsetString);
+    ProcessingResult processFile(String fileName, String charsetString);
 
     /**
      * Invokes @see FileProcessor#processFile above by populating processors List with the org.fileprocessor.DefaultLineProcessor
      * @param fileName URL of the file to be read.
      * @param charset Encoding of the file. Default OS encoding is loaded if null.
-     * @return org.fileprocessor.Validation object containing result of processing and descriptive message.
+     * @return org.fileprocessor.ProcessingResult object containing result of processing, descriptive message and calculated stats.
      */
-    Validation processFile(String fileName, Charset charset);
+    ProcessingResult processFile(String fileName, Charset charset);
 
     /**
      * Invokes @see FileProcessor#processFile above by populating processors List with the org.fileprocessor.DefaultLineProcessor.
      * It also assumes the local default (OS) encoding to handle the file.
      * @param fileName URL of the file to be read.
-     * @return org.fileprocessor.Validation object containing result of processing and descriptive message.
+     * @return org.fileprocessor.ProcessingResult object containing result of processing, descriptive message and calculated stats.
      */
-    Validation processFile(String fileName);
+    ProcessingResult processFile(String fileName);
 
     /**
      * Invokes @see FileProcessor#processFile above by populating processors List with the provided @link org.fileprocessor.LineProcessor.
      * @param fileName URL of the file to be read.
      * @param processor LineProcessor to be applied to each line in the file.
      * @param charset Encoding of the file. Default OS encoding is loaded if null.
-     * @return org.fileprocessor.Validation object containing result of processing and descriptive message.
+     * @return org.fileprocessor.ProcessingResult object containing result of processing, descriptive message and calculated stats.
      */
-    Validation processFile(String fileName, LineProcessor processor, Charset charset);
+    ProcessingResult processFile(String fileName, LineProcessor processor, Charset charset);
 
     /**
      * Returns a list of "tags" (keys in a Map) that can be used by the developer of a class implementing this interface
      * to give a name to whatever stats/values the Processor is calculating. If more than one LineProcessor is used, it will return a
      * list of all the Key Names Used by Each LineProcessor.
      * @return keys of the metrics calculated by this line processor
+     * @deprecated only reflects the last successful call on this instance, which is ambiguous with concurrent callers.
+     * Use @see ProcessingResult#getKeyNames() on the result of the call instead.
      */
+    @Deprecated
     List<String> getKeyNames();
 
     /**
      * Return a map where the key is the stat name and the value is the actual value of the calculated stat over the processed lines.
      * f more than one LineProcessor is used, it will return a Map with enrties from all the Maps generated by Each LineProcessor.
      * @return Name-value KV map of all the stats
+     * @deprecated only reflects the last successful call on this instance, which is ambiguous with concurrent callers.
+     * Use @see ProcessingResult#getKVForProcessedLines() on the result of the call instead.
      */
+    @Deprecated
     Map<String,Object> getKVForProcessedLines();
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+package org.fileprocessor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Composite that applies a list of processors to each line in one go. The list is resolved once: null processors are
+ * dropped, and all the @link org.fileprocessor.WordLineProcessor instances share a single @link org.fileprocessor.LineScanner
+ * pass per line, so the per-line work is one scan plus a couple of array loops whatever the number of processors.
+ *
+ * Given a @link org.fileprocessor.ProcessorClock, lines are counted and the sampled ones are processed through
+ * #processSampled(CharSequence, ProcessorClock), which times each processor on its own.
+ *
+ * Not thread safe, like the scanner it owns.
+ */
+final class FusedLineProcessor implements LineProcessor, LineScanner.WordSink {
+
+    private final LineProcessor[] processors;
+    private final LineProcessor[] lineProcessors;
+    private final WordLineProcessor[] wordProcessors;
+    private final LineScanner scanner = new LineScanner();
+    private final LineScanner.WordSink sink;
+    private final ProcessorClock clock;
+
+    FusedLineProcessor(List<? extends LineProcessor> processors) {
+        this(processors, null);
+    }
+
+    /**
+     * @param clock counts and times the lines, may be null.
+     */
+    FusedLineProcessor(List<? extends LineProcessor> processors, ProcessorClock clock) {
+        this.clock = clock;
+        List<LineProcessor> all = new ArrayList<>();
+        List<LineProcessor> lines = new ArrayList<>();
+        List<WordLineProcessor> words = new ArrayList<>();
+        for (LineProcessor processor : processors) {
+            if (processor != null) {
+                all.add(processor);
+            }
+            if (processor instanceof WordLineProcessor) {
+                words.add((WordLineProcessor) processor);
+            } else if (processor != null) {
+                lines.add(processor);
+            }
+        }
+        this.processors = all.toArray(new LineProcessor[0]);
+        this.lineProcessors = lines.toArray(new LineProcessor[0]);
+        this.wordProcessors = words.toArray(new WordLineProcessor[0]);
+        // no fan out needed for a single word processor
+        this.sink = wordProcessors.length == 1 ? wordProcessors[0] : this;
+    }
+
+    /**
+     * @return true if there is nothing to apply.
+     */
+    boolean isEmpty() {
+        return processors.length == 0;
+    }
+
+    @Override
+    public void process(String line) {
+        process((CharSequence) line);
+    }
+
+    @Override
+    public void process(CharSequence line) {
+        if (clock != null && clock.tick()) {
+            processSampled(line, clock);
+            clock.endSample();
+            return;
+        }
+        for (LineProcessor processor : lineProcessors) {
+            processor.process(line);
+        }
+        if (wordProcessors.length == 0) {
+            return;
+        }
+        for (WordLineProcessor processor : wordProcessors) {
+            processor.beginLine(line);
+        }
+        if (line.length() > 0) {
+            scanner.scan(line, sink);
+        }
+        for (WordLineProcessor processor : wordProcessors) {
+            processor.endLine();
+        }
+    }
+
+    /**
+     * Same as #process(CharSequence) but adds the time taken by each processor to the given clock, without counting the
+     * line. Word processors scan the line one at a time, so that each gets the cost of the scan it needs.
+     */
+    void processSampled(CharSequence line, ProcessorClock clock) {
+        for (LineProcessor processor : lineProcessors) {
+            long start = System.nanoTime();
+            processor.process(line);
+            clock.add(processor, System.nanoTime() - start);
+        }
+        for (WordLineProcessor processor : wordProcessors) {
+            long start = System.nanoTime();
+            processor.beginLine(line);
+            if (line.length() > 0) {
+                scanner.scan(line, processor);
+            }
+            processor.endLine();
+            clock.add(processor, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void word(char[] chars, int length) {
+        for (WordLineProcessor processor : wordProcessors) {
+            processor.word(chars, length);
+        }
+    }
+
+    @Override
+    public String printProcessedLines() {
+        StringBuilder output = new StringBuilder();
+        for (LineProcessor processor : processors) {
+            output.append(processor.printProcessedLines());
+        }
+        return output.toString();
+    }
+
+    @Override
+    public Map<String, Object> getKVForProcessedLines() {
+        Map<String, Object> statMap = new LinkedHashMap<>();
+        for (LineProcessor processor : processors) {
+            statMap.putAll(processor.getKVForProcessedLines());
+        }
+        return statMap;
+    }
+
+    @Override
+    public List<String> getKeyNames() {
+        List<String> keyNames = new ArrayList<>();
+        for (LineProcessor processor : processors) {
+            keyNames.addAll(processor.getKeyNames());
+        }
+        return keyNames;
+    }
+}
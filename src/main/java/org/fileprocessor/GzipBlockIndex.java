@@ -0,0 +1,240 @@
+package org.fileprocessor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Offsets of the members of a block compressed gzip file (BGZF, as written by bgzip). Each member records its own compressed
+ * size in a "BC" extra field of its header and its uncompressed size in its trailer, so all members can be located without
+ * decompressing anything and then decompressed independently of each other.
+ *
+ * Other multi-member gzip files only tell where a member ends once it has been decompressed, so they cannot be indexed this
+ * way; @see #load(FileChannel) returns null for them.
+ */
+final class GzipBlockIndex {
+
+    /**
+     * Largest uncompressed size of a block. Files with larger members are not treated as block compressed.
+     */
+    static final int MAX_BLOCK_SIZE = 64 * 1024;
+
+    private static final int FIXED_HEADER_SIZE = 12; // up to and including XLEN
+    private static final int TRAILER_SIZE = 8; // CRC32 and ISIZE
+    private static final int FLAG_HCRC = 0x02;
+    private static final int FLAG_EXTRA = 0x04;
+    private static final int FLAG_NAME = 0x08;
+    private static final int FLAG_COMMENT = 0x10;
+
+    private final long[] compressedOffsets;
+    private final long[] uncompressedOffsets;
+    private final int blocks;
+
+    private GzipBlockIndex(long[] compressedOffsets, long[] uncompressedOffsets, int blocks) {
+        this.compressedOffsets = compressedOffsets;
+        this.uncompressedOffsets = uncompressedOffsets;
+        this.blocks = blocks;
+    }
+
+    /**
+     * Reads the header and trailer of every member of a gzip file.
+     * @param channel gzip file.
+     * @return index of the members, or null if any of them does not record its compressed size.
+     * @throws IOException if the file cannot be read.
+     */
+    static GzipBlockIndex load(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long[] compressed = new long[1024];
+        long[] uncompressed = new long[1024];
+        int blocks = 0;
+        ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        long offset = 0;
+        while (offset < size) {
+            if (!readFully(channel, header, offset) || (header.get(0) & 0xFF) != 0x1F || (header.get(1) & 0xFF) != 0x8B
+                    || header.get(2) != 8 || (header.get(3) & FLAG_EXTRA) == 0) {
+                return null;
+            }
+            int extraLength = header.getShort(10) & 0xFFFF;
+            ByteBuffer extra = ByteBuffer.allocate(extraLength).order(ByteOrder.LITTLE_ENDIAN);
+            if (!readFully(channel, extra, offset + FIXED_HEADER_SIZE)) {
+                return null;
+            }
+            int memberSize = blockSize(extra);
+            if (memberSize < FIXED_HEADER_SIZE + extraLength + TRAILER_SIZE || offset + memberSize > size
+                    || !readFully(channel, trailer, offset + memberSize - 4)) {
+                return null;
+            }
+            long uncompressedSize = trailer.getInt(0) & 0xFFFFFFFFL;
+            if (uncompressedSize > MAX_BLOCK_SIZE) {
+                return null;
+            }
+            if (blocks + 1 >= compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                uncompressed = Arrays.copyOf(uncompressed, uncompressed.length * 2);
+            }
+            compressed[blocks + 1] = offset + memberSize;
+            uncompressed[blocks + 1] = uncompressed[blocks] + uncompressedSize;
+            blocks++;
+            offset += memberSize;
+        }
+        return new GzipBlockIndex(compressed, uncompressed, blocks);
+    }
+
+    /**
+     * @return size of the member as recorded in the "BC" subfield, or -1 if there is none.
+     */
+    private static int blockSize(ByteBuffer extra) {
+        int i = 0;
+        while (i + 4 <= extra.limit()) {
+            int subfieldLength = extra.getShort(i + 2) & 0xFFFF;
+            if (extra.get(i) == 'B' && extra.get(i + 1) == 'C' && subfieldLength == 2 && i + 6 <= extra.limit()) {
+                return (extra.getShort(i + 4) & 0xFFFF) + 1;
+            }
+            i += 4 + subfieldLength;
+        }
+        return -1;
+    }
+
+    /**
+     * Fills the buffer up to its limit.
+     * @return false if the file ends before.
+     */
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.rewind();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) <= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of blocks in the file.
+     */
+    int size() {
+        return blocks;
+    }
+
+    /**
+     * @param block index of a block, or the number of blocks for the end of the data.
+     * @return offset of the first uncompressed byte of the block.
+     */
+    long uncompressedOffset(int block) {
+        return uncompressedOffsets[block];
+    }
+
+    /**
+     * @param block index of a block.
+     * @return number of uncompressed bytes in the block.
+     */
+    int uncompressedSize(int block) {
+        return (int) (uncompressedOffsets[block + 1] - uncompressedOffsets[block]);
+    }
+
+    /**
+     * @param channel gzip file this index was loaded from.
+     * @return a decompressor for single blocks of the file, to be closed after use. Not thread safe.
+     */
+    BlockInflater newInflater(FileChannel channel) {
+        return new BlockInflater(channel);
+    }
+
+    /**
+     * Decompresses single blocks, reusing its buffers and native inflater from one block to the next.
+     */
+    final class BlockInflater implements AutoCloseable {
+        private final FileChannel channel;
+        private final Inflater inflater = new Inflater(true);
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer member = ByteBuffer.allocate(MAX_BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        private BlockInflater(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * @param block index of the block.
+         * @param out destination of the uncompressed bytes, with room for @see GzipBlockIndex#uncompressedSize(int) of them.
+         * @param offset index in out of the first uncompressed byte.
+         * @return number of uncompressed bytes.
+         * @throws IOException if the block cannot be read or is corrupt.
+         */
+        int inflate(int block, byte[] out, int offset) throws IOException {
+            long start = compressedOffsets[block];
+            int length = (int) (compressedOffsets[block + 1] - start);
+            if (member.capacity() < length) {
+                member = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            member.limit(length);
+            if (!readFully(channel, member, start)) {
+                throw new ZipException("Truncated gzip block at offset " + start);
+            }
+            int expected = uncompressedSize(block);
+            int dataStart = dataStart(member);
+            inflater.reset();
+            inflater.setInput(member.array(), dataStart, length - TRAILER_SIZE - dataStart);
+            try {
+                int inflated = 0;
+                while (inflated < expected && !inflater.finished()) {
+                    int count = inflater.inflate(out, offset + inflated, expected - inflated);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated += count;
+                }
+                if (inflated != expected) {
+                    throw new ZipException("Wrong size of gzip block at offset " + start);
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException("Corrupt gzip block at offset " + start + ": " + e.getMessage());
+            }
+            crc.reset();
+            crc.update(out, offset, expected);
+            if ((int) crc.getValue() != member.getInt(length - TRAILER_SIZE)) {
+                throw new ZipException("Wrong CRC of gzip block at offset " + start);
+            }
+            return expected;
+        }
+
+        /**
+         * @return index of the deflated data, after the header and its optional fields.
+         */
+        private int dataStart(ByteBuffer member) throws ZipException {
+            int flags = member.get(3);
+            int position = FIXED_HEADER_SIZE + (member.getShort(10) & 0xFFFF);
+            if ((flags & FLAG_NAME) != 0) {
+                position = skipZeroTerminated(member, position);
+            }
+            if ((flags & FLAG_COMMENT) != 0) {
+                position = skipZeroTerminated(member, position);
+            }
+            if ((flags & FLAG_HCRC) != 0) {
+                position += 2;
+            }
+            if (position > member.limit() - TRAILER_SIZE) {
+                throw new ZipException("Corrupt gzip header");
+            }
+            return position;
+        }
+
+        private int skipZeroTerminated(ByteBuffer member, int position) {
+            while (position < member.limit() && member.get(position) != 0) {
+                position++;
+            }
+            return position + 1;
+        }
+
+        @Override
+        public void close() {
+            inflater.end();
+        }
+    }
+}
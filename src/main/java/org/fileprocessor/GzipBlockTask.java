@@ -0,0 +1,169 @@
+package org.fileprocessor;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork-join task that processes a range of blocks of a block compressed gzip file, the compressed counterpart of
+ * @link org.fileprocessor.ChunkedFileTask. Ranges of blocks are split in halves until they hold few enough uncompressed
+ * bytes, and each leaf decompresses its own blocks and runs its own fresh copy of the prototypes over them.
+ *
+ * As with byte ranges, a line belongs to the range in which its first byte lies: a leaf skips the partial line it starts in
+ * (unless the previous block ends with '\n') and decompresses the blocks after its range until it finds the end of its last
+ * line. Only charsets that pass @see ChunkedFileTask#isSplittable(Charset) can be processed this way. Given a
+ * @link org.fileprocessor.RunRecorder, each leaf counts and times its lines with a clock of its own.
+ */
+class GzipBlockTask extends RecursiveTask<List<MergeableLineProcessor<?>>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final static Logger logger = Logger.getLogger(GzipBlockTask.class.getName());
+
+    /**
+     * Largest number of uncompressed bytes held in memory by a single leaf, besides the end of its last line.
+     */
+    static final long MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final GzipBlockIndex index;
+    private final int first;
+    private final int last;
+    private final long threshold;
+    private final List<MergeableLineProcessor<?>> prototypes;
+    private final Charset charset;
+    private final RunRecorder recorder;
+
+    /**
+     * @param channel gzip file.
+     * @param index blocks of the file.
+     * @param first index of the first block of the range.
+     * @param last index after the last block of the range.
+     * @param threshold number of uncompressed bytes below which a range is not split any further.
+     * @param prototypes processors to be copied for every leaf.
+     * @param charset encoding of the uncompressed data.
+     * @param recorder measurements of the run, may be null.
+     */
+    GzipBlockTask(FileChannel channel, GzipBlockIndex index, int first, int last, long threshold,
+                  List<MergeableLineProcessor<?>> prototypes, Charset charset, RunRecorder recorder) {
+        this.channel = channel;
+        this.index = index;
+        this.first = first;
+        this.last = last;
+        this.threshold = Math.min(threshold, MAX_CHUNK_SIZE);
+        this.prototypes = prototypes;
+        this.charset = charset;
+        this.recorder = recorder;
+    }
+
+    @Override
+    protected List<MergeableLineProcessor<?>> compute() {
+        if (last - first <= 1 || index.uncompressedOffset(last) - index.uncompressedOffset(first) <= threshold) {
+            return processRange();
+        }
+        int middle = first + (last - first) / 2;
+        GzipBlockTask left = new GzipBlockTask(channel, index, first, middle, threshold, prototypes, charset, recorder);
+        GzipBlockTask right = new GzipBlockTask(channel, index, middle, last, threshold, prototypes, charset, recorder);
+        left.fork();
+        List<MergeableLineProcessor<?>> rightResult = right.compute();
+        List<MergeableLineProcessor<?>> leftResult = left.join();
+        for (int i = 0; i < leftResult.size(); i++) {
+            ChunkedFileTask.merge(leftResult.get(i), rightResult.get(i));
+        }
+        return leftResult;
+    }
+
+    private List<MergeableLineProcessor<?>> processRange() {
+        List<MergeableLineProcessor<?>> processors = new ArrayList<>(prototypes.size());
+        for (MergeableLineProcessor<?> prototype : prototypes) {
+            processors.add(prototype.newInstance());
+        }
+        int size = (int) (index.uncompressedOffset(last) - index.uncompressedOffset(first));
+        if (size == 0) {
+            return processors;
+        }
+        ProcessorClock clock = recorder == null ? null : recorder.newClock();
+        if (clock != null) {
+            clock.start();
+        }
+        try (GzipBlockIndex.BlockInflater inflater = index.newInflater(channel)) {
+            long inflateStart = System.nanoTime();
+            byte[] data = new byte[size];
+            int filled = 0;
+            for (int block = first; block < last; block++) {
+                filled += inflater.inflate(block, data, filled);
+            }
+            int from = 0;
+            if (!startsLine(inflater)) {
+                from = indexOfNewLine(data, 0, size) + 1;
+                if (from == 0) {
+                    return processors; // the whole range is the middle of a line that started before
+                }
+            }
+            if (data[size - 1] != '\n') {
+                // finish the last line with the blocks after the range
+                for (int block = last; block < index.size(); block++) {
+                    int blockSize = index.uncompressedSize(block);
+                    if (data.length < size + blockSize) {
+                        data = Arrays.copyOf(data, Math.max(size + blockSize, data.length + data.length / 2));
+                    }
+                    inflater.inflate(block, data, size);
+                    int newLine = indexOfNewLine(data, size, size + blockSize);
+                    if (newLine >= 0) {
+                        size = newLine + 1;
+                        break;
+                    }
+                    size += blockSize;
+                }
+            }
+            if (clock != null) {
+                clock.addMeasuredRead(System.nanoTime() - inflateStart);
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Processing blocks [" + first + ", " + last + "), " + (size - from) + " uncompressed bytes");
+            }
+            if (from < size) {
+                ChunkedFileTask.readLines(data, from, size, processors, charset, clock);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (clock != null) {
+                clock.stop();
+            }
+        }
+        return processors;
+    }
+
+    /**
+     * Tells whether a line starts at the first byte of the range, i.e. the last non-empty block before it ends with '\n'.
+     */
+    private boolean startsLine(GzipBlockIndex.BlockInflater inflater) throws IOException {
+        int previous = first - 1;
+        while (previous >= 0 && index.uncompressedSize(previous) == 0) {
+            previous--;
+        }
+        if (previous < 0) {
+            return true;
+        }
+        byte[] block = new byte[index.uncompressedSize(previous)];
+        inflater.inflate(previous, block, 0);
+        return block[block.length - 1] == '\n';
+    }
+
+    private static int indexOfNewLine(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
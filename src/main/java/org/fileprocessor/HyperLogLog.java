@@ -0,0 +1,163 @@
+package org.fileprocessor;
+
+import java.io.Serializable;
+
+/**
+ * HyperLogLog sketch that estimates the number of distinct items seen in a fixed amount of memory: one byte per register,
+ * 2^precision registers. The relative standard error of the estimate is about 1.04 / sqrt(2^precision), e.g. 0.8% for the
+ * default precision of 14 (16 KB). Sketches of the same precision can be merged, which gives the estimate for the union of
+ * their inputs.
+ *
+ * Items are given as 64 bit hashes, see #hash(char[], int) for words.
+ */
+public final class HyperLogLog implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Precision used by #HyperLogLog().
+     */
+    public static final int DEFAULT_PRECISION = 14;
+    private static final int MIN_PRECISION = 4;
+    private static final int MAX_PRECISION = 18;
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * Creates a sketch with the default precision.
+     */
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param precision base 2 logarithm of the number of registers, from 4 to 18.
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + ": " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Adds an item.
+     * @param hash 64 bit hash of the item, whose bits should all be evenly distributed.
+     */
+    public void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // the sentinel bit bounds the run of zeros when all the remaining bits are 0
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Adds a word.
+     * @param word buffer holding the word.
+     * @param length number of chars of the word in the buffer.
+     */
+    public void add(char[] word, int length) {
+        add(hash(word, length));
+    }
+
+    /**
+     * Adds all the items of another sketch to this one. The other sketch is left untouched.
+     * @param other sketch of the same precision.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge sketches of precision " + precision + " and " + other.precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * @return estimated number of distinct items added.
+     */
+    public double estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double raw = alpha(m) * m * m / sum;
+        if (raw <= 2.5 * m && zeros > 0) {
+            return m * Math.log((double) m / zeros); // linear counting is more accurate for small cardinalities
+        }
+        return raw; // with 64 bit hashes there is no need for a large range correction
+    }
+
+    /**
+     * @return relative standard error of #estimate().
+     */
+    public double getStandardError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    /**
+     * @return base 2 logarithm of the number of registers.
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    /**
+     * 64 bit hash of a word: FNV-1a over its chars followed by the MurmurHash3 finalizer, so that all bits are mixed.
+     * @param word buffer holding the word.
+     * @param length number of chars of the word in the buffer.
+     * @return hash of the word, equal to #hash(CharSequence) of the same chars.
+     */
+    public static long hash(char[] word, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ word[i]) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * @param word chars to be hashed.
+     * @return hash of the chars, equal to #hash(char[], int) of the same chars.
+     */
+    public static long hash(CharSequence word) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < word.length(); i++) {
+            hash = (hash ^ word.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,131 @@
+package org.fileprocessor;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes one JSON object per call, e.g.
+ *
+ *   {"source":"a.txt","status":"OK","stats":{"Lines":3.0,"Most common letter":"e"}}
+ *   {"source":"b.txt","status":"ERROR","message":"Couldn't find file: b.txt. ..."}
+ *
+ * Stats are written as JSON numbers, booleans, objects or arrays when they are such Java values, as strings otherwise.
+ * Records are written whole under a lock, so concurrent calls produce valid lines. Failures to write are logged and do not
+ * affect the processing.
+ */
+final class JsonResultSink implements ResultSink {
+
+    private final static Logger logger = Logger.getLogger(JsonResultSink.class.getName());
+
+    private final Writer writer;
+
+    JsonResultSink(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void processed(String source, ProcessingResult result, List<? extends LineProcessor> processors) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"source\":");
+        value(json, source);
+        json.append(",\"status\":\"").append(result.getType()).append("\",\"stats\":");
+        value(json, result.getKVForProcessedLines());
+        write(json.append("}\n"));
+    }
+
+    @Override
+    public void failed(String source, String message, ProcessingResult error) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"source\":");
+        value(json, source);
+        json.append(",\"status\":\"").append(error.getType()).append("\",\"message\":");
+        value(json, error.getText());
+        write(json.append("}\n"));
+    }
+
+    private void write(CharSequence record) {
+        synchronized (writer) {
+            try {
+                writer.append(record);
+                writer.flush();
+            } catch (IOException e) {
+                logger.warn("Couldn't write result: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void value(StringBuilder json, Object value) {
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof Boolean) {
+            json.append(value);
+        } else if (value instanceof Number && isFinite((Number) value)) {
+            json.append(value);
+        } else if (value instanceof Map) {
+            json.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                string(json, String.valueOf(entry.getKey()));
+                json.append(':');
+                value(json, entry.getValue());
+            }
+            json.append('}');
+        } else if (value instanceof Iterable) {
+            json.append('[');
+            boolean first = true;
+            for (Object element : (Iterable<?>) value) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                value(json, element);
+            }
+            json.append(']');
+        } else {
+            string(json, value.toString());
+        }
+    }
+
+    private static boolean isFinite(Number number) {
+        return !(number instanceof Double || number instanceof Float) || Double.isFinite(number.doubleValue());
+    }
+
+    private static void string(StringBuilder json, String text) {
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
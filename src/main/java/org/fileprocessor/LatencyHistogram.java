@@ -0,0 +1,91 @@
+package org.fileprocessor;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations with one bucket per power of two: bucket i counts the durations in [2^i, 2^(i+1))
+ * nanoseconds, bucket 0 also counts zero. Recording is a couple of instructions and an atomic increment, and the whole
+ * histogram takes 64 longs, so it can record every run indefinitely. Percentiles are accurate to within a factor of two.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * @param nanos duration to be recorded. Negative durations count as zero.
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(nanos));
+    }
+
+    private static int bucket(long nanos) {
+        return nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    /**
+     * @return number of durations recorded.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     * @return upper bound of the bucket holding the given percentile, in nanoseconds, or 0 if nothing has been recorded.
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = getBuckets();
+        long total = 0;
+        for (long count : snapshot) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (bucket + 1)) - 1;
+    }
+
+    /**
+     * @return copy of the counts, where index i holds the number of durations in [2^i, 2^(i+1)) nanoseconds.
+     */
+    public long[] getBuckets() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Forgets all the durations recorded so far.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ", p50<=" + getPercentile(50) + " ns, p90<=" + getPercentile(90) + " ns, p99<="
+                + getPercentile(99) + " ns";
+    }
+}
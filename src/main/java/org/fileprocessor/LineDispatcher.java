@@ -0,0 +1,77 @@
+package org.fileprocessor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands the raw lines read by a @link org.fileprocessor.MappedLineReader to a list of processors: @link ByteLineProcessor
+ * instances get the bytes as they are, and lines are decoded only if there is at least one String based processor, in which
+ * case the decoded line goes through a @link org.fileprocessor.FusedLineProcessor. Null processors are skipped. Resolved
+ * once per run so that the per-line work is a couple of array loops. Given a @link org.fileprocessor.ProcessorClock, lines
+ * are counted and on the sampled ones every processor and the decoding are timed.
+ */
+class LineDispatcher implements MappedLineReader.RawLineConsumer {
+
+    private final MappedLineReader reader;
+    private final Charset charset;
+    private final ByteLineProcessor[] byteProcessors;
+    private final FusedLineProcessor charProcessors;
+    private final ProcessorClock clock;
+
+    LineDispatcher(List<? extends LineProcessor> processors, MappedLineReader reader, Charset charset) {
+        this(processors, reader, charset, null);
+    }
+
+    /**
+     * @param clock counts and times the lines, may be null.
+     */
+    LineDispatcher(List<? extends LineProcessor> processors, MappedLineReader reader, Charset charset,
+                   ProcessorClock clock) {
+        this.reader = reader;
+        this.clock = clock;
+        this.charset = charset;
+        List<ByteLineProcessor> bytes = new ArrayList<>();
+        List<LineProcessor> chars = new ArrayList<>();
+        for (LineProcessor processor : processors) {
+            if (processor instanceof ByteLineProcessor) {
+                bytes.add((ByteLineProcessor) processor);
+            } else if (processor != null) {
+                chars.add(processor);
+            }
+        }
+        this.byteProcessors = bytes.toArray(new ByteLineProcessor[0]);
+        this.charProcessors = new FusedLineProcessor(chars);
+    }
+
+    @Override
+    public void accept(ByteBuffer buffer, int offset, int length) throws IOException {
+        if (clock != null && clock.tick()) {
+            acceptSampled(buffer, offset, length);
+            clock.endSample();
+            return;
+        }
+        for (ByteLineProcessor processor : byteProcessors) {
+            processor.process(buffer, offset, length, charset);
+        }
+        if (!charProcessors.isEmpty()) {
+            charProcessors.process(reader.view(buffer, offset, length));
+        }
+    }
+
+    private void acceptSampled(ByteBuffer buffer, int offset, int length) throws IOException {
+        for (ByteLineProcessor processor : byteProcessors) {
+            long start = System.nanoTime();
+            processor.process(buffer, offset, length, charset);
+            clock.add(processor, System.nanoTime() - start);
+        }
+        if (!charProcessors.isEmpty()) {
+            long start = System.nanoTime();
+            CharSequence line = reader.view(buffer, offset, length);
+            clock.addRead(System.nanoTime() - start);
+            charProcessors.processSampled(line, clock);
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package org.fileprocessor;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sparse index of the lines of a file: the number of lines and the byte offset where every Nth line starts, so that the
+ * lines of a file can be counted, ranges of lines found, and the file split in equal numbers of lines, without reading it.
+ *
+ * An index is built with one pass over the file, finding line breaks in mapped memory (see
+ * @link org.fileprocessor.ByteScanner) without decoding anything, and kept next to the file in a sidecar named after it
+ * (@link #SUFFIX), where the offsets take one or two bytes each. Lines are split as java.io.BufferedReader#readLine does, on
+ * '\n', '\r' or "\r\n", which is only meaningful in encodings where those bytes are always line breaks (UTF-8 and single byte
+ * charsets). A sidecar applies to the file it was built from as long as its size, modification time, change time (on
+ * Unix), file key (the inode on Unix) and a checksum of its first bytes have not changed, like a
+ * @link org.fileprocessor.ResultCache entry; a file that changed needs a new index. Sidecars found in a directory or by a
+ * glob are not taken as input files by @link org.fileprocessor.BatchFileProcessor.
+ */
+public final class LineIndex {
+
+    private final static Logger logger = Logger.getLogger(LineIndex.class.getName());
+
+    /**
+     * Default number of lines between two offsets of the index.
+     */
+    public static final int DEFAULT_INTERVAL = 1024;
+    /**
+     * Appended to the name of a file to name its index.
+     */
+    public static final String SUFFIX = ".lines";
+
+    private static final int MAGIC = 0x4c494458; // "LIDX"
+    private static final int VERSION = 2;
+    private static final int HEAD_SIZE = 4096;
+    private static final boolean UNIX = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private final long fileSize;
+    private final long modified;
+    private final long changed;
+    private final String fileKey;
+    private final long headChecksum;
+    private final int interval;
+    private final long lineCount;
+    // offsets[i] is where line (i + 1) * interval starts
+    private final long[] offsets;
+
+    private LineIndex(long fileSize, long modified, long changed, String fileKey, long headChecksum, int interval,
+                      long lineCount, long[] offsets) {
+        this.fileSize = fileSize;
+        this.modified = modified;
+        this.changed = changed;
+        this.fileKey = fileKey;
+        this.headChecksum = headChecksum;
+        this.interval = interval;
+        this.lineCount = lineCount;
+        this.offsets = offsets;
+    }
+
+    /**
+     * @param file file that is indexed.
+     * @return where the index of the file is kept.
+     */
+    public static Path sidecarOf(Path file) {
+        Path absolute = file.toAbsolutePath();
+        return absolute.resolveSibling(absolute.getFileName() + SUFFIX);
+    }
+
+    /**
+     * @param path a file name.
+     * @return true if it names the index of a file that exists next to it, see #sidecarOf(Path).
+     */
+    static boolean isSidecar(Path path) {
+        Path name = path.getFileName();
+        if (name == null || !name.toString().endsWith(SUFFIX) || name.toString().length() == SUFFIX.length()) {
+            return false;
+        }
+        String indexed = name.toString().substring(0, name.toString().length() - SUFFIX.length());
+        return Files.isRegularFile(path.resolveSibling(indexed));
+    }
+
+    /**
+     * Returns the index kept next to the file if it is still valid, or builds it and saves it there otherwise. Failing to
+     * save it is logged, the index is returned anyway.
+     * @param file file to be indexed.
+     * @param interval number of lines between two offsets, used if the index has to be built.
+     * @return the index of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public static LineIndex of(Path file, int interval) throws IOException {
+        LineIndex index = load(file);
+        if (index != null) {
+            return index;
+        }
+        index = build(file, interval);
+        try {
+            index.save(file);
+        } catch (IOException e) {
+            logger.warn("Couldn't save line index of " + file + ": " + e.getMessage());
+        }
+        return index;
+    }
+
+    /**
+     * Reads the index kept next to a file.
+     * @param file file that was indexed.
+     * @return the index, or null if there is none, it cannot be read or the file changed since it was built.
+     * @throws IOException if the attributes of the file cannot be read.
+     */
+    public static LineIndex load(Path file) throws IOException {
+        Path sidecar = sidecarOf(file);
+        if (!Files.exists(sidecar)) {
+            return null;
+        }
+        LineIndex index;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                logger.info("Ignoring line index " + sidecar + " of an unknown format");
+                return null;
+            }
+            long fileSize = in.readLong();
+            long modified = in.readLong();
+            long changed = in.readLong();
+            String fileKey = in.readBoolean() ? in.readUTF() : null;
+            long headChecksum = in.readLong();
+            int interval = in.readInt();
+            long lineCount = in.readLong();
+            long[] offsets = new long[in.readInt()];
+            long offset = 0;
+            for (int i = 0; i < offsets.length; i++) {
+                offset += readVarLong(in);
+                offsets[i] = offset;
+            }
+            index = new LineIndex(fileSize, modified, changed, fileKey, headChecksum, interval, lineCount, offsets);
+        } catch (EOFException | RuntimeException e) {
+            logger.info("Ignoring unreadable line index " + sidecar + ": " + e);
+            return null;
+        }
+        if (!index.appliesTo(file)) {
+            logger.info("File " + file + " changed since its line index was built");
+            return null;
+        }
+        return index;
+    }
+
+    /**
+     * Indexes a file, without saving the index.
+     * @param file file to be indexed.
+     * @param interval number of lines between two offsets.
+     * @return the index of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public static LineIndex build(Path file, int interval) throws IOException {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Need a positive number of lines between offsets: " + interval);
+        }
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long changed = changeTime(file); // read before the content, so that a change while indexing makes the index stale
+        long[] offsets = new long[16];
+        int entries = 0;
+        long lines = 0;
+        long lineStart = 0;
+        boolean afterReturn = false; // the last window ended with '\r', which may be the first half of "\r\n"
+        ByteScanner scanner = ByteScanner.get();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long windowStart = 0; windowStart < size; windowStart += WINDOW_SIZE) {
+                int length = (int) Math.min(WINDOW_SIZE, size - windowStart);
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+                int i = 0;
+                if (afterReturn) {
+                    afterReturn = false;
+                    if (window.get(0) == '\n') {
+                        i = 1;
+                        lineStart++;
+                        if (lines % interval == 0) {
+                            offsets[entries - 1]++;
+                        }
+                    }
+                }
+                while ((i = scanner.indexOfLineBreak(window, i, length)) < length) {
+                    if (window.get(i) == '\r') {
+                        if (i + 1 == length) {
+                            afterReturn = true;
+                        } else if (window.get(i + 1) == '\n') {
+                            i++;
+                        }
+                    }
+                    i++;
+                    lines++;
+                    lineStart = windowStart + i;
+                    if (lines % interval == 0) {
+                        if (entries == offsets.length) {
+                            offsets = Arrays.copyOf(offsets, entries * 2);
+                        }
+                        offsets[entries++] = lineStart;
+                    }
+                }
+            }
+            if (lineStart < size) { // last line without terminator
+                lines++;
+            } else if (entries > 0 && offsets[entries - 1] == size) {
+                entries--; // not the start of a line, the end of the file
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Indexed " + lines + " lines of " + file + " with " + entries + " offsets");
+            }
+            return new LineIndex(size, attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), changed, fileKey(attributes),
+                    FileCheckpoint.headChecksum(channel, (int) Math.min(HEAD_SIZE, size)), interval, lines,
+                    Arrays.copyOf(offsets, entries));
+        }
+    }
+
+    /**
+     * Writes the index next to the file, to a temporary file first that is then moved in place.
+     * @param file file that was indexed.
+     * @throws IOException if the index cannot be written.
+     */
+    public void save(Path file) throws IOException {
+        Path sidecar = sidecarOf(file);
+        Path temporary = Files.createTempFile(sidecar.getParent(), sidecar.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeLong(fileSize);
+                out.writeLong(modified);
+                out.writeLong(changed);
+                out.writeBoolean(fileKey != null);
+                if (fileKey != null) {
+                    out.writeUTF(fileKey);
+                }
+                out.writeLong(headChecksum);
+                out.writeInt(interval);
+                out.writeLong(lineCount);
+                out.writeInt(offsets.length);
+                long previous = 0;
+                for (long offset : offsets) {
+                    writeVarLong(out, offset - previous);
+                    previous = offset;
+                }
+            }
+            try {
+                Files.move(temporary, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, sidecar, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private boolean appliesTo(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (attributes.size() != fileSize || attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) != modified
+                || changeTime(file) != changed || !Objects.equals(fileKey, fileKey(attributes))) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return FileCheckpoint.headChecksum(channel, (int) Math.min(HEAD_SIZE, fileSize)) == headChecksum;
+        }
+    }
+
+    /**
+     * @return change time of the file in nanoseconds, which unlike the modification time cannot be set back, or -1 where
+     * the file system does not tell.
+     */
+    private static long changeTime(Path file) throws IOException {
+        return UNIX ? ((FileTime) Files.getAttribute(file, "unix:ctime")).to(TimeUnit.NANOSECONDS) : -1;
+    }
+
+    private static String fileKey(BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+        return key == null ? null : key.toString();
+    }
+
+    /**
+     * @return number of lines of the file.
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return size of the file when it was indexed.
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return number of lines between two offsets.
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Finds where a line starts: the closest offset at or before it is taken from the index, and at most @link #getInterval()
+     * lines are read from there.
+     * @param channel the indexed file.
+     * @param line number of the line, from 0.
+     * @return offset of the first byte of the line, or the size of the file if there are not that many lines.
+     * @throws IOException if the file cannot be read.
+     */
+    public long offsetOf(FileChannel channel, long line) throws IOException {
+        if (line <= 0) {
+            return 0;
+        }
+        if (line >= lineCount) {
+            return fileSize;
+        }
+        int entry = (int) Math.min(offsets.length, line / interval);
+        long from = entry == 0 ? 0 : offsets[entry - 1];
+        return skipLines(channel, from, line - (long) entry * interval, fileSize);
+    }
+
+    /**
+     * Cuts the file in ranges of about the same number of lines, on offsets of the index.
+     * @param parts number of ranges wanted.
+     * @return offsets where the ranges start, followed by the size of the file; fewer ranges if there are not enough offsets.
+     */
+    long[] split(int parts) {
+        parts = (int) Math.max(1, Math.min(parts, offsets.length + 1L));
+        long[] bounds = new long[parts + 1];
+        for (int part = 1; part < parts; part++) {
+            bounds[part] = offsets[(int) ((long) part * (offsets.length + 1) / parts) - 1];
+        }
+        bounds[parts] = fileSize;
+        return bounds;
+    }
+
+    /**
+     * Reads a number of lines from a line start, the way the index splits them.
+     * @param channel file to be read.
+     * @param from offset where a line starts.
+     * @param lines number of lines to skip.
+     * @param size size of the file.
+     * @return offset where the line after the skipped ones starts, or size if the file ends before.
+     * @throws IOException if the file cannot be read.
+     */
+    static long skipLines(FileChannel channel, long from, long lines, long size) throws IOException {
+        if (lines <= 0) {
+            return from;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        ByteScanner scanner = ByteScanner.get();
+        long offset = from;
+        while (offset < size) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            int i = 0;
+            while ((i = scanner.indexOfLineBreak(buffer, i, read)) < read) {
+                if (buffer.get(i) == '\r') {
+                    if (i + 1 == read && offset + read < size) {
+                        break; // need the next byte to know whether this is "\r\n", read again from the '\r'
+                    }
+                    if (i + 1 < read && buffer.get(i + 1) == '\n') {
+                        i++;
+                    }
+                }
+                i++;
+                if (--lines == 0) {
+                    return offset + i;
+                }
+            }
+            offset += i;
+        }
+        return size;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed offset in line index");
+    }
+}
@@ -0,0 +1,471 @@
+package org.fileprocessor;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads and processes lines on different threads so that I/O and decoding overlap with the work of the processors.
+ *
+ * The calling thread reads lines into batches and publishes them on a bounded @link org.fileprocessor.RingBuffer; worker
+ * threads take batches off it, apply their own copies of the processors, and hand the emptied batches back to the reader
+ * through a second ring, so the same batches go round and round. The number of batches is fixed to queueDepth + workers + 1,
+ * which bounds memory and makes a reader that runs ahead wait for the workers. Per-worker copies are created with
+ * @link org.fileprocessor.MergeableLineProcessor#newInstance() and merged into the given processors at the end. Batches are
+ * taken in any order, so each copy sees scattered lines and copies are merged in no particular order; this relies on the
+ * contract of @link org.fileprocessor.MergeableLineProcessor, whose results depend neither on the order of the lines nor on
+ * the order of the merges. Processors that are not mergeable are all run on a single worker, in file order.
+ *
+ * Time spent by each stage working and waiting is reported in a @link LinePipeline.Stats, which tells which side is the
+ * bottleneck: a reader that keeps waiting for free batches has slow workers, workers that keep waiting for batches have a
+ * slow reader.
+ */
+public final class LinePipeline {
+
+    private final static Logger logger = Logger.getLogger(LinePipeline.class.getName());
+
+    /**
+     * Number of lines in a batch if not specified.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+    /**
+     * Number of full batches that can wait for a worker if not specified.
+     */
+    public static final int DEFAULT_QUEUE_DEPTH = 64;
+
+    private static final int SPINS = 100;
+    private static final int YIELDS = 200;
+    private static final long PARK_NANOS = 50_000;
+
+    private static final AtomicInteger pipelineCount = new AtomicInteger();
+
+    private final int workers;
+    private final int batchSize;
+    private final int queueDepth;
+
+    /**
+     * @param workers number of threads applying the processors.
+     * @param batchSize number of lines handed to a worker at a time.
+     * @param queueDepth number of full batches that can wait for a worker before the reader waits.
+     */
+    public LinePipeline(int workers, int batchSize, int queueDepth) {
+        if (workers <= 0 || batchSize <= 0 || queueDepth <= 0) {
+            throw new IllegalArgumentException("Need a positive number of workers, batch size and queue depth");
+        }
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Applies the processors to all the lines of a reader.
+     * @param reader source of the lines, read on the calling thread. Not closed.
+     * @param processors processors to be applied to each line. Null ones are skipped. On return they hold the results.
+     * @return time and work done by each stage.
+     * @throws IOException if the reader fails, or the calling thread is interrupted.
+     * @throws RuntimeException thrown by a processor, after all the workers have stopped.
+     */
+    public Stats run(BufferedReader reader, List<? extends LineProcessor> processors) throws IOException {
+        return run(reader, processors, null);
+    }
+
+    /**
+     * Same as @see #run(BufferedReader, List) but also counts and times the lines of every worker with a clock of its own,
+     * and reports the time the reader took.
+     * @param recorder measurements of the run, may be null.
+     */
+    Stats run(BufferedReader reader, List<? extends LineProcessor> processors, RunRecorder recorder) throws IOException {
+        boolean mergeable = processors.stream().allMatch(p -> p == null || p instanceof MergeableLineProcessor);
+        int threads = mergeable ? workers : 1;
+        if (!mergeable && workers > 1) {
+            logger.info("Not all processors are mergeable, running the pipeline with a single worker");
+        }
+        List<List<LineProcessor>> workerProcessors = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            workerProcessors.add(mergeable ? copies(processors) : new ArrayList<>(processors));
+        }
+
+        Run run = new Run(threads);
+        long start = System.nanoTime();
+        int id = pipelineCount.incrementAndGet();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "line-pipeline-" + id + "-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<?>> futures = new ArrayList<>(threads);
+        try {
+            for (int i = 0; i < threads; i++) {
+                ProcessorClock clock = recorder == null ? null : recorder.newClock();
+                FusedLineProcessor fused = new FusedLineProcessor(workerProcessors.get(i), clock);
+                int worker = i;
+                futures.add(executor.submit(() -> {
+                    if (clock != null) {
+                        clock.start();
+                    }
+                    try {
+                        run.work(worker, fused);
+                    } finally {
+                        if (clock != null) {
+                            clock.stop();
+                        }
+                    }
+                }));
+            }
+            try {
+                run.read(reader);
+            } catch (IOException | RuntimeException e) {
+                run.failure.compareAndSet(null, e); // stop the workers, their results are discarded
+                run.finished = true;
+                // a single worker applies the caller's own processors, which must not change once we return
+                awaitWorkers(futures);
+                throw e;
+            } finally {
+                run.finished = true; // let the workers drain the queue and stop, also on failure
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            run.failure.compareAndSet(null, e);
+            awaitWorkers(futures);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the pipeline workers");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (mergeable) {
+            for (List<LineProcessor> partials : workerProcessors) {
+                for (int i = 0; i < processors.size(); i++) {
+                    if (processors.get(i) != null) {
+                        ChunkedFileTask.merge((MergeableLineProcessor<?>) processors.get(i), (MergeableLineProcessor<?>) partials.get(i));
+                    }
+                }
+            }
+        }
+        Stats stats = run.stats(System.nanoTime() - start);
+        if (recorder != null) {
+            recorder.setReadNanos(stats.getReadNanos());
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Pipeline stats: " + stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Waits for workers that have been told to stop, ignoring how they ended. They stop after the batch at hand, so the wait
+     * is short and not interruptible; an interrupt is kept for the caller.
+     */
+    private static void awaitWorkers(List<Future<?>> futures) {
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<LineProcessor> copies(List<? extends LineProcessor> processors) {
+        List<LineProcessor> copies = new ArrayList<>(processors.size());
+        for (LineProcessor processor : processors) {
+            copies.add(processor == null ? null : (LineProcessor) ((MergeableLineProcessor<?>) processor).newInstance());
+        }
+        return copies;
+    }
+
+    /**
+     * Backs off while waiting for the other side: spins briefly, then yields, then parks.
+     */
+    private static void idle(int attempt) {
+        if (attempt < SPINS) {
+            return;
+        }
+        if (attempt < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /**
+     * Lines handed from the reader to a worker. The array is reused, entries are cleared once processed.
+     */
+    private static final class LineBatch {
+        final String[] lines;
+        int size;
+
+        LineBatch(int capacity) {
+            lines = new String[capacity];
+        }
+    }
+
+    /**
+     * State of one run of the pipeline, shared by the reader and the workers.
+     */
+    private final class Run {
+        final RingBuffer<LineBatch> full;
+        final RingBuffer<LineBatch> free;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        volatile boolean finished = false;
+
+        // reader counters, only written by the reader
+        long linesRead;
+        long batchesRead;
+        long readNanos;
+        long readerWaitNanos;
+
+        // worker counters, one slot per worker; visible to the reader once the futures have completed
+        final long[] batchesProcessed;
+        final long[] processNanos;
+        final long[] workerWaitNanos;
+
+        Run(int threads) {
+            int batches = queueDepth + threads + 1;
+            full = new RingBuffer<>(batches);
+            free = new RingBuffer<>(batches);
+            for (int i = 0; i < batches; i++) {
+                free.offer(new LineBatch(batchSize));
+            }
+            batchesProcessed = new long[threads];
+            processNanos = new long[threads];
+            workerWaitNanos = new long[threads];
+        }
+
+        void read(BufferedReader reader) throws IOException {
+            long start = System.nanoTime();
+            LineBatch batch = takeFree();
+            String line;
+            while (batch != null && (line = reader.readLine()) != null) {
+                batch.lines[batch.size++] = line;
+                linesRead++;
+                if (batch.size == batchSize) {
+                    publish(batch);
+                    batch = takeFree();
+                }
+            }
+            if (batch != null && batch.size > 0) {
+                publish(batch);
+            }
+            readNanos = System.nanoTime() - start - readerWaitNanos;
+            Throwable failed = failure.get();
+            if (failed instanceof RuntimeException) {
+                throw (RuntimeException) failed; // a worker gave up, report its exception rather than partial results
+            }
+        }
+
+        /**
+         * @return a free batch, or null if a worker failed.
+         */
+        private LineBatch takeFree() throws IOException {
+            LineBatch batch = free.poll();
+            if (batch != null) {
+                return batch;
+            }
+            long start = System.nanoTime();
+            for (int attempt = 0; (batch = free.poll()) == null; attempt++) {
+                if (failure.get() != null) {
+                    break;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while waiting for a free batch");
+                }
+                idle(attempt);
+            }
+            readerWaitNanos += System.nanoTime() - start;
+            return batch;
+        }
+
+        private void publish(LineBatch batch) {
+            batchesRead++;
+            if (!full.offer(batch)) {
+                // there are no more batches than slots, only a worker still clearing the slot can get in the way
+                long start = System.nanoTime();
+                for (int attempt = 0; !full.offer(batch); attempt++) {
+                    idle(attempt);
+                }
+                readerWaitNanos += System.nanoTime() - start;
+            }
+        }
+
+        void work(int worker, FusedLineProcessor processor) {
+            try {
+                int attempt = 0;
+                long waitStart = System.nanoTime();
+                while (failure.get() == null) {
+                    LineBatch batch = full.poll();
+                    if (batch == null) {
+                        if (finished && (batch = full.poll()) == null) {
+                            break;
+                        }
+                        if (batch == null) {
+                            idle(attempt++);
+                            continue;
+                        }
+                    }
+                    long start = System.nanoTime();
+                    workerWaitNanos[worker] += start - waitStart;
+                    for (int i = 0; i < batch.size; i++) {
+                        processor.process(batch.lines[i]);
+                    }
+                    Arrays.fill(batch.lines, 0, batch.size, null);
+                    batch.size = 0;
+                    for (int spin = 0; !free.offer(batch); spin++) { // never full, see #publish(LineBatch)
+                        idle(spin);
+                    }
+                    batchesProcessed[worker]++;
+                    waitStart = System.nanoTime();
+                    processNanos[worker] += waitStart - start;
+                    attempt = 0;
+                }
+            } catch (RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            }
+        }
+
+        Stats stats(long elapsedNanos) {
+            return new Stats(processNanos.length, linesRead, batchesRead, readNanos, readerWaitNanos,
+                    sum(batchesProcessed), sum(processNanos), sum(workerWaitNanos), elapsedNanos);
+        }
+
+        private long sum(long[] values) {
+            long sum = 0;
+            for (long value : values) {
+                sum += value;
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Counters of one run of the pipeline. Times are in nanoseconds; worker times are summed over all the workers.
+     */
+    public static final class Stats {
+        private final int workers;
+        private final long lines;
+        private final long batchesRead;
+        private final long readNanos;
+        private final long readerWaitNanos;
+        private final long batchesProcessed;
+        private final long processNanos;
+        private final long workerWaitNanos;
+        private final long elapsedNanos;
+
+        Stats(int workers, long lines, long batchesRead, long readNanos, long readerWaitNanos, long batchesProcessed,
+              long processNanos, long workerWaitNanos, long elapsedNanos) {
+            this.workers = workers;
+            this.lines = lines;
+            this.batchesRead = batchesRead;
+            this.readNanos = readNanos;
+            this.readerWaitNanos = readerWaitNanos;
+            this.batchesProcessed = batchesProcessed;
+            this.processNanos = processNanos;
+            this.workerWaitNanos = workerWaitNanos;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return number of worker threads used.
+         */
+        public int getWorkers() {
+            return workers;
+        }
+
+        /**
+         * @return number of lines read.
+         */
+        public long getLines() {
+            return lines;
+        }
+
+        /**
+         * @return number of batches filled by the reader.
+         */
+        public long getBatchesRead() {
+            return batchesRead;
+        }
+
+        /**
+         * @return time the reader spent reading and decoding lines.
+         */
+        public long getReadNanos() {
+            return readNanos;
+        }
+
+        /**
+         * @return time the reader spent waiting for the workers to free a batch.
+         */
+        public long getReaderWaitNanos() {
+            return readerWaitNanos;
+        }
+
+        /**
+         * @return number of batches processed by the workers.
+         */
+        public long getBatchesProcessed() {
+            return batchesProcessed;
+        }
+
+        /**
+         * @return time the workers spent applying the processors.
+         */
+        public long getProcessNanos() {
+            return processNanos;
+        }
+
+        /**
+         * @return time the workers spent waiting for the reader to fill a batch.
+         */
+        public long getWorkerWaitNanos() {
+            return workerWaitNanos;
+        }
+
+        /**
+         * @return wall clock time of the whole run.
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "workers=" + workers + ", lines=" + lines + ", batches read=" + batchesRead +
+                    ", batches processed=" + batchesProcessed + ", read ms=" + readNanos / 1_000_000 +
+                    ", reader wait ms=" + readerWaitNanos / 1_000_000 + ", process ms=" + processNanos / 1_000_000 +
+                    ", worker wait ms=" + workerWaitNanos / 1_000_000 + ", elapsed ms=" + elapsedNanos / 1_000_000;
+        }
+    }
+}
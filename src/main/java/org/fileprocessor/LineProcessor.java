@@ -18,6 +18,16 @@ public interface LineProcessor {
      */
     void process(String line);
 
+    /**
+     * Same as @see #process(String) for callers that hold the line in a reusable buffer, such as the memory-mapped reader
+     * of @link org.fileprocessor.DefaultFileProcessor. The sequence is only valid during the call: implementations must copy
+     * whatever they want to keep. By default the line is turned into a String, override it to avoid that copy.
+     * @param line to be processed as read from the file
+     */
+    default void process(CharSequence line) {
+        process(line == null ? null : line.toString());
+    }
+
     /**
      * Pretty prints the desired statistics
      * @return String representing the stats calculated from all lines in a File.
@@ -36,4 +46,15 @@ public interface LineProcessor {
      * @return Name-value KV map of all the stats
      */
     Map<String,Object> getKVForProcessedLines();
+
+    /**
+     * Stats reported while a file is still being processed, by the snapshots of @link org.fileprocessor.StatsPublisher. They
+     * are taken on the processing thread, in between lines, so they have to be cheap. By default all of them, as given by
+     * @see #getKVForProcessedLines(); processors whose stats take more than counters to compute, e.g. walking their tables
+     * for the most frequent words, should override it to leave those out. The last snapshot of a file has all the stats.
+     * @return Name-value KV map of some of the stats, keyed like the full ones
+     */
+    default Map<String,Object> getSnapshotKV() {
+        return getKVForProcessedLines();
+    }
 }
\ No newline at end of file
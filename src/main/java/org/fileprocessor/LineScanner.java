@@ -0,0 +1,169 @@
+package org.fileprocessor;
+
+import java.util.Arrays;
+
+/**
+ * Single pass tokenizer that splits a line in words the same way @link org.fileprocessor.DefaultLineProcessor always did
+ * with regular expressions (trim, drop everything but letters, decimal digits and whitespace, collapse whitespace and split
+ * on blanks) but without creating intermediate Strings, arrays or matchers.
+ *
+ * Words are handed to a @link LineScanner.WordSink through a buffer owned by the scanner that is reused for every word, so
+ * sinks must copy whatever they want to keep. Instances are therefore not thread safe: use one scanner per thread.
+ *
+ * Note the regex based split produces a few "empty" words that are kept for compatibility: a line that is empty after
+ * sanitising counts as one empty word, and a line whose first surviving character is a blank gets an extra leading empty
+ * word if it contains any other word.
+ *
+ * Chars below 256 (ASCII and Latin-1, i.e. nearly all the text in most corpora) are classified with a lookup table; the
+ * Unicode letter and digit classes are only consulted for the other chars. When the line is a view over bytes, as handed out
+ * by @link org.fileprocessor.MappedLineReader, the end of each run of ASCII letters and digits is found with a
+ * @link org.fileprocessor.ByteScanner instead of char by char.
+ */
+public final class LineScanner {
+
+    /**
+     * Receives the words found in a line, in order.
+     */
+    public interface WordSink {
+        /**
+         * @param chars buffer holding the word in its first length positions. Only valid during the call.
+         * @param length number of UTF-16 chars in the word. Can be zero, see @link org.fileprocessor.LineScanner.
+         */
+        void word(char[] chars, int length);
+    }
+
+    private static final byte OTHER = 0;
+    private static final byte WORD = 1;
+    private static final byte BLANK = 2;
+
+    /**
+     * Number of chars classified by table lookup.
+     */
+    static final int TABLE_SIZE = 256;
+
+    // built from the predicates below, so both ways of classifying a char always agree
+    private static final byte[] CLASSES = new byte[TABLE_SIZE];
+
+    static {
+        for (char c = 0; c < TABLE_SIZE; c++) {
+            CLASSES[c] = isWordCodePoint(c) ? WORD : isBlank(c) ? BLANK : OTHER;
+        }
+    }
+
+    private final ByteScanner byteScanner;
+    private char[] word = new char[64];
+
+    /**
+     * Creates a scanner that finds ASCII runs in byte views with the fastest byte scanner available in this JVM.
+     */
+    public LineScanner() {
+        this(ByteScanner.get());
+    }
+
+    LineScanner(ByteScanner byteScanner) {
+        this.byteScanner = byteScanner;
+    }
+
+    /**
+     * Splits a line in words and hands them to the given sink.
+     * @param line line to be scanned, without line terminators.
+     * @param sink receiver of the words found.
+     */
+    public void scan(CharSequence line, WordSink sink) {
+        int start = 0;
+        int end = line.length();
+        // same as String.trim()
+        while (start < end && line.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        MappedLineReader.ByteCharSequence bytes = line instanceof MappedLineReader.ByteCharSequence
+                ? (MappedLineReader.ByteCharSequence) line : null;
+        int length = 0;
+        int words = 0;
+        boolean inWord = false;
+        boolean survived = false; // did any letter, digit or blank survive sanitising so far
+        boolean leadingBlank = false;
+        int i = start;
+        while (i < end) {
+            char c = line.charAt(i);
+            int charCount = 1;
+            byte kind;
+            if (c < TABLE_SIZE) {
+                kind = CLASSES[c];
+            } else {
+                int codePoint = c;
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(line.charAt(i + 1))) {
+                    codePoint = Character.toCodePoint(c, line.charAt(i + 1));
+                    charCount = 2;
+                }
+                kind = isWordCodePoint(codePoint) ? WORD : OTHER; // all blanks are below the table size
+            }
+            if (kind == WORD) {
+                if (!inWord) {
+                    inWord = true;
+                    if (leadingBlank && words == 0) {
+                        sink.word(word, 0);
+                    }
+                    words++;
+                }
+                reserve(length + charCount);
+                word[length++] = c;
+                if (charCount == 2) {
+                    word[length++] = line.charAt(i + 1);
+                }
+                survived = true;
+                if (bytes != null && c < 128) {
+                    // copy the rest of the ASCII run at once, it can only be part of this word
+                    int offset = bytes.offset();
+                    int runEnd = byteScanner.indexOfNonAlphanumeric(bytes.buffer(), offset + i + 1, offset + end) - offset;
+                    reserve(length + runEnd - i);
+                    for (int j = i + 1; j < runEnd; j++) {
+                        word[length++] = (char) bytes.buffer().get(offset + j);
+                    }
+                    i = runEnd;
+                    continue;
+                }
+            } else if (kind == BLANK) {
+                if (!survived) {
+                    leadingBlank = true;
+                }
+                survived = true;
+                if (inWord) {
+                    sink.word(word, length);
+                    length = 0;
+                    inWord = false;
+                }
+            }
+            i += charCount;
+        }
+        if (inWord) {
+            sink.word(word, length);
+        } else if (!survived) {
+            sink.word(word, 0);
+        }
+    }
+
+    private void reserve(int size) {
+        if (size > word.length) {
+            word = Arrays.copyOf(word, Math.max(word.length * 2, size));
+        }
+    }
+
+    /**
+     * Equivalent to the regular expression classes \p{L} and \p{Nd}.
+     */
+    static boolean isWordCodePoint(int codePoint) {
+        return Character.isLetter(codePoint) || Character.isDigit(codePoint);
+    }
+
+    /**
+     * Equivalent to the regular expression class \s, i.e. [ \t\n\x0B\f\r].
+     */
+    static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
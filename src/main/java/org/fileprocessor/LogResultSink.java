@@ -0,0 +1,33 @@
+package org.fileprocessor;
+
+import org.apache.log4j.Logger;
+
+import java.util.List;
+
+/**
+ * Writes results to the log at info level, one entry per call. Processor output is only built if info is enabled.
+ */
+final class LogResultSink implements ResultSink {
+
+    private final static Logger logger = Logger.getLogger(LogResultSink.class.getName());
+
+    @Override
+    public void processed(String source, ProcessingResult result, List<? extends LineProcessor> processors) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
+        StringBuilder output = new StringBuilder("Processed ").append(source);
+        for (LineProcessor processor : processors) {
+            if (processor != null) {
+                output.append("\nOutput for processor: ").append(processor.getClass().getName()).append('\n');
+                output.append(processor.printProcessedLines());
+            }
+        }
+        logger.info(output);
+    }
+
+    @Override
+    public void failed(String source, String message, ProcessingResult error) {
+        logger.info(error.getText());
+    }
+}
@@ -0,0 +1,256 @@
+package org.fileprocessor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Reads lines straight from memory-mapped windows of a file. Line terminators are found in the mapped bytes and each line
+ * is handed over as a reusable CharSequence: a view over the mapped bytes when the line is ASCII (or the file ISO-8859-1),
+ * or a reusable decoding buffer otherwise. No String is created per line.
+ *
+ * Callers that can work on raw bytes can get the mapped bytes of each line instead, and decode only when needed with
+ * #view(ByteBuffer, int, int).
+ *
+ * Lines are split exactly as java.io.BufferedReader#readLine does, on '\n', '\r' or "\r\n". Only UTF-8, ISO-8859-1 and
+ * US-ASCII are supported, see #isSupported(Charset). Line breaks and non-ASCII bytes are looked for with a
+ * @link org.fileprocessor.ByteScanner. Instances are not thread safe.
+ */
+class MappedLineReader {
+
+    /**
+     * Receives the raw bytes of each line, without its terminator.
+     */
+    interface RawLineConsumer {
+        /**
+         * @param buffer read-only buffer holding the line. Only valid during the call.
+         * @param offset index of the first byte of the line.
+         * @param length number of bytes in the line.
+         * @throws IOException if the line cannot be processed, e.g. it cannot be decoded.
+         */
+        void accept(ByteBuffer buffer, int offset, int length) throws IOException;
+    }
+
+    /**
+     * Default size of the mapped windows. Windows grow if a single line does not fit in one.
+     */
+    static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final Charset charset;
+    private final CharsetDecoder decoder;
+    private final int windowSize;
+    private final ByteScanner scanner;
+    private final ByteCharSequence byteView = new ByteCharSequence();
+    private CharBuffer decoded = CharBuffer.allocate(1024);
+
+    MappedLineReader(Charset charset) {
+        this(charset, WINDOW_SIZE);
+    }
+
+    MappedLineReader(Charset charset, int windowSize) {
+        this(charset, windowSize, ByteScanner.get());
+    }
+
+    MappedLineReader(Charset charset, int windowSize, ByteScanner scanner) {
+        this.scanner = scanner;
+        this.charset = charset;
+        this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @param charset encoding of the file.
+     * @return true if lines in the given encoding can be found and viewed without a full decoding pass.
+     */
+    static boolean isSupported(Charset charset) {
+        return StandardCharsets.UTF_8.equals(charset) || StandardCharsets.ISO_8859_1.equals(charset)
+                || StandardCharsets.US_ASCII.equals(charset);
+    }
+
+    /**
+     * Reads all the lines in the given byte range. The range is expected to start at the beginning of a line.
+     * @param channel file to be read.
+     * @param from offset of the first byte to read.
+     * @param to offset after the last byte to read.
+     * @param consumer receives every line. The CharSequence is only valid during the call.
+     * @throws IOException if the file cannot be mapped or its content is not valid in the charset of this reader.
+     */
+    void read(FileChannel channel, long from, long to, Consumer<CharSequence> consumer) throws IOException {
+        read(channel, from, to, (buffer, offset, length) -> consumer.accept(view(buffer, offset, length)));
+    }
+
+    /**
+     * Reads the raw bytes of all the lines in the given byte range. The range is expected to start at the beginning of a line.
+     * @param channel file to be read.
+     * @param from offset of the first byte to read.
+     * @param to offset after the last byte to read.
+     * @param consumer receives the bytes of every line.
+     * @throws IOException if the file cannot be mapped or the consumer fails.
+     */
+    void read(FileChannel channel, long from, long to, RawLineConsumer consumer) throws IOException {
+        long windowStart = from;
+        int size = windowSize;
+        while (windowStart < to) {
+            long windowLength = Math.min(size, to - windowStart);
+            ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength).asReadOnlyBuffer();
+            boolean lastWindow = windowStart + windowLength >= to;
+            int lineStart = split(window, 0, (int) windowLength, lastWindow, consumer);
+            if (lastWindow) {
+                return;
+            }
+            if (lineStart == 0) {
+                // a single line does not fit in the window
+                size = (int) Math.min(Integer.MAX_VALUE, (long) size * 2);
+            } else {
+                size = windowSize;
+            }
+            windowStart += lineStart;
+        }
+    }
+
+    /**
+     * Reads all the lines held in a buffer, e.g. decompressed data. The range is expected to start at the beginning of a line
+     * and to end at the end of the last one.
+     * @param buffer bytes to be read.
+     * @param from index of the first byte to read.
+     * @param to index after the last byte to read.
+     * @param consumer receives the bytes of every line.
+     * @throws IOException if the consumer fails.
+     */
+    void read(ByteBuffer buffer, int from, int to, RawLineConsumer consumer) throws IOException {
+        split(buffer.asReadOnlyBuffer(), from, to, true, consumer);
+    }
+
+    /**
+     * Hands every complete line in [from, limit) to the consumer.
+     * @param last whether the input ends at limit, so that a trailing line without terminator is complete.
+     * @return index where the first incomplete line starts, or limit if there is none.
+     */
+    private int split(ByteBuffer window, int from, int limit, boolean last, RawLineConsumer consumer) throws IOException {
+        int lineStart = from;
+        int i = scanner.indexOfLineBreak(window, from, limit);
+        while (i < limit) {
+            byte b = window.get(i);
+            if (b == '\r' && i + 1 == limit && !last) {
+                break; // need the next byte to know whether this is "\r\n"
+            }
+            consumer.accept(window, lineStart, i - lineStart);
+            i += (b == '\r' && i + 1 < limit && window.get(i + 1) == '\n') ? 2 : 1;
+            lineStart = i;
+            i = scanner.indexOfLineBreak(window, i, limit);
+        }
+        if (last && lineStart < limit) {
+            consumer.accept(window, lineStart, limit - lineStart);
+            return limit;
+        }
+        return lineStart;
+    }
+
+    /**
+     * Returns the text of a line, as a view over its bytes if possible or decoded into a reusable buffer otherwise.
+     * @param buffer buffer holding the line.
+     * @param offset index of the first byte of the line.
+     * @param length number of bytes in the line.
+     * @return the line, only valid until the next call to this method.
+     * @throws CharacterCodingException if the line is not valid in the charset of this reader.
+     */
+    CharSequence view(ByteBuffer buffer, int offset, int length) throws CharacterCodingException {
+        if (StandardCharsets.ISO_8859_1.equals(charset) || scanner.isAscii(buffer, offset, offset + length)) {
+            return byteView.wrap(buffer, offset, length);
+        }
+        if (StandardCharsets.US_ASCII.equals(charset)) {
+            throw new MalformedInputException(1);
+        }
+        return decode(buffer, offset, length);
+    }
+
+    private CharBuffer decode(ByteBuffer buffer, int offset, int length) throws CharacterCodingException {
+        ByteBuffer line = buffer.duplicate();
+        line.limit(offset + length).position(offset);
+        if (decoded.capacity() < length) { // UTF-8 never needs more chars than bytes
+            decoded = CharBuffer.allocate(Math.max(length, decoded.capacity() * 2));
+        }
+        decoded.clear();
+        decoder.reset();
+        CoderResult result = decoder.decode(line, decoded, true);
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+        result = decoder.flush(decoded);
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+        decoded.flip();
+        return decoded;
+    }
+
+    /**
+     * CharSequence view over single byte characters held in a ByteBuffer.
+     */
+    static final class ByteCharSequence implements CharSequence {
+        private ByteBuffer buffer;
+        private int offset;
+        private int length;
+
+        /**
+         * @return buffer holding the chars, to be read with absolute positions.
+         */
+        ByteBuffer buffer() {
+            return buffer;
+        }
+
+        /**
+         * @return index in the buffer of the first char.
+         */
+        int offset() {
+            return offset;
+        }
+
+        ByteCharSequence wrap(ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+            }
+            return (char) (buffer.get(offset + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+            }
+            return new ByteCharSequence().wrap(buffer, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) (buffer.get(offset + i) & 0xFF);
+            }
+            return new String(chars);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.fileprocessor;
+
+import java.util.List;
+
+/**
+ * A @link org.fileprocessor.LineProcessor whose accumulated state can be split across independent instances and later
+ * combined into one. This is what allows a file to be processed in several pieces (e.g. byte ranges processed on different
+ * threads) while still reporting a single set of statistics.
+ *
+ * Implementations must guarantee that processing lines L1 and L2 on two fresh instances and merging the second one into
+ * the first yields the same statistics as processing L1 followed by L2 on a single instance. In other words, merging has to
+ * be associative and a fresh instance has to be its identity, so partial states computed over shards, files or machines
+ * can be reduced in any grouping. Implementations meant to travel between machines should also be java.io.Serializable.
+ *
+ * Merging also has to be commutative, and the statistics must not depend on the order of the lines: merging the first
+ * instance into the second gives the same statistics, and so does processing L2 before L1. Not every caller keeps file
+ * order: @link org.fileprocessor.LinePipeline hands batches of lines to whichever worker is free, and
+ * @link org.fileprocessor.BatchFileProcessor merges files as they complete. Processors backed by sketches (e.g.
+ * @link org.fileprocessor.ApproximateLineProcessor) may give slightly different estimates for different orders, but
+ * always within their stated error bounds. Processors that need file order, e.g. to report the first or the last line,
+ * should not implement this interface.
+ *
+ * @param <T> concrete type of the processor, so that merges are type safe.
+ */
+public interface MergeableLineProcessor<T extends MergeableLineProcessor<T>> extends LineProcessor {
+
+    /**
+     * Creates a new, empty instance configured as this one, that can be used to process a separate piece of the input.
+     * @return fresh processor with no accumulated state.
+     */
+    T newInstance();
+
+    /**
+     * Adds the state accumulated by another processor to this one. The other processor is left untouched.
+     * @param other processor whose partial results are to be added to this one.
+     */
+    void merge(T other);
+
+    /**
+     * Associative combination of this processor and another one, leaving both of them untouched.
+     * @param other processor whose partial results are to be combined with this one.
+     * @return new processor holding the state of both.
+     */
+    @SuppressWarnings("unchecked")
+    default T combine(T other) {
+        T combined = newInstance();
+        combined.merge((T) this);
+        combined.merge(other);
+        return combined;
+    }
+
+    /**
+     * Reduces a list of partial states, e.g. one per shard, into a single processor. None of the partials are modified.
+     * @param partials non-empty list of processors created from the same prototype.
+     * @param <T> concrete type of the processors.
+     * @return new processor holding the state of all the partials.
+     */
+    static <T extends MergeableLineProcessor<T>> T reduce(List<T> partials) {
+        if (partials == null || partials.isEmpty()) {
+            throw new IllegalArgumentException("Need at least one partial state to reduce");
+        }
+        T reduced = partials.get(0).newInstance();
+        for (T partial : partials) {
+            reduced.merge(partial);
+        }
+        return reduced;
+    }
+}
@@ -0,0 +1,619 @@
+package org.fileprocessor;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Word counter for vocabularies too large for Java object maps: words are kept as UTF-8 bytes with a long counter each,
+ * outside the Java heap, so hundreds of millions of them cost no objects and no garbage collection work.
+ *
+ * Words and counters are appended to an arena of buffers, and an open addressing index (hash and reference of every word,
+ * at most half full) finds them again; counting a word that is already there allocates nothing. About 40 bytes plus the
+ * UTF-8 bytes of each word are taken in total. By default buffers are direct memory; given a spill directory, they are
+ * memory-mapped files in it instead, which the operating system writes out to disk when memory runs short, so the table
+ * can outgrow the RAM. The files are deleted as soon as they are mapped (where the platform allows it), and all memory is
+ * released once the table is garbage collected.
+ *
+ * For final reporting, #forEach(Order, WordVisitor) visits the words sorted by word or by count, sorting references to
+ * them outside the heap as well. Tables are not thread safe.
+ */
+public final class OffHeapWordTable implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final static Logger logger = Logger.getLogger(OffHeapWordTable.class.getName());
+
+    /**
+     * Order in which #forEach(Order, WordVisitor) visits the words.
+     */
+    public enum Order {
+        /**
+         * By UTF-8 bytes, which is the order of their Unicode code points.
+         */
+        WORD,
+        /**
+         * Most frequent first, ties by word.
+         */
+        COUNT
+    }
+
+    /**
+     * Receives the words of a table.
+     */
+    @FunctionalInterface
+    public interface WordVisitor {
+        /**
+         * @param word buffer holding the UTF-8 bytes of the word, only valid during the call, e.g.
+         *             new String(word, 0, length, StandardCharsets.UTF_8).
+         * @param length number of bytes of the word in the buffer.
+         * @param count number of occurrences of the word.
+         */
+        void visit(byte[] word, int length, long count);
+    }
+
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int INITIAL_SEGMENT = 64 * 1024;
+    private static final int MAX_SEGMENT = 256 * 1024 * 1024;
+    // count and length before the bytes of every word
+    private static final int HEADER = 8 + 4;
+    private static final int INSERTION_SORT_SIZE = 16;
+
+    private final String spillDirectory;
+
+    private transient Longs index; // hash and reference + 1 of every slot, 0 if empty
+    private transient long slotMask;
+    private transient List<ByteBuffer> segments;
+    private transient List<Integer> segmentEnds;
+    private transient ByteBuffer current;
+    private transient long size;
+    private transient long total;
+    private transient byte[] scratch;
+
+    /**
+     * Creates a table in direct memory.
+     */
+    public OffHeapWordTable() {
+        this((Path) null);
+    }
+
+    /**
+     * @param spillDirectory directory for the files the table is mapped to, or null for direct memory.
+     */
+    public OffHeapWordTable(Path spillDirectory) {
+        this.spillDirectory = spillDirectory == null ? null : spillDirectory.toString();
+        init();
+    }
+
+    private void init() {
+        index = new Longs(INITIAL_SLOTS * 2L, spillDirectory());
+        slotMask = INITIAL_SLOTS - 1;
+        segments = new ArrayList<>();
+        segmentEnds = new ArrayList<>();
+        current = null;
+        size = 0;
+        total = 0;
+        scratch = new byte[64];
+    }
+
+    private Path spillDirectory() {
+        return spillDirectory == null ? null : Paths.get(spillDirectory);
+    }
+
+    /**
+     * Counts one occurrence of a word.
+     * @param word buffer holding the word.
+     * @param length number of chars of the word in the buffer.
+     * @return number of occurrences of the word so far.
+     */
+    public long add(char[] word, int length) {
+        int bytes = encode(word, length);
+        return add(scratch, 0, bytes, 1);
+    }
+
+    /**
+     * Counts occurrences of a word.
+     * @param word word seen.
+     * @param occurrences number of times it has been seen.
+     * @return number of occurrences of the word so far.
+     */
+    public long add(CharSequence word, long occurrences) {
+        byte[] utf8 = word.toString().getBytes(StandardCharsets.UTF_8);
+        return add(utf8, 0, utf8.length, occurrences);
+    }
+
+    /**
+     * Counts occurrences of a word given as UTF-8 bytes.
+     * @param utf8 buffer holding the word.
+     * @param offset index of the first byte of the word.
+     * @param length number of bytes of the word.
+     * @param occurrences number of times it has been seen.
+     * @return number of occurrences of the word so far.
+     */
+    public long add(byte[] utf8, int offset, int length, long occurrences) {
+        long hash = hash(utf8, offset, length);
+        for (long slot = hash & slotMask; ; slot = (slot + 1) & slotMask) {
+            long reference = index.get(2 * slot + 1);
+            if (reference == 0) {
+                total += occurrences;
+                insert(slot, hash, utf8, offset, length, occurrences);
+                return occurrences;
+            }
+            if (index.get(2 * slot) == hash && equals(reference - 1, utf8, offset, length)) {
+                total += occurrences;
+                ByteBuffer segment = segments.get((int) ((reference - 1) >>> 32));
+                int position = (int) (reference - 1);
+                long count = segment.getLong(position) + occurrences;
+                segment.putLong(position, count);
+                return count;
+            }
+        }
+    }
+
+    /**
+     * @param word word to look up.
+     * @return number of occurrences of the word, 0 if it has not been seen.
+     */
+    public long get(CharSequence word) {
+        byte[] utf8 = word.toString().getBytes(StandardCharsets.UTF_8);
+        long hash = hash(utf8, 0, utf8.length);
+        for (long slot = hash & slotMask; ; slot = (slot + 1) & slotMask) {
+            long reference = index.get(2 * slot + 1);
+            if (reference == 0) {
+                return 0;
+            }
+            if (index.get(2 * slot) == hash && equals(reference - 1, utf8, 0, utf8.length)) {
+                return segments.get((int) ((reference - 1) >>> 32)).getLong((int) (reference - 1));
+            }
+        }
+    }
+
+    private void insert(long slot, long hash, byte[] utf8, int offset, int length, long occurrences) {
+        int record = HEADER + length;
+        if (current == null || current.capacity() - current.position() < record) {
+            int capacity = current == null ? INITIAL_SEGMENT : (int) Math.min(MAX_SEGMENT, current.capacity() * 2L);
+            current = allocate(Math.max(capacity, record), spillDirectory());
+            segments.add(current);
+            segmentEnds.add(0);
+        }
+        int position = current.position();
+        current.putLong(occurrences).putInt(length).put(utf8, offset, length);
+        segmentEnds.set(segments.size() - 1, current.position());
+        long reference = ((long) (segments.size() - 1) << 32) | position;
+        index.set(2 * slot, hash);
+        index.set(2 * slot + 1, reference + 1);
+        if (++size * 2 > slotMask + 1) {
+            resize();
+        }
+    }
+
+    /**
+     * Doubles the index. Words stay where they are, only their hashes and references move.
+     */
+    private void resize() {
+        long slots = (slotMask + 1) * 2;
+        Longs larger = new Longs(slots * 2, spillDirectory());
+        long mask = slots - 1;
+        for (long slot = 0; slot <= slotMask; slot++) {
+            long reference = index.get(2 * slot + 1);
+            if (reference != 0) {
+                long hash = index.get(2 * slot);
+                long to = hash & mask;
+                while (larger.get(2 * to + 1) != 0) {
+                    to = (to + 1) & mask;
+                }
+                larger.set(2 * to, hash);
+                larger.set(2 * to + 1, reference);
+            }
+        }
+        index = larger;
+        slotMask = mask;
+        if (logger.isDebugEnabled()) {
+            logger.debug("Word table index grown to " + slots + " slots for " + size + " words");
+        }
+    }
+
+    private boolean equals(long reference, byte[] utf8, int offset, int length) {
+        ByteBuffer segment = segments.get((int) (reference >>> 32));
+        int position = (int) reference;
+        if (segment.getInt(position + 8) != length) {
+            return false;
+        }
+        position += HEADER;
+        for (int i = 0; i < length; i++) {
+            if (segment.get(position + i) != utf8[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds all the words counted by another table to this one. The other table is left untouched.
+     * @param other table to be added.
+     */
+    public void merge(OffHeapWordTable other) {
+        other.forEach((word, length, count) -> add(word, 0, length, count));
+    }
+
+    /**
+     * Visits all the words in no particular order.
+     * @param visitor receives every word and its count.
+     */
+    public void forEach(WordVisitor visitor) {
+        for (int s = 0; s < segments.size(); s++) {
+            ByteBuffer segment = segments.get(s);
+            int end = segmentEnds.get(s);
+            for (int position = 0; position < end; ) {
+                int length = segment.getInt(position + 8);
+                visitor.visit(read(segment, position, length), length, segment.getLong(position));
+                position += HEADER + length;
+            }
+        }
+    }
+
+    /**
+     * Visits all the words in the given order. Words are sorted outside the heap, in direct memory or in the spill directory,
+     * taking 16 bytes per word for the duration of the call.
+     * @param order order of the visits.
+     * @param visitor receives every word and its count.
+     */
+    public void forEach(Order order, WordVisitor visitor) {
+        boolean byCount = order == Order.COUNT;
+        // a sort key and a reference per word: the words themselves are only read when keys are equal
+        Longs entries = new Longs(Math.max(2, 2 * size), spillDirectory());
+        long entry = 0;
+        for (int s = 0; s < segments.size(); s++) {
+            ByteBuffer segment = segments.get(s);
+            int end = segmentEnds.get(s);
+            for (int position = 0; position < end; position += HEADER + segment.getInt(position + 8)) {
+                entries.set(2 * entry, key(segment, position, byCount));
+                entries.set(2 * entry + 1, ((long) s << 32) | position);
+                entry++;
+            }
+        }
+        sort(entries, 0, size, byCount, 2 * (64 - Long.numberOfLeadingZeros(Math.max(1, size))));
+        for (long i = 0; i < size; i++) {
+            long reference = entries.get(2 * i + 1);
+            ByteBuffer segment = segments.get((int) (reference >>> 32));
+            int position = (int) reference;
+            int length = segment.getInt(position + 8);
+            visitor.visit(read(segment, position, length), length, segment.getLong(position));
+        }
+    }
+
+    /**
+     * @return the complement of the count, or the first 8 bytes of the word padded with zeros: unsigned keys in the same
+     * order as the words, unless they are equal.
+     */
+    private static long key(ByteBuffer segment, int position, boolean byCount) {
+        if (byCount) {
+            return ~segment.getLong(position);
+        }
+        int length = Math.min(8, segment.getInt(position + 8));
+        long key = 0;
+        for (int i = 0; i < 8; i++) {
+            key = (key << 8) | (i < length ? Byte.toUnsignedInt(segment.get(position + HEADER + i)) : 0);
+        }
+        return key;
+    }
+
+    private byte[] read(ByteBuffer segment, int position, int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        segment.get(position + HEADER, scratch, 0, length);
+        return scratch;
+    }
+
+    /**
+     * Introsort of (key, reference) pairs: quicksort on the median of three, heapsort past the depth limit, insertion sort
+     * for short ranges.
+     */
+    private void sort(Longs entries, long from, long to, boolean byCount, int depth) {
+        while (to - from > INSERTION_SORT_SIZE) {
+            if (depth-- == 0) {
+                heapSort(entries, from, to, byCount);
+                return;
+            }
+            long middle = from + (to - from) / 2;
+            long last = to - 1;
+            if (compare(entries, middle, from, byCount) < 0) {
+                swap(entries, middle, from);
+            }
+            if (compare(entries, last, from, byCount) < 0) {
+                swap(entries, last, from);
+            }
+            if (compare(entries, last, middle, byCount) < 0) {
+                swap(entries, last, middle);
+            }
+            long pivotKey = entries.get(2 * middle);
+            long pivot = entries.get(2 * middle + 1);
+            long i = from;
+            long j = last;
+            while (i <= j) {
+                while (compare(entries.get(2 * i), entries.get(2 * i + 1), pivotKey, pivot, byCount) < 0) {
+                    i++;
+                }
+                while (compare(entries.get(2 * j), entries.get(2 * j + 1), pivotKey, pivot, byCount) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(entries, i++, j--);
+                }
+            }
+            // recurse into the smaller side, loop on the larger one
+            if (j - from < to - i) {
+                sort(entries, from, j + 1, byCount, depth);
+                from = i;
+            } else {
+                sort(entries, i, to, byCount, depth);
+                to = j + 1;
+            }
+        }
+        for (long i = from + 1; i < to; i++) {
+            long key = entries.get(2 * i);
+            long reference = entries.get(2 * i + 1);
+            long j = i - 1;
+            while (j >= from && compare(entries.get(2 * j), entries.get(2 * j + 1), key, reference, byCount) > 0) {
+                entries.set(2 * j + 2, entries.get(2 * j));
+                entries.set(2 * j + 3, entries.get(2 * j + 1));
+                j--;
+            }
+            entries.set(2 * j + 2, key);
+            entries.set(2 * j + 3, reference);
+        }
+    }
+
+    private void heapSort(Longs entries, long from, long to, boolean byCount) {
+        long n = to - from;
+        for (long i = n / 2 - 1; i >= 0; i--) {
+            siftDown(entries, from, i, n, byCount);
+        }
+        for (long end = n - 1; end > 0; end--) {
+            swap(entries, from, from + end);
+            siftDown(entries, from, 0, end, byCount);
+        }
+    }
+
+    private void siftDown(Longs entries, long from, long i, long n, boolean byCount) {
+        while (2 * i + 1 < n) {
+            long child = 2 * i + 1;
+            if (child + 1 < n && compare(entries, from + child + 1, from + child, byCount) > 0) {
+                child++;
+            }
+            if (compare(entries, from + child, from + i, byCount) <= 0) {
+                return;
+            }
+            swap(entries, from + i, from + child);
+            i = child;
+        }
+    }
+
+    private static void swap(Longs entries, long i, long j) {
+        entries.swap(2 * i, 2 * j);
+        entries.swap(2 * i + 1, 2 * j + 1);
+    }
+
+    private int compare(Longs entries, long i, long j, boolean byCount) {
+        return compare(entries.get(2 * i), entries.get(2 * i + 1), entries.get(2 * j), entries.get(2 * j + 1), byCount);
+    }
+
+    private int compare(long keyA, long a, long keyB, long b, boolean byCount) {
+        int byKey = Long.compareUnsigned(keyA, keyB);
+        return byKey != 0 ? byKey : compare(a, b, byCount);
+    }
+
+    private int compare(long a, long b, boolean byCount) {
+        ByteBuffer segmentA = segments.get((int) (a >>> 32));
+        ByteBuffer segmentB = segments.get((int) (b >>> 32));
+        int positionA = (int) a;
+        int positionB = (int) b;
+        if (byCount) {
+            int byCounts = Long.compare(segmentB.getLong(positionB), segmentA.getLong(positionA));
+            if (byCounts != 0) {
+                return byCounts;
+            }
+        }
+        int lengthA = segmentA.getInt(positionA + 8);
+        int lengthB = segmentB.getInt(positionB + 8);
+        int length = Math.min(lengthA, lengthB);
+        for (int i = 0; i < length; i++) {
+            int diff = Byte.toUnsignedInt(segmentA.get(positionA + HEADER + i)) - Byte.toUnsignedInt(segmentB.get(positionB + HEADER + i));
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return lengthA - lengthB;
+    }
+
+    /**
+     * @return number of distinct words.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return number of occurrences counted, of all words.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return bytes taken outside the heap by the index and the words.
+     */
+    public long getBytes() {
+        long bytes = index.length() * 8;
+        for (ByteBuffer segment : segments) {
+            bytes += segment.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Encodes chars as UTF-8 into the scratch buffer, the way String.getBytes does: unpaired surrogates become '?'.
+     * @return number of bytes.
+     */
+    private int encode(char[] word, int length) {
+        if (scratch.length < length * 3) {
+            scratch = new byte[Math.max(length * 3, scratch.length * 2)];
+        }
+        byte[] bytes = scratch;
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            char c = word[i];
+            if (c < 0x80) {
+                bytes[count++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[count++] = (byte) (0xC0 | (c >> 6));
+                bytes[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(word[i + 1])) {
+                    int codePoint = Character.toCodePoint(c, word[++i]);
+                    bytes[count++] = (byte) (0xF0 | (codePoint >> 18));
+                    bytes[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    bytes[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    bytes[count++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    bytes[count++] = '?';
+                }
+            } else {
+                bytes[count++] = (byte) (0xE0 | (c >> 12));
+                bytes[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Same mixing as @see HyperLogLog#hash(char[], int), over bytes.
+     */
+    private static long hash(byte[] bytes, int offset, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (bytes[i] & 0xFF)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Allocates a zeroed buffer, in direct memory or mapped to a new file in the given directory, in the native byte order
+     * so that longs are read and written without swapping their bytes.
+     */
+    private static ByteBuffer allocate(int bytes, Path directory) {
+        if (directory == null) {
+            return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
+        try {
+            Path file = Files.createTempFile(directory, "words", ".bin");
+            ByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes); // the file grows to the size mapped
+            }
+            try {
+                Files.delete(file); // the mapping stays valid on POSIX systems
+            } catch (IOException stillMapped) {
+                file.toFile().deleteOnExit();
+            }
+            return buffer.order(ByteOrder.nativeOrder());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't map word table file in " + directory, e);
+        }
+    }
+
+    /**
+     * Array of longs across as many buffers as needed, since a buffer holds at most 2 GB.
+     */
+    private static final class Longs {
+        private static final int SEGMENT_BITS = 27; // 1 GB per buffer
+        private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+        private final ByteBuffer[] buffers;
+        private final long length;
+
+        Longs(long length, Path directory) {
+            this.length = length;
+            buffers = new ByteBuffer[(int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS)];
+            for (int i = 0; i < buffers.length; i++) {
+                long longs = Math.min(SEGMENT_MASK + 1, length - ((long) i << SEGMENT_BITS));
+                buffers[i] = allocate((int) (longs * 8), directory);
+            }
+        }
+
+        long get(long i) {
+            return buffers[(int) (i >>> SEGMENT_BITS)].getLong((int) (i & SEGMENT_MASK) << 3);
+        }
+
+        void set(long i, long value) {
+            buffers[(int) (i >>> SEGMENT_BITS)].putLong((int) (i & SEGMENT_MASK) << 3, value);
+        }
+
+        void swap(long i, long j) {
+            long value = get(i);
+            set(i, get(j));
+            set(j, value);
+        }
+
+        long length() {
+            return length;
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeLong(size);
+        try {
+            forEach((word, length, count) -> {
+                try {
+                    out.writeInt(length);
+                    out.write(word, 0, length);
+                    out.writeLong(count);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (spillDirectory != null && !Files.isDirectory(Paths.get(spillDirectory))) {
+            throw new IOException("Spill directory of word table not found: " + spillDirectory);
+        }
+        init();
+        long words = in.readLong();
+        byte[] word = new byte[64];
+        for (long i = 0; i < words; i++) {
+            int length = in.readInt();
+            if (word.length < length) {
+                word = new byte[Math.max(length, word.length * 2)];
+            }
+            in.readFully(word, 0, length);
+            add(word, 0, length, in.readLong());
+        }
+    }
+}
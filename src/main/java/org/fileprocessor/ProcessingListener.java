@@ -0,0 +1,18 @@
+package org.fileprocessor;
+
+/**
+ * Receives the measurements of every processing run of a @link org.fileprocessor.DefaultFileProcessor it is registered
+ * with, see @see DefaultFileProcessor#addListener(ProcessingListener). @link org.fileprocessor.ProcessingMetrics aggregates
+ * them and publishes them through JMX; other implementations can forward them to any metrics system.
+ *
+ * Called on the thread that ran the processing, right before the result is returned, so implementations should be quick and
+ * thread safe. Exceptions thrown by a listener are logged and do not affect the result.
+ */
+@FunctionalInterface
+public interface ProcessingListener {
+
+    /**
+     * @param metrics measurements of the run that just finished.
+     */
+    void runCompleted(RunMetrics metrics);
+}
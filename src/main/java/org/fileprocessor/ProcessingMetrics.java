@@ -0,0 +1,198 @@
+package org.fileprocessor;
+
+import org.apache.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @link org.fileprocessor.ProcessingListener that adds up the measurements of all the runs it is told about and publishes
+ * them as an MXBean, so that they can be watched with JConsole, VisualVM or any JMX exporter:
+ *
+ *   ProcessingMetrics metrics = new ProcessingMetrics();
+ *   processor.addListener(metrics);
+ *   metrics.register("default"); // org.fileprocessor:type=ProcessingMetrics,name=default
+ *
+ * Counters are LongAdders and the latency of every run goes to a @link org.fileprocessor.LatencyHistogram, so recording a
+ * run takes no locks and the same instance can listen to many processors at once.
+ */
+public class ProcessingMetrics implements ProcessingListener, ProcessingMetricsMXBean {
+
+    private final static Logger logger = Logger.getLogger(ProcessingMetrics.class.getName());
+
+    /**
+     * Domain and type of the names under which instances are registered.
+     */
+    public static final String OBJECT_NAME_PREFIX = "org.fileprocessor:type=ProcessingMetrics,name=";
+
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder elapsedNanos = new LongAdder();
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private volatile boolean allocationUnknown = false;
+    private final Map<String, LongAdder> processorNanos = new ConcurrentHashMap<>();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private volatile ObjectName registeredName;
+
+    @Override
+    public void runCompleted(RunMetrics metrics) {
+        runs.increment();
+        if (!metrics.isSucceeded()) {
+            failures.increment();
+        }
+        if (metrics.getBytesRead() > 0) {
+            bytesRead.add(metrics.getBytesRead());
+        }
+        lines.add(metrics.getLines());
+        elapsedNanos.add(metrics.getElapsedNanos());
+        readNanos.add(metrics.getReadNanos());
+        if (metrics.getAllocatedBytes() < 0) {
+            allocationUnknown = true;
+        } else {
+            allocatedBytes.add(metrics.getAllocatedBytes());
+        }
+        metrics.getProcessorNanos().forEach((name, nanos) ->
+                processorNanos.computeIfAbsent(name, key -> new LongAdder()).add(nanos));
+        latency.record(metrics.getElapsedNanos());
+    }
+
+    /**
+     * Registers this instance in the platform MBean server, replacing any other instance registered under the same name.
+     * @param name value of the name key of the object name, see #OBJECT_NAME_PREFIX.
+     * @return the object name, or null if it could not be registered, in which case the reason is logged.
+     */
+    public ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+            registeredName = objectName;
+            return objectName;
+        } catch (JMException e) {
+            logger.warn("Couldn't register processing metrics " + name + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Removes this instance from the platform MBean server, if registered.
+     */
+    public void unregister() {
+        ObjectName objectName = registeredName;
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            logger.warn("Couldn't unregister processing metrics " + objectName + ": " + e.getMessage());
+        }
+        registeredName = null;
+    }
+
+    /**
+     * @return latency of the runs recorded so far.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public long getRuns() {
+        return runs.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getLines() {
+        return lines.sum();
+    }
+
+    @Override
+    public long getElapsedNanos() {
+        return elapsedNanos.sum();
+    }
+
+    @Override
+    public long getReadNanos() {
+        return readNanos.sum();
+    }
+
+    @Override
+    public Map<String, Long> getProcessorNanos() {
+        Map<String, Long> nanos = new TreeMap<>();
+        processorNanos.forEach((name, total) -> nanos.put(name, total.sum()));
+        return Collections.unmodifiableMap(nanos);
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return allocationUnknown ? -1 : allocatedBytes.sum();
+    }
+
+    @Override
+    public double getLinesPerSecond() {
+        long elapsed = elapsedNanos.sum();
+        return elapsed == 0 ? 0 : lines.sum() * 1e9 / elapsed;
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        long elapsed = elapsedNanos.sum();
+        return elapsed == 0 ? 0 : bytesRead.sum() * 1e9 / elapsed;
+    }
+
+    @Override
+    public Map<String, Long> getLatencyPercentiles() {
+        Map<String, Long> percentiles = new LinkedHashMap<>();
+        percentiles.put("p50", latency.getPercentile(50));
+        percentiles.put("p90", latency.getPercentile(90));
+        percentiles.put("p99", latency.getPercentile(99));
+        percentiles.put("max", latency.getPercentile(100));
+        return percentiles;
+    }
+
+    @Override
+    public void reset() {
+        runs.reset();
+        failures.reset();
+        bytesRead.reset();
+        lines.reset();
+        elapsedNanos.reset();
+        readNanos.reset();
+        allocatedBytes.reset();
+        allocationUnknown = false;
+        processorNanos.clear();
+        latency.reset();
+    }
+
+    @Override
+    public String toString() {
+        return getRuns() + " runs (" + getFailures() + " failed), " + getLines() + " lines, " + getBytesRead() + " bytes, "
+                + getElapsedNanos() / 1_000_000 + " ms, read " + getReadNanos() / 1_000_000 + " ms, processors "
+                + getProcessorNanos() + " ns, latency " + latency;
+    }
+}
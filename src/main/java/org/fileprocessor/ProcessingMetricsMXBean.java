@@ -0,0 +1,70 @@
+package org.fileprocessor;
+
+import java.util.Map;
+
+/**
+ * Management interface of @link org.fileprocessor.ProcessingMetrics: totals over all the runs recorded since it was created
+ * or last reset. Times are in nanoseconds.
+ */
+public interface ProcessingMetricsMXBean {
+
+    /**
+     * @return number of runs, i.e. files or streams processed, including failed ones.
+     */
+    long getRuns();
+
+    /**
+     * @return number of runs that did not return an OK result.
+     */
+    long getFailures();
+
+    /**
+     * @return bytes read by all the runs, not counting runs that read from a java.io.Reader.
+     */
+    long getBytesRead();
+
+    /**
+     * @return lines processed by all the runs.
+     */
+    long getLines();
+
+    /**
+     * @return wall clock time of all the runs added up.
+     */
+    long getElapsedNanos();
+
+    /**
+     * @return estimated time spent reading and decoding lines.
+     */
+    long getReadNanos();
+
+    /**
+     * @return estimated time spent by each processor, by class name.
+     */
+    Map<String, Long> getProcessorNanos();
+
+    /**
+     * @return bytes allocated by all the runs, or -1 if the JVM cannot tell.
+     */
+    long getAllocatedBytes();
+
+    /**
+     * @return lines processed per second of run time.
+     */
+    double getLinesPerSecond();
+
+    /**
+     * @return bytes read per second of run time.
+     */
+    double getBytesPerSecond();
+
+    /**
+     * @return upper bounds of the p50, p90, p99 and max latencies of the runs, within a factor of two.
+     */
+    Map<String, Long> getLatencyPercentiles();
+
+    /**
+     * Sets all the totals back to zero.
+     */
+    void reset();
+}
@@ -0,0 +1,64 @@
+package org.fileprocessor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable outcome of a single processing call: the @link org.fileprocessor.Validation plus a snapshot of the statistics
+ * calculated by the line processors when the call finished. Since nothing is shared with the @link FileProcessor that
+ * produced it, results of concurrent calls on the same FileProcessor never interfere with each other.
+ */
+public class ProcessingResult extends Validation {
+
+    private final List<String> keyNames;
+    private final Map<String, Object> statMap;
+
+    /**
+     * Creates a result without statistics, typically for errors.
+     * @param text descriptive message.
+     * @param type outcome of the processing.
+     */
+    public ProcessingResult(String text, ValidationType type) {
+        this(text, type, Collections.emptyList());
+    }
+
+    /**
+     * Creates a result holding a snapshot of the statistics of the given processors. Null processors are skipped.
+     * @param text descriptive message.
+     * @param type outcome of the processing.
+     * @param processors processors whose statistics are to be captured.
+     */
+    public ProcessingResult(String text, ValidationType type, List<? extends LineProcessor> processors) {
+        super(text, type);
+        List<String> keys = new ArrayList<>();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (LineProcessor processor : processors) {
+            if (processor != null) {
+                keys.addAll(processor.getKeyNames());
+                stats.putAll(processor.getKVForProcessedLines());
+            }
+        }
+        this.keyNames = Collections.unmodifiableList(keys);
+        this.statMap = Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * Returns the "tags" (keys in a Map) of the stats calculated by all the processors used in the call.
+     * @return unmodifiable list of keys, empty if the processing failed.
+     */
+    public List<String> getKeyNames() {
+        return keyNames;
+    }
+
+    /**
+     * Return a map where the key is the stat name and the value is the actual value of the calculated stat over the processed
+     * lines. If more than one LineProcessor is used, it contains the entries of all of them.
+     * @return unmodifiable Name-value KV map of all the stats, empty if the processing failed.
+     */
+    public Map<String, Object> getKVForProcessedLines() {
+        return statMap;
+    }
+}
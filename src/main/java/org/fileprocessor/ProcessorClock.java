@@ -0,0 +1,134 @@
+package org.fileprocessor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts the lines handed to the processors by one thread and times a sample of them: the first line and one in every
+ * #SAMPLE_INTERVAL after it. On sampled lines each processor is timed on its own, as well as the time taken to read and
+ * decode the next line, so the cost of leaving it on is a counter per line plus a few System#nanoTime() calls per sample.
+ *
+ * Not thread safe: each reading thread gets its own clock from @link org.fileprocessor.RunRecorder, which adds them up once
+ * the run is over.
+ */
+final class ProcessorClock {
+
+    /**
+     * One line in this many is timed. A power of two.
+     */
+    static final int SAMPLE_INTERVAL = 64;
+
+    private long lines;
+    private long sampledLines;
+    private final Map<String, long[]> sampledNanos = new HashMap<>();
+    private long sampledReadNanos;
+    private long readSamples;
+    private long measuredReadNanos;
+    private boolean afterSample = false;
+    private long sampleEnd;
+    private final long callerThread;
+    private long thread = -1;
+    private long startAllocated;
+    private long allocated = 0;
+
+    /**
+     * @param callerThread id of the thread that started the run, whose allocations are already counted by the run.
+     */
+    ProcessorClock(long callerThread) {
+        this.callerThread = callerThread;
+    }
+
+    /**
+     * Counts a new line, to be called before it is processed.
+     * @return true if the line is to be timed, in which case #endSample() must be called once it is processed.
+     */
+    boolean tick() {
+        if (afterSample) {
+            sampledReadNanos += System.nanoTime() - sampleEnd;
+            readSamples++;
+            afterSample = false;
+        }
+        if ((lines++ & (SAMPLE_INTERVAL - 1)) != 0) {
+            return false;
+        }
+        sampledLines++;
+        return true;
+    }
+
+    /**
+     * Adds the time a processor took on a sampled line.
+     */
+    void add(Object processor, long nanos) {
+        sampledNanos.computeIfAbsent(processor.getClass().getName(), name -> new long[1])[0] += nanos;
+    }
+
+    /**
+     * Adds time spent reading or decoding a sampled line.
+     */
+    void addRead(long nanos) {
+        sampledReadNanos += nanos;
+    }
+
+    /**
+     * Adds reading time measured outside the lines, e.g. decompressing a block, which is not extrapolated.
+     */
+    void addMeasuredRead(long nanos) {
+        measuredReadNanos += nanos;
+    }
+
+    /**
+     * Marks the end of the processing of a sampled line. Time until the next tick counts as reading.
+     */
+    void endSample() {
+        afterSample = true;
+        sampleEnd = System.nanoTime();
+    }
+
+    /**
+     * Starts counting the memory allocated by the calling thread, for clocks used by worker threads. Nothing is counted on
+     * the thread that started the run, as a fork-join pool may run a task on it.
+     */
+    void start() {
+        thread = Thread.currentThread().getId();
+        startAllocated = thread == callerThread ? -1 : RunRecorder.allocatedBytes(thread);
+    }
+
+    /**
+     * Stops counting the memory allocated by the calling thread. Must be called on the thread that called #start().
+     */
+    void stop() {
+        if (thread >= 0 && startAllocated >= 0) {
+            allocated += RunRecorder.allocatedBytes(thread) - startAllocated;
+        }
+        thread = -1;
+    }
+
+    long getLines() {
+        return lines;
+    }
+
+    long getAllocatedBytes() {
+        return allocated;
+    }
+
+    /**
+     * @return processing time of every processor class, extrapolated from the sampled lines to all the lines.
+     */
+    Map<String, Long> estimateProcessorNanos() {
+        Map<String, Long> estimates = new HashMap<>();
+        sampledNanos.forEach((name, nanos) -> estimates.put(name, extrapolate(nanos[0], sampledLines)));
+        return estimates;
+    }
+
+    /**
+     * @return reading and decoding time, extrapolated from the sampled lines to all the lines, plus the time measured as a
+     * whole.
+     */
+    long estimateReadNanos() {
+        return extrapolate(sampledReadNanos, readSamples) + measuredReadNanos;
+    }
+
+    private long extrapolate(long nanos, long samples) {
+        return samples == 0 ? 0 : (long) ((double) nanos * lines / samples);
+    }
+}
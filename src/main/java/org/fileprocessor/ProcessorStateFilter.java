@@ -0,0 +1,97 @@
+package org.fileprocessor;
+
+import java.io.ObjectInputFilter;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Allow-list for reading back the saved state of processors, from the result cache or a checkpoint, which other processes
+ * may have written.
+ *
+ * Only the classes of the expected processors and of their serialized fields are accepted, found by walking the declared
+ * types of the fields (type arguments included), plus boxed values, strings and the common collections, which fields of
+ * interface types like Map or List hold. Anything else, which could only come from a tampered file, is rejected before it is
+ * instantiated.
+ */
+final class ProcessorStateFilter implements ObjectInputFilter {
+
+    private static final List<Class<?>> VALUES = Arrays.asList(String.class, Boolean.class, Character.class, Number.class,
+            Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class,
+            Enum.class, ArrayList.class, LinkedList.class, ArrayDeque.class, HashMap.class, LinkedHashMap.class, TreeMap.class,
+            HashSet.class, LinkedHashSet.class, TreeSet.class);
+
+    private final Set<Class<?>> allowed = new HashSet<>(VALUES);
+
+    /**
+     * @param roots classes of the objects expected at the top, e.g. the class of the processors.
+     */
+    ProcessorStateFilter(Collection<Class<?>> roots) {
+        Deque<Type> pending = new ArrayDeque<>(roots);
+        while (!pending.isEmpty()) {
+            Type type = pending.pop();
+            if (type instanceof ParameterizedType) {
+                pending.push(((ParameterizedType) type).getRawType());
+                pending.addAll(Arrays.asList(((ParameterizedType) type).getActualTypeArguments()));
+            } else if (type instanceof GenericArrayType) {
+                pending.push(((GenericArrayType) type).getGenericComponentType());
+            } else if (type instanceof WildcardType) {
+                pending.addAll(Arrays.asList(((WildcardType) type).getUpperBounds()));
+            } else if (type instanceof Class) {
+                Class<?> clazz = (Class<?>) type;
+                while (clazz.isArray()) {
+                    clazz = clazz.getComponentType();
+                }
+                if (clazz.isPrimitive() || !Serializable.class.isAssignableFrom(clazz) || !allowed.add(clazz)) {
+                    continue;
+                }
+                for (Class<?> declaring = clazz; declaring != null && Serializable.class.isAssignableFrom(declaring);
+                     declaring = declaring.getSuperclass()) {
+                    allowed.add(declaring);
+                    for (Field field : declaring.getDeclaredFields()) {
+                        if ((field.getModifiers() & (Modifier.STATIC | Modifier.TRANSIENT)) == 0) {
+                            pending.push(field.getGenericType());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public Status checkInput(FilterInfo info) {
+        Class<?> clazz = info.serialClass();
+        if (clazz == null) {
+            return Status.UNDECIDED; // array lengths, depth and references: left to the JVM wide limits
+        }
+        if (clazz.isArray()) {
+            while (clazz.isArray()) {
+                clazz = clazz.getComponentType();
+            }
+            // elements are checked on their own; arrays of e.g. Object or Map.Entry can only hold allowed ones
+            return clazz.isPrimitive() || !Serializable.class.isAssignableFrom(clazz) || allowed.contains(clazz)
+                    ? Status.ALLOWED : Status.REJECTED;
+        }
+        return allowed.contains(clazz) ? Status.ALLOWED : Status.REJECTED;
+    }
+}
@@ -0,0 +1,452 @@
+package org.fileprocessor;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * On-disk cache of the state processors reach on whole files, so that statistics of a file that has not changed since it
+ * was last processed are restored instead of computed again.
+ *
+ * An entry is keyed by everything the result depends on: the real path of the file, its size, modification time, change
+ * time (on Unix) and file key, optionally a SHA-256 of its content, the charset, and the class and serialized form of a
+ * fresh instance of every processor, which covers their configuration and version. Any difference is a miss, so entries
+ * never need to be invalidated; stale ones are simply never hit again and age out. Without content hashing, a rewrite that
+ * keeps size and both timestamps, which needs a deliberate effort, goes unnoticed; with it, lookups read the whole file.
+ *
+ * Only processors that are mergeable and serializable can be cached, like in follow mode: an entry holds the state fresh
+ * copies of them reach on the file, which is merged into the given processors on a hit, so they end up as if they had
+ * processed the file themselves.
+ *
+ * Entries are files in the cache directory, written atomically and evicted least recently used first whenever their total
+ * size goes over the limit. The order of use survives restarts through the modification time of the entries. Thread safe
+ * within a JVM; several JVMs can share a directory but then each one enforces the limit on its own view of it. Entries are
+ * read back through @link org.fileprocessor.ProcessorStateFilter, so they can only hold the state of the expected processors.
+ */
+public class ResultCache {
+
+    private final static Logger logger = Logger.getLogger(ResultCache.class.getName());
+
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final boolean UNIX = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+
+    private final Path directory;
+    private final long maxBytes;
+    private final boolean hashContent;
+    // entry file name to its size, least recently used first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Key and cached state of a file, as read from or written to the cache.
+     */
+    private static final class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String key;
+        private final ArrayList<LineProcessor> processors;
+
+        Entry(String key, List<LineProcessor> processors) {
+            this.key = key;
+            this.processors = new ArrayList<>(processors);
+        }
+    }
+
+    /**
+     * Opens a cache, picking up the entries already in the directory.
+     * @param directory where entries are kept. Created if it does not exist.
+     * @param maxBytes largest total size of the entries.
+     * @param hashContent whether the content of files is part of the key, which makes lookups read the whole file.
+     * @throws IOException if the directory cannot be created or listed.
+     */
+    public ResultCache(Path directory, long maxBytes, boolean hashContent) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Need a positive cache size");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        this.hashContent = hashContent;
+        List<Path> existing = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "*" + ENTRY_SUFFIX)) {
+            paths.forEach(existing::add);
+        }
+        Map<Path, FileTime> used = new LinkedHashMap<>();
+        for (Path path : existing) {
+            try {
+                used.put(path, Files.getLastModifiedTime(path));
+            } catch (IOException e) {
+                // removed in the meantime
+            }
+        }
+        used.entrySet().stream().sorted(Map.Entry.comparingByValue()).forEach(entry -> {
+            try {
+                long size = Files.size(entry.getKey());
+                entries.put(entry.getKey().getFileName().toString(), size);
+                totalBytes += size;
+            } catch (IOException e) {
+                // removed in the meantime
+            }
+        });
+        synchronized (this) {
+            evict();
+        }
+    }
+
+    /**
+     * Opens a cache that identifies files by their metadata only.
+     * @see #ResultCache(Path, long, boolean)
+     */
+    public ResultCache(Path directory, long maxBytes) throws IOException {
+        this(directory, maxBytes, false);
+    }
+
+    /**
+     * Tells whether a call with the given processors can be cached.
+     * @return true if there is at least one processor and all the non-null ones are mergeable and serializable.
+     */
+    public static boolean isCacheable(List<? extends LineProcessor> processors) {
+        return processors != null && processors.stream().anyMatch(p -> p != null)
+                && processors.stream().allMatch(p -> p == null || (p instanceof MergeableLineProcessor && p instanceof Serializable));
+    }
+
+    /**
+     * Computes the key of a file, to be given to #get(String, List) and #put(String, List).
+     * @param file file to be processed.
+     * @param processors processors to be applied, which have to be cacheable.
+     * @param charset encoding of the file.
+     * @return the key, or null if the file cannot be read, in which case processing it reports the error.
+     */
+    String key(Path file, List<? extends LineProcessor> processors, Charset charset) {
+        try {
+            Path real = file.toRealPath();
+            BasicFileAttributes attributes = Files.readAttributes(real, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return null;
+            }
+            StringBuilder key = new StringBuilder();
+            key.append("path=").append(real).append('\n');
+            key.append("size=").append(attributes.size()).append('\n');
+            key.append("modified=").append(attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)).append('\n');
+            if (UNIX) {
+                key.append("changed=").append(((FileTime) Files.getAttribute(real, "unix:ctime")).to(TimeUnit.NANOSECONDS))
+                        .append('\n');
+            }
+            key.append("file=").append(attributes.fileKey()).append('\n');
+            if (hashContent) {
+                key.append("sha256=").append(contentHash(real)).append('\n');
+            }
+            key.append("charset=").append(charset.name()).append('\n');
+            for (LineProcessor processor : processors) {
+                key.append("processor=");
+                if (processor != null) {
+                    key.append(fingerprint(processor));
+                }
+                key.append('\n');
+            }
+            return key.toString();
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Looks a key up and, on a hit, merges the cached state into the given processors.
+     * @return true on a hit.
+     */
+    @SuppressWarnings("unchecked")
+    boolean get(String key, List<LineProcessor> processors) {
+        String name = entryName(key);
+        synchronized (this) {
+            if (entries.get(name) == null) { // also moves it to the most recently used end
+                misses.increment();
+                return false;
+            }
+        }
+        Path path = directory.resolve(name);
+        List<Class<?>> expected = new ArrayList<>();
+        expected.add(Entry.class);
+        processors.stream().filter(p -> p != null).forEach(p -> expected.add(p.getClass()));
+        Entry entry = null;
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(path));
+             ObjectInputStream in = new ObjectInputStream(file)) {
+            in.setObjectInputFilter(new ProcessorStateFilter(expected)); // the directory may be shared with other processes
+            entry = (Entry) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            if (!(e instanceof NoSuchFileException)) {
+                logger.info("Ignoring unreadable cache entry " + path + " because of exception: \n " + e.getMessage());
+            }
+        }
+        if (entry == null || !entry.key.equals(key) || entry.processors.size() != processors.size()) {
+            remove(name);
+            misses.increment();
+            return false;
+        }
+        for (int i = 0; i < processors.size(); i++) {
+            if (processors.get(i) != null) {
+                ChunkedFileTask.merge((MergeableLineProcessor<?>) processors.get(i), (MergeableLineProcessor<?>) entry.processors.get(i));
+            }
+        }
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // only the order of eviction after a restart is affected
+        }
+        hits.increment();
+        return true;
+    }
+
+    /**
+     * Stores the state processors reached on a file. Entries larger than the whole cache are not stored: they are streamed
+     * to disk and given up as soon as they go over the limit, so the state is never held in memory a second time.
+     * @param key key of the file before it was processed.
+     * @param processors fresh copies of the processors after processing the whole file.
+     */
+    void put(String key, List<LineProcessor> processors) {
+        String name = entryName(key);
+        Path path = directory.resolve(name);
+        try {
+            Path temporary = Files.createTempFile(directory, name, ".tmp");
+            long size;
+            try {
+                // the file is closed on its own: closing the object stream flushes first, which fails again over the limit
+                try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+                    LimitedOutputStream limited = new LimitedOutputStream(file, maxBytes);
+                    ObjectOutputStream out = new ObjectOutputStream(limited);
+                    out.writeObject(new Entry(key, processors));
+                    out.flush();
+                    size = limited.written;
+                } catch (EntryTooLargeException e) {
+                    return;
+                }
+                try {
+                    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (java.nio.file.AtomicMoveNotSupportedException e) {
+                    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            synchronized (this) {
+                Long previous = entries.put(name, size);
+                totalBytes += size - (previous == null ? 0 : previous);
+                evict();
+            }
+        } catch (IOException e) {
+            logger.info("Couldn't cache result in " + path + " because of exception: \n " + e.getMessage());
+        }
+    }
+
+    /**
+     * Thrown by @link LimitedOutputStream once more than its limit has been written.
+     */
+    private static final class EntryTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        EntryTooLargeException(long limit) {
+            super("Cache entry larger than " + limit + " bytes");
+        }
+    }
+
+    /**
+     * Counts the bytes written through it and fails once they go over a limit.
+     */
+    private static final class LimitedOutputStream extends FilterOutputStream {
+        private final long limit;
+        private long written = 0;
+
+        LimitedOutputStream(OutputStream out, long limit) {
+            super(out);
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            count(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count(len);
+            out.write(b, off, len);
+        }
+
+        private void count(int length) throws IOException {
+            written += length;
+            if (written > limit) {
+                throw new EntryTooLargeException(limit);
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the cache fits in its size.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> oldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && oldest.hasNext()) {
+            Map.Entry<String, Long> entry = oldest.next();
+            oldest.remove();
+            totalBytes -= entry.getValue();
+            evictions.increment();
+            try {
+                Files.deleteIfExists(directory.resolve(entry.getKey()));
+            } catch (IOException e) {
+                logger.info("Couldn't delete cache entry " + entry.getKey() + " because of exception: \n " + e.getMessage());
+            }
+        }
+    }
+
+    private void remove(String name) {
+        synchronized (this) {
+            Long size = entries.remove(name);
+            if (size != null) {
+                totalBytes -= size;
+            }
+        }
+        try {
+            Files.deleteIfExists(directory.resolve(name));
+        } catch (IOException e) {
+            // left for eviction
+        }
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear() {
+        List<String> names;
+        synchronized (this) {
+            names = new ArrayList<>(entries.keySet());
+        }
+        names.forEach(this::remove);
+    }
+
+    /**
+     * @return number of lookups that found a valid entry.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of lookups that did not.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of entries removed to keep the cache within its size.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return number of entries in the cache.
+     */
+    public synchronized int getEntries() {
+        return entries.size();
+    }
+
+    /**
+     * @return total size of the entries in the cache.
+     */
+    public synchronized long getBytes() {
+        return totalBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultCache " + directory + ": " + getEntries() + " entries, " + getBytes() + " of " + maxBytes + " bytes, "
+                + getHits() + " hits, " + getMisses() + " misses, " + getEvictions() + " evictions";
+    }
+
+    /**
+     * Identifies the class and configuration of a processor, through the serialized form of a fresh instance of it.
+     * @param processor mergeable and serializable processor.
+     * @return the class name and a SHA-256 of the fresh instance.
+     * @throws IOException if the processor cannot be serialized.
+     */
+    static String fingerprint(LineProcessor processor) throws IOException {
+        MergeableLineProcessor<?> fresh = ((MergeableLineProcessor<?>) processor).newInstance();
+        return processor.getClass().getName() + ':' + hex(sha256(serialize(fresh)));
+    }
+
+    private static String entryName(String key) {
+        return hex(sha256(key.getBytes(StandardCharsets.UTF_8))) + ENTRY_SUFFIX;
+    }
+
+    private static String contentHash(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = bytes; ObjectOutputStream objects = new ObjectOutputStream(out)) {
+            objects.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        return newDigest().digest(bytes);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required of every JVM", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+}
@@ -0,0 +1,64 @@
+package org.fileprocessor;
+
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Destination of the outcome of every call to a @link org.fileprocessor.DefaultFileProcessor, chosen when it is created.
+ * Processing itself never writes anything: the results are returned in a @link org.fileprocessor.ProcessingResult, and the
+ * sink decides whether they are also shown. The default, #none(), keeps library use silent; the command line uses
+ * #console().
+ *
+ * Sinks are called on the thread that ran the processing, once per call, so they have to be thread safe.
+ */
+@FunctionalInterface
+public interface ResultSink {
+
+    /**
+     * Called after a successful call.
+     * @param source name of the file processed, or @see DefaultFileProcessor#STREAM_NAME for streams.
+     * @param result result returned to the caller.
+     * @param processors processors holding the results, null ones included.
+     */
+    void processed(String source, ProcessingResult result, List<? extends LineProcessor> processors);
+
+    /**
+     * Called after a failed call. Does nothing unless overridden.
+     * @param source name of the file processed, which may be null or empty if that was the error.
+     * @param message short description of the error meant for people, e.g. hinting at how to fix it.
+     * @param error result returned to the caller.
+     */
+    default void failed(String source, String message, ProcessingResult error) {
+    }
+
+    /**
+     * @return a sink that ignores everything.
+     */
+    static ResultSink none() {
+        return (source, result, processors) -> {
+        };
+    }
+
+    /**
+     * @return a sink that prints the output of every processor and error messages to the standard output.
+     */
+    static ResultSink console() {
+        return new ConsoleResultSink(System.out);
+    }
+
+    /**
+     * @return a sink that writes the output of every processor and the errors to the log, at info level.
+     */
+    static ResultSink log() {
+        return new LogResultSink();
+    }
+
+    /**
+     * @param writer destination of the records, flushed after each one and never closed.
+     * @return a sink that writes one JSON object per call, in JSON Lines format, holding the source, the outcome and either
+     * the stats of the processors or the error message.
+     */
+    static ResultSink json(Writer writer) {
+        return new JsonResultSink(writer);
+    }
+}
@@ -0,0 +1,90 @@
+package org.fileprocessor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for any number of producers and consumers, on a fixed array of slots.
+ *
+ * Each slot carries a sequence number telling whose turn it is: a producer may fill slot i for ticket t when the sequence is
+ * t, and publishes it by setting the sequence to t + 1; a consumer may take it for ticket t when the sequence is t + 1, and
+ * frees it for the next lap by setting the sequence to t + capacity. Tickets are claimed with a CAS on the head or tail
+ * counter, so threads never block each other: #offer() and #poll() simply fail when the queue is full or empty, and
+ * waiting is up to the caller.
+ */
+final class RingBuffer<E> {
+
+    private final int capacity;
+    private final AtomicReferenceArray<E> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong(); // next ticket to take
+    private final AtomicLong tail = new AtomicLong(); // next ticket to fill
+
+    RingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Need a positive capacity");
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element at the tail of the queue.
+     * @param element element to add, not null.
+     * @return false if the queue is full. This includes the short time a consumer that claimed the slot takes to clear it,
+     * so callers that know there is room should simply try again.
+     */
+    boolean offer(E element) {
+        long ticket = tail.get();
+        while (true) {
+            int index = (int) (ticket % capacity);
+            long distance = sequences.get(index) - ticket;
+            if (distance == 0) {
+                if (tail.compareAndSet(ticket, ticket + 1)) {
+                    slots.lazySet(index, element);
+                    sequences.set(index, ticket + 1); // volatile write publishes the element
+                    return true;
+                }
+                ticket = tail.get();
+            } else if (distance < 0) {
+                return false; // slot still holds the element of the previous lap
+            } else {
+                ticket = tail.get(); // another producer got this ticket
+            }
+        }
+    }
+
+    /**
+     * Takes the element at the head of the queue.
+     * @return the element, or null if the queue is empty.
+     */
+    E poll() {
+        long ticket = head.get();
+        while (true) {
+            int index = (int) (ticket % capacity);
+            long distance = sequences.get(index) - (ticket + 1);
+            if (distance == 0) {
+                if (head.compareAndSet(ticket, ticket + 1)) {
+                    E element = slots.get(index);
+                    slots.lazySet(index, null);
+                    sequences.set(index, ticket + capacity);
+                    return element;
+                }
+                ticket = head.get();
+            } else if (distance < 0) {
+                return null; // slot not filled yet
+            } else {
+                ticket = head.get(); // another consumer got this ticket
+            }
+        }
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
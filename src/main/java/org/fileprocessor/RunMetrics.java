@@ -0,0 +1,167 @@
+package org.fileprocessor;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable measurements of a single processing run, handed to every @link org.fileprocessor.ProcessingListener once the run
+ * is over.
+ *
+ * Processor and read times come from a sample of the lines (see @see #getProcessorNanos()) and, for the parallel modes, are
+ * added up over all the threads, so they can exceed the elapsed time.
+ */
+public final class RunMetrics {
+
+    /**
+     * How the input was read.
+     */
+    public enum Mode {
+        /**
+         * @see FileProcessor#processFile(String, java.util.List, java.nio.charset.Charset)
+         */
+        SEQUENTIAL,
+        /**
+         * @see FileProcessor#processFileMapped(String, java.util.List, java.nio.charset.Charset)
+         */
+        MAPPED,
+        /**
+         * @see FileProcessor#processFileInParallel(String, java.util.List, java.nio.charset.Charset, int)
+         */
+        PARALLEL,
+        /**
+         * @see FileProcessor#processFilePipelined(String, java.util.List, java.nio.charset.Charset, int, int, int)
+         */
+        PIPELINED,
+        /**
+         * @see FileProcessor#followFile(String, java.util.List, java.nio.charset.Charset, String)
+         */
+        FOLLOW,
+        /**
+         * @see DefaultFileProcessor#processFileSampled(String, java.util.List, java.nio.charset.Charset, double)
+         */
+        SAMPLED,
+        /**
+         * @see DefaultFileProcessor#processLines(String, java.util.List, java.nio.charset.Charset, long, long)
+         */
+        LINES,
+        /**
+         * @see FileProcessor#processStream(java.io.InputStream, java.util.List, java.nio.charset.Charset)
+         */
+        STREAM
+    }
+
+    private final String source;
+    private final Mode mode;
+    private final boolean succeeded;
+    private final long bytesRead;
+    private final long lines;
+    private final long elapsedNanos;
+    private final long readNanos;
+    private final Map<String, Long> processorNanos;
+    private final long allocatedBytes;
+
+    RunMetrics(String source, Mode mode, boolean succeeded, long bytesRead, long lines, long elapsedNanos, long readNanos,
+               Map<String, Long> processorNanos, long allocatedBytes) {
+        this.source = source;
+        this.mode = mode;
+        this.succeeded = succeeded;
+        this.bytesRead = bytesRead;
+        this.lines = lines;
+        this.elapsedNanos = elapsedNanos;
+        this.readNanos = readNanos;
+        this.processorNanos = Collections.unmodifiableMap(new LinkedHashMap<>(processorNanos));
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * @return name of the file processed, or @see DefaultFileProcessor#STREAM_NAME for streams.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return method used to read the input. A file that could not be read that way is still reported under the method
+     * that was called, e.g. a compressed file processed sequentially by processFileInParallel is reported as PARALLEL.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return true if the run returned an OK result.
+     */
+    public boolean isSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * @return number of bytes read: the size of the file as stored (compressed or not) or the bytes taken from a stream.
+     * -1 when not known, i.e. for text read from a java.io.Reader.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return number of lines handed to the processors.
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * @return wall clock time of the run.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return time spent reading, splitting and decoding lines, estimated from the sampled lines. In pipelined mode, the
+     * time measured on the reading thread.
+     */
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+    /**
+     * @return time spent by each processor, by class name, estimated from the lines timed by the run: the first line read
+     * by each thread and one in every 64 after it. Word processors include the time taken to split the line in words.
+     */
+    public Map<String, Long> getProcessorNanos() {
+        return processorNanos;
+    }
+
+    /**
+     * @return bytes of heap allocated by the threads of the run, or -1 if the JVM cannot tell.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return lines processed per second of elapsed time.
+     */
+    public double getLinesPerSecond() {
+        return elapsedNanos == 0 ? 0 : lines * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @return bytes read per second of elapsed time, or -1 if the number of bytes is not known.
+     */
+    public double getBytesPerSecond() {
+        if (bytesRead < 0) {
+            return -1;
+        }
+        return elapsedNanos == 0 ? 0 : bytesRead * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return source + " (" + mode + (succeeded ? "" : ", failed") + "): " + lines + " lines, " + bytesRead + " bytes in "
+                + elapsedNanos / 1_000_000 + " ms, read " + readNanos / 1_000_000 + " ms, processors " + processorNanos
+                + " ns, allocated " + allocatedBytes + " bytes";
+    }
+}
@@ -0,0 +1,133 @@
+package org.fileprocessor;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects the measurements of one processing run: elapsed time and memory allocated by the calling thread, bytes read, and
+ * one @link org.fileprocessor.ProcessorClock per reading thread, which are added up into a
+ * @link org.fileprocessor.RunMetrics once the run is over. Only created when someone listens, so runs nobody watches pay
+ * nothing but a null check per line.
+ */
+final class RunRecorder {
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private static final boolean allocationSupported = threads instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported();
+
+    private final String source;
+    private final RunMetrics.Mode mode;
+    private final long thread = Thread.currentThread().getId();
+    private final long startNanos = System.nanoTime();
+    private final long startAllocated = allocatedBytes(thread);
+    private final List<ProcessorClock> clocks = Collections.synchronizedList(new ArrayList<>());
+    private long bytesRead;
+    private long readNanos = -1;
+
+    /**
+     * Starts recording a run on the calling thread, which is expected to be the one that finishes it.
+     * @param source name of the file or stream processed.
+     * @param mode how it is read.
+     * @param bytesRead bytes to be read if known upfront, e.g. the size of a file, 0 if counted as read, -1 if unknown.
+     */
+    RunRecorder(String source, RunMetrics.Mode mode, long bytesRead) {
+        this.source = source;
+        this.mode = mode;
+        this.bytesRead = bytesRead;
+    }
+
+    /**
+     * @return memory allocated so far by the given thread, or -1 if the JVM does not tell or it is turned off.
+     */
+    static long allocatedBytes(long threadId) {
+        if (!allocationSupported) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+        return bean.isThreadAllocatedMemoryEnabled() ? bean.getThreadAllocatedBytes(threadId) : -1;
+    }
+
+    /**
+     * @return a new clock for one reading thread, which has to call start and stop on it if it is not the calling thread.
+     */
+    ProcessorClock newClock() {
+        ProcessorClock clock = new ProcessorClock(thread);
+        clocks.add(clock);
+        return clock;
+    }
+
+    /**
+     * @return the input, counting the bytes read from it as read by the run.
+     */
+    InputStream count(InputStream input) {
+        return new FilterInputStream(input) {
+            @Override
+            public int read() throws IOException {
+                int read = super.read();
+                if (read >= 0) {
+                    bytesRead++;
+                }
+                return read;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                int read = super.read(bytes, offset, length);
+                if (read > 0) {
+                    bytesRead += read;
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long count) throws IOException {
+                long skipped = super.skip(count);
+                bytesRead += skipped;
+                return skipped;
+            }
+        };
+    }
+
+    void setBytesRead(long bytesRead) {
+        this.bytesRead = bytesRead;
+    }
+
+    /**
+     * Replaces the reading time estimated by the clocks with a measured one, for runs that read on a thread of their own.
+     */
+    void setReadNanos(long readNanos) {
+        this.readNanos = readNanos;
+    }
+
+    /**
+     * @param succeeded whether the run returned an OK result.
+     * @return the measurements of the run. To be called on the thread that started it, once all the clocks are stopped.
+     */
+    RunMetrics finish(boolean succeeded) {
+        long elapsed = System.nanoTime() - startNanos;
+        long allocated = startAllocated < 0 ? -1 : allocatedBytes(thread) - startAllocated;
+        long lines = 0;
+        long estimatedReadNanos = 0;
+        Map<String, Long> processorNanos = new TreeMap<>();
+        synchronized (clocks) {
+            for (ProcessorClock clock : clocks) {
+                lines += clock.getLines();
+                estimatedReadNanos += clock.estimateReadNanos();
+                clock.estimateProcessorNanos().forEach((name, nanos) -> processorNanos.merge(name, nanos, Long::sum));
+                if (allocated >= 0) {
+                    allocated += clock.getAllocatedBytes();
+                }
+            }
+        }
+        return new RunMetrics(source, mode, succeeded, bytesRead, lines, elapsed,
+                readNanos < 0 ? estimatedReadNanos : readNanos, processorNanos, allocated);
+    }
+}
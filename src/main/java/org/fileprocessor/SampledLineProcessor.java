@@ -0,0 +1,24 @@
+package org.fileprocessor;
+
+/**
+ * @link org.fileprocessor.MergeableLineProcessor that can extrapolate its statistics from a sample of a file, as processed by
+ * @see DefaultFileProcessor#processFileSampled(String, java.util.List, java.nio.charset.Charset, double).
+ *
+ * The file is cut into blocks of the same size and only some of them, picked at random, are read. Each block is processed by
+ * a fresh instance, which is told about it through #sampledBlock(long, long, long) before it is merged with the others, so
+ * implementations can keep what they need to scale their counts to the whole file and to estimate their sampling error,
+ * e.g. the sums of the squares of the counts per block. Processors that are not sampled processors just report the
+ * statistics of the blocks read.
+ *
+ * @param <T> concrete type of the processor, so that merges are type safe.
+ */
+public interface SampledLineProcessor<T extends SampledLineProcessor<T>> extends MergeableLineProcessor<T> {
+
+    /**
+     * Called once on the instance that processed a sampled block, after its lines. A block holds the lines that start in it.
+     * @param blockBytes size of the block, the last one of the file can be shorter.
+     * @param fileBytes size of the whole file.
+     * @param fileBlocks number of blocks in the whole file, sampled or not.
+     */
+    void sampledBlock(long blockBytes, long fileBytes, long fileBlocks);
+}
@@ -0,0 +1,351 @@
+package org.fileprocessor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving sketch (Metwally et al.) that finds the most frequent items of a stream with a fixed number of counters.
+ *
+ * Every item seen is monitored by a counter; when all counters are taken, a new item replaces the one with the smallest
+ * count and inherits that count as its possible overestimation. So the count of a monitored item is never lower than its
+ * true count nor higher by more than its error, and any item occurring more than total / capacity times is monitored.
+ * Counters are looked up by the 64 bit hash of their item, so counting an item that is already monitored allocates
+ * nothing; the item itself is only copied when it takes a counter. Sketches can be merged as described by Agarwal et al.
+ * in "Mergeable Summaries", keeping the same guarantees.
+ */
+public final class SpaceSaving implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int capacity;
+    private int size = 0;
+    private long total = 0;
+    // how often an item that is not monitored may have been seen, after merges that dropped counters
+    private long floor = 0;
+
+    private final long[] hashes;
+    private final String[] items;
+    private final long[] counts;
+    private final long[] errors;
+
+    // min-heap of counters by count, and where each counter is in it
+    private final int[] heap;
+    private final int[] heapIndex;
+
+    // open addressing index from hash to counter, slot + 1 so that 0 is empty
+    private final long[] indexHashes;
+    private final int[] indexSlots;
+    private final int indexMask;
+
+    /**
+     * A monitored item and the bounds of its count.
+     */
+    public static final class Counter implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String item;
+        private final long count;
+        private final long error;
+
+        Counter(String item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+
+        /**
+         * @return the item.
+         */
+        public String getItem() {
+            return item;
+        }
+
+        /**
+         * @return upper bound of the number of occurrences of the item.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return how much #getCount() may exceed the true number of occurrences.
+         */
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return error == 0 ? item + "=" + count : item + "=" + count + "±" + error;
+        }
+    }
+
+    /**
+     * @param capacity number of counters, i.e. of items monitored at the same time.
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Need at least one counter: " + capacity);
+        }
+        this.capacity = capacity;
+        hashes = new long[capacity];
+        items = new String[capacity];
+        counts = new long[capacity];
+        errors = new long[capacity];
+        heap = new int[capacity];
+        heapIndex = new int[capacity];
+        int indexSize = Integer.highestOneBit(capacity) << 2; // at most half full
+        indexHashes = new long[indexSize];
+        indexSlots = new int[indexSize];
+        indexMask = indexSize - 1;
+    }
+
+    /**
+     * Counts one occurrence of a word.
+     * @param word buffer holding the word.
+     * @param length number of chars of the word in the buffer.
+     */
+    public void add(char[] word, int length) {
+        add(word, length, HyperLogLog.hash(word, length));
+    }
+
+    /**
+     * Same as #add(char[], int) for callers that already hashed the word.
+     * @param hash @see HyperLogLog#hash(char[], int) of the word.
+     */
+    void add(char[] word, int length, long hash) {
+        int slot = find(hash);
+        if (slot >= 0) {
+            total++;
+            increment(slot, 1);
+        } else {
+            insert(hash, new String(word, 0, length), 1, 0);
+        }
+    }
+
+    /**
+     * Counts occurrences of an item.
+     * @param item item seen.
+     * @param occurrences number of times it has been seen. Must be positive.
+     */
+    public void add(String item, long occurrences) {
+        add(item, occurrences, 0);
+    }
+
+    private void add(String item, long occurrences, long error) {
+        long hash = HyperLogLog.hash(item);
+        int slot = find(hash);
+        if (slot >= 0) {
+            total += occurrences;
+            errors[slot] += error;
+            increment(slot, occurrences);
+        } else {
+            insert(hash, item, occurrences, error);
+        }
+    }
+
+    private void insert(long hash, String item, long occurrences, long error) {
+        total += occurrences;
+        int slot;
+        if (size < capacity) {
+            slot = size++;
+            heap[slot] = slot;
+            heapIndex[slot] = slot;
+            counts[slot] = floor;
+            errors[slot] = floor;
+            siftUp(slot);
+        } else {
+            slot = heap[0];
+            unindex(hashes[slot]);
+            errors[slot] = counts[slot]; // the new item may have been seen as often as the one it replaces
+        }
+        hashes[slot] = hash;
+        items[slot] = item;
+        errors[slot] += error;
+        index(hash, slot);
+        increment(slot, occurrences);
+    }
+
+    private void increment(int slot, long occurrences) {
+        counts[slot] += occurrences;
+        siftDown(heapIndex[slot]);
+    }
+
+    /**
+     * Adds all the occurrences counted by another sketch to this one. The other sketch is left untouched.
+     * Items monitored by only one of them are counted in the other as often as its smallest counter, if it was full.
+     * @param other sketch to be added.
+     */
+    public void merge(SpaceSaving other) {
+        long thisMin = getMaxError();
+        long otherMin = other.getMaxError();
+        Map<String, long[]> merged = new HashMap<>((size + other.size) * 2);
+        for (int slot = 0; slot < size; slot++) {
+            merged.put(items[slot], new long[]{counts[slot] + otherMin, errors[slot] + otherMin});
+        }
+        for (int slot = 0; slot < other.size; slot++) {
+            long[] counter = merged.get(other.items[slot]);
+            if (counter == null) {
+                merged.put(other.items[slot], new long[]{other.counts[slot] + thisMin, other.errors[slot] + thisMin});
+            } else {
+                counter[0] += other.counts[slot] - otherMin;
+                counter[1] += other.errors[slot] - otherMin;
+            }
+        }
+        long mergedTotal = total + other.total;
+        List<Map.Entry<String, long[]>> largest = new ArrayList<>(merged.entrySet());
+        largest.sort(Comparator.comparingLong((Map.Entry<String, long[]> entry) -> entry.getValue()[0]).reversed());
+        clear();
+        for (Map.Entry<String, long[]> entry : largest.subList(0, Math.min(capacity, largest.size()))) {
+            add(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+        }
+        total = mergedTotal;
+        floor = thisMin + otherMin;
+    }
+
+    /**
+     * Accounts for occurrences of items that were counted elsewhere but will never be added, e.g. the least frequent ones of
+     * an exact count this sketch takes over from.
+     * @param largestCount largest number of occurrences of one of those items.
+     * @param occurrences number of occurrences of all of them.
+     */
+    void dropped(long largestCount, long occurrences) {
+        floor = Math.max(floor, largestCount);
+        total += occurrences;
+    }
+
+    private void clear() {
+        size = 0;
+        total = 0;
+        floor = 0;
+        Arrays.fill(indexSlots, 0);
+        Arrays.fill(items, null);
+    }
+
+    /**
+     * @param k number of items wanted.
+     * @return the k items with the highest counts, highest first. Ties are broken by item, so the order is deterministic.
+     */
+    public List<Counter> top(int k) {
+        List<Counter> counters = new ArrayList<>(size);
+        for (int slot = 0; slot < size; slot++) {
+            counters.add(new Counter(items[slot], counts[slot], errors[slot]));
+        }
+        counters.sort(Comparator.comparingLong(Counter::getCount).reversed().thenComparing(Counter::getItem));
+        return counters.subList(0, Math.min(Math.max(k, 0), counters.size()));
+    }
+
+    /**
+     * @return number of occurrences counted, of all items.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return largest number of occurrences of an item that is not monitored, and largest error of a monitored one; 0 as
+     * long as there are free counters.
+     */
+    public long getMaxError() {
+        return size < capacity ? floor : counts[heap[0]];
+    }
+
+    /**
+     * @return number of counters.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of items monitored.
+     */
+    public int size() {
+        return size;
+    }
+
+    private int find(long hash) {
+        for (int i = (int) hash & indexMask; ; i = (i + 1) & indexMask) {
+            int slot = indexSlots[i];
+            if (slot == 0) {
+                return -1;
+            }
+            if (indexHashes[i] == hash) {
+                return slot - 1;
+            }
+        }
+    }
+
+    private void index(long hash, int slot) {
+        int i = (int) hash & indexMask;
+        while (indexSlots[i] != 0) {
+            i = (i + 1) & indexMask;
+        }
+        indexHashes[i] = hash;
+        indexSlots[i] = slot + 1;
+    }
+
+    /**
+     * Removes a hash from the index, moving back the entries after it so that lookups need no tombstones.
+     */
+    private void unindex(long hash) {
+        int i = (int) hash & indexMask;
+        while (indexHashes[i] != hash || indexSlots[i] == 0) {
+            i = (i + 1) & indexMask;
+        }
+        indexSlots[i] = 0;
+        for (int j = (i + 1) & indexMask; indexSlots[j] != 0; j = (j + 1) & indexMask) {
+            int home = (int) indexHashes[j] & indexMask;
+            // the entry at j can fill the hole at i if its home is not in the cyclic range (i, j]
+            if (((j - home) & indexMask) >= ((j - i) & indexMask)) {
+                indexHashes[i] = indexHashes[j];
+                indexSlots[i] = indexSlots[j];
+                indexSlots[j] = 0;
+                i = j;
+            }
+        }
+    }
+
+    private void siftUp(int position) {
+        int slot = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[slot]) {
+                break;
+            }
+            move(heap[parent], position);
+            position = parent;
+        }
+        move(slot, position);
+    }
+
+    private void siftDown(int position) {
+        int slot = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+                child++;
+            }
+            if (counts[heap[child]] >= counts[slot]) {
+                break;
+            }
+            move(heap[child], position);
+            position = child;
+        }
+        move(slot, position);
+    }
+
+    private void move(int slot, int position) {
+        heap[position] = slot;
+        heapIndex[slot] = position;
+    }
+}
@@ -0,0 +1,197 @@
+package org.fileprocessor;
+
+import org.apache.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes running statistics while a file is being processed, e.g. to feed a dashboard during a long job. Pass it to
+ * @see FileProcessor#processFile(String, List, Charset, StatsPublisher) after subscribing to it.
+ *
+ * Snapshots are taken on the processing thread at most once per interval, checking the clock only every few thousand lines,
+ * and handed to a @link java.util.concurrent.SubmissionPublisher that delivers them to subscribers on its own executor.
+ * Subscribers get as many snapshots as they request; a snapshot that does not fit in the buffer of a lagging subscriber
+ * is dropped for that subscriber rather than making processing wait (see #getDroppedSnapshots()). Once the file is done a
+ * last snapshot is published, under the same rule, and subscribers are completed, or get onError if processing failed,
+ * also when a processor throws. Completion is delivered after the snapshots already buffered for a subscriber, so one that
+ * stops requesting is not completed. A publisher serves a single processing call.
+ */
+public class StatsPublisher implements Flow.Publisher<StatsSnapshot> {
+
+    private final static Logger logger = Logger.getLogger(StatsPublisher.class.getName());
+
+    /**
+     * Time between two snapshots if not specified.
+     */
+    public static final long DEFAULT_INTERVAL_MILLIS = 1000;
+
+    private static final int CHECK_EVERY_LINES = 4096; // power of two
+
+    private final SubmissionPublisher<StatsSnapshot> publisher;
+    private final long intervalNanos;
+    private final AtomicLong dropped = new AtomicLong();
+    private boolean started = false;
+
+    /**
+     * Creates a publisher that takes a snapshot every second and delivers them on the common pool.
+     */
+    public StatsPublisher() {
+        this(DEFAULT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param interval minimum time between two snapshots.
+     * @param unit unit of interval.
+     */
+    public StatsPublisher(long interval, TimeUnit unit) {
+        this(interval, unit, ForkJoinPool.commonPool(), Flow.defaultBufferSize());
+    }
+
+    /**
+     * @param interval minimum time between two snapshots.
+     * @param unit unit of interval.
+     * @param executor executor delivering snapshots to subscribers.
+     * @param bufferCapacity maximum number of snapshots waiting for each subscriber.
+     */
+    public StatsPublisher(long interval, TimeUnit unit, Executor executor, int bufferCapacity) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Need a non-negative interval");
+        }
+        this.publisher = new SubmissionPublisher<>(executor, bufferCapacity);
+        this.intervalNanos = unit.toNanos(interval);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super StatsSnapshot> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * @return number of snapshots not delivered to some subscriber because it was not keeping up.
+     */
+    public long getDroppedSnapshots() {
+        return dropped.get();
+    }
+
+    /**
+     * Starts tracking a processing call.
+     * @param fileName file being processed.
+     * @param processors processors whose statistics are published. Only read on the processing thread.
+     * @return the processors plus a tracker, first, to be applied to every line before them.
+     */
+    synchronized List<LineProcessor> track(String fileName, List<LineProcessor> processors) {
+        if (started || publisher.isClosed()) {
+            throw new IllegalStateException("A StatsPublisher can only be used for one processing call");
+        }
+        started = true;
+        List<LineProcessor> tracked = new ArrayList<>(processors);
+        tracked.add(0, new Tracker(fileName, processors));
+        return tracked;
+    }
+
+    /**
+     * Publishes the final statistics of a tracked call and completes the subscribers. Like every snapshot, the last one is
+     * dropped for a subscriber whose buffer is full, as this runs on the processing thread.
+     */
+    void complete(List<LineProcessor> tracked) {
+        Tracker tracker = (Tracker) tracked.get(0);
+        publisher.offer(tracker.snapshot(true), this::onDrop);
+        publisher.close();
+    }
+
+    /**
+     * Tells the subscribers that processing failed.
+     */
+    void fail(Validation validation) {
+        fail(new IllegalStateException(validation.getText()));
+    }
+
+    /**
+     * Tells the subscribers that processing failed with an exception.
+     */
+    void fail(Throwable cause) {
+        publisher.closeExceptionally(cause);
+    }
+
+    private boolean onDrop(Flow.Subscriber<? super StatsSnapshot> subscriber, StatsSnapshot snapshot) {
+        dropped.incrementAndGet();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Dropped snapshot for a lagging subscriber: " + snapshot);
+        }
+        return false; // never retry, processing must not wait
+    }
+
+    /**
+     * Counts lines and takes a snapshot when the interval has elapsed. A byte processor, so that it never forces lines to be
+     * decoded, but it also accepts decoded lines as they are. Byte processors and plain ones are applied in list order, and
+     * before the word processors, so being first in the list makes it see every line before anyone else.
+     */
+    private final class Tracker implements ByteLineProcessor {
+        private final String fileName;
+        private final List<LineProcessor> processors;
+        private final long start = System.nanoTime();
+        private long nextSnapshot = start + intervalNanos;
+        private long lines = 0;
+
+        Tracker(String fileName, List<LineProcessor> processors) {
+            this.fileName = fileName;
+            this.processors = processors;
+        }
+
+        @Override
+        public void process(ByteBuffer buffer, int offset, int length, Charset charset) {
+            line();
+        }
+
+        @Override
+        public void process(String line) {
+            line();
+        }
+
+        @Override
+        public void process(CharSequence line) {
+            line();
+        }
+
+        private void line() {
+            // runs before the other processors see the line, so they have all processed exactly the lines counted so far
+            if ((lines & (CHECK_EVERY_LINES - 1)) == 0 && lines > 0 && System.nanoTime() >= nextSnapshot) {
+                if (publisher.hasSubscribers()) {
+                    publisher.offer(snapshot(false), StatsPublisher.this::onDrop);
+                }
+                nextSnapshot = System.nanoTime() + intervalNanos;
+            }
+            lines++;
+        }
+
+        StatsSnapshot snapshot(boolean last) {
+            return new StatsSnapshot(fileName, lines, System.nanoTime() - start, last, processors);
+        }
+
+        @Override
+        public String printProcessedLines() {
+            return "";
+        }
+
+        @Override
+        public Map<String, Object> getKVForProcessedLines() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public List<String> getKeyNames() {
+            return Collections.emptyList();
+        }
+    }
+}
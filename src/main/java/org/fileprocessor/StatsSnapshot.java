@@ -0,0 +1,87 @@
+package org.fileprocessor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Running statistics of a file that is still being processed, as published by a @link org.fileprocessor.StatsPublisher.
+ * Immutable: it holds a copy of the stats taken when it was created. Snapshots taken before the end only hold the stats
+ * that are cheap to compute, as given by @link org.fileprocessor.LineProcessor#getSnapshotKV(); the last one holds all of them.
+ */
+public final class StatsSnapshot {
+
+    private final String fileName;
+    private final long lines;
+    private final long elapsedNanos;
+    private final boolean last;
+    private final List<String> keyNames;
+    private final Map<String, Object> statMap;
+
+    StatsSnapshot(String fileName, long lines, long elapsedNanos, boolean last, List<? extends LineProcessor> processors) {
+        this.fileName = fileName;
+        this.lines = lines;
+        this.elapsedNanos = elapsedNanos;
+        this.last = last;
+        List<String> keys = new ArrayList<>();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (LineProcessor processor : processors) {
+            if (processor != null) {
+                Map<String, Object> processorStats = last ? processor.getKVForProcessedLines() : processor.getSnapshotKV();
+                processor.getKeyNames().stream().filter(processorStats::containsKey).forEach(keys::add);
+                stats.putAll(processorStats);
+            }
+        }
+        this.keyNames = Collections.unmodifiableList(keys);
+        this.statMap = Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * @return file being processed.
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return number of lines read so far, empty ones included.
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * @return time since processing started.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return true for the snapshot taken once the whole file has been processed.
+     */
+    public boolean isLast() {
+        return last;
+    }
+
+    /**
+     * @return names of the stats in the snapshot.
+     */
+    public List<String> getKeyNames() {
+        return keyNames;
+    }
+
+    /**
+     * @return Name-value KV map of the stats calculated so far.
+     */
+    public Map<String, Object> getKVForProcessedLines() {
+        return statMap;
+    }
+
+    @Override
+    public String toString() {
+        return fileName + " after " + lines + " lines" + (last ? " (last)" : "") + ": " + statMap;
+    }
+}
@@ -0,0 +1,287 @@
+package org.fileprocessor;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Exact occurrence counter for terms (words or n-grams) that keeps its memory compact and bounded.
+ *
+ * The chars of all the terms are interned in a single growing char array, and each term costs a hash, an offset, a length
+ * and a long counter in parallel primitive arrays, plus an int in an open addressing index. Counting a term that is already
+ * there allocates nothing. A term that would take the table over its memory limit is refused instead, so the caller can
+ * switch to an approximate counter.
+ */
+final class TermTable implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_ENTRIES = 64;
+    private static final int INITIAL_CHARS = 1024;
+
+    private final long maxBytes;
+
+    private transient char[] chars;
+    private transient int charCount;
+    private transient long[] hashes;
+    private transient int[] offsets;
+    private transient int[] lengths;
+    private transient long[] counts;
+    private transient int size;
+    private transient long total;
+    // entry + 1 of the term in each slot, 0 if empty; at most half full
+    private transient int[] index;
+
+    /**
+     * @param maxBytes how much memory the table may take, roughly.
+     */
+    TermTable(long maxBytes) {
+        this.maxBytes = maxBytes;
+        init(INITIAL_ENTRIES, INITIAL_CHARS);
+    }
+
+    private void init(int entries, int charCapacity) {
+        chars = new char[charCapacity];
+        charCount = 0;
+        hashes = new long[entries];
+        offsets = new int[entries];
+        lengths = new int[entries];
+        counts = new long[entries];
+        size = 0;
+        total = 0;
+        index = new int[entries * 2];
+    }
+
+    /**
+     * Counts occurrences of a term.
+     * @param term buffer holding the term.
+     * @param length number of chars of the term in the buffer.
+     * @param hash @see HyperLogLog#hash(char[], int) of the term.
+     * @param occurrences number of times it has been seen.
+     * @return false, without counting anything, if the term is new and there is no room for it.
+     */
+    boolean add(char[] term, int length, long hash, long occurrences) {
+        int mask = index.length - 1;
+        int slot = (int) hash & mask;
+        for (int entry; (entry = index[slot]) != 0; slot = (slot + 1) & mask) {
+            entry--;
+            if (hashes[entry] == hash && equals(entry, term, length)) {
+                counts[entry] += occurrences;
+                total += occurrences;
+                return true;
+            }
+        }
+        if (!makeRoom(length)) {
+            return false;
+        }
+        if (size == hashes.length) { // the index was grown, find the new slot
+            grow();
+            mask = index.length - 1;
+            slot = (int) hash & mask;
+            while (index[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+        }
+        System.arraycopy(term, 0, chars, charCount, length);
+        hashes[size] = hash;
+        offsets[size] = charCount;
+        lengths[size] = length;
+        counts[size] = occurrences;
+        charCount += length;
+        total += occurrences;
+        index[slot] = ++size;
+        return true;
+    }
+
+    /**
+     * Grows the char array if needed and checks that the arrays still fit in the limit once grown for one more term.
+     */
+    private boolean makeRoom(int length) {
+        long entries = size == hashes.length ? hashes.length * 2L : hashes.length;
+        long charCapacity = chars.length;
+        while (charCount + (long) length > charCapacity) {
+            charCapacity *= 2;
+        }
+        if (bytes(entries, charCapacity) > maxBytes || charCapacity > Integer.MAX_VALUE - 8) {
+            return false;
+        }
+        if (charCapacity > chars.length) {
+            chars = Arrays.copyOf(chars, (int) charCapacity);
+        }
+        return true;
+    }
+
+    private void grow() {
+        int entries = hashes.length * 2;
+        hashes = Arrays.copyOf(hashes, entries);
+        offsets = Arrays.copyOf(offsets, entries);
+        lengths = Arrays.copyOf(lengths, entries);
+        counts = Arrays.copyOf(counts, entries);
+        index = new int[entries * 2];
+        int mask = index.length - 1;
+        for (int entry = 0; entry < size; entry++) {
+            int slot = (int) hashes[entry] & mask;
+            while (index[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = entry + 1;
+        }
+    }
+
+    private static long bytes(long entries, long charCapacity) {
+        // hash, offset, length, count and two index slots per entry
+        return entries * (8 + 4 + 4 + 8 + 2 * 4) + charCapacity * 2;
+    }
+
+    private boolean equals(int entry, char[] term, int length) {
+        if (lengths[entry] != length) {
+            return false;
+        }
+        int offset = offsets[entry];
+        for (int i = 0; i < length; i++) {
+            if (chars[offset + i] != term[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return roughly how much memory the table takes.
+     */
+    long getBytes() {
+        return bytes(hashes.length, chars.length);
+    }
+
+    /**
+     * @return number of different terms.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return number of occurrences counted, of all terms.
+     */
+    long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return average number of chars of the terms, 0 if there are none.
+     */
+    double getAverageLength() {
+        return size == 0 ? 0 : (double) charCount / size;
+    }
+
+    /**
+     * Adds all the terms of another table to this one, as far as they fit. The other table is left untouched.
+     * @return index of the first term of the other table that did not fit, or -1 if all of them did.
+     */
+    int merge(TermTable other) {
+        char[] buffer = new char[16];
+        for (int entry = 0; entry < other.size; entry++) {
+            int length = other.lengths[entry];
+            if (buffer.length < length) {
+                buffer = new char[Math.max(length, buffer.length * 2)];
+            }
+            System.arraycopy(other.chars, other.offsets[entry], buffer, 0, length);
+            if (!add(buffer, length, other.hashes[entry], other.counts[entry])) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the term of an entry.
+     */
+    String term(int entry) {
+        return new String(chars, offsets[entry], lengths[entry]);
+    }
+
+    /**
+     * @return the hash of the term of an entry.
+     */
+    long hash(int entry) {
+        return hashes[entry];
+    }
+
+    /**
+     * @return the count of an entry.
+     */
+    long count(int entry) {
+        return counts[entry];
+    }
+
+    /**
+     * @param k number of terms wanted.
+     * @return the k terms with the highest counts, highest first. Ties are broken by term, like @see SpaceSaving#top(int).
+     */
+    List<SpaceSaving.Counter> top(int k) {
+        if (k <= 0) {
+            return new ArrayList<>(0);
+        }
+        // min-heap of the best k so far, whose head is the first to drop
+        PriorityQueue<Integer> best = new PriorityQueue<>(k + 1, (a, b) -> {
+            int byCount = Long.compare(counts[a], counts[b]);
+            return byCount != 0 ? byCount : compareTerms(b, a);
+        });
+        for (int entry = 0; entry < size; entry++) {
+            best.add(entry);
+            if (best.size() > k) {
+                best.poll();
+            }
+        }
+        List<SpaceSaving.Counter> top = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            int entry = best.poll();
+            top.add(new SpaceSaving.Counter(term(entry), counts[entry], 0));
+        }
+        Collections.reverse(top);
+        return top;
+    }
+
+    private int compareTerms(int a, int b) {
+        int length = Math.min(lengths[a], lengths[b]);
+        for (int i = 0; i < length; i++) {
+            int diff = chars[offsets[a] + i] - chars[offsets[b] + i];
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return lengths[a] - lengths[b];
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject(); // only the terms and their counts, the index is rebuilt
+        out.writeInt(size);
+        for (int entry = 0; entry < size; entry++) {
+            out.writeInt(lengths[entry]);
+            for (int i = 0; i < lengths[entry]; i++) {
+                out.writeChar(chars[offsets[entry] + i]);
+            }
+            out.writeLong(counts[entry]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        init(INITIAL_ENTRIES, INITIAL_CHARS);
+        int entries = in.readInt();
+        for (int entry = 0; entry < entries; entry++) {
+            char[] term = new char[in.readInt()];
+            for (int i = 0; i < term.length; i++) {
+                term[i] = in.readChar();
+            }
+            long count = in.readLong();
+            add(term, term.length, HyperLogLog.hash(term, term.length), count); // it fitted before, so it fits again
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package org.fileprocessor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * @link org.fileprocessor.LineProcessor that finds the most frequent words and word n-grams (sequences of consecutive words
+ * in a line, e.g. bigrams) within a memory ceiling.
+ *
+ * Terms are counted exactly as long as they fit: every term size gets an equal share of the ceiling, in which the chars of
+ * the terms are interned in a single array and counted with primitive longs (see @link org.fileprocessor.TermTable). When a
+ * new term would not fit, the largest counts found so far seed a @link org.fileprocessor.SpaceSaving sketch sized to the same
+ * share, and from then on that size only reports heavy hitters, whose counts come with the most they may be over the true
+ * one. Distinct terms are counted exactly while counts are, and estimated with a @link org.fileprocessor.HyperLogLog after.
+ * Partial results merge, exact or not, so shards can be counted separately.
+ *
+ * Words are those found by @link org.fileprocessor.LineScanner, case sensitive; the words of an n-gram are joined by a
+ * space and never span two lines.
+ */
+public class TopKLineProcessor implements MergeableLineProcessor<TopKLineProcessor>, WordLineProcessor, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Key for the most frequent words, most frequent first, as "word=count" separated by ", ". Approximate counts are
+     * followed by "±" and how much they may exceed the true count.
+     */
+    public static final String TOP_WORDS = ApproximateLineProcessor.TOP_WORDS;
+    /**
+     * Key for the number of distinct words.
+     */
+    public static final String DISTINCT_WORDS = ApproximateLineProcessor.DISTINCT_WORDS;
+
+    /**
+     * Default number of terms reported per size.
+     */
+    public static final int DEFAULT_K = 10;
+    /**
+     * Default size of the longest n-grams counted: words and bigrams.
+     */
+    public static final int DEFAULT_MAX_N = 2;
+    /**
+     * Default memory ceiling.
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    // rough cost of a sketch counter on top of its chars: four arrays, two index slots and a String
+    private static final int SKETCH_BYTES_PER_COUNTER = 128;
+    private static final int DISTINCT_PRECISION = 12;
+
+    private final int k;
+    private final int maxN;
+    private final long maxBytes;
+    private final Terms[] terms;
+
+    // the last maxN - 1 words of the current line, as a ring
+    private transient char[][] previous;
+    private transient int[] previousLengths;
+    private transient int previousCount;
+    private transient int last;
+    private transient char[] gram;
+    private transient LineScanner scanner;
+
+    /**
+     * Counts of the terms of one size.
+     */
+    private static final class Terms implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long maxBytes;
+        private TermTable exact;
+        private SpaceSaving frequent = null;
+        // only used once counts are approximate
+        private final HyperLogLog distinct = new HyperLogLog(DISTINCT_PRECISION);
+
+        Terms(long maxBytes) {
+            this.maxBytes = maxBytes;
+            this.exact = new TermTable(maxBytes);
+        }
+
+        void add(char[] term, int length) {
+            long hash = HyperLogLog.hash(term, length);
+            if (exact != null) {
+                if (exact.add(term, length, hash, 1)) {
+                    return;
+                }
+                approximate();
+            }
+            distinct.add(hash);
+            frequent.add(term, length, hash);
+        }
+
+        /**
+         * Moves from exact counts to sketches, which start with the largest exact counts and all the distinct terms.
+         */
+        void approximate() {
+            addDistinct(exact);
+            long perCounter = SKETCH_BYTES_PER_COUNTER + 2 * Math.round(exact.getAverageLength());
+            int capacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 4, maxBytes / perCounter));
+            frequent = new SpaceSaving(capacity);
+            List<SpaceSaving.Counter> largest = exact.top(capacity + 1);
+            long kept = 0;
+            for (SpaceSaving.Counter counter : largest.subList(0, Math.min(capacity, largest.size()))) {
+                frequent.add(counter.getItem(), counter.getCount());
+                kept += counter.getCount();
+            }
+            if (largest.size() > capacity) {
+                frequent.dropped(largest.get(capacity).getCount(), exact.getTotal() - kept);
+            }
+            exact = null;
+        }
+
+        private void addDistinct(TermTable table) {
+            for (int entry = 0; entry < table.size(); entry++) {
+                distinct.add(table.hash(entry));
+            }
+        }
+
+        void merge(Terms other) {
+            if (exact != null && other.exact != null) {
+                int notMerged = exact.merge(other.exact);
+                if (notMerged < 0) {
+                    return;
+                }
+                approximate();
+                addDistinct(other.exact);
+                for (int entry = notMerged; entry < other.exact.size(); entry++) {
+                    frequent.add(other.exact.term(entry), other.exact.count(entry));
+                }
+            } else if (other.exact != null) {
+                addDistinct(other.exact);
+                for (int entry = 0; entry < other.exact.size(); entry++) {
+                    frequent.add(other.exact.term(entry), other.exact.count(entry));
+                }
+            } else {
+                if (exact != null) {
+                    approximate();
+                }
+                distinct.merge(other.distinct);
+                frequent.merge(other.frequent);
+            }
+        }
+
+        boolean isExact() {
+            return exact != null;
+        }
+
+        List<SpaceSaving.Counter> top(int k) {
+            return exact != null ? exact.top(k) : frequent.top(k);
+        }
+
+        double distinct() {
+            return exact != null ? exact.size() : distinct.estimate();
+        }
+    }
+
+    /**
+     * Creates a processor that reports the @link #DEFAULT_K most frequent words and bigrams within
+     * @link #DEFAULT_MAX_BYTES.
+     */
+    public TopKLineProcessor() {
+        this(DEFAULT_K, DEFAULT_MAX_N, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param k number of terms reported for each size.
+     * @param maxN size of the longest n-grams counted, 1 for words only.
+     * @param maxBytes roughly how much memory the counts may take, shared evenly by all sizes.
+     */
+    public TopKLineProcessor(int k, int maxN, long maxBytes) {
+        if (k <= 0 || maxN <= 0) {
+            throw new IllegalArgumentException("Need to report at least one term of at least one word: " + k + ", " + maxN);
+        }
+        long share = maxBytes / maxN;
+        if (share < 4 * 1024) {
+            throw new IllegalArgumentException("Need at least 4 KB for each n-gram size: " + maxBytes);
+        }
+        this.k = k;
+        this.maxN = maxN;
+        this.maxBytes = maxBytes;
+        this.terms = new Terms[maxN];
+        for (int n = 0; n < maxN; n++) {
+            terms[n] = new Terms(share);
+        }
+    }
+
+    /**
+     * @param n size of the terms, 1 for words.
+     * @return key for the most frequent terms of that size.
+     */
+    public static String topKey(int n) {
+        return n == 1 ? TOP_WORDS : "Top " + n + "-grams";
+    }
+
+    /**
+     * @param n size of the terms, 1 for words.
+     * @return key for the number of distinct terms of that size.
+     */
+    public static String distinctKey(int n) {
+        return n == 1 ? DISTINCT_WORDS : "Distinct " + n + "-grams";
+    }
+
+    /**
+     * @param n size of the terms, 1 for words.
+     * @return true if the terms of that size are still counted exactly.
+     */
+    public boolean isExact(int n) {
+        return terms[n - 1].isExact();
+    }
+
+    /**
+     * @param n size of the terms, 1 for words.
+     * @return the most frequent terms of that size, most frequent first.
+     */
+    public List<SpaceSaving.Counter> getTop(int n) {
+        return terms[n - 1].top(k);
+    }
+
+    @Override
+    public void process(String line) {
+        process((CharSequence) line);
+    }
+
+    @Override
+    public void process(CharSequence line) {
+        if (line != null && line.length() > 0) {
+            beginLine(line);
+            if (scanner == null) {
+                scanner = new LineScanner();
+            }
+            scanner.scan(line, this);
+            endLine();
+        }
+    }
+
+    @Override
+    public void beginLine(CharSequence line) {
+        if (previous == null) { // transient fields are lost on deserialization
+            previous = new char[Math.max(0, maxN - 1)][16];
+            previousLengths = new int[previous.length];
+            gram = new char[64];
+        }
+        previousCount = 0;
+    }
+
+    @Override
+    public void word(char[] word, int length) {
+        terms[0].add(word, length);
+        if (maxN == 1) {
+            return;
+        }
+        // n-grams ending with this word, from the shortest
+        int gramLength = length;
+        ensureGram(length);
+        System.arraycopy(word, 0, gram, 0, length);
+        for (int n = 2; n <= Math.min(maxN, previousCount + 1); n++) {
+            int back = (last - (n - 2) + previous.length) % previous.length;
+            int wordLength = previousLengths[back];
+            ensureGram(gramLength + wordLength + 1);
+            System.arraycopy(gram, 0, gram, wordLength + 1, gramLength);
+            System.arraycopy(previous[back], 0, gram, 0, wordLength);
+            gram[wordLength] = ' ';
+            gramLength += wordLength + 1;
+            terms[n - 1].add(gram, gramLength);
+        }
+        last = (last + 1) % previous.length;
+        if (previous[last].length < length) {
+            previous[last] = new char[Math.max(length, previous[last].length * 2)];
+        }
+        System.arraycopy(word, 0, previous[last], 0, length);
+        previousLengths[last] = length;
+        previousCount = Math.min(previousCount + 1, previous.length);
+    }
+
+    private void ensureGram(int length) {
+        if (gram.length < length) {
+            char[] larger = new char[Math.max(length, gram.length * 2)];
+            System.arraycopy(gram, 0, larger, 0, gram.length);
+            gram = larger;
+        }
+    }
+
+    @Override
+    public TopKLineProcessor newInstance() {
+        return new TopKLineProcessor(k, maxN, maxBytes);
+    }
+
+    @Override
+    public void merge(TopKLineProcessor other) {
+        for (int n = 0; n < maxN; n++) {
+            terms[n].merge(other.terms[n]);
+        }
+    }
+
+    @Override
+    public String printProcessedLines() {
+        StringBuilder output = new StringBuilder();
+        Map<String, Object> stats = getKVForProcessedLines();
+        for (String key : getKeyNames()) {
+            output.append(key + ": " + stats.get(key) + "\n");
+        }
+        return output.toString();
+    }
+
+    @Override
+    public Map<String, Object> getKVForProcessedLines() {
+        Map<String, Object> stats = new HashMap<>();
+        for (int n = 1; n <= maxN; n++) {
+            stats.put(topKey(n), getTop(n).stream().map(SpaceSaving.Counter::toString).collect(Collectors.joining(", ")));
+            stats.put(distinctKey(n), terms[n - 1].distinct());
+        }
+        return stats;
+    }
+
+    /**
+     * Leaves out the most frequent terms, which sorts all the counted ones, and keeps the number of distinct terms, which is
+     * kept by the table or estimated from a sketch of a fixed size.
+     */
+    @Override
+    public Map<String, Object> getSnapshotKV() {
+        Map<String, Object> stats = new HashMap<>();
+        for (int n = 1; n <= maxN; n++) {
+            stats.put(distinctKey(n), terms[n - 1].distinct());
+        }
+        return stats;
+    }
+
+    @Override
+    public List<String> getKeyNames() {
+        List<String> keys = new ArrayList<>(maxN * 2);
+        for (int n = 1; n <= maxN; n++) {
+            keys.add(topKey(n));
+            keys.add(distinctKey(n));
+        }
+        return keys;
+    }
+}
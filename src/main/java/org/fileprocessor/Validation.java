@@ -15,8 +15,8 @@ public class Validation {
         OK, HINT, ERROR;
     }
 
-    private String          text    = null;
-    private ValidationType  type    = ValidationType.OK;
+    private final String          text;
+    private final ValidationType  type;
 
     public Validation(String text, ValidationType type) {
         super();
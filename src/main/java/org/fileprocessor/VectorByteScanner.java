@@ -0,0 +1,72 @@
+package org.fileprocessor;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * @link org.fileprocessor.ByteScanner that checks a whole SIMD register of bytes at a time with the incubating Vector API,
+ * finishing with a plain loop over the bytes that do not fill a register. Only loaded through @see ByteScanner#get(), as it
+ * needs the jdk.incubator.vector module at run time.
+ */
+final class VectorByteScanner extends ByteScanner {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final int LENGTH = SPECIES.length();
+
+    @Override
+    int indexOfLineBreak(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += LENGTH) {
+            ByteVector bytes = load(buffer, i);
+            VectorMask<Byte> breaks = bytes.eq((byte) '\n').or(bytes.eq((byte) '\r'));
+            if (breaks.anyTrue()) {
+                return i + breaks.firstTrue();
+            }
+        }
+        return ByteScanner.scalar().indexOfLineBreak(buffer, i, to);
+    }
+
+    @Override
+    int indexOfNonAlphanumeric(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += LENGTH) {
+            ByteVector bytes = load(buffer, i);
+            ByteVector lowerCase = bytes.or((byte) 0x20); // only folds letters into a single range, checked below
+            VectorMask<Byte> alphanumeric = bytes.compare(VectorOperators.GE, (byte) '0')
+                    .and(bytes.compare(VectorOperators.LE, (byte) '9'))
+                    .or(lowerCase.compare(VectorOperators.GE, (byte) 'a').and(lowerCase.compare(VectorOperators.LE, (byte) 'z')));
+            if (!alphanumeric.allTrue()) {
+                return i + alphanumeric.not().firstTrue();
+            }
+        }
+        return ByteScanner.scalar().indexOfNonAlphanumeric(buffer, i, to);
+    }
+
+    @Override
+    boolean isAscii(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += LENGTH) {
+            if (load(buffer, i).lt((byte) 0).anyTrue()) {
+                return false;
+            }
+        }
+        return ByteScanner.scalar().isAscii(buffer, i, to);
+    }
+
+    private static ByteVector load(ByteBuffer buffer, int index) {
+        if (buffer.hasArray()) {
+            return ByteVector.fromArray(SPECIES, buffer.array(), buffer.arrayOffset() + index);
+        }
+        return ByteVector.fromByteBuffer(SPECIES, buffer, index, ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public String toString() {
+        return "vector byte scanner (" + LENGTH + " bytes at a time)";
+    }
+}
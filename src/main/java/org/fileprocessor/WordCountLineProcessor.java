@@ -0,0 +1,176 @@
+package org.fileprocessor;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+
+/**
+ * @link org.fileprocessor.LineProcessor that counts every distinct word exactly, however large the vocabulary, by keeping
+ * the counts in an @link org.fileprocessor.OffHeapWordTable instead of the heap.
+ *
+ * Besides the number of words and distinct words, it reports the most frequent ones; @link #getWords() gives access to all
+ * of them for final reporting, e.g. sorted by word. Words are those found by @link org.fileprocessor.LineScanner, case
+ * sensitive. Partial results merge, so shards can be counted separately, each in a table of its own.
+ */
+public class WordCountLineProcessor implements MergeableLineProcessor<WordCountLineProcessor>, WordLineProcessor, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Key for the number of words.
+     */
+    public static final String WORDS = DefaultLineProcessor.WORDS;
+    /**
+     * Key for the number of distinct words.
+     */
+    public static final String DISTINCT_WORDS = ApproximateLineProcessor.DISTINCT_WORDS;
+    /**
+     * Key for the most frequent words, most frequent first, as "word=count" separated by ", ".
+     */
+    public static final String TOP_WORDS = ApproximateLineProcessor.TOP_WORDS;
+
+    /**
+     * Default number of words reported under @link #TOP_WORDS.
+     */
+    public static final int DEFAULT_TOP_WORDS = 10;
+
+    private final int topWords;
+    private final String spillDirectory;
+    private final OffHeapWordTable words;
+
+    private transient LineScanner scanner;
+
+    /**
+     * Creates a processor that keeps its words in direct memory and reports the @link #DEFAULT_TOP_WORDS most frequent.
+     */
+    public WordCountLineProcessor() {
+        this(DEFAULT_TOP_WORDS, null);
+    }
+
+    /**
+     * @param topWords number of words reported under @link #TOP_WORDS.
+     * @param spillDirectory directory where the words are kept in memory-mapped files, so that they can outgrow the RAM,
+     *                       or null for direct memory.
+     */
+    public WordCountLineProcessor(int topWords, Path spillDirectory) {
+        if (topWords <= 0) {
+            throw new IllegalArgumentException("Need to report at least one word: " + topWords);
+        }
+        this.topWords = topWords;
+        this.spillDirectory = spillDirectory == null ? null : spillDirectory.toString();
+        this.words = new OffHeapWordTable(spillDirectory);
+    }
+
+    /**
+     * @return all the words counted so far, with their counts.
+     */
+    public OffHeapWordTable getWords() {
+        return words;
+    }
+
+    @Override
+    public void process(String line) {
+        process((CharSequence) line);
+    }
+
+    @Override
+    public void process(CharSequence line) {
+        if (line != null && line.length() > 0) {
+            beginLine(line);
+            if (scanner == null) {
+                scanner = new LineScanner();
+            }
+            scanner.scan(line, this);
+            endLine();
+        }
+    }
+
+    @Override
+    public void beginLine(CharSequence line) {
+    }
+
+    @Override
+    public void word(char[] word, int length) {
+        words.add(word, length);
+    }
+
+    @Override
+    public WordCountLineProcessor newInstance() {
+        return new WordCountLineProcessor(topWords, spillDirectory == null ? null : Paths.get(spillDirectory));
+    }
+
+    @Override
+    public void merge(WordCountLineProcessor other) {
+        words.merge(other.words);
+    }
+
+    /**
+     * @return the most frequent words, most frequent first; ties are broken by word.
+     */
+    public List<SpaceSaving.Counter> getTop() {
+        // min-heap of the best so far, whose head is the first to drop
+        PriorityQueue<SpaceSaving.Counter> best = new PriorityQueue<>(topWords + 1, (a, b) -> {
+            int byCount = Long.compare(a.getCount(), b.getCount());
+            return byCount != 0 ? byCount : b.getItem().compareTo(a.getItem());
+        });
+        words.forEach((word, length, count) -> {
+            SpaceSaving.Counter head = best.peek();
+            if (best.size() < topWords || count >= head.getCount()) {
+                best.add(new SpaceSaving.Counter(new String(word, 0, length, StandardCharsets.UTF_8), count, 0));
+                if (best.size() > topWords) {
+                    best.poll();
+                }
+            }
+        });
+        List<SpaceSaving.Counter> top = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            top.add(best.poll());
+        }
+        Collections.reverse(top);
+        return top;
+    }
+
+    @Override
+    public String printProcessedLines() {
+        StringBuilder output = new StringBuilder();
+        Map<String, Object> stats = getKVForProcessedLines();
+        for (String key : getKeyNames()) {
+            output.append(key + ": " + stats.get(key) + "\n");
+        }
+        return output.toString();
+    }
+
+    @Override
+    public Map<String, Object> getKVForProcessedLines() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put(WORDS, (double) words.getTotal());
+        stats.put(DISTINCT_WORDS, (double) words.size());
+        stats.put(TOP_WORDS, getTop().stream().map(SpaceSaving.Counter::toString).collect(Collectors.joining(", ")));
+        return stats;
+    }
+
+    /**
+     * Leaves out @link #TOP_WORDS, which walks the whole table.
+     */
+    @Override
+    public Map<String, Object> getSnapshotKV() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put(WORDS, (double) words.getTotal());
+        stats.put(DISTINCT_WORDS, (double) words.size());
+        return stats;
+    }
+
+    @Override
+    public List<String> getKeyNames() {
+        return Arrays.asList(WORDS, DISTINCT_WORDS, TOP_WORDS);
+    }
+}
@@ -0,0 +1,28 @@
+package org.fileprocessor;
+
+/**
+ * @link org.fileprocessor.LineProcessor that works on the words of each line as found by @link org.fileprocessor.LineScanner.
+ *
+ * When several processors run over the same file, @link org.fileprocessor.DefaultFileProcessor scans every line once and
+ * hands the same words to all the word processors, instead of each of them tokenizing the line again: for each line
+ * #beginLine(CharSequence) is called, then @link LineScanner.WordSink#word(char[], int) once per word, then #endLine().
+ * Empty lines get #beginLine(CharSequence) and #endLine() but no words. Word buffers are shared and reused, so processors
+ * must copy whatever they want to keep.
+ *
+ * Implementations should make #process(String) go through the same three steps with their own scanner, so that they give
+ * the same results when used on their own.
+ */
+public interface WordLineProcessor extends LineProcessor, LineScanner.WordSink {
+
+    /**
+     * Called before the words of a line.
+     * @param line the whole line, only valid during the call.
+     */
+    void beginLine(CharSequence line);
+
+    /**
+     * Called after the last word of a line.
+     */
+    default void endLine() {
+    }
+}
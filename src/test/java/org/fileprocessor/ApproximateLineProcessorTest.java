@@ -0,0 +1,129 @@
+package org.fileprocessor;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ApproximateLineProcessorTest {
+    private static final long BLOCK_SIZE = 4 * 1024;
+
+    private static Path corpus;
+    private static Map<String, Object> exact;
+
+    @BeforeClass
+    public static void createCorpus() throws IOException {
+        corpus = Files.createTempFile("sampled", ".txt");
+        Random random = new Random(3);
+        try (Writer writer = Files.newBufferedWriter(corpus, StandardCharsets.UTF_8)) {
+            for (int line = 0; line < 20000; line++) {
+                int words = random.nextInt(12);
+                for (int word = 0; word < words; word++) {
+                    writer.write(random.nextInt(3) == 0 ? "the " : "wörd" + random.nextInt(500) + " ");
+                }
+                writer.write("\n");
+            }
+        }
+        DefaultLineProcessor processor = new DefaultLineProcessor();
+        new DefaultFileProcessor().processFile(corpus.toString(), processor, StandardCharsets.UTF_8);
+        exact = processor.getKVForProcessedLines();
+    }
+
+    @AfterClass
+    public static void deleteCorpus() throws IOException {
+        Files.deleteIfExists(corpus);
+    }
+
+    @Test
+    public void testExactOnWholeFile() {
+        ApproximateLineProcessor processor = new ApproximateLineProcessor();
+        new DefaultFileProcessor().processFileInParallel(corpus.toString(), Arrays.asList(processor), StandardCharsets.UTF_8, 4);
+        Map<String, Object> stats = processor.getKVForProcessedLines();
+        for (String key : new DefaultLineProcessor().getKeyNames()) {
+            assertEquals(key, exact.get(key), stats.get(key));
+        }
+        assertEquals("No error ", 0.0, stats.get(ApproximateLineProcessor.LINES_ERROR));
+        assertEquals("Whole file ", 1.0, stats.get(ApproximateLineProcessor.SAMPLED_FRACTION));
+        double distinct = (Double) stats.get(ApproximateLineProcessor.DISTINCT_WORDS);
+        assertTrue("Distinct words " + distinct, Math.abs(distinct - 501) <= (Double) stats.get(ApproximateLineProcessor.DISTINCT_WORDS_ERROR));
+        assertTrue("Top word " + stats.get(ApproximateLineProcessor.TOP_WORDS),
+                ((String) stats.get(ApproximateLineProcessor.TOP_WORDS)).startsWith("the="));
+    }
+
+    @Test
+    public void testSampledWithinErrorBounds() {
+        ApproximateLineProcessor processor = new ApproximateLineProcessor(3, 12);
+        ProcessingResult result = new DefaultFileProcessor().processFileSampled(corpus.toString(), Arrays.asList(processor),
+                StandardCharsets.UTF_8, 0.2, BLOCK_SIZE, 7);
+        assertEquals("Processed ", Validation.ValidationType.OK, result.getType());
+        Map<String, Object> stats = result.getKVForProcessedLines();
+        double fraction = (Double) stats.get(ApproximateLineProcessor.SAMPLED_FRACTION);
+        assertTrue("Fraction read " + fraction, fraction > 0.15 && fraction < 0.25);
+        for (String[] keys : new String[][]{{DefaultLineProcessor.LINES, ApproximateLineProcessor.LINES_ERROR},
+                {DefaultLineProcessor.WORDS, ApproximateLineProcessor.WORDS_ERROR}}) {
+            double estimate = (Double) stats.get(keys[0]);
+            double error = (Double) stats.get(keys[1]);
+            double actual = (Double) exact.get(keys[0]);
+            assertTrue(keys[1] + " " + error, error > 0 && error < actual * 0.05);
+            assertTrue(keys[0] + " " + estimate + " ± " + error + " vs " + actual, Math.abs(estimate - actual) <= 2 * error);
+        }
+        assertEquals("Most common letter ", exact.get(DefaultLineProcessor.MOST_COMMON_LETTER),
+                stats.get(DefaultLineProcessor.MOST_COMMON_LETTER));
+    }
+
+    @Test
+    public void testSampledPlainProcessorsAndFallbacks() {
+        DefaultFileProcessor fileProcessor = new DefaultFileProcessor();
+        DefaultLineProcessor sampled = new DefaultLineProcessor();
+        fileProcessor.processFileSampled(corpus.toString(), Arrays.asList(sampled), StandardCharsets.UTF_8, 0.1, BLOCK_SIZE, 7);
+        double lines = (Double) sampled.getKVForProcessedLines().get(DefaultLineProcessor.LINES);
+        assertTrue("Only sampled lines " + lines, lines > 0 && lines < (Double) exact.get(DefaultLineProcessor.LINES) / 5);
+
+        ApproximateLineProcessor all = new ApproximateLineProcessor();
+        fileProcessor.processFileSampled(corpus.toString(), Arrays.asList(all), StandardCharsets.UTF_8, 1.0, BLOCK_SIZE, 7);
+        assertEquals("Everything sampled ", exact.get(DefaultLineProcessor.LINES),
+                all.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+
+        List<LineProcessor> notMergeable = Arrays.asList(new DoNothingLineProcessor());
+        ProcessingResult sequential = fileProcessor.processFileSampled(testFile(), notMergeable, StandardCharsets.UTF_8, 0.5);
+        assertEquals("Processed sequentially ", Validation.ValidationType.OK, sequential.getType());
+
+        ProcessingResult wrongFraction = fileProcessor.processFileSampled(testFile(), Arrays.asList(new ApproximateLineProcessor()),
+                StandardCharsets.UTF_8, 0);
+        assertEquals("Wrong fraction ", Validation.ValidationType.ERROR, wrongFraction.getType());
+        assertTrue("Message ", wrongFraction.getText().startsWith(DefaultFileProcessor.SAMPLE_FRACTION_ERROR));
+    }
+
+    @Test
+    public void testMergeAndCopy() {
+        ApproximateLineProcessor first = new ApproximateLineProcessor();
+        ApproximateLineProcessor second = first.newInstance();
+        first.process("the cat and the hat");
+        second.process("the end");
+        ApproximateLineProcessor combined = first.combine(second);
+        Map<String, Object> stats = combined.getKVForProcessedLines();
+        assertEquals("Lines ", 2.0, stats.get(DefaultLineProcessor.LINES));
+        assertEquals("Words ", 7.0, stats.get(DefaultLineProcessor.WORDS));
+        assertEquals("Top words ", "the=3, and=1, cat=1, end=1, hat=1", stats.get(ApproximateLineProcessor.TOP_WORDS));
+        assertEquals("Most common letter ", 't', stats.get(DefaultLineProcessor.MOST_COMMON_LETTER));
+        assertEquals("First untouched ", 1.0, first.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+    }
+
+    private static String testFile() {
+        URL url = ApproximateLineProcessorTest.class.getResource("/testFileUTF8_NO_BOM.txt");
+        return System.getProperty("os.name").startsWith("Windows") ? url.getFile().substring(1) : url.getFile();
+    }
+}
@@ -0,0 +1,201 @@
+package org.fileprocessor;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatchFileProcessorTest {
+    private Path directory;
+    private BatchFileProcessor batchFileProcessor;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("batch");
+        Files.createDirectory(directory.resolve("rotated"));
+        for (int i = 0; i < 5; i++) {
+            Files.write(directory.resolve("app-" + i + ".log"), ("This is a test line\nanother line " + i + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        Files.write(directory.resolve("rotated/app-old.log"), "This is a test line\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("notes.txt"), "Ignore me\n".getBytes(StandardCharsets.UTF_8));
+        batchFileProcessor = new BatchFileProcessor(new DefaultFileProcessor(), 2, 1);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testDirectory(){
+        BatchFileProcessor.BatchResult result = batchFileProcessor.processFiles(
+                Collections.singletonList(directory.toString()), Arrays.asList(new DefaultLineProcessor()), StandardCharsets.UTF_8);
+        assertEquals("One validation per file ", 6, result.getValidations().size());
+        assertTrue("No failures ", result.getFailedFiles().isEmpty());
+        assertEquals("Aggregated lines ", 11.0, result.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+    }
+
+    @Test
+    public void testLineIndexesSkipped() throws IOException {
+        LineIndex.of(directory.resolve("app-0.log"), 1);
+        Path sidecar = LineIndex.sidecarOf(directory.resolve("app-0.log"));
+        assertTrue("Index saved ", Files.exists(sidecar));
+        assertFalse("Not in a directory ", BatchFileProcessor.resolve(directory.toString()).contains(sidecar.toString()));
+        assertEquals("Not matched by a glob ", 5, BatchFileProcessor.resolve(directory + "/app-*").size());
+        Files.write(directory.resolve("words.lines"), "not an index\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue("Other files kept ", BatchFileProcessor.resolve(directory + "/*.lines")
+                .contains(directory.resolve("words.lines").toString()));
+    }
+
+    @Test
+    public void testGlob(){
+        BatchFileProcessor.BatchResult result = batchFileProcessor.processFiles(
+                Collections.singletonList(directory + "/app-*.log"), Arrays.asList(new DefaultLineProcessor()), StandardCharsets.UTF_8);
+        assertEquals("One validation per file ", 5, result.getValidations().size());
+        assertEquals("Aggregated lines ", 10.0, result.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+        assertEquals("Aggregated words ", 40.0, result.getKVForProcessedLines().get(DefaultLineProcessor.WORDS));
+
+        result = batchFileProcessor.processFiles(
+                Collections.singletonList(directory + "/**.log"), Arrays.asList(new DefaultLineProcessor()), StandardCharsets.UTF_8);
+        assertEquals("Recursive glob ", 6, result.getValidations().size());
+    }
+
+    @Test
+    public void testFileListAndFailures() throws IOException {
+        Path list = directory.resolve("list.txt");
+        Files.write(list, Arrays.asList(directory.resolve("app-0.log").toString(), "", directory.resolve("missing.log").toString()));
+        List<String> inputs = Arrays.asList("@" + list, directory + "/*.none");
+        BatchFileProcessor.BatchResult result = batchFileProcessor.processFiles(inputs,
+                Arrays.asList(new DefaultLineProcessor()), StandardCharsets.UTF_8);
+        assertEquals("Validations ", 3, result.getValidations().size());
+        assertEquals("Failures ", 2, result.getFailedFiles().size());
+        assertTrue("Missing file reported ", result.getValidations().get(directory.resolve("missing.log").toString())
+                .getText().contains(DefaultFileProcessor.FILE_LOCATION_ERROR));
+        assertTrue("Empty glob reported ", result.getValidations().get(directory + "/*.none")
+                .getText().contains(BatchFileProcessor.NO_MATCHING_FILES_ERROR));
+        assertEquals("Aggregate only has good files ", 2.0, result.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+    }
+
+    @Test
+    public void testFileListsIncludingThemselves() throws IOException {
+        Path self = directory.resolve("self.txt");
+        Files.write(self, Arrays.asList("@" + directory.resolve("./self.txt")));
+        BatchFileProcessor.BatchResult result = batchFileProcessor.processFiles(Arrays.asList("@" + self),
+                Arrays.asList(new DefaultLineProcessor()), StandardCharsets.UTF_8);
+        assertTrue("Self-referencing list reported ", result.getValidations().get("@" + self)
+                .getText().contains(BatchFileProcessor.NO_MATCHING_FILES_ERROR));
+
+        Path first = directory.resolve("first.txt");
+        Path second = directory.resolve("second.txt");
+        Path shared = directory.resolve("shared.txt");
+        Files.write(first, Arrays.asList(directory.resolve("app-0.log").toString(), "@" + second, "@" + shared));
+        Files.write(second, Arrays.asList(directory.resolve("app-1.log").toString(), "@" + first, "@" + shared));
+        Files.write(shared, Arrays.asList(directory.resolve("app-2.log").toString()));
+        assertEquals("Cycle skipped, lists included twice kept ", Arrays.asList(directory.resolve("app-0.log").toString(),
+                directory.resolve("app-1.log").toString(), directory.resolve("app-2.log").toString(),
+                directory.resolve("app-2.log").toString()), BatchFileProcessor.resolve("@" + first));
+    }
+
+    @Test
+    public void testVirtualThreadsLimitOpenFiles(){
+        AtomicInteger open = new AtomicInteger();
+        AtomicInteger maxOpen = new AtomicInteger();
+        FileProcessor slowFileProcessor = new DefaultFileProcessor() {
+            @Override
+            public ProcessingResult processFile(String fileName, List<LineProcessor> processors, Charset charset) {
+                maxOpen.accumulateAndGet(open.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                    return super.processFile(fileName, processors, charset);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    open.decrementAndGet();
+                }
+            }
+        };
+        BatchFileProcessor.BatchResult result = new BatchFileProcessor(slowFileProcessor,
+                BatchFileProcessor.ExecutionMode.VIRTUAL_THREADS, 2).processFiles(
+                Collections.singletonList(directory.toString()), Arrays.asList(new DefaultLineProcessor()), StandardCharsets.UTF_8);
+        assertEquals("One validation per file ", 6, result.getValidations().size());
+        assertEquals("Aggregated lines ", 11.0, result.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+        assertTrue("At most two files open ", maxOpen.get() <= 2);
+    }
+
+    @Test
+    public void testRunsOnVirtualThreads() {
+        Assume.assumeTrue("Needs Java 21 or later", BatchFileProcessor.isVirtualThreadSupported());
+        Set<Boolean> virtual = ConcurrentHashMap.newKeySet();
+        FileProcessor recordingFileProcessor = new DefaultFileProcessor() {
+            @Override
+            public ProcessingResult processFile(String fileName, List<LineProcessor> processors, Charset charset) {
+                try {
+                    virtual.add((Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+                return super.processFile(fileName, processors, charset);
+            }
+        };
+        BatchFileProcessor.BatchResult result = new BatchFileProcessor(recordingFileProcessor,
+                BatchFileProcessor.ExecutionMode.VIRTUAL_THREADS, 2).processFiles(
+                Collections.singletonList(directory.toString()), Arrays.asList(new DefaultLineProcessor()), StandardCharsets.UTF_8);
+        assertEquals("Aggregated lines ", 11.0, result.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+        assertEquals("Only virtual threads ", Collections.singleton(true), virtual);
+    }
+
+    @Test
+    public void testInterruptReturnsConsistentAggregate() throws Exception {
+        for (int i = 5; i < 40; i++) {
+            Files.write(directory.resolve("app-" + i + ".log"), "This is a test line\nanother line\n".getBytes(StandardCharsets.UTF_8));
+        }
+        FileProcessor slowFileProcessor = new DefaultFileProcessor() {
+            @Override
+            public ProcessingResult processFile(String fileName, List<LineProcessor> processors, Charset charset) {
+                ProcessingResult result = super.processFile(fileName, processors, charset);
+                long until = System.nanoTime() + 5_000_000; // busy, so that the interrupt does not cut it short
+                while (System.nanoTime() < until) {
+                    Thread.onSpinWait();
+                }
+                return result;
+            }
+        };
+        AtomicReference<BatchFileProcessor.BatchResult> result = new AtomicReference<>();
+        Thread caller = new Thread(() -> result.set(new BatchFileProcessor(slowFileProcessor, 4, 4).processFiles(
+                Collections.singletonList(directory + "/app-*.log"), Arrays.asList(new DefaultLineProcessor()),
+                StandardCharsets.UTF_8)));
+        caller.start();
+        Thread.sleep(30);
+        caller.interrupt();
+        caller.join();
+        BatchFileProcessor.BatchResult interrupted = result.get();
+        assertTrue("Stopped early ", interrupted.getValidations().size() < 40);
+        Object lines = interrupted.getKVForProcessedLines().get(DefaultLineProcessor.LINES);
+        assertEquals("Two lines per file reported ", 2.0 * interrupted.getValidations().size(), lines);
+        Thread.sleep(50);
+        assertEquals("Not changed by workers still running ", lines,
+                interrupted.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+    }
+}
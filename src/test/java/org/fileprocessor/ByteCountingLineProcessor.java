@@ -0,0 +1,61 @@
+package org.fileprocessor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is a class used for testing the DefaultFileProcessor with ByteLineProcessors.
+ * It counts lines and bytes without ever decoding them.
+ */
+public class ByteCountingLineProcessor implements ByteLineProcessor, MergeableLineProcessor<ByteCountingLineProcessor> {
+    /**
+     * Key for the number of lines seen.
+     */
+    public static final String BYTE_LINES = "Byte lines";
+    /**
+     * Key for the number of bytes seen, excluding line terminators.
+     */
+    public static final String BYTES = "Bytes";
+
+    private long lines = 0;
+    private long bytes = 0;
+
+    @Override
+    public void process(ByteBuffer buffer, int offset, int length, Charset charset) {
+        lines++;
+        bytes += length;
+    }
+
+    @Override
+    public ByteCountingLineProcessor newInstance() {
+        return new ByteCountingLineProcessor();
+    }
+
+    @Override
+    public void merge(ByteCountingLineProcessor other) {
+        lines += other.lines;
+        bytes += other.bytes;
+    }
+
+    @Override
+    public String printProcessedLines() {
+        return BYTE_LINES + ": " + lines + "\n" + BYTES + ": " + bytes + "\n";
+    }
+
+    @Override
+    public List<String> getKeyNames() {
+        return Arrays.asList(BYTE_LINES, BYTES);
+    }
+
+    @Override
+    public Map<String, Object> getKVForProcessedLines() {
+        Map<String, Object> statMap = new HashMap<>();
+        statMap.put(BYTE_LINES, lines);
+        statMap.put(BYTES, bytes);
+        return statMap;
+    }
+}
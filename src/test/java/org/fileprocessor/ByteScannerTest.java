@@ -0,0 +1,107 @@
+package org.fileprocessor;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ByteScannerTest {
+    private static final String ALPHABET = "abcXYZ0189 \t\r\n-_.,@[`{éÿ日";
+
+    private ByteScanner vector;
+    private final ByteScanner scalar = ByteScanner.scalar();
+    private final Random random = new Random(42);
+
+    @Before
+    public void setup() {
+        vector = ByteScanner.vector();
+        Assume.assumeTrue("Needs --add-modules jdk.incubator.vector", vector != null);
+    }
+
+    @Test
+    public void testSameIndexes() {
+        for (int round = 0; round < 200; round++) {
+            byte[] bytes = randomText(random.nextInt(300)).getBytes(StandardCharsets.UTF_8);
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes);
+            for (ByteBuffer buffer : Arrays.asList(ByteBuffer.wrap(bytes), ByteBuffer.wrap(bytes).asReadOnlyBuffer(),
+                    direct, direct.asReadOnlyBuffer())) {
+                int from = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+                int to = from + random.nextInt(bytes.length - from + 1);
+                String range = " in [" + from + ", " + to + ") of " + Arrays.toString(bytes);
+                assertEquals("Line break" + range, scalar.indexOfLineBreak(buffer, from, to),
+                        vector.indexOfLineBreak(buffer, from, to));
+                assertEquals("Non alphanumeric" + range, scalar.indexOfNonAlphanumeric(buffer, from, to),
+                        vector.indexOfNonAlphanumeric(buffer, from, to));
+                assertEquals("ASCII" + range, scalar.isAscii(buffer, from, to), vector.isAscii(buffer, from, to));
+            }
+        }
+    }
+
+    @Test
+    public void testEveryByteValue() {
+        byte[] bytes = new byte[512];
+        for (int b = 0; b < 256; b++) {
+            Arrays.fill(bytes, (byte) 'a');
+            bytes[300] = (byte) b;
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            assertEquals("Line break " + b, scalar.indexOfLineBreak(buffer, 0, 512), vector.indexOfLineBreak(buffer, 0, 512));
+            assertEquals("Non alphanumeric " + b, scalar.indexOfNonAlphanumeric(buffer, 0, 512),
+                    vector.indexOfNonAlphanumeric(buffer, 0, 512));
+            assertEquals("ASCII " + b, scalar.isAscii(buffer, 0, 512), vector.isAscii(buffer, 0, 512));
+        }
+    }
+
+    @Test
+    public void testSameLinesAndWords() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            text.append(randomText(random.nextInt(200)));
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        assertEquals("Same words ", words(bytes, scalar), words(bytes, vector));
+        // and the same as the decoded text split the way BufferedReader does
+        List<String> expected = new ArrayList<>();
+        LineScanner scanner = new LineScanner(scalar);
+        for (String line : text.toString().split("\r\n|\r|\n", -1)) {
+            scanner.scan(line, (chars, length) -> expected.add(new String(chars, 0, length)));
+            expected.add("|");
+        }
+        if (text.length() > 0 && "\r\n".indexOf(text.charAt(text.length() - 1)) >= 0) {
+            expected.remove(expected.size() - 1);
+            expected.remove(expected.size() - 1); // no line after the last terminator
+        }
+        assertEquals("Same words as decoded lines ", expected, words(bytes, vector));
+    }
+
+    private List<String> words(byte[] bytes, ByteScanner byteScanner) throws IOException {
+        MappedLineReader reader = new MappedLineReader(StandardCharsets.UTF_8, MappedLineReader.WINDOW_SIZE, byteScanner);
+        LineScanner scanner = new LineScanner(byteScanner);
+        List<String> words = new ArrayList<>();
+        reader.read(ByteBuffer.wrap(bytes), 0, bytes.length, (buffer, offset, length) -> {
+            scanner.scan(reader.view(buffer, offset, length), (chars, count) -> words.add(new String(chars, 0, count)));
+            words.add("|");
+        });
+        return words;
+    }
+
+    private String randomText(int length) {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length) {
+            if (random.nextInt(4) == 0) {
+                text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            } else { // long runs of plain ASCII letters and digits
+                text.append(ALPHABET, 0, 1 + random.nextInt(10));
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package org.fileprocessor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class CharHistogramTest {
+    private CharHistogram histogram;
+
+    @Before
+    public void setup(){
+        histogram = new CharHistogram();
+    }
+
+    @Test
+    public void testEmpty(){
+        assertEquals("No most common char ", -1, histogram.mostCommon());
+        assertEquals("No chars ", 0, histogram.size());
+        assertEquals("Zero count ", BigInteger.ZERO, histogram.get('a'));
+    }
+
+    @Test
+    public void testTiesResolvedByLowestChar(){
+        histogram.increment('壟');
+        histogram.increment('z');
+        histogram.increment('b');
+        histogram.increment('z');
+        histogram.increment('b');
+        assertEquals("Lowest char wins ties ", 'b', histogram.mostCommon());
+        assertEquals("Distinct chars ", 3, histogram.size());
+        assertEquals("Count ", BigInteger.valueOf(2), histogram.get('z'));
+    }
+
+    @Test
+    public void testOverflowPromotion(){
+        histogram.add('a', Long.MAX_VALUE);
+        histogram.increment('a');
+        histogram.add('b', Long.MAX_VALUE);
+        BigInteger expected = BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE);
+        assertEquals("Count beyond long ", expected, histogram.get('a'));
+        assertEquals("Most common beyond long ", 'a', histogram.mostCommon());
+        assertEquals("Distinct chars ", 2, histogram.size());
+    }
+
+    @Test
+    public void testMerge(){
+        CharHistogram other = new CharHistogram();
+        histogram.add('a', Long.MAX_VALUE);
+        other.add('a', Long.MAX_VALUE);
+        other.add('日', 3);
+        histogram.merge(other);
+        histogram.merge(other);
+        assertEquals("Merged overflowing count ", BigInteger.valueOf(Long.MAX_VALUE).multiply(BigInteger.valueOf(3)),
+                histogram.get('a'));
+        assertEquals("Merged count ", BigInteger.valueOf(6), histogram.get('日'));
+        assertEquals("Other untouched ", BigInteger.valueOf(3), other.get('日'));
+        assertEquals("Distinct chars ", 2, histogram.size());
+    }
+}
@@ -0,0 +1,228 @@
+package org.fileprocessor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompressedInputTest {
+    private static final String TEXT = "This is a test line\n\nañother line with ünicode\r\nshort\n"
+            + "a much longer line that will certainly be spread over more than one of the tiny blocks used below\n"
+            + "x\n\n\nlast line without terminator";
+
+    private Path directory;
+    private DefaultFileProcessor fileProcessor;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("compressed");
+        fileProcessor = new DefaultFileProcessor();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testDetect() throws IOException {
+        assertEquals("Plain ", CompressedInput.Format.PLAIN, CompressedInput.detect(write("plain.gz", bytes(TEXT))));
+        assertEquals("Short ", CompressedInput.Format.PLAIN, CompressedInput.detect(write("short", new byte[]{0x1F})));
+        assertEquals("Empty ", CompressedInput.Format.PLAIN, CompressedInput.detect(write("empty", new byte[0])));
+        assertEquals("Gzip ", CompressedInput.Format.GZIP, CompressedInput.detect(write("data.txt", gzip(bytes(TEXT)))));
+        assertEquals("Zip ", CompressedInput.Format.ZIP, CompressedInput.detect(write("data.bin", zip(TEXT))));
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        assertSameStats(plain(TEXT), process(write("data.gz", gzip(bytes(TEXT)))));
+    }
+
+    @Test
+    public void testMultiMemberGzip() throws IOException {
+        int middle = TEXT.indexOf("longer"); // members split in the middle of a line
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        members.write(gzip(bytes(TEXT.substring(0, middle))));
+        members.write(gzip(bytes(TEXT.substring(middle))));
+        Path file = write("members.gz", members.toByteArray());
+        assertSameStats(plain(TEXT), process(file));
+        assertSameStats(plain(TEXT), processInParallel(file, StandardCharsets.UTF_8, 1));
+    }
+
+    @Test
+    public void testZipEntriesStartOnNewLines() throws IOException {
+        Path file = write("data.zip", zip("first entry\nwithout terminator", "second entry\n", "third"));
+        assertSameStats(plain("first entry\nwithout terminator\nsecond entry\nthird"), process(file));
+    }
+
+    @Test
+    public void testBlockIndex() throws IOException {
+        Path file = write("data.bgz", bgzip(bytes(TEXT), 16));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            GzipBlockIndex index = GzipBlockIndex.load(channel);
+            assertNotNull("Block compressed ", index);
+            assertEquals("Blocks plus end marker ", (bytes(TEXT).length + 15) / 16 + 1, index.size());
+            assertEquals("Uncompressed size ", bytes(TEXT).length, index.uncompressedOffset(index.size()));
+        }
+        try (FileChannel channel = FileChannel.open(write("data.gz", gzip(bytes(TEXT))), StandardOpenOption.READ)) {
+            assertNull("Plain gzip ", GzipBlockIndex.load(channel));
+        }
+    }
+
+    @Test
+    public void testBlocksInParallel() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append(TEXT, 0, (i * 7) % TEXT.length()).append('\n');
+        }
+        Map<String, Object> expected = plain(text.toString());
+        for (int blockSize : new int[]{1, 7, 100, GzipBlockIndex.MAX_BLOCK_SIZE}) {
+            Path file = write("data" + blockSize + ".bgz", bgzip(bytes(text.toString()), blockSize));
+            assertSameStats(expected, processInParallel(file, StandardCharsets.UTF_8, 1));
+            assertSameStats(expected, processInParallel(file, StandardCharsets.UTF_8, 256));
+            assertSameStats(expected, process(file));
+        }
+        // a splittable charset that is not read from mapped memory
+        Charset windows = Charset.forName("windows-1252");
+        Path file = write("windows.bgz", bgzip(text.toString().getBytes(windows), 50));
+        ProcessingResult result = fileProcessor.processFileInParallel(file.toString(),
+                Arrays.asList(new DefaultLineProcessor()), windows, 4, 1);
+        assertEquals("Windows-1252 lines ", expected.get(DefaultLineProcessor.LINES),
+                result.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+    }
+
+    @Test
+    public void testPipelinedGzip() throws IOException {
+        ProcessingResult result = fileProcessor.processFilePipelined(write("data.gz", gzip(bytes(TEXT))).toString(),
+                Arrays.asList(new DefaultLineProcessor()), StandardCharsets.UTF_8, 2, 2, 2);
+        assertSameStats(plain(TEXT), result);
+    }
+
+    @Test
+    public void testCorruptInput() throws IOException {
+        byte[] blocks = bgzip(bytes(TEXT), 30);
+        blocks[20] ^= 0x55; // inside the deflated data of the first block
+        Path file = write("corrupt.bgz", blocks);
+        ProcessingResult result = fileProcessor.processFileInParallel(file.toString(),
+                Arrays.asList(new DefaultLineProcessor()), StandardCharsets.UTF_8, 2, 1);
+        assertEquals("Validation error ", Validation.ValidationType.ERROR, result.getType());
+        assertTrue("Processing error ", result.getText().contains(DefaultFileProcessor.FILE_PROCESSING_ERROR));
+
+        byte[] truncated = Arrays.copyOf(gzip(bytes(TEXT)), 30);
+        result = process(write("truncated.gz", truncated));
+        assertEquals("Validation error ", Validation.ValidationType.ERROR, result.getType());
+        assertTrue("Processing error ", result.getText().contains(DefaultFileProcessor.FILE_PROCESSING_ERROR));
+    }
+
+    @Test
+    public void testWrongEncoding() throws IOException {
+        Path file = write("latin.gz", gzip(TEXT.getBytes(StandardCharsets.ISO_8859_1)));
+        ProcessingResult result = fileProcessor.processFile(file.toString(), new DefaultLineProcessor(),
+                StandardCharsets.US_ASCII);
+        assertTrue("Wrong encoding ", result.getText().contains(DefaultFileProcessor.WRONG_ENCODING_ERROR));
+    }
+
+    private Map<String, Object> plain(String text) throws IOException {
+        ProcessingResult result = process(write("plain" + text.hashCode() + ".txt", bytes(text)));
+        assertEquals("Plain file OK ", Validation.ValidationType.OK, result.getType());
+        return result.getKVForProcessedLines();
+    }
+
+    private ProcessingResult process(Path file) {
+        return fileProcessor.processFile(file.toString(), new DefaultLineProcessor(), StandardCharsets.UTF_8);
+    }
+
+    private ProcessingResult processInParallel(Path file, Charset charset, long minChunkSize) {
+        return fileProcessor.processFileInParallel(file.toString(), Arrays.asList(new DefaultLineProcessor()), charset, 4,
+                minChunkSize);
+    }
+
+    private static void assertSameStats(Map<String, Object> expected, ProcessingResult result) {
+        assertEquals("Validation OK " + result.getText(), Validation.ValidationType.OK, result.getType());
+        assertEquals("Same stats as plain file ", expected, result.getKVForProcessedLines());
+    }
+
+    private Path write(String name, byte[] content) throws IOException {
+        return Files.write(directory.resolve(name), content);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] zip(String... entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            out.putNextEntry(new ZipEntry("directory/"));
+            for (int i = 0; i < entries.length; i++) {
+                out.putNextEntry(new ZipEntry("directory/entry" + i + ".txt"));
+                out.write(bytes(entries[i]));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes BGZF blocks of the given uncompressed size, followed by the empty end of file block, as bgzip does.
+     */
+    private static byte[] bgzip(byte[] content, int blockSize) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        for (int from = 0; from < content.length; from += blockSize) {
+            writeBlock(bytes, deflater, content, from, Math.min(blockSize, content.length - from));
+        }
+        writeBlock(bytes, deflater, content, 0, 0);
+        deflater.end();
+        return bytes.toByteArray();
+    }
+
+    private static void writeBlock(ByteArrayOutputStream bytes, Deflater deflater, byte[] content, int from, int length) {
+        deflater.reset();
+        deflater.setInput(content, from, length);
+        deflater.finish();
+        byte[] deflated = new byte[length + 1024];
+        int deflatedLength = deflater.deflate(deflated);
+        CRC32 crc = new CRC32();
+        crc.update(content, from, length);
+        ByteBuffer block = ByteBuffer.allocate(18 + deflatedLength + 8).order(ByteOrder.LITTLE_ENDIAN);
+        block.put(new byte[]{0x1F, (byte) 0x8B, 8, 4, 0, 0, 0, 0, 0, (byte) 0xFF}).putShort((short) 6)
+                .put((byte) 'B').put((byte) 'C').putShort((short) 2).putShort((short) (block.capacity() - 1))
+                .put(deflated, 0, deflatedLength).putInt((int) crc.getValue()).putInt(length);
+        bytes.write(block.array(), 0, block.capacity());
+    }
+}
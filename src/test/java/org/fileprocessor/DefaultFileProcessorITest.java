@@ -6,14 +6,26 @@ import org.junit.Test;
 import java.io.ByteArrayOutputStream;
 import java.io.FileDescriptor;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 
@@ -212,6 +224,64 @@ public class DefaultFileProcessorITest {
         assertTrue(out.contains("Most common letter: e"));
     }
 
+    @Test
+    public void testStdinToMain() throws IOException {
+        URL url = DefaultFileProcessorITest.class.getResource("/testFileUTF8_NO_BOM.txt");
+        System.setOut(new PrintStream(outContent));
+        InputStream stdin = System.in;
+        try (InputStream file = url.openStream()) {
+            System.setIn(file);
+            DefaultFileProcessor.main(new String[]{DefaultFileProcessor.STDIN, "UTF-8"});
+        } finally {
+            System.setIn(stdin);
+            System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.out)));
+        }
+        String out = outContent.toString();
+        assertTrue(out.contains("Lines: 3.0"));
+        assertTrue(out.contains("Most common letter: e"));
+    }
+
+    @Test
+    public void testStreams() throws IOException {
+        URL url = DefaultFileProcessorITest.class.getResource("/testFileUTF8_NO_BOM.txt");
+        LineProcessor fromStream = new DefaultLineProcessor();
+        LineProcessor fromChannel = new DefaultLineProcessor();
+        LineProcessor fromReader = new DefaultLineProcessor();
+        try (InputStream input = url.openStream()) {
+            assertEquals("OK ", Validation.ValidationType.OK,
+                    defaultFileProcessor.processStream(input, Arrays.asList(fromStream), StandardCharsets.UTF_8).getType());
+        }
+        try (ReadableByteChannel input = Channels.newChannel(url.openStream())) {
+            assertEquals("OK ", Validation.ValidationType.OK,
+                    defaultFileProcessor.processStream(input, Arrays.asList(fromChannel), StandardCharsets.UTF_8).getType());
+        }
+        try (Reader input = new InputStreamReader(url.openStream(), StandardCharsets.UTF_8)) {
+            assertEquals("OK ", Validation.ValidationType.OK,
+                    defaultFileProcessor.processStream(input, Arrays.asList(fromReader)).getType());
+        }
+        Map<String,Object> statMap = fromStream.getKVForProcessedLines();
+        assertEquals("Get expected lines ",3.0,statMap.get(DefaultLineProcessor.LINES));
+        assertEquals("Get expected words ",33.0,statMap.get(DefaultLineProcessor.WORDS));
+        assertEquals("Same stats from channel ", statMap, fromChannel.getKVForProcessedLines());
+        assertEquals("Same stats from reader ", statMap, fromReader.getKVForProcessedLines());
+    }
+
+    @Test
+    public void testStreamErrors() throws IOException {
+        URL url = DefaultFileProcessorITest.class.getResource("/testFileISO8859-1.txt");
+        try (InputStream input = url.openStream()) {
+            Validation validation = defaultFileProcessor.processStream(input, Arrays.asList(new DefaultLineProcessor()),
+                    StandardCharsets.UTF_8);
+            assertEquals("Error ", Validation.ValidationType.ERROR, validation.getType());
+            assertTrue("Wrong encoding ", validation.getText().contains(DefaultFileProcessor.WRONG_ENCODING_ERROR));
+        }
+        Validation validation = defaultFileProcessor.processStream((InputStream) null, Arrays.asList(new DefaultLineProcessor()),
+                StandardCharsets.UTF_8);
+        assertTrue("Null input ", validation.getText().contains(DefaultFileProcessor.NULL_INPUT_ERROR));
+        validation = defaultFileProcessor.processStream(new StringReader("a line"), new ArrayList<>());
+        assertTrue("No processors ", validation.getText().contains(DefaultFileProcessor.EMPTY_LIST_OF_PROCESSORS_ERROR));
+    }
+
     @Test
     public void testGetKeyNamesNoNull(){
         URL url = DefaultFileProcessorITest.class.getResource("/testFileUTF8_NO_BOM.txt");
@@ -245,4 +315,249 @@ public class DefaultFileProcessorITest {
                 .collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue()));
         assertEquals(expected,result);
     }
+
+    @Test
+    public void testParallelUTF8(){
+        URL url = DefaultFileProcessorITest.class.getResource("/testFileUTF8_NO_BOM.txt");
+        LineProcessor lineProcessor = new DefaultLineProcessor();
+        String fileName = isWindows() ? url.getFile().substring(1) : url.getFile();
+        Validation validation= defaultFileProcessor.processFileInParallel(fileName, Arrays.asList(lineProcessor),
+                StandardCharsets.UTF_8, 4, 16);
+        assertEquals("OK ", Validation.ValidationType.OK,validation.getType());
+
+        Double expectedLines = 3.0;
+        Double expectedWords = 33.0;
+        Double avgLettersPerWord = 4.363636363636363;
+        Character mostCommonLetter = 'e';
+
+        Map<String,Object> statMap = lineProcessor.getKVForProcessedLines();
+        assertEquals("Get expected lines ",expectedLines,statMap.get(DefaultLineProcessor.LINES));
+        assertEquals("Get expected words ",expectedWords,statMap.get(DefaultLineProcessor.WORDS));
+        assertEquals("Get expected avgLettersPerWord ",avgLettersPerWord,statMap.get(DefaultLineProcessor.LETTER_PER_WORD));
+        assertEquals("Get expected mostCommonLetter ",mostCommonLetter,statMap.get(DefaultLineProcessor.MOST_COMMON_LETTER));
+    }
+
+    @Test
+    public void testParallelISO8859_1(){
+        URL url = DefaultFileProcessorITest.class.getResource("/testFileISO8859-1.txt");
+        LineProcessor lineProcessor = new DefaultLineProcessor();
+        String fileName = isWindows() ? url.getFile().substring(1) : url.getFile();
+        Validation validation= defaultFileProcessor.processFileInParallel(fileName, Arrays.asList(lineProcessor),
+                StandardCharsets.ISO_8859_1, 0);
+        assertEquals("OK ", Validation.ValidationType.OK,validation.getType());
+
+        Map<String,Object> statMap = lineProcessor.getKVForProcessedLines();
+        assertEquals("Get expected lines ",2.0,statMap.get(DefaultLineProcessor.LINES));
+        assertEquals("Get expected words ",12.0,statMap.get(DefaultLineProcessor.WORDS));
+        assertEquals("Get expected mostCommonLetter ",'a',statMap.get(DefaultLineProcessor.MOST_COMMON_LETTER));
+    }
+
+    @Test
+    public void testParallelMatchesSequential() throws IOException {
+        Path file = Files.createTempFile("parallel", ".txt");
+        try {
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < 2000; i++) {
+                content.append("Line ").append(i).append(" with ñandú, 日本語 and some punctuation!");
+                content.append(i % 3 == 0 ? "\r\n" : "\n");
+                if (i % 7 == 0) {
+                    content.append("\n");
+                }
+            }
+            Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+
+            LineProcessor sequential = new DefaultLineProcessor();
+            defaultFileProcessor.processFile(file.toString(), sequential, StandardCharsets.UTF_8);
+            LineProcessor parallel = new DefaultLineProcessor();
+            Validation validation = defaultFileProcessor.processFileInParallel(file.toString(), Arrays.asList(parallel),
+                    StandardCharsets.UTF_8, 4, 100);
+            assertEquals("OK ", Validation.ValidationType.OK,validation.getType());
+            assertEquals(sequential.getKVForProcessedLines(), parallel.getKVForProcessedLines());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testParallelWithNonMergeableProcessor(){
+        URL url = DefaultFileProcessorITest.class.getResource("/testFileUTF8_NO_BOM.txt");
+        LineProcessor defaultLineProcessor = new DefaultLineProcessor();
+        LineProcessor testLineProcessor = new DoNothingLineProcessor();
+        String fileName = isWindows() ? url.getFile().substring(1) : url.getFile();
+        Validation validation= defaultFileProcessor.processFileInParallel(fileName, Arrays.asList(testLineProcessor, defaultLineProcessor),
+                StandardCharsets.UTF_8, 2);
+        assertEquals("OK ", Validation.ValidationType.OK,validation.getType());
+        assertEquals("Get expected lines ",3.0,defaultLineProcessor.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+    }
+
+    @Test
+    public void testParallelIncompatibleCharset(){
+        URL url = DefaultFileProcessorITest.class.getResource("/testFileISO8859-1.txt");
+        String fileName = isWindows() ? url.getFile().substring(1) : url.getFile();
+        Validation validation= defaultFileProcessor.processFileInParallel(fileName, Arrays.asList(new DefaultLineProcessor()),
+                StandardCharsets.UTF_8, 2);
+        assertEquals("Error ", Validation.ValidationType.ERROR,validation.getType());
+        assertTrue("Error message should contain ", validation.getText().contains(DefaultFileProcessor.WRONG_ENCODING_ERROR));
+    }
+
+    @Test
+    public void testPipelinedMatchesSequential() throws IOException {
+        Path file = Files.createTempFile("pipelined", ".txt");
+        try {
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < 2000; i++) {
+                content.append("Line ").append(i).append(" with ñandú, 日本語 and some punctuation!\n");
+            }
+            Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+
+            LineProcessor sequential = new DefaultLineProcessor();
+            defaultFileProcessor.processFile(file.toString(), sequential, StandardCharsets.UTF_8);
+            LineProcessor pipelined = new DefaultLineProcessor();
+            Validation validation = defaultFileProcessor.processFilePipelined(file.toString(), Arrays.asList(pipelined, null),
+                    StandardCharsets.UTF_8, 4, 7, 2);
+            assertEquals("OK ", Validation.ValidationType.OK,validation.getType());
+            assertEquals(sequential.getKVForProcessedLines(), pipelined.getKVForProcessedLines());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testPipelinedWithNonMergeableProcessor(){
+        URL url = DefaultFileProcessorITest.class.getResource("/testFileUTF8_NO_BOM.txt");
+        LineProcessor defaultLineProcessor = new DefaultLineProcessor();
+        String fileName = isWindows() ? url.getFile().substring(1) : url.getFile();
+        Validation validation= defaultFileProcessor.processFilePipelined(fileName,
+                Arrays.asList(new DoNothingLineProcessor(), defaultLineProcessor), StandardCharsets.UTF_8, 4, 0, 0);
+        assertEquals("OK ", Validation.ValidationType.OK,validation.getType());
+        assertEquals("Get expected words ",33.0,defaultLineProcessor.getKVForProcessedLines().get(DefaultLineProcessor.WORDS));
+    }
+
+    @Test
+    public void testPipelinedIncompatibleCharset(){
+        URL url = DefaultFileProcessorITest.class.getResource("/testFileISO8859-1.txt");
+        String fileName = isWindows() ? url.getFile().substring(1) : url.getFile();
+        Validation validation= defaultFileProcessor.processFilePipelined(fileName, Arrays.asList(new DefaultLineProcessor()),
+                StandardCharsets.UTF_8, 2, 1, 1);
+        assertEquals("Error ", Validation.ValidationType.ERROR,validation.getType());
+        assertTrue("Error message should contain ", validation.getText().contains(DefaultFileProcessor.WRONG_ENCODING_ERROR));
+    }
+
+    @Test
+    public void testMappedUTF8(){
+        URL url = DefaultFileProcessorITest.class.getResource("/testFileUTF8_NO_BOM.txt");
+        LineProcessor lineProcessor = new DefaultLineProcessor();
+        String fileName = isWindows() ? url.getFile().substring(1) : url.getFile();
+        Validation validation= defaultFileProcessor.processFileMapped(fileName, Arrays.asList(lineProcessor), StandardCharsets.UTF_8);
+        assertEquals("OK ", Validation.ValidationType.OK,validation.getType());
+
+        Map<String,Object> statMap = lineProcessor.getKVForProcessedLines();
+        assertEquals("Get expected lines ",3.0,statMap.get(DefaultLineProcessor.LINES));
+        assertEquals("Get expected words ",33.0,statMap.get(DefaultLineProcessor.WORDS));
+        assertEquals("Get expected avgLettersPerWord ",4.363636363636363,statMap.get(DefaultLineProcessor.LETTER_PER_WORD));
+        assertEquals("Get expected mostCommonLetter ",'e',statMap.get(DefaultLineProcessor.MOST_COMMON_LETTER));
+    }
+
+    @Test
+    public void testMappedISO8859_1(){
+        URL url = DefaultFileProcessorITest.class.getResource("/testFileISO8859-1.txt");
+        LineProcessor lineProcessor = new DefaultLineProcessor();
+        String fileName = isWindows() ? url.getFile().substring(1) : url.getFile();
+        Validation validation= defaultFileProcessor.processFileMapped(fileName, Arrays.asList(lineProcessor), StandardCharsets.ISO_8859_1);
+        assertEquals("OK ", Validation.ValidationType.OK,validation.getType());
+
+        Map<String,Object> statMap = lineProcessor.getKVForProcessedLines();
+        assertEquals("Get expected lines ",2.0,statMap.get(DefaultLineProcessor.LINES));
+        assertEquals("Get expected words ",12.0,statMap.get(DefaultLineProcessor.WORDS));
+        assertEquals("Get expected avgLettersPerWord ",4.833333333333333,statMap.get(DefaultLineProcessor.LETTER_PER_WORD));
+        assertEquals("Get expected mostCommonLetter ",'a',statMap.get(DefaultLineProcessor.MOST_COMMON_LETTER));
+    }
+
+    @Test
+    public void testMappedIncompatibleCharset(){
+        URL url = DefaultFileProcessorITest.class.getResource("/testFileISO8859-1.txt");
+        String fileName = isWindows() ? url.getFile().substring(1) : url.getFile();
+        Validation validation= defaultFileProcessor.processFileMapped(fileName, Arrays.asList(new DefaultLineProcessor()),
+                StandardCharsets.UTF_8);
+        assertEquals("Error ", Validation.ValidationType.ERROR,validation.getType());
+        assertTrue("Error message should contain ", validation.getText().contains(DefaultFileProcessor.WRONG_ENCODING_ERROR));
+    }
+
+    @Test
+    public void testByteAndStringProcessors(){
+        URL url = DefaultFileProcessorITest.class.getResource("/testFileUTF8_NO_BOM.txt");
+        LineProcessor defaultLineProcessor = new DefaultLineProcessor();
+        LineProcessor byteLineProcessor = new ByteCountingLineProcessor();
+        String fileName = isWindows() ? url.getFile().substring(1) : url.getFile();
+        Validation validation= defaultFileProcessor.processFile(fileName, Arrays.asList(byteLineProcessor, defaultLineProcessor),
+                StandardCharsets.UTF_8);
+        assertEquals("OK ", Validation.ValidationType.OK,validation.getType());
+        assertEquals("Get expected lines ",3.0,defaultLineProcessor.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+        assertEquals("Get expected byte lines ",3L,byteLineProcessor.getKVForProcessedLines().get(ByteCountingLineProcessor.BYTE_LINES));
+        assertEquals("Get expected bytes ",178L,byteLineProcessor.getKVForProcessedLines().get(ByteCountingLineProcessor.BYTES));
+    }
+
+    @Test
+    public void testByteProcessorInParallel(){
+        URL url = DefaultFileProcessorITest.class.getResource("/testFileUTF8_NO_BOM.txt");
+        LineProcessor byteLineProcessor = new ByteCountingLineProcessor();
+        String fileName = isWindows() ? url.getFile().substring(1) : url.getFile();
+        Validation validation= defaultFileProcessor.processFileInParallel(fileName, Arrays.asList(byteLineProcessor),
+                StandardCharsets.UTF_8, 4, 16);
+        assertEquals("OK ", Validation.ValidationType.OK,validation.getType());
+        assertEquals("Get expected byte lines ",3L,byteLineProcessor.getKVForProcessedLines().get(ByteCountingLineProcessor.BYTE_LINES));
+        assertEquals("Get expected bytes ",178L,byteLineProcessor.getKVForProcessedLines().get(ByteCountingLineProcessor.BYTES));
+    }
+
+    @Test
+    public void testBatchArgumentsToMain()  {
+        System.setOut(new PrintStream(outContent));
+        URL url = DefaultFileProcessorITest.class.getResource("/testFileUTF8_NO_BOM.txt");
+        String fileName = isWindows() ? url.getFile().substring(1) : url.getFile();
+        String[] args = {DefaultFileProcessor.BATCH_OPTION, "--threads", "2", "--charset", "UTF-8", fileName, fileName};
+        DefaultFileProcessor.main(args);
+        String out = outContent.toString();
+        System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.out)));
+        assertTrue(out.contains("Aggregated output for 1 files"));
+        assertTrue(out.contains("Lines: 3.0"));
+    }
+
+    @Test
+    public void testResultCarriesStats(){
+        URL url = DefaultFileProcessorITest.class.getResource("/testFileUTF8_NO_BOM.txt");
+        String fileName = isWindows() ? url.getFile().substring(1) : url.getFile();
+        ProcessingResult result = defaultFileProcessor.processFile(fileName, StandardCharsets.UTF_8);
+        assertEquals("OK ", Validation.ValidationType.OK,result.getType());
+        assertEquals("Get expected lines ",3.0,result.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+        assertEquals("Get expected keys ",new DefaultLineProcessor().getKeyNames(),result.getKeyNames());
+
+        ProcessingResult error = defaultFileProcessor.processFile("madeUpName.txt");
+        assertEquals("Error ", Validation.ValidationType.ERROR,error.getType());
+        assertTrue("No stats on error ", error.getKVForProcessedLines().isEmpty());
+    }
+
+    @Test
+    public void testConcurrentCallsOnSameInstance() throws Exception {
+        URL utf8 = DefaultFileProcessorITest.class.getResource("/testFileUTF8_NO_BOM.txt");
+        URL iso = DefaultFileProcessorITest.class.getResource("/testFileISO8859-1.txt");
+        String utf8Name = isWindows() ? utf8.getFile().substring(1) : utf8.getFile();
+        String isoName = isWindows() ? iso.getFile().substring(1) : iso.getFile();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ProcessingResult>> utf8Results = new ArrayList<>();
+            List<Future<ProcessingResult>> isoResults = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                utf8Results.add(executor.submit(() -> defaultFileProcessor.processFile(utf8Name, StandardCharsets.UTF_8)));
+                isoResults.add(executor.submit(() -> defaultFileProcessor.processFile(isoName, StandardCharsets.ISO_8859_1)));
+            }
+            for (Future<ProcessingResult> result : utf8Results) {
+                assertEquals("Get expected lines ",3.0,result.get().getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+            }
+            for (Future<ProcessingResult> result : isoResults) {
+                assertEquals("Get expected lines ",2.0,result.get().getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
\ No newline at end of file
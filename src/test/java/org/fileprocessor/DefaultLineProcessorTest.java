@@ -3,9 +3,17 @@ package org.fileprocessor;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 
@@ -248,4 +256,126 @@ public class DefaultLineProcessorTest {
                 DefaultLineProcessor.LETTER_PER_WORD,DefaultLineProcessor.MOST_COMMON_LETTER));
     }
 
+    @Test
+    public void testMerge(){
+        DefaultLineProcessor whole = new DefaultLineProcessor();
+        whole.process("This is a test line");
+        whole.process(" this is)  a test . DOne !!!??? ");
+
+        DefaultLineProcessor first = whole.newInstance();
+        DefaultLineProcessor second = whole.newInstance();
+        first.process("This is a test line");
+        second.process(" this is)  a test . DOne !!!??? ");
+        first.merge(second);
+
+        assertEquals("Merged stats ", whole.getKVForProcessedLines(), first.getKVForProcessedLines());
+        assertEquals("Merged output ", whole.printProcessedLines(), first.printProcessedLines());
+        assertEquals("Merge leaves other untouched ", 1.0, second.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+    }
+
+    @Test
+    public void testCombineIsAssociative(){
+        DefaultLineProcessor a = new DefaultLineProcessor();
+        DefaultLineProcessor b = new DefaultLineProcessor();
+        DefaultLineProcessor c = new DefaultLineProcessor();
+        a.process("This is a test line");
+        b.process("\u65e5\u672c\u8a9e\u6587\u5b57\u5217");
+        c.process(" this is)  a test . DOne !!!??? ");
+
+        Map<String,Object> left = a.combine(b).combine(c).getKVForProcessedLines();
+        Map<String,Object> right = a.combine(b.combine(c)).getKVForProcessedLines();
+        Map<String,Object> reduced = MergeableLineProcessor.reduce(Arrays.asList(a, b, c)).getKVForProcessedLines();
+        assertEquals("Associative combine ", left, right);
+        assertEquals("Reduce matches combine ", left, reduced);
+        assertEquals("Combine leaves inputs untouched ", 1.0, a.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+        assertEquals("Fresh instance is identity ", a.getKVForProcessedLines(), a.combine(a.newInstance()).getKVForProcessedLines());
+    }
+
+    @Test
+    public void testSerializedPartialState() throws IOException, ClassNotFoundException {
+        DefaultLineProcessor shard = new DefaultLineProcessor();
+        shard.process("This is a test line");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(shard);
+        }
+        DefaultLineProcessor received;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            received = (DefaultLineProcessor) in.readObject();
+        }
+        DefaultLineProcessor local = new DefaultLineProcessor();
+        local.process("This is a test line");
+        local.merge(received);
+        assertEquals("Get expected lines ", 2.0, local.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+        assertEquals("Get expected words ", 10.0, local.getKVForProcessedLines().get(DefaultLineProcessor.WORDS));
+    }
+
+    @Test
+    public void testScannerMatchesRegex(){
+        String[] edgeCases = {")", ") (", " ) abc (", "a ) b", "ab)cd", "\u0001 abc", "\t\u000Bx\u001Cy", "   ",
+                "\uD835\uDC00\uD835\uDC01 x", "\uD800 lone", "12 34", "\u00A0a\u00A0", "\u2028a b"};
+        String alphabet = " \t\r\f\u000B\u0001\u001F\u00A0\u2028.,;!?)(aAeéñ09Ǖ日\uFEFF\uFFFF\uD835\uDC00\uD800";
+        Random random = new Random(42);
+        List<String> lines = new ArrayList<>(Arrays.asList(edgeCases));
+        for(int i = 0; i < 2000; i++){
+            StringBuilder line = new StringBuilder();
+            int length = random.nextInt(12);
+            for(int j = 0; j < length; j++){
+                line.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            lines.add(line.toString());
+        }
+        for(String line : lines){
+            LineProcessor scanner = new DefaultLineProcessor(DefaultLineProcessor.Tokenizer.SCANNER);
+            LineProcessor regex = new DefaultLineProcessor(DefaultLineProcessor.Tokenizer.REGEX);
+            scanner.process(line);
+            regex.process(line);
+            assertEquals("Same stats for [" + line + "] ", regex.getKVForProcessedLines(), scanner.getKVForProcessedLines());
+        }
+    }
+
+    @Test
+    public void testLatin1TableMatchesRegex(){
+        for(char c = 0; c < LineScanner.TABLE_SIZE; c++){
+            for(String line : new String[]{String.valueOf(c), "a" + c + "b", c + " x" + c}){
+                LineProcessor scanner = new DefaultLineProcessor(DefaultLineProcessor.Tokenizer.SCANNER);
+                LineProcessor regex = new DefaultLineProcessor(DefaultLineProcessor.Tokenizer.REGEX);
+                scanner.process(line);
+                regex.process(line);
+                assertEquals("Same stats for char " + (int) c + " ", regex.getKVForProcessedLines(),
+                        scanner.getKVForProcessedLines());
+            }
+        }
+    }
+
+    @Test
+    public void testLatin1CountsAcrossReads(){
+        DefaultLineProcessor processor = new DefaultLineProcessor();
+        processor.process("aaa");
+        assertEquals("Latin-1 letter ", 'a', processor.getKVForProcessedLines().get(DefaultLineProcessor.MOST_COMMON_LETTER));
+        processor.process("\u01D5\u01D5\u01D5\u01D5");
+        assertEquals("Other letter ", '\u01D5', processor.getKVForProcessedLines().get(DefaultLineProcessor.MOST_COMMON_LETTER));
+        processor.process("aa");
+        assertEquals("Latin-1 letter again ", 'a', processor.getKVForProcessedLines().get(DefaultLineProcessor.MOST_COMMON_LETTER));
+    }
+
+    @Test
+    public void testFusedMatchesIndependent(){
+        List<String> lines = Arrays.asList("This is a test line", "", "  ", "another, line!", "αβγ 日本 x", ")");
+        DefaultLineProcessor first = new DefaultLineProcessor();
+        DefaultLineProcessor second = new DefaultLineProcessor(DefaultLineProcessor.Tokenizer.REGEX);
+        FusedLineProcessor fused = new FusedLineProcessor(Arrays.asList(first, null, new DoNothingLineProcessor(), second));
+        LineProcessor independent = new DefaultLineProcessor();
+        for(String line : lines){
+            fused.process(line);
+            independent.process(line);
+        }
+        assertEquals("Same stats for first processor ", independent.getKVForProcessedLines(), first.getKVForProcessedLines());
+        assertEquals("Same stats for second processor ", independent.getKVForProcessedLines(), second.getKVForProcessedLines());
+        assertEquals("Keys in processor order ", Arrays.asList(DefaultLineProcessor.LINES, DefaultLineProcessor.WORDS,
+                DefaultLineProcessor.LETTER_PER_WORD, DefaultLineProcessor.MOST_COMMON_LETTER, DoNothingLineProcessor.DO_NOTHING,
+                DefaultLineProcessor.LINES, DefaultLineProcessor.WORDS, DefaultLineProcessor.LETTER_PER_WORD,
+                DefaultLineProcessor.MOST_COMMON_LETTER), fused.getKeyNames());
+    }
+
 }
@@ -0,0 +1,138 @@
+package org.fileprocessor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileFollowerTest {
+    private Path directory;
+    private Path log;
+    private Path checkpoint;
+    private FileFollower follower;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("follow");
+        log = directory.resolve("app.log");
+        checkpoint = directory.resolve("app.checkpoint");
+        follower = new FileFollower(new DefaultFileProcessor(), log.toString(),
+                Collections.singletonList(new DefaultLineProcessor()), StandardCharsets.UTF_8, checkpoint.toString());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testAppend() throws IOException {
+        append("This is a test line\n");
+        ProcessingResult result = follower.poll();
+        assertEquals("Validation OK ", Validation.ValidationType.OK, result.getType());
+        assertEquals("First pass lines ", 1.0, result.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+
+        append("another line\nand another one\n");
+        result = follower.poll();
+        assertEquals("Cumulative lines ", 3.0, result.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+        assertEquals("Cumulative words ", 10.0, result.getKVForProcessedLines().get(DefaultLineProcessor.WORDS));
+
+        result = follower.poll();
+        assertEquals("Nothing new ", 3.0, result.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+    }
+
+    @Test
+    public void testPartialLineIsHeldBack() throws IOException {
+        append("This is a test line\nhalf a li");
+        assertEquals("Partial line skipped ", 1.0, follower.poll().getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+        append("ne\n");
+        ProcessingResult result = follower.poll();
+        assertEquals("Line completed ", 2.0, result.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+        assertEquals("Words of completed line ", 8.0, result.getKVForProcessedLines().get(DefaultLineProcessor.WORDS));
+    }
+
+    @Test
+    public void testTruncationStartsOver() throws IOException {
+        append("This is a test line\nanother line\n");
+        assertEquals("Before truncation ", 2.0, follower.poll().getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+        Files.write(log, "new\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+        assertEquals("After truncation ", 1.0, follower.poll().getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+    }
+
+    @Test
+    public void testRotationStartsOver() throws IOException {
+        append("This is a test line\n");
+        assertEquals("Before rotation ", 1.0, follower.poll().getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+        Files.move(log, directory.resolve("app.log.1"));
+        append("Different first line\nsecond line\n");
+        assertEquals("After rotation ", 2.0, follower.poll().getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+    }
+
+    @Test
+    public void testNotFollowable() throws IOException {
+        append("This is a test line\n");
+        ProcessingResult result = new DefaultFileProcessor().followFile(log.toString(),
+                Arrays.asList(new DoNothingLineProcessor()), StandardCharsets.UTF_8, checkpoint.toString());
+        assertEquals("Validation error ", Validation.ValidationType.ERROR, result.getType());
+        assertTrue("Not followable ", result.getText().contains(DefaultFileProcessor.NOT_FOLLOWABLE_ERROR));
+
+        result = new DefaultFileProcessor().followFile(log.toString(),
+                Arrays.asList(new DefaultLineProcessor()), StandardCharsets.UTF_8, null);
+        assertTrue("No checkpoint ", result.getText().contains(DefaultFileProcessor.CHECKPOINT_LOCATION_ERROR));
+    }
+
+    @Test
+    public void testCarriageReturns() throws IOException {
+        append("one\rtwo\r");
+        assertEquals("Trailing \\r held back ", 1.0, follower.poll().getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+        append("\nthree\r");
+        assertEquals("\\r\\n is one terminator ", 2.0,
+                follower.poll().getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+        append("four\n");
+        ProcessingResult result = follower.poll();
+        assertEquals("Lines ", 4.0, result.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+        assertEquals("Words ", 4.0, result.getKVForProcessedLines().get(DefaultLineProcessor.WORDS));
+    }
+
+    @Test
+    public void testOtherCharsetOrConfigurationStartsOver() throws IOException {
+        append("añother line\n");
+        follower.poll();
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            BasicFileAttributes attributes = Files.readAttributes(log, BasicFileAttributes.class);
+            FileCheckpoint saved = FileCheckpoint.load(checkpoint, Arrays.asList(new DefaultLineProcessor()));
+            assertTrue("Same processors and charset ", saved.isCompatibleWith(Arrays.asList(new DefaultLineProcessor()),
+                    StandardCharsets.UTF_8) && saved.appliesTo(channel, attributes));
+            assertFalse("Other configuration ", saved.isCompatibleWith(
+                    Arrays.asList(new DefaultLineProcessor(DefaultLineProcessor.Tokenizer.REGEX)), StandardCharsets.UTF_8));
+            assertFalse("Other charset ", saved.isCompatibleWith(Arrays.asList(new DefaultLineProcessor()),
+                    StandardCharsets.ISO_8859_1));
+        }
+        ProcessingResult followed = new DefaultFileProcessor().followFile(log.toString(),
+                Arrays.asList(new DefaultLineProcessor()), StandardCharsets.ISO_8859_1, checkpoint.toString());
+        ProcessingResult whole = new DefaultFileProcessor().processFile(log.toString(),
+                Arrays.asList(new DefaultLineProcessor()), StandardCharsets.ISO_8859_1);
+        assertEquals("Started over in the new charset ", whole.getKVForProcessedLines(), followed.getKVForProcessedLines());
+    }
+
+    private void append(String text) throws IOException {
+        Files.write(log, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
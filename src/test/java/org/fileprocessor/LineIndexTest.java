@@ -0,0 +1,182 @@
+package org.fileprocessor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LineIndexTest {
+
+    private static final String[] TERMINATORS = {"\n", "\r\n", "\r"};
+
+    @Test
+    public void testOffsetsOfEveryLine() throws IOException {
+        Path file = Files.createTempFile("index", ".txt");
+        try {
+            List<Long> starts = write(file, 1000, new Random(8), "");
+            LineIndex index = LineIndex.build(file, 7);
+            assertEquals("Lines ", starts.size(), index.getLineCount());
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                for (int line = 0; line < starts.size(); line++) {
+                    assertEquals("Start of line " + line, (long) starts.get(line), index.offsetOf(channel, line));
+                    assertEquals("Skipped to line " + line, (long) starts.get(line),
+                            LineIndex.skipLines(channel, 0, line, channel.size()));
+                }
+                assertEquals("Past the end ", channel.size(), index.offsetOf(channel, starts.size()));
+            }
+            long[] bounds = index.split(4);
+            assertEquals("Ranges ", 5, bounds.length);
+            for (int i = 1; i < 4; i++) {
+                assertTrue("Line start " + bounds[i], starts.contains(bounds[i]));
+            }
+            assertEquals("Until the end ", Files.size(file), bounds[4]);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testLineBreakAcrossBuffers() throws IOException {
+        Path file = Files.createTempFile("index", ".txt");
+        try {
+            // "\r\n" across the buffers of skipLines, and a last line without terminator
+            char[] first = new char[64 * 1024 - 1];
+            Arrays.fill(first, 'a');
+            Files.write(file, (new String(first) + "\r\nsecond\rthird").getBytes(StandardCharsets.UTF_8));
+            LineIndex index = LineIndex.build(file, 1);
+            assertEquals("Lines ", 3, index.getLineCount());
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                assertEquals("Second line ", first.length + 2, LineIndex.skipLines(channel, 0, 1, channel.size()));
+                assertEquals("Third line ", first.length + 9, index.offsetOf(channel, 2));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testSidecarKeptUntilFileChanges() throws IOException {
+        Path file = Files.createTempFile("index", ".txt");
+        Path sidecar = LineIndex.sidecarOf(file);
+        try {
+            write(file, 100, new Random(9), "");
+            assertNull("No index yet ", LineIndex.load(file));
+            LineIndex built = LineIndex.of(file, 10);
+            assertTrue("Saved next to the file ", Files.exists(sidecar));
+            LineIndex loaded = LineIndex.load(file);
+            assertNotNull("Loaded ", loaded);
+            assertEquals("Same lines ", built.getLineCount(), loaded.getLineCount());
+            assertEquals("Same interval ", 10, loaded.getInterval());
+            Files.write(file, "\none more".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            assertNull("Stale ", LineIndex.load(file));
+            assertEquals("Rebuilt ", built.getLineCount() + 1, LineIndex.of(file, 10).getLineCount());
+            Files.write(sidecar, new byte[]{1, 2, 3});
+            assertNull("Unreadable ", LineIndex.load(file));
+
+            // same size and modification time, different content
+            LineIndex.of(file, 10);
+            FileTime modified = Files.getLastModifiedTime(file);
+            byte[] content = Files.readAllBytes(file);
+            content[0] = (byte) (content[0] == 'x' ? 'y' : 'x');
+            Files.write(file, content);
+            Files.setLastModifiedTime(file, modified);
+            assertNull("Rewritten in place ", LineIndex.load(file));
+        } finally {
+            Files.deleteIfExists(sidecar);
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testProcessLines() throws IOException {
+        Path file = Files.createTempFile("index", ".txt");
+        Path gzip = Files.createTempFile("index", ".txt.gz");
+        try {
+            List<Long> starts = write(file, 5000, new Random(10), "line");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+                out.write(Files.readAllBytes(file));
+            }
+            DefaultFileProcessor fileProcessor = new DefaultFileProcessor();
+            assertRange(fileProcessor, file, 1234, 100, 100); // no index: line breaks are looked for from the start
+            assertRange(fileProcessor, gzip, 1234, 100, 100); // decoded from the start
+            fileProcessor.setLineIndexInterval(16);
+            assertRange(fileProcessor, file, 1234, 100, 100);
+            assertTrue("Index built ", Files.exists(LineIndex.sidecarOf(file)));
+            assertRange(fileProcessor, file, 0, 1, 1);
+            assertRange(fileProcessor, file, 4990, 100, 10);
+            assertRange(fileProcessor, file, 6000, 10, 0);
+            assertFalse("Negative range ", fileProcessor.processLines(file.toString(), Arrays.asList(new WordCountLineProcessor()),
+                    StandardCharsets.UTF_8, -1, 10).getType() == Validation.ValidationType.OK);
+
+            DefaultLineProcessor sequential = new DefaultLineProcessor();
+            DefaultLineProcessor parallel = new DefaultLineProcessor();
+            fileProcessor.processFile(file.toString(), sequential, StandardCharsets.UTF_8);
+            fileProcessor.processFileInParallel(file.toString(), Arrays.asList(parallel), StandardCharsets.UTF_8, 4, 1024);
+            assertEquals("Lines in parallel ", (double) starts.size(), parallel.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+            assertEquals("Same stats in parallel ", sequential.getKVForProcessedLines(), parallel.getKVForProcessedLines());
+        } finally {
+            Files.deleteIfExists(LineIndex.sidecarOf(file));
+            Files.delete(file);
+            Files.delete(gzip);
+        }
+    }
+
+    /**
+     * Processes lines [first, first + count) and checks that exactly the expected number of them, from the first, were.
+     */
+    private static void assertRange(DefaultFileProcessor fileProcessor, Path file, long first, long count, long expected){
+        WordCountLineProcessor processor = new WordCountLineProcessor();
+        assertEquals("Processed ", Validation.ValidationType.OK, fileProcessor.processLines(file.toString(),
+                Arrays.asList(processor), StandardCharsets.UTF_8, first, count).getType());
+        OffHeapWordTable words = processor.getWords();
+        long found = 0;
+        for (long line = Math.max(0, first - 1); line <= first + count; line++) {
+            found += words.get("line" + line);
+        }
+        assertEquals("Lines of " + file.getFileName() + " from " + first, expected, found);
+        if (expected > 0) {
+            assertEquals("First line ", 1, words.get("line" + first));
+            assertEquals("Last line ", 1, words.get("line" + (first + expected - 1)));
+        }
+    }
+
+    /**
+     * Writes lines ending in random terminators, the last one without, each starting with the given prefix and its number.
+     * @return offset where every line starts.
+     */
+    private static List<Long> write(Path file, int lines, Random random, String prefix) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        List<Long> starts = new ArrayList<>();
+        for (int line = 0; line < lines; line++) {
+            starts.add((long) bytes.size());
+            StringBuilder text = new StringBuilder(prefix + line);
+            for (int i = random.nextInt(5); i > 0; i--) {
+                text.append(" wörd").append(random.nextInt(100));
+            }
+            if (line + 1 < lines) {
+                text.append(TERMINATORS[random.nextInt(TERMINATORS.length)]);
+            }
+            bytes.write(text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        Files.write(file, bytes.toByteArray());
+        return starts;
+    }
+}
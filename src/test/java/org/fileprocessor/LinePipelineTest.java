@@ -0,0 +1,237 @@
+package org.fileprocessor;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LinePipelineTest {
+
+    @Test
+    public void testRingBufferBounds(){
+        RingBuffer<Integer> ring = new RingBuffer<>(3);
+        assertNull("Empty ", ring.poll());
+        for (int lap = 0; lap < 5; lap++) {
+            assertTrue(ring.offer(1));
+            assertTrue(ring.offer(2));
+            assertTrue(ring.offer(3));
+            assertFalse("Full ", ring.offer(4));
+            assertEquals("FIFO ", Integer.valueOf(1), ring.poll());
+            assertEquals("FIFO ", Integer.valueOf(2), ring.poll());
+            assertEquals("FIFO ", Integer.valueOf(3), ring.poll());
+            assertNull("Empty again ", ring.poll());
+        }
+    }
+
+    @Test
+    public void testRingBufferConcurrent() throws Exception {
+        RingBuffer<Long> ring = new RingBuffer<>(16);
+        int producers = 4;
+        int consumers = 4;
+        long perProducer = 50_000;
+        AtomicLong sum = new AtomicLong();
+        AtomicLong count = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                futures.add(executor.submit(() -> {
+                    for (long i = 1; i <= perProducer; i++) {
+                        while (!ring.offer(i)) {
+                            Thread.yield();
+                        }
+                    }
+                }));
+            }
+            for (int c = 0; c < consumers; c++) {
+                executor.submit(() -> {
+                    while (count.get() < producers * perProducer) {
+                        Long value = ring.poll();
+                        if (value == null) {
+                            Thread.yield();
+                        } else {
+                            sum.addAndGet(value);
+                            count.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            while (count.get() < producers * perProducer) {
+                Thread.sleep(1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("Every element taken once ", producers * perProducer * (perProducer + 1) / 2, sum.get());
+        assertNull("Nothing left ", ring.poll());
+    }
+
+    @Test
+    public void testStats() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("This is a test line\n");
+        }
+        DefaultLineProcessor processor = new DefaultLineProcessor();
+        LinePipeline.Stats stats = new LinePipeline(3, 10, 2).run(new BufferedReader(new StringReader(text.toString())),
+                Arrays.asList(processor));
+        assertEquals("Workers ", 3, stats.getWorkers());
+        assertEquals("Lines read ", 1000, stats.getLines());
+        assertEquals("Batches read ", 100, stats.getBatchesRead());
+        assertEquals("Batches processed ", 100, stats.getBatchesProcessed());
+        assertEquals("Merged lines ", 1000.0, processor.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+        assertEquals("Merged words ", 5000.0, processor.getKVForProcessedLines().get(DefaultLineProcessor.WORDS));
+    }
+
+    @Test
+    public void testTinyBatchesAndQueue() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            text.append("word ").append(i).append('\n');
+        }
+        DefaultLineProcessor processor = new DefaultLineProcessor();
+        LinePipeline.Stats stats = new LinePipeline(4, 1, 1).run(new BufferedReader(new StringReader(text.toString())),
+                Arrays.asList(processor));
+        assertEquals("Every batch processed ", 50_000, stats.getBatchesProcessed());
+        assertEquals("Merged words ", 100_000.0, processor.getKVForProcessedLines().get(DefaultLineProcessor.WORDS));
+    }
+
+    @Test
+    public void testProcessorFailure() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            text.append(i == 5000 ? "boom" : "fine").append('\n');
+        }
+        DefaultLineProcessor failing = new DefaultLineProcessor() {
+            @Override
+            public void beginLine(CharSequence line) {
+                if ("boom".contentEquals(line)) {
+                    throw new IllegalStateException("boom");
+                }
+            }
+
+            @Override
+            public DefaultLineProcessor newInstance() {
+                return this;
+            }
+        };
+        try {
+            new LinePipeline(2, 16, 4).run(new BufferedReader(new StringReader(text.toString())), Arrays.asList(failing));
+            fail("Processor exception expected");
+        } catch (IllegalStateException e) {
+            assertEquals("boom", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testReaderFailureWaitsForWorkers() throws Exception {
+        AtomicLong processed = new AtomicLong();
+        LineProcessor slow = new LineProcessor() { // not mergeable: run on the caller's instance
+            @Override
+            public void process(String line) {
+                long until = System.nanoTime() + 1_000_000; // busy, so that interrupts do not speed it up
+                while (System.nanoTime() < until) {
+                    Thread.onSpinWait();
+                }
+                processed.incrementAndGet();
+            }
+
+            @Override
+            public String printProcessedLines() {
+                return "";
+            }
+
+            @Override
+            public List<String> getKeyNames() {
+                return new ArrayList<>();
+            }
+
+            @Override
+            public Map<String, Object> getKVForProcessedLines() {
+                return new HashMap<>();
+            }
+        };
+        BufferedReader failing = new BufferedReader(new StringReader("")) {
+            private int lines;
+
+            @Override
+            public String readLine() throws IOException {
+                if (++lines > 200) {
+                    throw new IOException("disk gone");
+                }
+                return "line";
+            }
+        };
+        try {
+            new LinePipeline(2, 4, 64).run(failing, Arrays.asList(slow));
+            fail("Reader exception expected");
+        } catch (IOException e) {
+            assertEquals("disk gone", e.getMessage());
+        }
+        long atReturn = processed.get();
+        Thread.sleep(100);
+        assertEquals("Processor left alone after the failure ", atReturn, processed.get());
+    }
+
+    @Test
+    public void testMergeOrderDoesNotMatter() {
+        List<String> lines = new ArrayList<>();
+        Random random = new Random(12);
+        for (int i = 0; i < 2000; i++) {
+            lines.add("w" + random.nextInt(50) + " x" + random.nextInt(7) + " " + i % 13);
+        }
+        List<MergeableLineProcessor<?>> prototypes = Arrays.asList(new DefaultLineProcessor(), new WordCountLineProcessor(),
+                new TopKLineProcessor(5, 2, 1024 * 1024), new ApproximateLineProcessor());
+        for (MergeableLineProcessor<?> prototype : prototypes) {
+            assertEquals("Merged in any order: " + prototype.getClass().getSimpleName(),
+                    mergedStats(prototype, lines), mergedStats(prototype, reversedHalves(lines)));
+        }
+    }
+
+    /**
+     * Processes the two halves of the lines on fresh instances and merges the second into the first.
+     */
+    private static <T extends MergeableLineProcessor<T>> Map<String, Object> mergedStats(MergeableLineProcessor<T> prototype,
+                                                                                      List<String> lines) {
+        T first = prototype.newInstance();
+        T second = prototype.newInstance();
+        for (int i = 0; i < lines.size(); i++) {
+            (i < lines.size() / 2 ? first : second).process(lines.get(i));
+        }
+        first.merge(second);
+        return first.getKVForProcessedLines();
+    }
+
+    /**
+     * @return the second half of the lines followed by the first, each reversed.
+     */
+    private static List<String> reversedHalves(List<String> lines) {
+        List<String> first = new ArrayList<>(lines.subList(0, lines.size() / 2));
+        List<String> second = new ArrayList<>(lines.subList(lines.size() / 2, lines.size()));
+        Collections.reverse(first);
+        Collections.reverse(second);
+        second.addAll(first);
+        return second;
+    }
+}
@@ -0,0 +1,83 @@
+package org.fileprocessor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class MappedLineReaderTest {
+    private Path file;
+
+    @Before
+    public void setup() throws IOException {
+        file = Files.createTempFile("mapped", ".txt");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testSameLinesAsBufferedReader() throws IOException {
+        String[] contents = {"", "a", "a\n", "a\n\n", "\r\n", "one\rtwo\r\nthree\n\rfour", "ñandú\r\n日本語\nend\r",
+                "a line that is longer than the window\nb\r\n"};
+        for (String content : contents) {
+            for (int window : new int[]{1, 2, 3, 5, 8, MappedLineReader.WINDOW_SIZE}) {
+                assertEquals("Lines of [" + content + "] with window " + window, bufferedReaderLines(content),
+                        mappedLines(content, StandardCharsets.UTF_8, window));
+            }
+        }
+    }
+
+    @Test
+    public void testLatin1View() throws IOException {
+        Files.write(file, "Campaña\r\nprobará".getBytes(StandardCharsets.ISO_8859_1));
+        List<String> lines = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            new MappedLineReader(StandardCharsets.ISO_8859_1).read(channel, 0, channel.size(), line -> lines.add(line.toString()));
+        }
+        assertEquals(2, lines.size());
+        assertEquals("Campaña", lines.get(0));
+        assertEquals("probará", lines.get(1));
+    }
+
+    @Test(expected = CharacterCodingException.class)
+    public void testNonAsciiInAsciiFile() throws IOException {
+        mappedLines("ñ", StandardCharsets.US_ASCII, MappedLineReader.WINDOW_SIZE);
+    }
+
+    private List<String> mappedLines(String content, Charset charset, int window) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        List<String> lines = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            new MappedLineReader(charset, window).read(channel, 0, channel.size(), line -> lines.add(line.toString()));
+        }
+        return lines;
+    }
+
+    private static List<String> bufferedReaderLines(String content) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(content))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
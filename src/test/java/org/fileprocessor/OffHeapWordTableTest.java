@@ -0,0 +1,143 @@
+package org.fileprocessor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapWordTableTest {
+
+    @Test
+    public void testCountsAndOrders(){
+        OffHeapWordTable table = new OffHeapWordTable();
+        for (String word : "the cat sat on the mat über alles 😀 the cat".split(" ")) {
+            table.add(word.toCharArray(), word.length());
+        }
+        table.add("mat", 3);
+        assertEquals("Distinct ", 8, table.size());
+        assertEquals("Total ", 14, table.getTotal());
+        assertEquals("the ", 3, table.get("the"));
+        assertEquals("über ", 1, table.get("über"));
+        assertEquals("Missing ", 0, table.get("dog"));
+        assertEquals("By word ", "alles=1, cat=2, mat=4, on=1, sat=1, the=3, über=1, 😀=1",
+                visit(table, OffHeapWordTable.Order.WORD));
+        assertEquals("By count ", "mat=4, the=3, cat=2, alles=1, on=1, sat=1, über=1, 😀=1",
+                visit(table, OffHeapWordTable.Order.COUNT));
+    }
+
+    @Test
+    public void testManyWordsAgainstMap() throws IOException {
+        Path spill = Files.createTempDirectory("words");
+        try {
+            OffHeapWordTable direct = new OffHeapWordTable();
+            OffHeapWordTable mapped = new OffHeapWordTable(spill);
+            OffHeapWordTable other = new OffHeapWordTable();
+            TreeMap<String, Long> exact = new TreeMap<>();
+            Random random = new Random(6);
+            for (int i = 0; i < 200000; i++) {
+                String word = Long.toString(random.nextInt(50000) * 7919L, 36) + (i % 3 == 0 ? "ß" : "");
+                (i % 2 == 0 ? direct : other).add(word.toCharArray(), word.length());
+                mapped.add(word, 1);
+                exact.merge(word, 1L, Long::sum);
+            }
+            direct.merge(other);
+            for (OffHeapWordTable table : Arrays.asList(direct, mapped)) {
+                assertEquals("Distinct ", exact.size(), table.size());
+                assertEquals("Total ", 200000, table.getTotal());
+                List<String> words = new ArrayList<>();
+                table.forEach(OffHeapWordTable.Order.WORD, (word, length, count) -> {
+                    String text = new String(word, 0, length, StandardCharsets.UTF_8);
+                    assertEquals("Count of " + text, (long) exact.get(text), count);
+                    words.add(text);
+                });
+                assertEquals("Sorted ", new ArrayList<>(exact.keySet()), words);
+            }
+            try (Stream<Path> files = Files.list(spill)) {
+                assertEquals("Spill files deleted once mapped ", 0, files.count());
+            }
+        } finally {
+            Files.delete(spill);
+        }
+    }
+
+    @Test
+    public void testSerializable() throws IOException, ClassNotFoundException {
+        WordCountLineProcessor processor = new WordCountLineProcessor();
+        processor.process("one two two three three three");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(processor);
+        }
+        WordCountLineProcessor copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (WordCountLineProcessor) in.readObject();
+        }
+        copy.process("one two");
+        Map<String, Object> stats = copy.getKVForProcessedLines();
+        assertEquals("Words ", 8.0, stats.get(WordCountLineProcessor.WORDS));
+        assertEquals("Distinct ", 3.0, stats.get(WordCountLineProcessor.DISTINCT_WORDS));
+        assertEquals("Top ", "three=3, two=3, one=2", stats.get(WordCountLineProcessor.TOP_WORDS));
+    }
+
+    @Test
+    public void testProcessorInParallel() throws IOException {
+        Path file = Files.createTempFile("wordcount", ".txt");
+        Map<String, Long> exact = new HashMap<>();
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            Random random = new Random(7);
+            for (int line = 0; line < 20000; line++) {
+                for (int i = random.nextInt(8); i >= 0; i--) {
+                    String word = "w" + (int) Math.abs(random.nextGaussian() * 2000);
+                    writer.write(word + " ");
+                    exact.merge(word, 1L, Long::sum);
+                }
+                writer.write("\n");
+            }
+        }
+        try {
+            WordCountLineProcessor processor = new WordCountLineProcessor(3, null);
+            new DefaultFileProcessor().processFileInParallel(file.toString(), Arrays.asList(processor), StandardCharsets.UTF_8, 4);
+            Map<String, Object> stats = processor.getKVForProcessedLines();
+            assertEquals("Words ", (double) exact.values().stream().mapToLong(Long::longValue).sum(),
+                    stats.get(WordCountLineProcessor.WORDS));
+            assertEquals("Distinct ", (double) exact.size(), stats.get(WordCountLineProcessor.DISTINCT_WORDS));
+            List<SpaceSaving.Counter> top = processor.getTop();
+            long previous = Long.MAX_VALUE;
+            for (SpaceSaving.Counter counter : top) {
+                assertEquals("Count of " + counter.getItem(), (long) exact.get(counter.getItem()), counter.getCount());
+                assertTrue("Sorted ", counter.getCount() <= previous);
+                previous = counter.getCount();
+            }
+            long third = previous;
+            assertEquals("None missing ", exact.values().stream().filter(count -> count > third).count(),
+                    top.stream().filter(counter -> counter.getCount() > third).count());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static String visit(OffHeapWordTable table, OffHeapWordTable.Order order){
+        StringBuilder visited = new StringBuilder();
+        table.forEach(order, (word, length, count) -> visited.append(visited.length() == 0 ? "" : ", ")
+                .append(new String(word, 0, length, StandardCharsets.UTF_8)).append('=').append(count));
+        return visited.toString();
+    }
+}
@@ -0,0 +1,155 @@
+package org.fileprocessor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessingMetricsTest {
+    private static final int LINES = 1000;
+
+    private Path file;
+    private String text;
+    private DefaultFileProcessor fileProcessor;
+    private final List<RunMetrics> runs = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setup() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            builder.append("line ").append(i).append(" with a few wörds\n");
+        }
+        text = builder.toString();
+        file = Files.createTempFile("metrics", ".txt");
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        fileProcessor = new DefaultFileProcessor();
+        fileProcessor.addListener(runs::add);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testEveryModeIsMeasured() {
+        String name = file.toString();
+        long size = text.getBytes(StandardCharsets.UTF_8).length;
+        fileProcessor.processFile(name, processors(), StandardCharsets.UTF_8);
+        fileProcessor.processFileMapped(name, processors(), StandardCharsets.UTF_8);
+        fileProcessor.processFileInParallel(name, processors(), StandardCharsets.UTF_8, 4, 1024);
+        fileProcessor.processFilePipelined(name, processors(), StandardCharsets.UTF_8, 3, 16, 4);
+        fileProcessor.processStream(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), processors(),
+                StandardCharsets.UTF_8);
+        fileProcessor.processStream(new StringReader(text), processors());
+
+        List<RunMetrics.Mode> modes = Arrays.asList(RunMetrics.Mode.SEQUENTIAL, RunMetrics.Mode.MAPPED,
+                RunMetrics.Mode.PARALLEL, RunMetrics.Mode.PIPELINED, RunMetrics.Mode.STREAM, RunMetrics.Mode.STREAM);
+        assertEquals("One run per call ", modes.size(), runs.size());
+        for (int i = 0; i < runs.size(); i++) {
+            RunMetrics metrics = runs.get(i);
+            assertEquals("Mode ", modes.get(i), metrics.getMode());
+            assertTrue("Succeeded " + metrics, metrics.isSucceeded());
+            assertEquals("Lines " + metrics, LINES, metrics.getLines());
+            assertEquals("Bytes " + metrics, i == runs.size() - 1 ? -1 : size, metrics.getBytesRead());
+            assertTrue("Elapsed " + metrics, metrics.getElapsedNanos() > 0);
+            assertTrue("Processor timed " + metrics,
+                    metrics.getProcessorNanos().get(DefaultLineProcessor.class.getName()) > 0);
+        }
+        assertEquals("Source ", name, runs.get(0).getSource());
+        assertEquals("Stream source ", DefaultFileProcessor.STREAM_NAME, runs.get(4).getSource());
+    }
+
+    @Test
+    public void testFallbackIsMeasuredOnce() {
+        // not mergeable, so processed sequentially
+        fileProcessor.processFileInParallel(file.toString(), Arrays.asList(new DoNothingLineProcessor()),
+                StandardCharsets.UTF_8, 4);
+        assertEquals("One run ", 1, runs.size());
+        assertEquals("Mode of the call ", RunMetrics.Mode.PARALLEL, runs.get(0).getMode());
+        assertEquals("Lines ", LINES, runs.get(0).getLines());
+    }
+
+    @Test
+    public void testFailuresAreMeasured() {
+        fileProcessor.addListener(metrics -> {
+            throw new IllegalStateException("broken listener");
+        });
+        ProcessingResult result = fileProcessor.processFile(file + ".missing", processors(), StandardCharsets.UTF_8);
+        assertEquals("Listener does not change the result ", Validation.ValidationType.ERROR, result.getType());
+        assertEquals("One run ", 1, runs.size());
+        assertFalse("Failed ", runs.get(0).isSucceeded());
+        assertEquals("No lines ", 0, runs.get(0).getLines());
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        ProcessingMetrics metrics = new ProcessingMetrics();
+        fileProcessor.addListener(metrics);
+        ObjectName name = metrics.register("test");
+        assertNotNull("Registered ", name);
+        try {
+            fileProcessor.processFile(file.toString(), processors(), StandardCharsets.UTF_8);
+            fileProcessor.processFileMapped(file.toString(), processors(), StandardCharsets.UTF_8);
+            fileProcessor.processFile(file + ".missing", processors(), StandardCharsets.UTF_8);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals("Runs ", 3L, server.getAttribute(name, "Runs"));
+            assertEquals("Failures ", 1L, server.getAttribute(name, "Failures"));
+            assertEquals("Lines ", 2L * LINES, server.getAttribute(name, "Lines"));
+            assertTrue("Lines per second ", (Double) server.getAttribute(name, "LinesPerSecond") > 0);
+            TabularData processors = (TabularData) server.getAttribute(name, "ProcessorNanos");
+            CompositeData row = processors.get(new Object[]{DefaultLineProcessor.class.getName()});
+            assertTrue("Processor time ", (Long) row.get("value") > 0);
+            TabularData latency = (TabularData) server.getAttribute(name, "LatencyPercentiles");
+            assertTrue("Max latency ", (Long) latency.get(new Object[]{"max"}).get("value") > 0);
+
+            server.invoke(name, "reset", null, null);
+            assertEquals("Reset ", 0L, server.getAttribute(name, "Runs"));
+            assertEquals("Reset histogram ", 0, metrics.getLatency().getCount());
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse("Unregistered ", ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals("Empty ", 0, histogram.getPercentile(50));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+        histogram.record(-5);
+        assertEquals("Count ", 101, histogram.getCount());
+        assertEquals("Negative counts as zero ", 1, histogram.getBuckets()[0]);
+        long median = histogram.getPercentile(50);
+        assertTrue("Median within a factor of two " + median, median >= 50_000 && median < 2 * 51_000);
+        long max = histogram.getPercentile(100);
+        assertTrue("Max within a factor of two " + max, max >= 100_000 && max < 200_000);
+    }
+
+    private static List<LineProcessor> processors() {
+        return Arrays.asList(new DefaultLineProcessor());
+    }
+}
@@ -0,0 +1,242 @@
+package org.fileprocessor;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResultCacheTest {
+    private static final String TEXT = "This is a test line\nañother line with ünicode\nlast line\n";
+
+    private Path directory;
+    private Path file;
+    private ResultCache cache;
+    private CachingFileProcessor fileProcessor;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("cache");
+        file = directory.resolve("data.txt");
+        Files.write(file, TEXT.getBytes(StandardCharsets.UTF_8));
+        cache = new ResultCache(directory.resolve("entries"), 1024 * 1024);
+        fileProcessor = new CachingFileProcessor(new DefaultFileProcessor(), cache);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testHitRestoresProcessors() {
+        DefaultLineProcessor first = new DefaultLineProcessor();
+        ProcessingResult miss = fileProcessor.processFile(file.toString(), Arrays.asList(first), StandardCharsets.UTF_8);
+        DefaultLineProcessor second = new DefaultLineProcessor();
+        ProcessingResult hit = fileProcessor.processFileMapped(file.toString(), Arrays.asList(second), StandardCharsets.UTF_8);
+        assertEquals("One miss ", 1, cache.getMisses());
+        assertEquals("One hit ", 1, cache.getHits());
+        assertEquals("Same stats ", miss.getKVForProcessedLines(), hit.getKVForProcessedLines());
+        assertEquals("Processor restored ", first.getKVForProcessedLines(), second.getKVForProcessedLines());
+        assertEquals("Lines ", 3.0, hit.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+    }
+
+    @Test
+    public void testHitAddsToProcessorState() {
+        DefaultLineProcessor twice = new DefaultLineProcessor();
+        fileProcessor.processFile(file.toString(), Arrays.asList(twice), StandardCharsets.UTF_8);
+        ProcessingResult hit = fileProcessor.processFile(file.toString(), Arrays.asList(twice), StandardCharsets.UTF_8);
+        assertEquals("Hit ", 1, cache.getHits());
+        assertEquals("Lines of both calls ", 6.0, hit.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+    }
+
+    @Test
+    public void testExactInvalidation() throws IOException {
+        fileProcessor.processFile(file.toString(), processors(), StandardCharsets.UTF_8);
+        fileProcessor.processFile(file.toString(), processors(), StandardCharsets.ISO_8859_1);
+        fileProcessor.processFile(file.toString(), Arrays.asList(new DefaultLineProcessor(DefaultLineProcessor.Tokenizer.REGEX)),
+                StandardCharsets.UTF_8);
+        assertEquals("Other charset and configuration miss ", 0, cache.getHits());
+
+        Files.write(file, "one more line\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        ProcessingResult changed = fileProcessor.processFile(file.toString(), processors(), StandardCharsets.UTF_8);
+        assertEquals("Changed file misses ", 0, cache.getHits());
+        assertEquals("New stats ", 4.0, changed.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+        fileProcessor.processFile(file.toString(), processors(), StandardCharsets.UTF_8);
+        assertEquals("Hit on the new content ", 1, cache.getHits());
+    }
+
+    @Test
+    public void testPersistentAndHashed() throws IOException {
+        fileProcessor.processFile(file.toString(), processors(), StandardCharsets.UTF_8);
+        ResultCache reopened = new ResultCache(directory.resolve("entries"), 1024 * 1024);
+        assertEquals("Entry picked up ", 1, reopened.getEntries());
+        new CachingFileProcessor(new DefaultFileProcessor(), reopened)
+                .processFile(file.toString(), processors(), StandardCharsets.UTF_8);
+        assertEquals("Hit after reopening ", 1, reopened.getHits());
+
+        ResultCache hashed = new ResultCache(directory.resolve("hashed"), 1024 * 1024, true);
+        CachingFileProcessor hashing = new CachingFileProcessor(new DefaultFileProcessor(), hashed);
+        hashing.processFile(file.toString(), processors(), StandardCharsets.UTF_8);
+        hashing.processFile(file.toString(), processors(), StandardCharsets.UTF_8);
+        assertEquals("Hit with content hash ", 1, hashed.getHits());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws IOException {
+        Path[] files = new Path[3];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = directory.resolve("file" + i + ".txt");
+            Files.write(files[i], (TEXT + i).getBytes(StandardCharsets.UTF_8));
+        }
+        fileProcessor.processFile(files[0].toString(), processors(), StandardCharsets.UTF_8);
+        long entrySize = cache.getBytes();
+        ResultCache small = new ResultCache(directory.resolve("small"), entrySize * 2 + entrySize / 2);
+        CachingFileProcessor cached = new CachingFileProcessor(new DefaultFileProcessor(), small);
+        cached.processFile(files[0].toString(), processors(), StandardCharsets.UTF_8);
+        cached.processFile(files[1].toString(), processors(), StandardCharsets.UTF_8);
+        cached.processFile(files[0].toString(), processors(), StandardCharsets.UTF_8); // 1 is now the least recently used
+        cached.processFile(files[2].toString(), processors(), StandardCharsets.UTF_8);
+        assertEquals("One eviction ", 1, small.getEvictions());
+        assertEquals("Two entries ", 2, small.getEntries());
+        assertTrue("Within size ", small.getBytes() <= entrySize * 2 + entrySize / 2);
+
+        long hits = small.getHits();
+        cached.processFile(files[0].toString(), processors(), StandardCharsets.UTF_8);
+        cached.processFile(files[2].toString(), processors(), StandardCharsets.UTF_8);
+        assertEquals("Recently used kept ", hits + 2, small.getHits());
+        cached.processFile(files[1].toString(), processors(), StandardCharsets.UTF_8);
+        assertEquals("Least recently used evicted ", hits + 2, small.getHits());
+    }
+
+    @Test
+    public void testNotCacheable() {
+        ProcessingResult result = fileProcessor.processFile(file.toString(), Arrays.asList(new DoNothingLineProcessor()),
+                StandardCharsets.UTF_8);
+        assertEquals("Processed ", Validation.ValidationType.OK, result.getType());
+        ProcessingResult missing = fileProcessor.processFile(directory.resolve("missing.txt").toString(), processors(),
+                StandardCharsets.UTF_8);
+        assertEquals("Error reported ", Validation.ValidationType.ERROR, missing.getType());
+        assertEquals("Not looked up ", 0, cache.getHits() + cache.getMisses());
+        assertEquals("Nothing stored ", 0, cache.getEntries());
+    }
+
+    @Test
+    public void testBatchAggregateFromCache() {
+        List<String> inputs = Collections.singletonList(file.toString());
+        BatchFileProcessor batch = new BatchFileProcessor(fileProcessor, 2, 2);
+        BatchFileProcessor.BatchResult first = batch.processFiles(inputs, Arrays.asList(new DefaultLineProcessor()),
+                StandardCharsets.UTF_8);
+        BatchFileProcessor.BatchResult second = batch.processFiles(inputs, Arrays.asList(new DefaultLineProcessor()),
+                StandardCharsets.UTF_8);
+        assertEquals("Hit ", 1, cache.getHits());
+        assertEquals("Same aggregate ", first.getAggregate().get(0).getKVForProcessedLines(),
+                second.getAggregate().get(0).getKVForProcessedLines());
+    }
+
+    @Test
+    public void testEntriesOverTheLimitAndForeignEntries() throws IOException, ClassNotFoundException {
+        ResultCache tiny = new ResultCache(directory.resolve("tiny"), 64);
+        new CachingFileProcessor(new DefaultFileProcessor(), tiny).processFile(file.toString(), processors(), StandardCharsets.UTF_8);
+        assertEquals("Too large to store ", 0, tiny.getEntries());
+        try (Stream<Path> left = Files.list(directory.resolve("tiny"))) {
+            assertEquals("Partial entry deleted ", 0, left.count());
+        }
+
+        fileProcessor.processFile(file.toString(), processors(), StandardCharsets.UTF_8);
+        try (Stream<Path> entries = Files.list(directory.resolve("entries"))) {
+            Path entry = entries.findFirst().get();
+            try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(entry))) {
+                out.writeObject(new Tampered());
+            }
+        }
+        Tampered.read = false;
+        fileProcessor.processFile(file.toString(), processors(), StandardCharsets.UTF_8);
+        assertFalse("Foreign class never instantiated ", Tampered.read);
+        assertEquals("Foreign entry misses ", 0, cache.getHits());
+        fileProcessor.processFile(file.toString(), processors(), StandardCharsets.UTF_8);
+        assertEquals("Stored again ", 1, cache.getHits());
+    }
+
+    @Test
+    public void testEntriesOverTheLimitLeaveNothingOpen() throws IOException {
+        Path tinyDirectory = directory.resolve("tiny");
+        ResultCache tiny = new ResultCache(tinyDirectory, 600);
+        CachingFileProcessor caching = new CachingFileProcessor(new DefaultFileProcessor(), tiny);
+        for (int i = 0; i < 50; i++) {
+            caching.processFile(file.toString(), Arrays.asList(new WordCountLineProcessor()), StandardCharsets.UTF_8);
+        }
+        assertEquals("Too large to store ", 0, tiny.getEntries());
+        try (Stream<Path> left = Files.list(tinyDirectory)) {
+            assertEquals("Partial entries deleted ", 0, left.count());
+        }
+        Path descriptors = Paths.get("/proc/self/fd");
+        Assume.assumeTrue("Open files only listed on Linux", Files.isDirectory(descriptors));
+        long open = 0;
+        try (Stream<Path> fds = Files.list(descriptors)) {
+            for (Path fd : (Iterable<Path>) fds::iterator) {
+                try {
+                    if (Files.readSymbolicLink(fd).toString().startsWith(tinyDirectory.toString())) {
+                        open++;
+                    }
+                } catch (IOException e) {
+                    // closed in the meantime, e.g. the one listing the directory
+                }
+            }
+        }
+        assertEquals("Partial entries closed ", 0, open);
+    }
+
+    @Test
+    public void testEveryCacheableProcessorReadBack() {
+        List<Supplier<LineProcessor>> processors = Arrays.asList(DefaultLineProcessor::new, ApproximateLineProcessor::new,
+                TopKLineProcessor::new, WordCountLineProcessor::new);
+        for (Supplier<LineProcessor> processor : processors) {
+            LineProcessor first = processor.get();
+            LineProcessor second = processor.get();
+            fileProcessor.processFile(file.toString(), Arrays.asList(first), StandardCharsets.UTF_8);
+            fileProcessor.processFile(file.toString(), Arrays.asList(second), StandardCharsets.UTF_8);
+            assertEquals("Restored " + first.getClass().getSimpleName(), first.getKVForProcessedLines(),
+                    second.getKVForProcessedLines());
+        }
+        assertEquals("All hit ", processors.size(), cache.getHits());
+    }
+
+    /**
+     * Stands for a class that has no business in a cache entry.
+     */
+    private static final class Tampered implements Serializable {
+        private static final long serialVersionUID = 1L;
+        static volatile boolean read;
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            read = true;
+        }
+    }
+
+    private static List<LineProcessor> processors() {
+        return Arrays.asList(new DefaultLineProcessor());
+    }
+}
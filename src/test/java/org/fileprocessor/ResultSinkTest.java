@@ -0,0 +1,78 @@
+package org.fileprocessor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResultSinkTest {
+
+    @Test
+    public void testSilentByDefault() {
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outContent));
+        try {
+            ProcessingResult result = new DefaultFileProcessor().processFile(testFile(), StandardCharsets.UTF_8);
+            assertEquals("Processed ", Validation.ValidationType.OK, result.getType());
+            new DefaultFileProcessor().processFile("doesNotExist.txt", StandardCharsets.UTF_8);
+        } finally {
+            System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.out)));
+        }
+        assertEquals("Nothing printed ", "", outContent.toString());
+    }
+
+    @Test
+    public void testConsole() {
+        ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(outContent);
+        DefaultFileProcessor fileProcessor = new DefaultFileProcessor(new ConsoleResultSink(out));
+        fileProcessor.processFile(testFile(), StandardCharsets.UTF_8);
+        fileProcessor.processFile("doesNotExist.txt", StandardCharsets.UTF_8);
+        String printed = outContent.toString();
+        assertTrue("Processor output " + printed, printed.contains("Output for processor: " + DefaultLineProcessor.class.getName()));
+        assertTrue("Stats " + printed, printed.contains("Lines: 3.0"));
+        assertTrue("Error " + printed, printed.contains(DefaultFileProcessor.FILE_LOCATION_ERROR + ": doesNotExist.txt."));
+    }
+
+    @Test
+    public void testJson() {
+        StringWriter json = new StringWriter();
+        DefaultFileProcessor fileProcessor = new DefaultFileProcessor(ResultSink.json(json));
+        fileProcessor.processFile(testFile(), StandardCharsets.UTF_8);
+        fileProcessor.processFile("doesNot\"Exist\".txt", StandardCharsets.UTF_8);
+        String[] records = json.toString().split("\n");
+        assertEquals("One record per call " + json, 2, records.length);
+        assertTrue("Source " + records[0], records[0].startsWith("{\"source\":\"" + testFile().replace("\\", "\\\\") + "\""));
+        assertTrue("Status " + records[0], records[0].contains("\"status\":\"OK\""));
+        assertTrue("Number " + records[0], records[0].contains("\"" + DefaultLineProcessor.LINES + "\":3.0"));
+        assertTrue("String " + records[0], records[0].contains("\"" + DefaultLineProcessor.MOST_COMMON_LETTER + "\":\"e\""));
+        assertTrue("Error " + records[1], records[1].startsWith("{\"source\":\"doesNot\\\"Exist\\\".txt\",\"status\":\"ERROR\""));
+        assertTrue("Escaped line breaks " + records[1], records[1].contains("\\n"));
+    }
+
+    @Test
+    public void testCustomSinkCalledOncePerCall() {
+        List<String> sources = new ArrayList<>();
+        DefaultFileProcessor fileProcessor = new DefaultFileProcessor((source, result, processors) -> sources.add(source));
+        fileProcessor.processFileInParallel(testFile(), Arrays.asList(new DefaultLineProcessor()), StandardCharsets.UTF_8, 2);
+        fileProcessor.processFileMapped(testFile(), Arrays.asList(new DoNothingLineProcessor()), StandardCharsets.US_ASCII);
+        fileProcessor.processFile("doesNotExist.txt", StandardCharsets.UTF_8); // failures ignored by default
+        assertEquals("Sources ", Arrays.asList(testFile(), testFile()), sources);
+    }
+
+    private static String testFile() {
+        URL url = ResultSinkTest.class.getResource("/testFileUTF8_NO_BOM.txt");
+        return System.getProperty("os.name").startsWith("Windows") ? url.getFile().substring(1) : url.getFile();
+    }
+}
@@ -0,0 +1,113 @@
+package org.fileprocessor;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SketchTest {
+
+    @Test
+    public void testDistinctEstimate(){
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        for(int i = 0; i < 100000; i++){
+            first.add(HyperLogLog.hash("word" + i));
+            second.add(HyperLogLog.hash("word" + (i + 50000)));
+        }
+        assertWithin("Distinct ", 100000, first.estimate(), 3 * first.getStandardError());
+        first.merge(second);
+        assertWithin("Distinct in union ", 150000, first.estimate(), 3 * first.getStandardError());
+        assertWithin("Other untouched ", 100000, second.estimate(), 3 * second.getStandardError());
+
+        HyperLogLog small = new HyperLogLog(10);
+        for(int i = 0; i < 1000; i++){
+            small.add("abc".toCharArray(), 3);
+            small.add(("w" + (i % 100)).toCharArray(), ("w" + (i % 100)).length());
+        }
+        assertWithin("Few distinct ", 101, small.estimate(), 3 * small.getStandardError());
+    }
+
+    @Test
+    public void testSameHashForCharsAndStrings(){
+        char[] buffer = "hello world".toCharArray();
+        assertEquals("Same hash ", HyperLogLog.hash("hello"), HyperLogLog.hash(buffer, 5));
+        assertTrue("Different words ", HyperLogLog.hash("hello") != HyperLogLog.hash("hellp"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeDifferentPrecisions(){
+        new HyperLogLog(10).merge(new HyperLogLog(12));
+    }
+
+    @Test
+    public void testHeavyHitters(){
+        SpaceSaving sketch = new SpaceSaving(50);
+        Map<String, Long> exact = new HashMap<>();
+        Random random = new Random(1);
+        for(int i = 0; i < 100000; i++){
+            // a few frequent words among many rare ones
+            String word = random.nextInt(4) == 0 ? "common" + random.nextInt(5) : "rare" + random.nextInt(10000);
+            char[] chars = word.toCharArray();
+            sketch.add(chars, chars.length);
+            exact.merge(word, 1L, Long::sum);
+        }
+        assertEquals("Total ", 100000, sketch.getTotal());
+        assertTrue("Error bound ", sketch.getMaxError() <= sketch.getTotal() / sketch.getCapacity());
+        List<SpaceSaving.Counter> top = sketch.top(5);
+        for(SpaceSaving.Counter counter : top){
+            assertTrue("Frequent word " + counter, counter.getItem().startsWith("common"));
+            assertBounds(counter, exact.get(counter.getItem()));
+        }
+        assertTrue("Sorted ", top.get(0).getCount() >= top.get(4).getCount());
+    }
+
+    @Test
+    public void testExactWhileCountersLast(){
+        SpaceSaving sketch = new SpaceSaving(3);
+        sketch.add("b", 2);
+        sketch.add("a", 2);
+        assertEquals("No error ", 0, sketch.getMaxError());
+        sketch.add("c", 5);
+        assertEquals("Exact ", "[c=5, a=2, b=2]", sketch.top(10).toString());
+        sketch.add("d", 1);
+        assertEquals("Replaces the smallest ", "[c=5, d=3±2]", sketch.top(2).toString());
+    }
+
+    @Test
+    public void testMerge(){
+        SpaceSaving first = new SpaceSaving(4);
+        SpaceSaving second = new SpaceSaving(4);
+        Map<String, Long> exact = new HashMap<>();
+        Random random = new Random(2);
+        for(int i = 0; i < 2000; i++){
+            String word = "w" + (int) Math.abs(random.nextGaussian() * 3);
+            (i % 2 == 0 ? first : second).add(word, 1);
+            exact.merge(word, 1L, Long::sum);
+        }
+        first.merge(second);
+        assertEquals("Total ", 2000, first.getTotal());
+        for(SpaceSaving.Counter counter : first.top(4)){
+            assertBounds(counter, exact.get(counter.getItem()));
+        }
+        assertEquals("Most frequent ", "w0", first.top(1).get(0).getItem());
+        for(Map.Entry<String, Long> entry : exact.entrySet()){
+            boolean monitored = first.top(4).stream().anyMatch(counter -> counter.getItem().equals(entry.getKey()));
+            assertTrue("Unmonitored within error " + entry, monitored || entry.getValue() <= first.getMaxError());
+        }
+    }
+
+    private static void assertBounds(SpaceSaving.Counter counter, long exact){
+        assertTrue("Not below true count " + counter + " " + exact, counter.getCount() >= exact);
+        assertTrue("Within error " + counter + " " + exact, counter.getCount() - counter.getError() <= exact);
+    }
+
+    private static void assertWithin(String message, double expected, double actual, double relativeError){
+        assertTrue(message + actual, Math.abs(actual - expected) <= expected * relativeError);
+    }
+}
@@ -0,0 +1,187 @@
+package org.fileprocessor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StatsPublisherTest {
+    private Path file;
+    private ExecutorService executor;
+
+    @Before
+    public void setup() throws IOException {
+        file = Files.createTempFile("progress", ".txt");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            content.append("This is a test line\n");
+        }
+        Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testRunningSnapshots() throws InterruptedException {
+        StatsPublisher publisher = new StatsPublisher(0, TimeUnit.MILLISECONDS, executor, 1024);
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber);
+        ProcessingResult result = new DefaultFileProcessor().processFile(file.toString(),
+                Arrays.asList(new DefaultLineProcessor()), StandardCharsets.UTF_8, publisher);
+        assertTrue("Completed ", subscriber.done.await(10, TimeUnit.SECONDS));
+        assertEquals("No error ", null, subscriber.error.get());
+
+        List<StatsSnapshot> snapshots = subscriber.snapshots;
+        assertTrue("Running snapshots ", snapshots.size() > 2);
+        long previous = 0;
+        for (StatsSnapshot snapshot : snapshots) {
+            assertTrue("Lines grow ", snapshot.getLines() >= previous);
+            assertEquals("Stats follow lines ", (double) snapshot.getLines(),
+                    snapshot.getKVForProcessedLines().get(DefaultLineProcessor.LINES));
+            previous = snapshot.getLines();
+        }
+        StatsSnapshot last = snapshots.get(snapshots.size() - 1);
+        assertTrue("Last snapshot ", last.isLast());
+        assertFalse("Only one last snapshot ", snapshots.get(0).isLast());
+        assertEquals("Last snapshot holds final stats ", result.getKVForProcessedLines(), last.getKVForProcessedLines());
+        assertEquals("Tracker adds no keys ", Arrays.asList(DefaultLineProcessor.LINES, DefaultLineProcessor.WORDS,
+                DefaultLineProcessor.LETTER_PER_WORD, DefaultLineProcessor.MOST_COMMON_LETTER), result.getKeyNames());
+    }
+
+    @Test
+    public void testCheapRunningSnapshots() throws InterruptedException {
+        StatsPublisher publisher = new StatsPublisher(0, TimeUnit.MILLISECONDS, executor, 1024);
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber);
+        AtomicInteger tops = new AtomicInteger();
+        WordCountLineProcessor words = new WordCountLineProcessor() {
+            @Override
+            public List<SpaceSaving.Counter> getTop() {
+                tops.incrementAndGet();
+                return super.getTop();
+            }
+        };
+        ProcessingResult result = new DefaultFileProcessor().processFile(file.toString(), Arrays.asList(words),
+                StandardCharsets.UTF_8, publisher);
+        assertTrue("Completed ", subscriber.done.await(10, TimeUnit.SECONDS));
+
+        List<StatsSnapshot> snapshots = subscriber.snapshots;
+        assertTrue("Running snapshots ", snapshots.size() > 2);
+        for (StatsSnapshot snapshot : snapshots.subList(0, snapshots.size() - 1)) {
+            assertEquals("Counters follow lines ", 5.0 * snapshot.getLines(),
+                    snapshot.getKVForProcessedLines().get(WordCountLineProcessor.WORDS));
+            assertFalse("No top words while running ",
+                    snapshot.getKVForProcessedLines().containsKey(WordCountLineProcessor.TOP_WORDS));
+            assertEquals("Keys of the stats held ", Arrays.asList(WordCountLineProcessor.WORDS,
+                    WordCountLineProcessor.DISTINCT_WORDS), snapshot.getKeyNames());
+        }
+        StatsSnapshot last = snapshots.get(snapshots.size() - 1);
+        assertEquals("Last snapshot holds final stats ", result.getKVForProcessedLines(), last.getKVForProcessedLines());
+        assertEquals("Table only walked for the last snapshot and the result ", 2, tops.get());
+    }
+
+    @Test
+    public void testSlowSubscriberDoesNotBlock() throws InterruptedException {
+        StatsPublisher publisher = new StatsPublisher(0, TimeUnit.MILLISECONDS, executor, 1);
+        CollectingSubscriber subscriber = new CollectingSubscriber(1); // takes one and never asks again
+        publisher.subscribe(subscriber);
+        ProcessingResult result = new DefaultFileProcessor().processFile(file.toString(),
+                Arrays.asList(new DefaultLineProcessor()), StandardCharsets.UTF_8, publisher);
+        assertEquals("OK ", Validation.ValidationType.OK, result.getType());
+        assertTrue("Snapshots dropped ", publisher.getDroppedSnapshots() > 0);
+        assertTrue("At most what was requested ", subscriber.snapshots.size() <= 1);
+    }
+
+    @Test
+    public void testFailure() throws InterruptedException {
+        StatsPublisher publisher = new StatsPublisher();
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber);
+        ProcessingResult result = new DefaultFileProcessor().processFile(file + ".missing",
+                Arrays.asList(new DefaultLineProcessor()), StandardCharsets.UTF_8, publisher);
+        assertEquals("Error ", Validation.ValidationType.ERROR, result.getType());
+        assertTrue("Completed ", subscriber.done.await(10, TimeUnit.SECONDS));
+        assertTrue("Error reported ", subscriber.error.get().getMessage().contains(DefaultFileProcessor.FILE_LOCATION_ERROR));
+    }
+
+    @Test
+    public void testProcessorException() throws InterruptedException {
+        StatsPublisher publisher = new StatsPublisher();
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber);
+        IllegalStateException boom = new IllegalStateException("boom");
+        DefaultLineProcessor failing = new DefaultLineProcessor() {
+            @Override
+            public void beginLine(CharSequence line) {
+                throw boom;
+            }
+        };
+        try {
+            new DefaultFileProcessor().processFile(file.toString(), Arrays.asList(failing), StandardCharsets.UTF_8, publisher);
+            fail("Processor exception expected");
+        } catch (IllegalStateException e) {
+            assertSame("Same exception ", boom, e);
+        }
+        assertTrue("Completed ", subscriber.done.await(10, TimeUnit.SECONDS));
+        assertSame("Exception reported ", boom, subscriber.error.get());
+    }
+
+    private static class CollectingSubscriber implements Flow.Subscriber<StatsSnapshot> {
+        private final long requested;
+        final List<StatsSnapshot> snapshots = new CopyOnWriteArrayList<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        CollectingSubscriber(long requested) {
+            this.requested = requested;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (requested > 0) {
+                subscription.request(requested);
+            }
+        }
+
+        @Override
+        public void onNext(StatsSnapshot item) {
+            snapshots.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.set(throwable);
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.fileprocessor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TopKLineProcessorTest {
+
+    @Test
+    public void testWordsAndNgrams(){
+        TopKLineProcessor processor = new TopKLineProcessor(3, 3, 1024 * 1024);
+        processor.process("the cat sat on the mat");
+        processor.process("on the mat the cat sat");
+        processor.process("");
+        Map<String, Object> stats = processor.getKVForProcessedLines();
+        assertEquals("Top words ", "the=4, cat=2, mat=2", stats.get(TopKLineProcessor.TOP_WORDS));
+        assertEquals("Top bigrams ", "cat sat=2, on the=2, the cat=2", stats.get(TopKLineProcessor.topKey(2)));
+        assertEquals("Top trigrams ", "on the mat=2, the cat sat=2, cat sat on=1", stats.get(TopKLineProcessor.topKey(3)));
+        assertEquals("Distinct words ", 5.0, stats.get(TopKLineProcessor.DISTINCT_WORDS));
+        // no "mat on": n-grams do not span lines
+        assertEquals("Distinct bigrams ", 6.0, stats.get(TopKLineProcessor.distinctKey(2)));
+        assertTrue("Exact ", processor.isExact(1) && processor.isExact(3));
+        assertEquals("Keys ", Arrays.asList("Top words", "Distinct words", "Top 2-grams", "Distinct 2-grams", "Top 3-grams",
+                "Distinct 3-grams"), processor.getKeyNames());
+    }
+
+    @Test
+    public void testExactAcrossShards() throws IOException {
+        Path file = Files.createTempFile("topk", ".txt");
+        Map<String, Long> words = new HashMap<>();
+        Map<String, Long> bigrams = new HashMap<>();
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            Random random = new Random(4);
+            for (int line = 0; line < 20000; line++) {
+                String previous = null;
+                for (int i = random.nextInt(8); i >= 0; i--) {
+                    String word = "w" + (int) Math.abs(random.nextGaussian() * 50);
+                    writer.write(word + " ");
+                    words.merge(word, 1L, Long::sum);
+                    if (previous != null) {
+                        bigrams.merge(previous + " " + word, 1L, Long::sum);
+                    }
+                    previous = word;
+                }
+                writer.write("\n");
+            }
+        }
+        try {
+            TopKLineProcessor processor = new TopKLineProcessor(5, 2, 8 * 1024 * 1024);
+            new DefaultFileProcessor().processFileInParallel(file.toString(), Arrays.asList(processor), StandardCharsets.UTF_8, 4);
+            assertTrue("Exact ", processor.isExact(2));
+            assertExact(processor.getTop(1), words);
+            assertExact(processor.getTop(2), bigrams);
+            assertEquals("Distinct bigrams ", (double) bigrams.size(),
+                    processor.getKVForProcessedLines().get(TopKLineProcessor.distinctKey(2)));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testHeavyHittersWithinCeiling(){
+        TopKLineProcessor first = new TopKLineProcessor(3, 1, 32 * 1024);
+        TopKLineProcessor second = first.newInstance();
+        Map<String, Long> exact = new HashMap<>();
+        Random random = new Random(5);
+        for (int line = 0; line < 20000; line++) {
+            String word = random.nextInt(3) == 0 ? "heavy" + random.nextInt(3) : "rare" + random.nextInt(50000);
+            (line % 2 == 0 ? first : second).process(word);
+            exact.merge(word, 1L, Long::sum);
+        }
+        assertFalse("Over the ceiling ", first.isExact(1));
+        first.merge(second);
+        List<SpaceSaving.Counter> top = first.getTop(1);
+        assertEquals("Reported ", 3, top.size());
+        for (SpaceSaving.Counter counter : top) {
+            assertTrue("Heavy hitter " + counter, counter.getItem().startsWith("heavy"));
+            assertTrue("Not below true count " + counter, counter.getCount() >= exact.get(counter.getItem()));
+            assertTrue("Within error " + counter, counter.getCount() - counter.getError() <= exact.get(counter.getItem()));
+        }
+        double distinct = (Double) first.getKVForProcessedLines().get(TopKLineProcessor.DISTINCT_WORDS);
+        assertTrue("Distinct estimate " + distinct, Math.abs(distinct - exact.size()) < exact.size() * 0.1);
+    }
+
+    @Test
+    public void testSerializable() throws IOException, ClassNotFoundException {
+        TopKLineProcessor processor = new TopKLineProcessor();
+        processor.process("one two two three three three");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(processor);
+        }
+        TopKLineProcessor copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (TopKLineProcessor) in.readObject();
+        }
+        copy.process("one two");
+        assertEquals("Words ", "three=3, two=3, one=2", copy.getKVForProcessedLines().get(TopKLineProcessor.TOP_WORDS));
+        assertEquals("Bigrams ", "one two=2, three three=2, two three=1, two two=1",
+                copy.getKVForProcessedLines().get(TopKLineProcessor.topKey(2)));
+    }
+
+    private static void assertExact(List<SpaceSaving.Counter> top, Map<String, Long> exact){
+        long previous = Long.MAX_VALUE;
+        for (SpaceSaving.Counter counter : top) {
+            assertEquals("Count of " + counter.getItem(), (long) exact.get(counter.getItem()), counter.getCount());
+            assertEquals("No error ", 0, counter.getError());
+            assertTrue("Sorted ", counter.getCount() <= previous);
+            previous = counter.getCount();
+        }
+        long fifth = top.get(top.size() - 1).getCount();
+        assertEquals("None missing ", exact.values().stream().filter(count -> count > fifth).count(),
+                top.stream().filter(counter -> counter.getCount() > fifth).count());
+    }
+}